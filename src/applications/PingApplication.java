@@ -190,6 +190,14 @@ public class PingApplication extends Application {
 		}
 	}
 
+	/**
+	 * Passive instances only respond to pings and don't need updates.
+	 */
+	@Override
+	public boolean needsUpdates() {
+		return !this.passive;
+	}
+
 	/**
 	 * @return the lastPing
 	 */
@@ -226,6 +234,8 @@ public class PingApplication extends Application {
 	}
 
 	/**
+	 * Sets the passive mode. Must be set before the application is attached
+	 * to a router (see {@link #needsUpdates()}).
 	 * @param passive the passive to set
 	 */
 	public void setPassive(boolean passive) {
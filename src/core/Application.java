@@ -75,6 +75,20 @@ public abstract class Application {
 	 */
 	public abstract void update(DTNHost host);
 
+	/**
+	 * Returns true if the {@link #update(DTNHost)} method of this
+	 * application instance needs to be called on every simulation cycle.
+	 * Applications that only react to messages can return false so that
+	 * the routers don't call them on every cycle. The value is read when the
+	 * application is attached to a router so it should not change after
+	 * that. The default implementation returns true.
+	 *
+	 * @return true if the application needs updates
+	 */
+	public boolean needsUpdates() {
+		return true;
+	}
+
 	/**
 	 * <p>
 	 * Returns an unique application ID. The application will only receive
@@ -76,6 +76,22 @@ public class ArithmeticCondition {
 		}
 	}
 
+	/**
+	 * Returns the operator of the condition ('&lt;', '&gt;', or '=')
+	 * @return the operator of the condition
+	 */
+	public char getOperator() {
+		return this.operator;
+	}
+
+	/**
+	 * Returns the numeric value the values are compared to
+	 * @return the numeric value of the condition
+	 */
+	public double getNumber() {
+		return this.number;
+	}
+
 	@Override
 	public String toString() {
 		return "Condition \"" + operator + " " + number + "\"";
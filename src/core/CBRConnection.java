@@ -4,14 +4,28 @@
  */
 package core;
 
+import java.util.ArrayDeque;
+import java.util.Iterator;
+
 import routing.MessageRouter;
 
 /**
- * A constant bit-rate connection between two DTN nodes.
+ * A constant bit-rate connection between two DTN nodes. In addition to the
+ * single message transfers, the connection supports batched transfers:
+ * messages can be queued to be transferred back-to-back after the current
+ * transfer (see {@link #queueTransfer(DTNHost, Message)}). The transfer of
+ * a queued message starts exactly when the previous one is done, so the
+ * link time for a sequence of messages can be reserved in one go.
  */
 public class CBRConnection extends Connection {
 	private int speed;
 	private double transferDoneTime;
+	/** messages queued after the message on fly (created lazily) */
+	private ArrayDeque<Message> queue;
+	/** total size of the queued messages */
+	private int queuedBytes;
+	/** is a queued transfer being offered to the receiver */
+	private boolean queueing;
 
 	/**
 	 * Creates a new connection between nodes and sets the connection
@@ -48,12 +62,9 @@ public class CBRConnection extends Connection {
 			this.getOtherNode(this.msgFromNode) + ". Can't " +
 			"start transfer of " + m + " from " + from;
 
-		this.msgFromNode = from;
-		Message newMessage = m.replicate();
-		int retVal = getOtherNode(from).receiveMessage(newMessage, from);
+		int retVal = offerMessage(from, m);
 
 		if (retVal == MessageRouter.RCV_OK) {
-			this.msgOnFly = newMessage;
 			this.transferDoneTime = SimClock.getTime() +
 			(1.0*m.getSize()) / this.speed;
 		}
@@ -61,15 +72,155 @@ public class CBRConnection extends Connection {
 		return retVal;
 	}
 
+	@Override
+	public boolean canQueueTransfer(DTNHost from, double until) {
+		return this.msgOnFly != null && from == this.msgFromNode &&
+			isUp() && getReservedUntil() < until;
+	}
+
+	@Override
+	public int queueTransfer(DTNHost from, Message m) {
+		if (this.msgOnFly == null || from != this.msgFromNode || !isUp()) {
+			return MessageRouter.TRY_LATER_BUSY;
+		}
+		if (isTransferring(m.getId())) {
+			return MessageRouter.DENIED_OLD; /* already on its way */
+		}
+
+		int retVal;
+		this.queueing = true;
+		try {
+			retVal = getOtherNode(from).receiveMessage(m, from);
+		} finally {
+			this.queueing = false;
+		}
+
+		if (retVal == MessageRouter.RCV_OK) {
+			if (this.queue == null) {
+				this.queue = new ArrayDeque<Message>();
+			}
+			this.queue.add(getReceivedCopy(from, m));
+			this.queuedBytes += m.getSize();
+		}
+
+		return retVal;
+	}
+
+	@Override
+	public boolean isQueueingFrom(DTNHost from) {
+		return this.queueing && from == this.msgFromNode;
+	}
+
+	@Override
+	public int getQueuedByteCount() {
+		return super.getQueuedByteCount() + this.queuedBytes;
+	}
+
+	@Override
+	public boolean isTransferring(String msgId) {
+		if (super.isTransferring(msgId)) {
+			return true;
+		}
+		if (this.queue != null) {
+			for (Message m : this.queue) {
+				if (m.getId().equals(msgId)) {
+					return true;
+				}
+			}
+		}
+		return false;
+	}
+
 	/**
-	 * Aborts the transfer of the currently transferred message.
+	 * Returns the sim time when the current transfer and all the queued
+	 * transfers are done
+	 * @return The time until the connection is reserved
+	 */
+	public double getReservedUntil() {
+		if (this.msgOnFly == null) {
+			return SimClock.getTime();
+		}
+		return this.transferDoneTime + (1.0*this.queuedBytes) / this.speed;
+	}
+
+	/**
+	 * Finalizes the transfer of the currently transferred message. If there
+	 * are queued messages, the transfer of the next one continues from the
+	 * time the finalized transfer was done.
+	 */
+	@Override
+	public void finalizeTransfer() {
+		DTNHost from = this.msgFromNode;
+		super.finalizeTransfer();
+		startNextQueued(from, this.transferDoneTime);
+	}
+
+	/**
+	 * Aborts the transfer of the currently transferred message. If there
+	 * are queued messages, the transfer of the next one starts now (and it
+	 * can be aborted with another call).
 	 */
 	public void abortTransfer() {
 		assert msgOnFly != null : "No message to abort at " + msgFromNode;
+		DTNHost from = this.msgFromNode;
 		getOtherNode(msgFromNode).messageAborted(this.msgOnFly.getId(),
 				msgFromNode,getRemainingByteCount());
 		clearMsgOnFly();
-		this.transferDoneTime = 0;
+		if (!startNextQueued(from, SimClock.getTime())) {
+			this.transferDoneTime = 0;
+		}
+	}
+
+	@Override
+	public void cancelQueuedTransfers() {
+		if (this.queue == null || this.queue.isEmpty()) {
+			return;
+		}
+		DTNHost to = getOtherNode(this.msgFromNode);
+		for (Message m : this.queue) {
+			to.queuedTransferCancelled(m.getId(), this.msgFromNode);
+		}
+		this.queue.clear();
+		this.queuedBytes = 0;
+	}
+
+	@Override
+	public boolean cancelQueuedTransfer(String msgId) {
+		if (this.queue == null) {
+			return false;
+		}
+		for (Iterator<Message> i = this.queue.iterator(); i.hasNext(); ) {
+			Message m = i.next();
+			if (m.getId().equals(msgId)) {
+				i.remove();
+				this.queuedBytes -= m.getSize();
+				getOtherNode(this.msgFromNode).queuedTransferCancelled(msgId,
+						this.msgFromNode);
+				return true;
+			}
+		}
+		return false;
+	}
+
+	/**
+	 * Makes the next queued message (if any) the message on fly and
+	 * informs the receiver that its transfer started
+	 * @param from The host sending the messages
+	 * @param startTime Sim time when the transfer of the message starts
+	 * @return true if a queued message was started
+	 */
+	private boolean startNextQueued(DTNHost from, double startTime) {
+		if (this.queue == null || this.queue.isEmpty()) {
+			return false;
+		}
+		Message next = this.queue.poll();
+		this.queuedBytes -= next.getSize();
+		this.msgOnFly = next;
+		this.msgFromNode = from;
+		this.transferDoneTime = startTime +
+			(1.0*next.getSize()) / this.speed;
+		getOtherNode(from).queuedTransferStarted(next.getId(), from);
+		return true;
 	}
 
 	/**
@@ -109,6 +260,10 @@ public class CBRConnection extends Connection {
 
 		remaining = (int)((this.transferDoneTime - SimClock.getTime())
 				* this.speed);
+		if (remaining > msgOnFly.getSize()) {
+			/* a queued transfer that hasn't started yet */
+			remaining = msgOnFly.getSize();
+		}
 
 		return (remaining > 0 ? remaining : 0);
 	}
@@ -87,6 +87,129 @@ public abstract class Connection {
 	 */
 	public abstract int startTransfer(DTNHost from, Message m);
 
+	/**
+	 * Offers a message to the host in the other end of the connection. The
+	 * offered message is not copied: if the receiving host accepts it, the
+	 * copy the receiving router puts to its incoming buffer is also used as
+	 * the message on fly, so an accepted transfer creates only one copy and
+	 * a rejected offer none.
+	 * @param from The host sending the message
+	 * @param m The message (the sender's own copy; not modified)
+	 * @return The value returned by
+	 * {@link MessageRouter#receiveMessage(Message, DTNHost)}
+	 */
+	protected int offerMessage(DTNHost from, Message m) {
+		this.msgFromNode = from;
+		int retVal = getOtherNode(from).receiveMessage(m, from);
+
+		if (retVal == MessageRouter.RCV_OK) {
+			this.msgOnFly = getReceivedCopy(from, m);
+		}
+
+		return retVal;
+	}
+
+	/**
+	 * Returns the copy of an accepted message the receiving host put to its
+	 * incoming buffer
+	 * @param from The host sending the message
+	 * @param m The message that was offered
+	 * @return The receiver's copy of the message
+	 */
+	protected Message getReceivedCopy(DTNHost from, Message m) {
+		DTNHost to = getOtherNode(from);
+		Message received = to.getIncomingMessage(m.getId(), from);
+		if (received == null) {
+			/* the receiver didn't buffer the message (e.g., a router
+			 * that doesn't use the incoming buffer) */
+			received = m.replicate();
+			received.addNodeOnPath(to);
+		}
+		return received;
+	}
+
+	/**
+	 * Returns true if a message can be queued to be transferred after the
+	 * messages that the given host is currently sending through this
+	 * connection (see {@link #queueTransfer(DTNHost, Message)}). The
+	 * default implementation doesn't support queued transfers and always
+	 * returns false.
+	 * @param from The host sending the messages
+	 * @param until Sim time the queued transfers must start before, i.e.,
+	 * a message can be queued only if the connection is reserved for the
+	 * current transfers for less than until the given time
+	 * @return true if a message can be queued
+	 */
+	public boolean canQueueTransfer(DTNHost from, double until) {
+		return false;
+	}
+
+	/**
+	 * Offers a message to be transferred right after the messages that are
+	 * being transferred (or already queued) from the same host. Only
+	 * supported by connections whose
+	 * {@link #canQueueTransfer(DTNHost, double)} returns true.
+	 * @param from The host sending the message
+	 * @param m The message
+	 * @return The value returned by
+	 * {@link MessageRouter#receiveMessage(Message, DTNHost)} or
+	 * {@link MessageRouter#TRY_LATER_BUSY} if queuing isn't possible
+	 */
+	public int queueTransfer(DTNHost from, Message m) {
+		return MessageRouter.TRY_LATER_BUSY;
+	}
+
+	/**
+	 * Returns true if this connection is currently offering a message from
+	 * the given host to be queued after the ongoing transfer(s). The
+	 * receiving router can accept such an offer even though the connection
+	 * is busy.
+	 * @param from The host offering the message
+	 * @return true if a queued transfer is being offered
+	 */
+	public boolean isQueueingFrom(DTNHost from) {
+		return false;
+	}
+
+	/**
+	 * Drops the messages that are queued after the message being transferred
+	 * (see {@link #queueTransfer(DTNHost, Message)}). Since the transfers of
+	 * the queued messages never started, the receiver only removes them from
+	 * its incoming buffer and no aborts are reported. The default
+	 * implementation doesn't support queued transfers and does nothing.
+	 */
+	public void cancelQueuedTransfers() {}
+
+	/**
+	 * Drops the message with the given ID from the messages queued after the
+	 * message being transferred (if it is queued). The default
+	 * implementation doesn't support queued transfers and returns false.
+	 * @param msgId ID of the message
+	 * @return true if the message was queued and was dropped
+	 */
+	public boolean cancelQueuedTransfer(String msgId) {
+		return false;
+	}
+
+	/**
+	 * Returns the total size of the message being transferred and the
+	 * messages queued after it
+	 * @return The number of bytes (0 if nothing is being transferred)
+	 */
+	public int getQueuedByteCount() {
+		return this.msgOnFly == null ? 0 : this.msgOnFly.getSize();
+	}
+
+	/**
+	 * Returns true if the message with the given ID is being transferred
+	 * (or is queued to be transferred) through this connection
+	 * @param msgId ID of the message
+	 * @return true if the message is being transferred
+	 */
+	public boolean isTransferring(String msgId) {
+		return this.msgOnFly != null && this.msgOnFly.getId().equals(msgId);
+	}
+
 	/**
 	 * Calculate the current transmission speed from the information
 	 * given by the interfaces, and calculate the missing data amount.
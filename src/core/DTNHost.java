@@ -165,10 +165,12 @@ public class DTNHost implements Comparable<DTNHost> {
 	 * @param con  The connection object whose state changed
 	 */
 	public void connectionUp(Connection con) {
+		this.router.wakeUp();
 		this.router.changedConnection(con);
 	}
 
 	public void connectionDown(Connection con) {
+		this.router.wakeUp();
 		this.router.changedConnection(con);
 	}
 
@@ -186,6 +188,19 @@ public class DTNHost implements Comparable<DTNHost> {
 		return lc;
 	}
 
+	/**
+	 * Returns true if this host has at least one connection with other hosts
+	 * @return true if this host has at least one connection
+	 */
+	public boolean hasConnections() {
+		for (NetworkInterface i : net) {
+			if (i.getConnections().size() > 0) {
+				return true;
+			}
+		}
+		return false;
+	}
+
 	/**
 	 * Returns the current location of this host.
 	 * @return The location
@@ -332,6 +347,16 @@ public class DTNHost implements Comparable<DTNHost> {
 	 * @param simulateConnections Should network layer be updated too
 	 */
 	public void update(boolean simulateConnections) {
+		update(simulateConnections, false);
+	}
+
+	/**
+	 * Updates node's network layer and, if it is not dormant, the router.
+	 * @param simulateConnections Should network layer be updated too
+	 * @param routerDormancy If true, the router is updated only if it
+	 * needs an update (see {@link MessageRouter#needsUpdate()})
+	 */
+	public void update(boolean simulateConnections, boolean routerDormancy) {
 		if (!isRadioActive()) {
 			// Make sure inactive nodes don't have connections
 			tearDownAllConnections();
@@ -343,7 +368,9 @@ public class DTNHost implements Comparable<DTNHost> {
 				i.update();
 			}
 		}
-		this.router.update();
+		if (!routerDormancy || this.router.needsUpdate()) {
+			this.router.update();
+		}
 	}
 
 	/**
@@ -446,20 +473,27 @@ public class DTNHost implements Comparable<DTNHost> {
 	}
 
 	/**
-	 * Start receiving a message from another host
+	 * Start receiving a message from another host. The given message is
+	 * not modified; if the message is accepted, the router stores a copy of
+	 * it (with this node added on the message's path) to its incoming buffer.
 	 * @param m The message
 	 * @param from Who the message is from
 	 * @return The value returned by
 	 * {@link MessageRouter#receiveMessage(Message, DTNHost)}
 	 */
 	public int receiveMessage(Message m, DTNHost from) {
-		int retVal = this.router.receiveMessage(m, from);
-
-		if (retVal == MessageRouter.RCV_OK) {
-			m.addNodeOnPath(this);	// add this node on the messages path
-		}
+		return this.router.receiveMessage(m, from);
+	}
 
-		return retVal;
+	/**
+	 * Returns the copy of a message this host is currently receiving from
+	 * another host
+	 * @param id ID of the message
+	 * @param from The host the message is received from
+	 * @return The message or null if no such message is being received
+	 */
+	public Message getIncomingMessage(String id, DTNHost from) {
+		return this.router.getIncomingMessage(id, from);
 	}
 
 	/**
@@ -492,6 +526,25 @@ public class DTNHost implements Comparable<DTNHost> {
 		this.router.messageAborted(id, from, bytesRemaining);
 	}
 
+	/**
+	 * Informs the host that the transfer of a queued message started.
+	 * @param id Identifier of the message
+	 * @param from From who the message is from
+	 */
+	public void queuedTransferStarted(String id, DTNHost from) {
+		this.router.queuedTransferStarted(id, from);
+	}
+
+	/**
+	 * Informs the host that a queued message was dropped before its
+	 * transfer started.
+	 * @param id Identifier of the message
+	 * @param from From who the message was from
+	 */
+	public void queuedTransferCancelled(String id, DTNHost from) {
+		this.router.queuedTransferCancelled(id, from);
+	}
+
 	/**
 	 * Creates a new message to this host's router
 	 * @param m The message to create
@@ -0,0 +1,31 @@
+/*
+ * Copyright 2010 Aalto University, ComNet
+ * Released under GPLv3. See LICENSE.txt for details.
+ */
+package core;
+
+/**
+ * Interface for classes that want to be informed about connections between
+ * hosts together with the network interfaces of the connections. For
+ * listeners of this type the methods of this interface are called
+ * <B>instead of</B> the host based methods of {@link ConnectionListener}.
+ */
+public interface InterfaceConnectionListener extends ConnectionListener {
+
+	/**
+	 * Method is called when two interfaces are connected.
+	 * @param iface1 Interface that initiated the connection
+	 * @param iface2 Interface that was connected to
+	 */
+	public void interfacesConnected(NetworkInterface iface1,
+			NetworkInterface iface2);
+
+	/**
+	 * Method is called when connection between interfaces is disconnected.
+	 * @param iface1 Interface that initiated the disconnection
+	 * @param iface2 Interface at the other end of the connection
+	 */
+	public void interfacesDisconnected(NetworkInterface iface1,
+			NetworkInterface iface2);
+
+}
@@ -49,6 +49,14 @@ public class Message implements Comparable<Message> {
 	/** Application ID of the application that created the message */
 	private String	appID;
 
+	/** Dense index of this message's ID (shared by all replicates) or -1
+	 * if the index hasn't been resolved yet */
+	private int idIndex;
+	/** Mapping of message IDs to their dense indexes */
+	private static Map<String, Integer> idIndexes;
+	/** Message IDs in the order of their dense indexes */
+	private static List<String> indexedIds;
+
 	static {
 		reset();
 		DTNSim.registerForReset(Message.class.getCanonicalName());
@@ -77,6 +85,7 @@ public class Message implements Comparable<Message> {
 		this.requestMsg = null;
 		this.properties = null;
 		this.appID = null;
+		this.idIndex = -1;
 
 		Message.nextUniqueId++;
 		addNodeOnPath(from);
@@ -106,6 +115,47 @@ public class Message implements Comparable<Message> {
 		return this.id;
 	}
 
+	/**
+	 * Returns a dense, non-negative index for the ID of this message. All
+	 * replicates of the message share the same index and indexes are given
+	 * in the order the IDs are first seen, starting from zero. Indexes are
+	 * valid until the next {@link #reset()}.
+	 * @return The index of the message ID
+	 */
+	public int getIdIndex() {
+		if (this.idIndex < 0) {
+			this.idIndex = indexOfId(this.id);
+		}
+		return this.idIndex;
+	}
+
+	/**
+	 * Returns the dense index of a message ID, giving the ID a new index
+	 * if it doesn't have one yet.
+	 * @param id The message ID
+	 * @return The index of the ID
+	 * @see #getIdIndex()
+	 */
+	public static int indexOfId(String id) {
+		Integer index = idIndexes.get(id);
+		if (index == null) {
+			index = indexedIds.size();
+			idIndexes.put(id, index);
+			indexedIds.add(id);
+		}
+		return index;
+	}
+
+	/**
+	 * Returns the message ID that has the given dense index
+	 * @param index The index of the ID
+	 * @return The message ID
+	 * @see #getIdIndex()
+	 */
+	public static String getIdForIndex(int index) {
+		return indexedIds.get(index);
+	}
+
 	/**
 	 * Returns an ID that is unique per message instance
 	 * (different for replicates too)
@@ -164,6 +214,18 @@ public class Message implements Comparable<Message> {
 	}
 
 
+	/**
+	 * Returns the simulation time when the TTL of the message has passed
+	 * completely or Double.MAX_VALUE if the TTL is infinite.
+	 * @return The expiry time (seconds)
+	 */
+	public double getExpiryTime() {
+		if (this.initTtl == INFINITE_TTL) {
+			return Double.MAX_VALUE;
+		}
+		return this.timeCreated + this.initTtl * 60.0;
+	}
+
 	/**
 	 * Sets the initial TTL (time-to-live) for this message. The initial
 	 * TTL is the TTL when the original message was created. The current TTL
@@ -262,6 +324,7 @@ public class Message implements Comparable<Message> {
 		this.requestMsg  = m.requestMsg;
 		this.initTtl = m.initTtl;
 		this.appID = m.appID;
+		this.idIndex = m.idIndex;
 
 		if (m.properties != null) {
 			Set<String> keys = m.properties.keySet();
@@ -344,6 +407,8 @@ public class Message implements Comparable<Message> {
 	 */
 	public static void reset() {
 		nextUniqueId = 0;
+		idIndexes = new HashMap<String, Integer>();
+		indexedIds = new ArrayList<String>();
 	}
 
 	/**
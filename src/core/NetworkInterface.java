@@ -317,7 +317,7 @@ abstract public class NetworkInterface implements ModuleCommunicationListener {
 	 */
 	protected void connect(Connection con, NetworkInterface anotherInterface) {
 		this.connections.add(con);
-		notifyConnectionListeners(CON_UP, anotherInterface.getHost());
+		notifyConnectionListeners(CON_UP, anotherInterface);
 
 		// set up bidirectional connection
 		anotherInterface.getConnections().add(con);
@@ -335,7 +335,7 @@ abstract public class NetworkInterface implements ModuleCommunicationListener {
 	protected void disconnect(Connection con,
 			NetworkInterface anotherInterface) {
 		con.setUpState(false);
-		notifyConnectionListeners(CON_DOWN, anotherInterface.getHost());
+		notifyConnectionListeners(CON_DOWN, anotherInterface);
 
 		// tear down bidirectional connection
 		if (!anotherInterface.getConnections().remove(con)) {
@@ -400,14 +400,28 @@ abstract public class NetworkInterface implements ModuleCommunicationListener {
 
 	/**
 	 * Notifies all the connection listeners about a change in connections.
+	 * {@link InterfaceConnectionListener}s are notified with the
+	 * interfaces, other listeners with the hosts.
 	 * @param type Type of the change (e.g. {@link #CON_DOWN} )
-	 * @param otherHost The other host on the other end of the connection.
+	 * @param otherInterface The interface on the other end of the connection.
 	 */
-	private void notifyConnectionListeners(int type, DTNHost otherHost) {
+	private void notifyConnectionListeners(int type,
+			NetworkInterface otherInterface) {
 		if (this.cListeners == null) {
 			return;
 		}
+		DTNHost otherHost = otherInterface.getHost();
 		for (ConnectionListener cl : this.cListeners) {
+			if (cl instanceof InterfaceConnectionListener) {
+				InterfaceConnectionListener icl =
+					(InterfaceConnectionListener)cl;
+				if (type == CON_UP) {
+					icl.interfacesConnected(this, otherInterface);
+				} else {
+					icl.interfacesDisconnected(this, otherInterface);
+				}
+				continue;
+			}
 			switch (type) {
 			case CON_UP:
 				cl.hostsConnected(this.host, otherHost);
@@ -476,7 +490,7 @@ abstract public class NetworkInterface implements ModuleCommunicationListener {
 		Connection con = this.connections.get(index);
 		DTNHost anotherNode = anotherInterface.getHost();
 		con.setUpState(false);
-		notifyConnectionListeners(CON_DOWN, anotherNode);
+		notifyConnectionListeners(CON_DOWN, anotherInterface);
 
 		// tear down bidirectional connection
 		if (!anotherInterface.getConnections().remove(con)) {
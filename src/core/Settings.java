@@ -8,11 +8,18 @@ import java.io.*;
 import java.lang.reflect.Constructor;
 import java.lang.reflect.InvocationTargetException;
 import java.util.ArrayList;
+import java.util.HashMap;
 import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
 import java.util.Properties;
 import java.util.Scanner;
 import java.util.Set;
+import java.util.SortedMap;
+import java.util.SortedSet;
 import java.util.Stack;
+import java.util.TreeMap;
+import java.util.TreeSet;
 
 import util.Range;
 
@@ -31,6 +38,14 @@ import util.Range;
  * values (see {@link #setRunIndex(int)}). In file paths directory separator
  * should always be forward slash ("/").
  * </P>
+ * <P> The settings are compiled once per run into a map of their fully
+ * qualified names and run-specific values, and the numeric and CSV values
+ * are parsed only once, so requesting settings is cheap also outside the
+ * initialization. The compiled settings also keep track of which settings
+ * have been read, so settings that are never used or look misspelled can be
+ * reported (see {@link #getUnusedSettings()} and
+ * {@link #getMisspelledSettings()}).
+ * </P>
  */
 public class Settings {
 	/** properties object where the setting files are read into */
@@ -45,20 +60,40 @@ public class Settings {
 	 */
 	public static final String SETTING_OUTPUT_S = "Settings.output";
 
+	/**
+	 * Should the settings of the settings files that were not used in a run
+	 * be reported -setting id ({@value}). Boolean. Default is false.
+	 */
+	public static final String REPORT_UNUSED_S = "Settings.reportUnused";
+
 	/** delimiter for requested values in strings ({@value})
 	 * @see #valueFillString(String) */
 	public static final String FILL_DELIMITER = "%%";
 
+	/** largest edit distance of a misspelled setting name from the name
+	 * that was probably meant */
+	private static final int MAX_MISSPELLING_DISTANCE = 2;
+
 	/** Stream where all read settings are written to */
 	private static PrintStream out = null;
 	private static Set<String> writtenSettings = new HashSet<String>();
 
 	/** run index for run-specific settings */
 	private static int runIndex = 0;
+	/** the settings of the current run by their full names (null if the
+	 * settings must be compiled, see {@link #getCompiled()}) */
+	private static volatile Map<String, Value> compiled = null;
+	/** the properties the compiled settings are from */
+	private static Properties compiledProps = null;
+	/** full names of the settings that were requested but not found */
+	private static Set<String> missingSettings = new HashSet<String>();
 	private String namespace = null; // namespace to look the settings from
 	private String secondaryNamespace = null;
 	private Stack<String> oldNamespaces;
 	private Stack<String> secondaryNamespaces;
+	/** full (primary, secondary) property names of the requested settings
+	 * in the current namespaces (created lazily) */
+	private Map<String, String[]> fullNames = null;
 
 	/**
 	 * Creates a setting object with a namespace. Namespace is the prefix
@@ -97,6 +132,59 @@ public class Settings {
 	public static void setRunIndex(int index) {
 		runIndex = index;
 		writtenSettings.clear();
+		propertiesChanged();
+	}
+
+	/**
+	 * Discards the compiled settings so they are compiled again from the
+	 * properties. Must be called if the properties are modified directly.
+	 */
+	protected static synchronized void propertiesChanged() {
+		compiled = null;
+		synchronized (missingSettings) {
+			missingSettings.clear();
+		}
+	}
+
+	/**
+	 * Returns the compiled settings of the current run and compiles them if
+	 * the properties or the run index have changed
+	 * @return The settings by their full names
+	 */
+	private static Map<String, Value> getCompiled() {
+		Map<String, Value> settings = compiled;
+		if (settings != null && compiledProps == props) {
+			return settings;
+		}
+		return compile();
+	}
+
+	/**
+	 * Compiles the settings of the current run from the properties
+	 */
+	private static synchronized Map<String, Value> compile() {
+		if (props == null) {
+			init(null);
+		}
+		if (compiled != null && compiledProps == props) {
+			return compiled; /* compiled by another thread */
+		}
+
+		Set<Object> ownNames = props.keySet(); /* not the default settings */
+		Map<String, Value> settings = new HashMap<String, Value>();
+		for (String name : props.stringPropertyNames()) {
+			settings.put(name, new Value(parseRunSetting(
+					props.getProperty(name).trim()), !ownNames.contains(name)));
+		}
+		/* read directly from the properties */
+		Value output = settings.get(SETTING_OUTPUT_S);
+		if (output != null) {
+			output.used = true;
+		}
+
+		compiledProps = props;
+		compiled = settings;
+		return settings;
 	}
 
 	/**
@@ -142,6 +230,7 @@ public class Settings {
 	public void setNameSpace(String namespace) {
 		this.oldNamespaces.push(this.namespace);
 		this.namespace = namespace;
+		this.fullNames = null;
 	}
 
 	/**
@@ -156,6 +245,7 @@ public class Settings {
 		this.namespace = this.namespace + "." + namespace;
 		this.secondaryNamespaces.push(this.secondaryNamespace);
 		this.secondaryNamespace = this.secondaryNamespace + "." + namespace;
+		this.fullNames = null;
 	}
 
 	/**
@@ -170,7 +260,7 @@ public class Settings {
 			return null;
 		}
 
-		if (props.getProperty(getFullPropertyName(setting, false)) != null) {
+		if (getCompiled().get(getFullPropertyName(setting, false)) != null) {
 			return getFullPropertyName(setting, false);
 		}
 
@@ -206,6 +296,7 @@ public class Settings {
 	public void setSecondaryNamespace(String namespace) {
 		this.secondaryNamespaces.push(this.secondaryNamespace);
 		this.secondaryNamespace = namespace;
+		this.fullNames = null;
 	}
 
 	/**
@@ -214,6 +305,7 @@ public class Settings {
 	 */
 	public void restoreNameSpace() {
 		this.namespace = this.oldNamespaces.pop();
+		this.fullNames = null;
 	}
 
 	/**
@@ -223,6 +315,7 @@ public class Settings {
 	 */
 	public void restoreSecondaryNamespace() {
 		this.secondaryNamespace = this.secondaryNamespaces.pop();
+		this.fullNames = null;
 	}
 
 	/**
@@ -260,6 +353,7 @@ public class Settings {
 		} catch (IOException e) {
 			throw new SettingsError(e);
 		}
+		propertiesChanged();
 
 		outFile = props.getProperty(SETTING_OUTPUT_S);
 		if (outFile != null) {
@@ -294,6 +388,7 @@ public class Settings {
 		} catch (IOException e) {
 			throw new SettingsError(e);
 		}
+		propertiesChanged();
 
 		String outFile = props.getProperty(SETTING_OUTPUT_S);
 		if (outFile != null) {
@@ -323,6 +418,119 @@ public class Settings {
 		} catch (IOException e) {
 			throw new SettingsError(e);
 		}
+		propertiesChanged();
+	}
+
+	/**
+	 * Returns all the settings (including the ones from the default
+	 * settings file) with the values of the current run (see
+	 * {@link #setRunIndex(int)}). The settings are not written to the
+	 * settings output.
+	 * @return The settings sorted by their full names
+	 */
+	public static SortedMap<String, String> getAll() {
+		SortedMap<String, String> all = new TreeMap<String, String>();
+		for (Map.Entry<String, Value> e : getCompiled().entrySet()) {
+			all.put(e.getKey(), e.getValue().value);
+		}
+		return all;
+	}
+
+	/**
+	 * Returns the names of the settings of the settings files (i.e., not
+	 * only in the default settings file) that haven't been read during the
+	 * current run. Settings that are read later in the run are included
+	 * if this is called before they are read.
+	 * @return The names of the unused settings in alphabetical order
+	 */
+	public static SortedSet<String> getUnusedSettings() {
+		SortedSet<String> unused = new TreeSet<String>();
+		for (Map.Entry<String, Value> e : getCompiled().entrySet()) {
+			Value v = e.getValue();
+			if (!v.used && !v.fromDefaults) {
+				unused.add(e.getKey());
+			}
+		}
+		return unused;
+	}
+
+	/**
+	 * Returns the unused settings (see {@link #getUnusedSettings()}) that
+	 * look like misspelled names of settings that were requested, e.g.,
+	 * <CODE>Group.bufferSise</CODE> when <CODE>Group.bufferSize</CODE> was
+	 * requested
+	 * @return Descriptions of the misspelled settings with the names that
+	 * were probably meant
+	 */
+	public static List<String> getMisspelledSettings() {
+		List<String> misspelled = new ArrayList<String>();
+		Set<String> requested;
+		synchronized (missingSettings) {
+			requested = new TreeSet<String>(missingSettings);
+		}
+		for (Map.Entry<String, Value> e : getCompiled().entrySet()) {
+			if (e.getValue().used) {
+				requested.add(e.getKey());
+			}
+		}
+
+		for (String name : getUnusedSettings()) {
+			String closest = null;
+			int closestDistance = MAX_MISSPELLING_DISTANCE + 1;
+			for (String m : requested) {
+				int d = name.equalsIgnoreCase(m) ? 0 : editDistance(name, m,
+						closestDistance);
+				if (d < closestDistance && !differOnlyByDigits(name, m)) {
+					closest = m;
+					closestDistance = d;
+				}
+			}
+			if (closest != null) {
+				misspelled.add("'" + name + "' is not used (did you mean '" +
+						closest + "'?)");
+			}
+		}
+		return misspelled;
+	}
+
+	/**
+	 * Returns the edit (Levenshtein) distance of two strings, or a value
+	 * of at least the given limit if the distance is not smaller than it
+	 */
+	private static int editDistance(String a, String b, int limit) {
+		if (Math.abs(a.length() - b.length()) >= limit) {
+			return limit;
+		}
+		int[] prev = new int[b.length() + 1];
+		int[] cur = new int[b.length() + 1];
+		for (int j=0; j<=b.length(); j++) {
+			prev[j] = j;
+		}
+		for (int i=1; i<=a.length(); i++) {
+			cur[0] = i;
+			int rowMin = i;
+			for (int j=1; j<=b.length(); j++) {
+				int cost = a.charAt(i - 1) == b.charAt(j - 1) ? 0 : 1;
+				cur[j] = Math.min(Math.min(cur[j - 1], prev[j]) + 1,
+						prev[j - 1] + cost);
+				rowMin = Math.min(rowMin, cur[j]);
+			}
+			if (rowMin >= limit) {
+				return limit;
+			}
+			int[] tmp = prev;
+			prev = cur;
+			cur = tmp;
+		}
+		return prev[b.length()];
+	}
+
+	/**
+	 * Returns true if the strings are equal except for digits (e.g.,
+	 * <CODE>Group1.speed</CODE> and <CODE>Group2.speed</CODE>)
+	 */
+	private static boolean differOnlyByDigits(String a, String b) {
+		return a.replaceAll("[0-9]+", "#").equals(b.replaceAll("[0-9]+", "#"));
 	}
 
 	/**
@@ -347,30 +555,38 @@ public class Settings {
 	 * @return True if the setting exists, false if not
 	 */
 	public boolean contains(String name) {
-		try {
-			String value = getSetting(name);
-			if (value == null) {
-				return false;
-			}
-
-			else return value.trim().length() > 0;
-		}
-		catch (SettingsError e) {
-			return false; // didn't find the setting
-		}
+		return find(name) != null;
 	}
 
 	/**
-	 * Returns full (namespace prefixed) property name for setting.
+	 * Returns full (namespace prefixed) property name for setting. The names
+	 * are cached until the namespaces change.
 	 * @param name Name of the settings
 	 * @param secondary If true, the secondary namespace is used.
 	 * @return full (prefixed with current namespace) property name for setting
 	 */
 	private String getFullPropertyName(String name, boolean secondary) {
-		String usedNamespace = (secondary ? secondaryNamespace : namespace);
+		if (this.fullNames == null) {
+			this.fullNames = new HashMap<String, String[]>();
+		}
+		String[] names = this.fullNames.get(name);
+		if (names == null) {
+			names = new String[] {prefix(namespace, name),
+					prefix(secondaryNamespace, name)};
+			this.fullNames.put(name, names);
+		}
+		return names[secondary ? 1 : 0];
+	}
 
-		if (usedNamespace != null) {
-			return usedNamespace + "." + name;
+	/**
+	 * Returns a setting name prefixed with a namespace
+	 * @param namespace The namespace or null for no prefix
+	 * @param name Name of the setting
+	 * @return The prefixed name
+	 */
+	private static String prefix(String namespace, String name) {
+		if (namespace != null) {
+			return namespace + "." + name;
 		}
 		else {
 			return name;
@@ -388,37 +604,69 @@ public class Settings {
 	 * the namespaces
 	 */
 	public String getSetting(String name) {
-		String fullPropName;
-		if (props == null) {
-			init(null);
-		}
-		fullPropName = getFullPropertyName(name, false);
-		String value = props.getProperty(fullPropName);
+		return getValue(name).value;
+	}
 
-		if (value != null) { // found value, check if run setting can be parsed
-			value = parseRunSetting(value.trim());
+	/**
+	 * Returns the compiled value of a setting. The setting is first looked
+	 * from the primary namespace and then from the secondary namespace (if
+	 * any). Empty values are treated as missing settings.
+	 * @param name Name of the setting
+	 * @return The value or null if the setting was not found
+	 */
+	private Value find(String name) {
+		Map<String, Value> settings = getCompiled();
+		String fullPropName = getFullPropertyName(name, false);
+		Value value = settings.get(fullPropName);
+
+		if (value == null || value.value.length() == 0) {
+			missing(fullPropName);
+			value = null;
+			if (this.secondaryNamespace != null) {
+				// try secondary namespace if the value wasn't found from primary
+				fullPropName = getFullPropertyName(name, true);
+				value = settings.get(fullPropName);
+				if (value == null || value.value.length() == 0) {
+					missing(fullPropName);
+					value = null;
+				}
+			}
 		}
 
-		if ((value == null || value.length() == 0) &&
-				this.secondaryNamespace != null) {
-			// try secondary namespace if the value wasn't found from primary
-			fullPropName = getFullPropertyName(name, true);
-			value = props.getProperty(fullPropName);
-
-			if (value != null) {
-				value = parseRunSetting(value.trim());
+		if (value != null) {
+			value.used = true;
+			if (out != null) {
+				outputSetting(fullPropName + " = " + value.value);
 			}
 		}
+		return value;
+	}
 
-		if (value == null || value.length() == 0) {
+	/**
+	 * Returns the compiled value of a setting
+	 * @param name Name of the setting
+	 * @return The value
+	 * @throws SettingsError if the setting was not found
+	 * @see #find(String)
+	 */
+	private Value getValue(String name) {
+		Value value = find(name);
+		if (value == null) {
 			throw new SettingsError("Can't find setting " +
 					getPropertyNamesString(name));
 		}
-
-		outputSetting(fullPropName + " = " + value);
 		return value;
 	}
 
+	/**
+	 * Stores the full name of a setting that was requested but not found
+	 */
+	private static void missing(String fullPropName) {
+		synchronized (missingSettings) {
+			missingSettings.add(fullPropName);
+		}
+	}
+
 	/**
 	 * Returns the given setting if it exists, or defaultValue if the setting
 	 * does not exist
@@ -428,11 +676,8 @@ public class Settings {
 	 * exist
 	 */
 	public String getSetting(String name, String defaultValue) {
-		if (!contains(name)) {
-			return defaultValue;
-		} else {
-			return getSetting(name);
-		}
+		Value value = find(name);
+		return value == null ? defaultValue : value.value;
 	}
 
 	/**
@@ -486,7 +731,7 @@ public class Settings {
 	 * @return Value of the setting as a double
 	 */
 	public double getDouble(String name) {
-		return parseDouble(getSetting(name), name);
+		return getValue(name).getDouble(name);
 	}
 
 	/**
@@ -497,7 +742,8 @@ public class Settings {
 	 * @return Value of the setting as a double (or the default value)
 	 */
 	public double getDouble(String name, double defaultValue) {
-		return parseDouble(getSetting(name, ""+defaultValue), name);
+		Value value = find(name);
+		return value == null ? defaultValue : value.getDouble(name);
 	}
 
 	/**
@@ -509,7 +755,7 @@ public class Settings {
 	 * @throws SettingsError if the value wasn't a numeric value
 	 * (or the suffix wasn't recognized)
 	 */
-	private double parseDouble(String value, String setting) {
+	private static double parseDouble(String value, String setting) {
 		double number;
 		int multiplier = getMultiplier(value);
 
@@ -536,7 +782,7 @@ public class Settings {
 	 * @throws SettingsError if the value wasn't a numeric value
 	 * (or the suffix wasn't recognized)
 	 */
-	private long parseLong(String value, String setting) {
+	private static long parseLong(String value, String setting) {
 		long number;
 		int multiplier = getMultiplier(value);
 
@@ -558,7 +804,7 @@ public class Settings {
 	 * @param value The setting value
 	 * @return The muliplier as a number
 	 */
-	private int getMultiplier(String value) {
+	private static int getMultiplier(String value) {
 		value = value.trim();
 		
 		if (value.endsWith("k")) {
@@ -595,8 +841,16 @@ public class Settings {
 	 * @throws SettingsError if something went wrong with reading
 	 */
 	public String[] getCsvSetting(String name) {
+		return getValue(name).getCsv().clone();
+	}
+
+	/**
+	 * Splits a comma separated value to trimmed values
+	 * @param csv The value to split
+	 * @return The values
+	 */
+	private static String[] parseCsv(String csv) {
 		ArrayList<String> values = new ArrayList<String>();
-		String csv = getSetting(name);
 		Scanner s = new Scanner(csv);
 		s.useDelimiter(",");
 
@@ -619,14 +873,21 @@ public class Settings {
 	 */
 	public String[] getCsvSetting(String name, int expectedCount) {
 		String[] values = getCsvSetting(name);
+		checkCount(values.length, name, expectedCount);
+		return values;
+	}
 
-		if (values.length != expectedCount) {
-			throw new SettingsError("Read unexpected amount (" + values.length +
+	/**
+	 * Checks that a CSV setting contained the expected amount of values
+	 * @throws SettingsError if the count was not the expected one
+	 */
+	private static void checkCount(int count, String name,
+			int expectedCount) {
+		if (count != expectedCount) {
+			throw new SettingsError("Read unexpected amount (" + count +
 					") of comma separated values for setting '"
 					+ name + "' (expected " + expectedCount + ")");
 		}
-
-		return values;
 	}
 
 	/**
@@ -638,7 +899,9 @@ public class Settings {
 	 * @see #getCsvSetting(String, int)
 	 */
 	public double[] getCsvDoubles(String name, int expectedCount) {
-		return parseDoubles(getCsvSetting(name, expectedCount),name);
+		double[] values = getValue(name).getDoubles(name);
+		checkCount(values.length, name, expectedCount);
+		return values.clone();
 	}
 
 	/**
@@ -648,7 +911,7 @@ public class Settings {
 	 * @see #getCsvSetting(String)
 	 */
 	public double[] getCsvDoubles(String name) {
-		return parseDoubles(getCsvSetting(name), name);
+		return getValue(name).getDoubles(name).clone();
 	}
 
 	/**
@@ -657,7 +920,7 @@ public class Settings {
 	 * @param name Name of the setting
 	 * @return Array of double values parsed from the string values
 	 */
-	private double[] parseDoubles(String[] strings, String name) {
+	private static double[] parseDoubles(String[] strings, String name) {
 		double[] values = new double[strings.length];
 		for (int i=0; i<values.length; i++) {
 			values[i] = parseDouble(strings[i], name);
@@ -972,4 +1235,64 @@ public class Settings {
 		return props.toString();
 	}
 
+	/**
+	 * Compiled value of a setting. The parsed forms of the value are
+	 * created when they are first requested.
+	 */
+	private static class Value {
+		/** the value of the current run */
+		private final String value;
+		/** is the value only in the default settings file */
+		private final boolean fromDefaults;
+		/** has the setting been read */
+		private volatile boolean used;
+		private volatile Double number;
+		private volatile String[] csv;
+		private volatile double[] numbers;
+
+		public Value(String value, boolean fromDefaults) {
+			this.value = value;
+			this.fromDefaults = fromDefaults;
+		}
+
+		/**
+		 * Returns the value as a double
+		 * @param name Name of the setting (for error messages)
+		 */
+		public double getDouble(String name) {
+			Double d = number;
+			if (d == null) {
+				d = parseDouble(value, name);
+				number = d;
+			}
+			return d;
+		}
+
+		/**
+		 * Returns the comma separated values. The array must not be
+		 * modified.
+		 */
+		public String[] getCsv() {
+			String[] values = csv;
+			if (values == null) {
+				values = parseCsv(value);
+				csv = values;
+			}
+			return values;
+		}
+
+		/**
+		 * Returns the comma separated values as doubles. The array must not
+		 * be modified.
+		 * @param name Name of the setting (for error messages)
+		 */
+		public double[] getDoubles(String name) {
+			double[] values = numbers;
+			if (values == null) {
+				values = parseDoubles(getCsv(), name);
+				numbers = values;
+			}
+			return values;
+		}
+	}
 }
@@ -4,6 +4,9 @@
  */
 package core;
 
+import input.ContactTrace;
+import input.ContactTraceQueue;
+import input.ContactTraceRecorder;
 import input.EventQueue;
 import input.EventQueueHandler;
 
@@ -13,6 +16,9 @@ import java.util.List;
 
 import movement.MapBasedMovement;
 import movement.MovementModel;
+import movement.MovementTrace;
+import movement.MovementTraceRecorder;
+import movement.RecordedMovement;
 import movement.map.SimMap;
 import routing.MessageRouter;
 
@@ -100,8 +106,16 @@ public class SimScenario implements Serializable {
 	private double endTime;
 	/** Update interval of sim time */
 	private double updateInterval;
-	/** External events queue */
+	/** External events queue (null if a contact trace is replayed) */
 	private EventQueueHandler eqHandler;
+	/** The event queues of the world */
+	private List<EventQueue> eventQueues;
+	/** Contact trace recorder (null if contacts are not recorded) */
+	private ContactTraceRecorder contactRecorder;
+	/** Movement trace recorder (null if movement is not recorded) */
+	private MovementTraceRecorder movementRecorder;
+	/** Replayed movement trace (null if movement is not replayed) */
+	private RecordedMovement.Trace movementTrace;
 	/** Should connections between hosts be simulated */
 	private boolean simulateConnections;
 	/** Map used for host movement (if any) */
@@ -151,7 +165,36 @@ public class SimScenario implements Serializable {
 		this.movementListeners = new ArrayList<MovementListener>();
 		this.updateListeners = new ArrayList<UpdateListener>();
 		this.appListeners = new ArrayList<ApplicationListener>();
-		this.eqHandler = new EventQueueHandler();
+
+		ContactTrace contactTrace = new ContactTrace();
+		if (contactTrace.isReplaying()) {
+			/* connections and external events come from the trace */
+			this.simulateConnections = false;
+			this.eventQueues = new ArrayList<EventQueue>();
+			this.eventQueues.add(new ContactTraceQueue(
+					contactTrace.getTraceFile()));
+		} else {
+			this.eqHandler = new EventQueueHandler();
+			this.eventQueues = eqHandler.getEventQueues();
+			if (contactTrace.isRecording()) {
+				this.contactRecorder = new ContactTraceRecorder(
+						contactTrace.getTraceFile());
+				this.connectionListeners.add(contactRecorder);
+				this.eventQueues = contactRecorder.wrap(eventQueues);
+			}
+		}
+
+		/* movement traces are not used if the hosts are not moved */
+		MovementTrace mt = new MovementTrace();
+		if (contactTrace.moveHosts()) {
+			if (mt.isReplaying()) {
+				this.movementTrace = new RecordedMovement.Trace(
+						mt.getTraceFile());
+			} else if (mt.isRecording()) {
+				this.movementRecorder = new MovementTraceRecorder(
+						mt.getTraceFile());
+			}
+		}
 
 		/* TODO: check size from movement models */
 		s.setNameSpace(MovementModel.MOVEMENT_MODEL_NS);
@@ -162,8 +205,8 @@ public class SimScenario implements Serializable {
 		createHosts();
 
 		this.world = new World(hosts, worldSizeX, worldSizeY, updateInterval,
-				updateListeners, simulateConnections,
-				eqHandler.getEventQueues());
+				updateListeners, simulateConnections, eventQueues);
+		this.world.setMoveHosts(contactTrace.moveHosts());
 	}
 
 	/**
@@ -240,7 +283,25 @@ public class SimScenario implements Serializable {
 	 * @return External event queues in a list or null
 	 */
 	public List<EventQueue> getExternalEvents() {
-		return this.eqHandler.getEventQueues();
+		return this.eventQueues;
+	}
+
+	/**
+	 * Finishes the scenario after the simulation has ended. Stores the
+	 * recorded contact and movement traces (if any) if the simulation was
+	 * completed.
+	 * @param completed True if the simulation ran until its end time
+	 */
+	public void done(boolean completed) {
+		if (this.contactRecorder != null) {
+			this.contactRecorder.done(completed);
+		}
+		if (this.movementRecorder != null) {
+			this.movementRecorder.done(completed);
+		}
+		if (this.movementTrace != null) {
+			this.movementTrace.close();
+		}
 	}
 
 	/**
@@ -388,6 +449,11 @@ public class SimScenario implements Serializable {
 			if (mmProto instanceof MapBasedMovement) {
 				this.simMap = ((MapBasedMovement)mmProto).getMap();
 			}
+			if (movementTrace != null) {
+				mmProto = new RecordedMovement(mmProto, movementTrace);
+			} else if (movementRecorder != null) {
+				mmProto = movementRecorder.wrap(mmProto);
+			}
 
 			// creates hosts of ith group
 			for (int j=0; j<nrofHosts; j++) {
@@ -48,12 +48,9 @@ public class VBRConnection extends Connection {
 			this.getOtherNode(this.msgFromNode) + ". Can't "+
 			"start transfer of " + m + " from " + from;
 
-		this.msgFromNode = from;
-		Message newMessage = m.replicate();
-		int retVal = getOtherNode(from).receiveMessage(newMessage, from);
+		int retVal = offerMessage(from, m);
 
 		if (retVal == MessageRouter.RCV_OK) {
-			this.msgOnFly = newMessage;
 			this.msgsize = m.getSize();
 			this.msgsent = 0;
 		}
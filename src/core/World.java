@@ -13,6 +13,8 @@ import java.util.Collections;
 import java.util.List;
 import java.util.Random;
 
+import routing.PlannedRoutingEngine;
+
 /**
  * World contains all the nodes and is responsible for updating their
  * location and connections.
@@ -37,6 +39,33 @@ public class World {
 	 */
 	public static final String SIMULATE_CON_ONCE_S = "simulateConnectionsOnce";
 
+	/**
+	 * Should the routers be updated only when something has happened to
+	 * them -setting id ({@value}). Boolean (true/false) variable. If true,
+	 * routers of hosts that have no connections, transfers, applications,
+	 * or due TTL checks are left dormant until they are woken up by a
+	 * connection change or a new, received, or aborted message. Default is
+	 * false (all routers are updated on every update round).
+	 */
+	public static final String ROUTER_DORMANCY_S = "routerDormancy";
+
+	/**
+	 * Should the routing decisions be made with the two-phase planned
+	 * routing engine -setting id ({@value}). Boolean (true/false) variable.
+	 * If true, the routers that support planned routing plan their
+	 * transfers in parallel (per connected component) after all the hosts
+	 * have been updated and then start the transfers in the update order
+	 * (see {@link PlannedRoutingEngine}). Default is false.
+	 */
+	public static final String PLANNED_ROUTING_S = "plannedRouting";
+
+	/**
+	 * Number of threads the planned routing engine uses -setting id
+	 * ({@value}). Integer valued. Default is the number of available
+	 * processors.
+	 */
+	public static final String ROUTING_THREADS_S = "routingThreads";
+
 	private int sizeX;
 	private int sizeY;
 	private List<EventQueue> eventQueues;
@@ -56,6 +85,12 @@ public class World {
 	/** Queue of scheduled update requests */
 	private ScheduledUpdatesQueue scheduledUpdates;
 	private boolean simulateConOnce;
+	/** are dormant routers left without updates */
+	private boolean routerDormancy;
+	/** the planned routing engine (null if not used) */
+	private PlannedRoutingEngine routingEngine;
+	/** are the hosts moved */
+	private boolean moveHosts;
 
 	/**
 	 * Constructor.
@@ -74,6 +109,7 @@ public class World {
 		this.simClock = SimClock.getInstance();
 		this.scheduledUpdates = new ScheduledUpdatesQueue();
 		this.isCancelled = false;
+		this.moveHosts = true;
 
 		setNextEventQueue();
 		initSettings();
@@ -90,6 +126,13 @@ public class World {
 			randomizeUpdates = s.getBoolean(RANDOMIZE_UPDATES_S);
 		}
 		simulateConOnce = s.getBoolean(SIMULATE_CON_ONCE_S, false);
+		routerDormancy = s.getBoolean(ROUTER_DORMANCY_S, false);
+
+		if (s.getBoolean(PLANNED_ROUTING_S, false)) {
+			this.routingEngine = new PlannedRoutingEngine(this.hosts,
+					s.getInt(ROUTING_THREADS_S,
+							Runtime.getRuntime().availableProcessors()));
+		}
 
 		if(randomizeUpdates) {
 			// creates the update order array that can be shuffled
@@ -100,6 +143,16 @@ public class World {
 		}
 	}
 
+	/**
+	 * Sets whether the hosts are moved. If not, the hosts stay in their
+	 * initial locations (e.g., when the connections are replayed from a
+	 * contact trace and the movement isn't needed).
+	 * @param moveHosts True if the hosts should be moved (the default)
+	 */
+	public void setMoveHosts(boolean moveHosts) {
+		this.moveHosts = moveHosts;
+	}
+
 	/**
 	 * Moves hosts in the world for the time given time initialize host
 	 * positions properly. SimClock must be set to <CODE>-time</CODE> before
@@ -183,7 +236,7 @@ public class World {
 				if (this.isCancelled) {
 					break;
 				}
-				hosts.get(i).update(simulateConnections);
+				hosts.get(i).update(simulateConnections, routerDormancy);
 			}
 		}
 		else { // update order randomizing is on
@@ -195,10 +248,15 @@ public class World {
 				if (this.isCancelled) {
 					break;
 				}
-				this.updateOrder.get(i).update(simulateConnections);
+				this.updateOrder.get(i).update(simulateConnections, routerDormancy);
 			}
 		}
 
+		if (this.routingEngine != null && !this.isCancelled) {
+			this.routingEngine.update(this.updateOrder == null ?
+					this.hosts : this.updateOrder);
+		}
+
 		if (simulateConOnce && simulateConnections) {
 			simulateConnections = false;
 		}
@@ -209,6 +267,9 @@ public class World {
 	 * @param timeIncrement The time how long all nodes should move
 	 */
 	private void moveHosts(double timeIncrement) {
+		if (!this.moveHosts) {
+			return;
+		}
 		for (int i=0,n = hosts.size(); i<n; i++) {
 			DTNHost host = hosts.get(i);
 			host.move(timeIncrement);
@@ -0,0 +1,246 @@
+/*
+ * Copyright 2010 Aalto University, ComNet
+ * Released under GPLv3. See LICENSE.txt for details.
+ */
+package input;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.Charset;
+import java.util.Arrays;
+
+/**
+ * Line and token scanner for ASCII text files. The file is read to a buffer
+ * and the lines (terminated by "\n", "\r" or "\r\n") and their whitespace
+ * separated tokens are given as ranges of the buffer, so the lines can be
+ * parsed straight from the bytes (e.g., with {@link AsciiNumbers}) without
+ * creating objects per line. A scanner without an input stream can be used
+ * for tokenizing lines that are read by other means (see
+ * {@link #setLine(byte[], int, int)}).
+ */
+final class AsciiLineScanner {
+	/** initial size of the read buffer (grown if a line doesn't fit in it) */
+	private static final int BUFFER_SIZE = 1 << 16;
+
+	private InputStream in;
+
+	/* the read buffer; bytes [pos, limit) haven't been consumed */
+	private byte[] buf;
+	private int pos;
+	private int limit;
+	private boolean eof;
+	/** file offset of the first byte of the buffer */
+	private long base;
+	/** the previous line ended with '\r' (a following '\n' is skipped) */
+	private boolean skipLf;
+
+	/* the current line and the current token of it */
+	private int lineStart;
+	private int lineEnd;
+	private int lineNr;
+	/** the current line has only ASCII characters */
+	private boolean lineIsAscii;
+	private int tokStart;
+	private int tokEnd;
+
+	/**
+	 * Creates a scanner that reads the lines from a stream
+	 * @param in The stream to read
+	 */
+	AsciiLineScanner(InputStream in) {
+		this.in = in;
+		this.buf = new byte[BUFFER_SIZE];
+	}
+
+	/**
+	 * Creates a scanner for tokenizing lines given with
+	 * {@link #setLine(byte[], int, int)}
+	 */
+	AsciiLineScanner() {
+		this.buf = new byte[0];
+	}
+
+	/**
+	 * Moves to the next line of the stream. The previous line and the
+	 * buffer returned by {@link #getBuffer()} are not valid after this.
+	 * @return true if there was a line, false if the stream ended
+	 * @throws IOException if reading the stream fails
+	 */
+	boolean nextLine() throws IOException {
+		if (skipLf) {
+			if (pos == limit) {
+				fill();
+			}
+			if (pos < limit && buf[pos] == '\n') {
+				pos++;
+			}
+			skipLf = false;
+		}
+
+		int i = pos;
+		boolean ascii = true;
+		while (true) {
+			for (; i<limit; i++) {
+				byte b = buf[i];
+				if (b == '\n' || b == '\r') {
+					startLine(pos, i, ascii);
+					pos = i + 1;
+					skipLf = (b == '\r');
+					return true;
+				}
+				if (b < 0) {
+					ascii = false;
+				}
+			}
+
+			if (eof) {
+				if (pos == limit) {
+					return false;
+				}
+				/* last line without a line terminator */
+				startLine(pos, limit, ascii);
+				pos = limit;
+				return true;
+			}
+
+			int scanned = i - pos;
+			fill();
+			i = pos + scanned;
+		}
+	}
+
+	/**
+	 * Sets the line to tokenize
+	 * @param bytes The bytes of the line
+	 * @param start Index of the first byte of the line
+	 * @param end Index of the byte after the line
+	 */
+	void setLine(byte[] bytes, int start, int end) {
+		this.buf = bytes;
+		startLine(start, end, true);
+	}
+
+	private void startLine(int start, int end, boolean ascii) {
+		lineStart = start;
+		lineEnd = end;
+		lineIsAscii = ascii;
+		lineNr++;
+		tokStart = tokEnd = start;
+	}
+
+	/**
+	 * Reads more bytes to the buffer, moving the unconsumed bytes to the
+	 * beginning of the buffer and growing it if it is full
+	 */
+	private void fill() throws IOException {
+		if (pos > 0) {
+			System.arraycopy(buf, pos, buf, 0, limit - pos);
+			base += pos;
+			limit -= pos;
+			pos = 0;
+		}
+		if (limit == buf.length) {
+			buf = Arrays.copyOf(buf, buf.length * 2);
+		}
+		int n = in.read(buf, limit, buf.length - limit);
+		if (n < 0) {
+			eof = true;
+		} else {
+			limit += n;
+		}
+	}
+
+	/**
+	 * Moves to the next whitespace separated token of the line
+	 * @return true if there was a token, false if the line ended
+	 */
+	boolean nextToken() {
+		int i = tokEnd;
+		while (i < lineEnd && isWhitespace(buf[i])) {
+			i++;
+		}
+		tokStart = i;
+		while (i < lineEnd && !isWhitespace(buf[i])) {
+			i++;
+		}
+		tokEnd = i;
+		return tokEnd > tokStart;
+	}
+
+	/**
+	 * Moves back to the beginning of the current line so that the next
+	 * call to {@link #nextToken()} returns the first token of the line
+	 */
+	void rewind() {
+		tokStart = tokEnd = lineStart;
+	}
+
+	/**
+	 * Returns true if the byte is a whitespace character (the same ones as
+	 * with {@link Character#isWhitespace(char)} in the ASCII range)
+	 * @param b The byte
+	 * @return true for whitespace
+	 */
+	static boolean isWhitespace(byte b) {
+		return b == ' ' || b == '\t' || (b >= 0x0a && b <= 0x0d) ||
+			(b >= 0x1c && b <= 0x1f);
+	}
+
+	/**
+	 * Returns the buffer where the current line and tokens are
+	 * @return the buffer
+	 */
+	byte[] getBuffer() {
+		return buf;
+	}
+
+	int getLineStart() {
+		return lineStart;
+	}
+
+	int getLineEnd() {
+		return lineEnd;
+	}
+
+	/**
+	 * Returns the number of the current line (the first line is 1)
+	 * @return the line number
+	 */
+	int getLineNr() {
+		return lineNr;
+	}
+
+	/**
+	 * Returns true if the current line has only ASCII characters
+	 * @return true for an ASCII line
+	 */
+	boolean isLineAscii() {
+		return lineIsAscii;
+	}
+
+	/**
+	 * Returns the offset of the current line from the beginning of the
+	 * stream
+	 * @return the offset in bytes
+	 */
+	long getLineOffset() {
+		return base + lineStart;
+	}
+
+	int getTokenStart() {
+		return tokStart;
+	}
+
+	int getTokenEnd() {
+		return tokEnd;
+	}
+
+	/**
+	 * Returns the current line as a string
+	 * @param charset Charset of the bytes
+	 * @return the line
+	 */
+	String lineString(Charset charset) {
+		return new String(buf, lineStart, lineEnd - lineStart, charset);
+	}
+}
@@ -0,0 +1,99 @@
+/*
+ * Copyright 2010 Aalto University, ComNet
+ * Released under GPLv3. See LICENSE.txt for details.
+ */
+package input;
+
+/**
+ * Parsing of numbers straight from the bytes of ASCII text files.
+ */
+final class AsciiNumbers {
+	/** exact powers of ten for the fast number parsing */
+	private static final double[] POW10 = new double[23];
+	static {
+		POW10[0] = 1;
+		for (int i=1; i<POW10.length; i++) {
+			POW10[i] = POW10[i-1] * 10;
+		}
+	}
+
+	private AsciiNumbers() {}
+
+	/**
+	 * Parses a decimal number from bytes. Plain numbers
+	 * (<code>[sign]digits[.digits]</code>) are parsed directly and the
+	 * result is exactly the same as with {@link Double#parseDouble(String)},
+	 * which is used for all other forms.
+	 * @param buf The buffer of bytes
+	 * @param start Index of the first byte of the number
+	 * @param end Index of the byte after the number
+	 * @return The parsed number
+	 * @throws NumberFormatException if the bytes are not a valid number
+	 */
+	static double parseDouble(byte[] buf, int start, int end) {
+		int i = start;
+		boolean negative = false;
+		if (i < end && (buf[i] == '-' || buf[i] == '+')) {
+			negative = (buf[i] == '-');
+			i++;
+		}
+		long mantissa = 0;
+		int digits = 0;
+		int fracDigits = -1;
+		int nrofBytes = end - i;
+		for (; i<end; i++) {
+			byte b = buf[i];
+			if (b >= '0' && b <= '9') {
+				mantissa = mantissa * 10 + (b - '0');
+				if (mantissa != 0) {
+					digits++;
+				}
+				if (fracDigits >= 0) {
+					fracDigits++;
+				}
+			} else if (b == '.' && fracDigits < 0) {
+				fracDigits = 0;
+			} else {
+				/* exponent, NaN etc.: let the library parse it */
+				return Double.parseDouble(new String(buf, start, end - start));
+			}
+		}
+		if (nrofBytes == (fracDigits >= 0 ? 1 : 0)) {
+			throw new NumberFormatException("Invalid number '" +
+					new String(buf, start, end - start) + "'");
+		}
+		if (fracDigits < 0) {
+			fracDigits = 0;
+		}
+		if (digits > 15 || fracDigits >= POW10.length) {
+			/* can't be sure of the rounding, let the library do it */
+			return Double.parseDouble(new String(buf, start, end - start));
+		}
+		/* both exactly representable -> one correctly rounded division */
+		double value = mantissa / POW10[fracDigits];
+		return negative ? -value : value;
+	}
+
+	/**
+	 * Parses a non-negative decimal integer from bytes
+	 * @param buf The buffer of bytes
+	 * @param start Index of the first byte of the number
+	 * @param end Index of the byte after the number
+	 * @return The parsed number
+	 * @throws NumberFormatException if the bytes are not a valid integer
+	 */
+	static int parseInt(byte[] buf, int start, int end) {
+		if (start == end || end - start > 9) {
+			return Integer.parseInt(new String(buf, start, end - start));
+		}
+		int value = 0;
+		for (int i=start; i<end; i++) {
+			byte b = buf[i];
+			if (b < '0' || b > '9') {
+				return Integer.parseInt(new String(buf, start, end - start));
+			}
+			value = value * 10 + (b - '0');
+		}
+		return value;
+	}
+}
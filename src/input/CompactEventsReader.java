@@ -0,0 +1,251 @@
+/*
+ * Copyright 2010 Aalto University, ComNet
+ * Released under GPLv3. See LICENSE.txt for details.
+ */
+package input;
+
+import java.io.DataInputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.List;
+
+import core.SimError;
+
+/**
+ * <P>Reads external events from a compact binary file (see
+ * {@link CompactEventsWriter} for creating one). The file is memory mapped
+ * and the events are created directly from the mapped bytes; the message
+ * ID strings are read once when the file is opened.</P>
+ * <P>Format (version {@value #VERSION}, big-endian):</P>
+ * <UL>
+ * <LI>Header ({@value #HEADER_SIZE} bytes): magic number
+ * ({@link #MAGIC}, int), format version (int), number of events (long),
+ * offset of the string table (long), number of strings (int), size of an
+ * event record (int).</LI>
+ * <LI>Event records ({@value #RECORD_SIZE} bytes each, in time order):
+ * time (double), host address (int), second host address (int), string
+ * index (int; the message ID, or the interface ID of a connection event,
+ * or -1 for none), message size (int), response size (int), event type
+ * (byte), and 3 reserved bytes.</LI>
+ * <LI>String table: for each string the length of its UTF-8 encoding (int)
+ * followed by the encoded bytes.</LI>
+ * </UL>
+ */
+public class CompactEventsReader implements ExternalEventsReader {
+	/** Extension of compact external events files */
+	public static final String COMPACT_EXT = ".eeb";
+	/** Magic number in the beginning of the files ("ONEE") */
+	public static final int MAGIC = 0x4F4E4545;
+	/** Version of the format */
+	public static final int VERSION = 1;
+	/** Size of the header in bytes */
+	public static final int HEADER_SIZE = 32;
+	/** Size of an event record in bytes */
+	public static final int RECORD_SIZE = 32;
+
+	/* event types of the records */
+	static final byte TYPE_CREATE = 1;
+	static final byte TYPE_SEND = 2;
+	static final byte TYPE_DELIVERED = 3;
+	static final byte TYPE_ABORT = 4;
+	static final byte TYPE_DROP = 5;
+	static final byte TYPE_REMOVE = 6;
+	static final byte TYPE_CONN_UP = 7;
+	static final byte TYPE_CONN_DOWN = 8;
+
+	static final Charset UTF8 = Charset.forName("UTF-8");
+
+	/** maximum number of records mapped at once */
+	private static final int WINDOW_RECORDS = 1 << 24;
+
+	private File file;
+	private RandomAccessFile raf;
+	private FileChannel channel;
+	/** the mapped records */
+	private MappedByteBuffer records;
+	/** index of the first mapped record */
+	private long windowStart;
+	/** index of the next record to read */
+	private long next;
+	private long nrofEvents;
+	/** the string table */
+	private String[] strings;
+
+	/**
+	 * Opens a compact events file for reading
+	 * @param eventsFile The file to read the events from
+	 * @throws SimError if the file can't be read or isn't a compact events
+	 * file of a supported version
+	 */
+	public CompactEventsReader(File eventsFile) {
+		this.file = eventsFile;
+		try {
+			this.raf = new RandomAccessFile(eventsFile, "r");
+			this.channel = raf.getChannel();
+			ByteBuffer header = channel.map(FileChannel.MapMode.READ_ONLY,
+					0, HEADER_SIZE);
+			if (header.getInt() != MAGIC) {
+				throw new SimError(eventsFile + " is not a compact events file");
+			}
+			int version = header.getInt();
+			if (version != VERSION) {
+				throw new SimError("Unsupported version " + version + " of " +
+						"compact events file " + eventsFile + " (supported: " +
+						VERSION + ")");
+			}
+			this.nrofEvents = header.getLong();
+			long stringTable = header.getLong();
+			int nrofStrings = header.getInt();
+			if (header.getInt() != RECORD_SIZE) {
+				throw new SimError("Invalid record size in " + eventsFile);
+			}
+
+			readStrings(stringTable, nrofStrings);
+			mapWindow(0);
+		} catch (IOException e) {
+			close();
+			throw new SimError("Can't read compact events file " +
+					eventsFile + ": " + e.getMessage(), e);
+		}
+	}
+
+	/**
+	 * Checks if the given file is a compact external events file (i.e.,
+	 * starts with the magic number)
+	 * @param file The file to check
+	 * @return True if the file is a compact events file, false if not
+	 */
+	public static boolean isCompactEeFile(File file) {
+		if (!file.isFile() || file.length() < HEADER_SIZE) {
+			return false;
+		}
+		DataInputStream in = null;
+		try {
+			in = new DataInputStream(new FileInputStream(file));
+			return in.readInt() == MAGIC;
+		} catch (IOException e) {
+			return false;
+		} finally {
+			if (in != null) {
+				try {
+					in.close();
+				} catch (IOException e) {}
+			}
+		}
+	}
+
+	/**
+	 * Reads the string table
+	 */
+	private void readStrings(long offset, int nrof) throws IOException {
+		this.strings = new String[nrof];
+		if (nrof == 0) {
+			return;
+		}
+		ByteBuffer table = channel.map(FileChannel.MapMode.READ_ONLY,
+				offset, channel.size() - offset);
+		byte[] bytes = new byte[64];
+		for (int i=0; i<nrof; i++) {
+			int len = table.getInt();
+			if (len > bytes.length) {
+				bytes = new byte[Math.max(len, bytes.length * 2)];
+			}
+			table.get(bytes, 0, len);
+			strings[i] = new String(bytes, 0, len, UTF8);
+		}
+	}
+
+	/**
+	 * Maps the records starting from the given record
+	 */
+	private void mapWindow(long first) throws IOException {
+		long nrof = Math.min(WINDOW_RECORDS, nrofEvents - first);
+		this.records = channel.map(FileChannel.MapMode.READ_ONLY,
+				HEADER_SIZE + first * RECORD_SIZE, nrof * RECORD_SIZE);
+		this.windowStart = first;
+	}
+
+	/**
+	 * Returns the number of events in the file
+	 * @return the number of events in the file
+	 */
+	public long getNrofEvents() {
+		return this.nrofEvents;
+	}
+
+	public List<ExternalEvent> readEvents(int nrof) {
+		int n = (int)Math.min(nrof, nrofEvents - next);
+		List<ExternalEvent> events = new ArrayList<ExternalEvent>(
+				Math.max(n, 0));
+		for (int i=0; i<n; i++) {
+			events.add(readEvent());
+		}
+		return events;
+	}
+
+	/**
+	 * Creates the event of the next record
+	 */
+	private ExternalEvent readEvent() {
+		if (next - windowStart >= WINDOW_RECORDS) {
+			try {
+				mapWindow(next);
+			} catch (IOException e) {
+				throw new SimError("Can't read compact events file " + file +
+						": " + e.getMessage(), e);
+			}
+		}
+
+		MappedByteBuffer r = this.records;
+		int base = (int)(next - windowStart) * RECORD_SIZE;
+		double time = r.getDouble(base);
+		int host = r.getInt(base + 8);
+		int host2 = r.getInt(base + 12);
+		int str = r.getInt(base + 16);
+		String id = (str >= 0 ? strings[str] : null);
+		byte type = r.get(base + 28);
+		next++;
+
+		switch (type) {
+		case TYPE_CREATE:
+			return new MessageCreateEvent(host, host2, id,
+					r.getInt(base + 20), r.getInt(base + 24), time);
+		case TYPE_SEND:
+			return new MessageRelayEvent(host, host2, id, time,
+					MessageRelayEvent.SENDING);
+		case TYPE_DELIVERED:
+			return new MessageRelayEvent(host, host2, id, time,
+					MessageRelayEvent.TRANSFERRED);
+		case TYPE_ABORT:
+			return new MessageRelayEvent(host, host2, id, time,
+					MessageRelayEvent.ABORTED);
+		case TYPE_DROP:
+			return new MessageDeleteEvent(host, id, time, true);
+		case TYPE_REMOVE:
+			return new MessageDeleteEvent(host, id, time, false);
+		case TYPE_CONN_UP:
+			return new ConnectionEvent(host, host2, id, true, time);
+		case TYPE_CONN_DOWN:
+			return new ConnectionEvent(host, host2, id, false, time);
+		default:
+			throw new SimError("Invalid event type " + type + " in record " +
+					(next - 1) + " of " + file);
+		}
+	}
+
+	public void close() {
+		this.records = null;
+		try {
+			if (this.raf != null) {
+				this.raf.close();
+			}
+		} catch (IOException e) {}
+	}
+}
@@ -0,0 +1,221 @@
+/*
+ * Copyright 2010 Aalto University, ComNet
+ * Released under GPLv3. See LICENSE.txt for details.
+ */
+package input;
+
+import static input.CompactEventsReader.*;
+
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import core.SimError;
+
+/**
+ * Writes external events to a compact binary file that can be read with
+ * {@link CompactEventsReader}. The events are written as they come, so
+ * event traces of any length can be converted without keeping them in
+ * memory; only the distinct message IDs are kept.
+ * Can also be run from the command line to convert a standard external
+ * events file:<BR>
+ * <TT>java input.CompactEventsWriter &lt;events file&gt;
+ * [&lt;output file&gt;]</TT>
+ */
+public class CompactEventsWriter {
+	private File file;
+	private DataOutputStream out;
+	private long nrofEvents;
+	/** indexes of the strings in the string table */
+	private Map<String, Integer> stringIndexes;
+	/** the string table */
+	private List<String> strings;
+
+	/**
+	 * Creates a new writer
+	 * @param file The file to write the events to
+	 * @throws IOException if the file can't be created
+	 */
+	public CompactEventsWriter(File file) throws IOException {
+		this.file = file;
+		this.out = new DataOutputStream(new BufferedOutputStream(
+				new FileOutputStream(file), 1 << 16));
+		this.stringIndexes = new HashMap<String, Integer>();
+		this.strings = new ArrayList<String>();
+		out.write(new byte[HEADER_SIZE]); /* written when closing */
+	}
+
+	/**
+	 * Writes an event. The events should be written in time order.
+	 * @param ee The event to write
+	 * @throws IOException if writing fails
+	 * @throws SimError if the type of the event isn't supported
+	 */
+	public void write(ExternalEvent ee) throws IOException {
+		int host = -1;
+		int host2 = -1;
+		String str = null;
+		int size = 0;
+		int respSize = 0;
+		byte type;
+
+		if (ee instanceof ConnectionEvent) {
+			ConnectionEvent ce = (ConnectionEvent)ee;
+			host = ce.fromAddr;
+			host2 = ce.toAddr;
+			str = ce.interfaceId;
+			type = ce.isUp ? TYPE_CONN_UP : TYPE_CONN_DOWN;
+		} else if (ee instanceof MessageEvent) {
+			MessageEvent me = (MessageEvent)ee;
+			host = me.fromAddr;
+			host2 = me.toAddr;
+			str = me.id;
+			if (ee instanceof MessageCreateEvent) {
+				type = TYPE_CREATE;
+				size = ((MessageCreateEvent)ee).size;
+				respSize = ((MessageCreateEvent)ee).responseSize;
+			} else if (ee instanceof MessageDeleteEvent) {
+				type = ((MessageDeleteEvent)ee).drop ? TYPE_DROP : TYPE_REMOVE;
+			} else if (ee instanceof MessageRelayEvent) {
+				switch (((MessageRelayEvent)ee).stage) {
+				case MessageRelayEvent.SENDING:
+					type = TYPE_SEND;
+					break;
+				case MessageRelayEvent.TRANSFERRED:
+					type = TYPE_DELIVERED;
+					break;
+				default:
+					type = TYPE_ABORT;
+				}
+			} else {
+				throw new SimError("Can't store event " + ee);
+			}
+		} else {
+			throw new SimError("Can't store event " + ee);
+		}
+
+		out.writeDouble(ee.getTime());
+		out.writeInt(host);
+		out.writeInt(host2);
+		out.writeInt(getStringIndex(str));
+		out.writeInt(size);
+		out.writeInt(respSize);
+		out.writeByte(type);
+		out.writeByte(0);
+		out.writeShort(0);
+		nrofEvents++;
+	}
+
+	/**
+	 * Returns the index of a string in the string table, adding the string
+	 * to the table if needed
+	 */
+	private int getStringIndex(String s) {
+		if (s == null) {
+			return -1;
+		}
+		Integer index = stringIndexes.get(s);
+		if (index == null) {
+			index = strings.size();
+			strings.add(s);
+			stringIndexes.put(s, index);
+		}
+		return index;
+	}
+
+	/**
+	 * Writes the string table and the header and closes the file
+	 * @throws IOException if writing fails
+	 */
+	public void close() throws IOException {
+		long stringTable = HEADER_SIZE + nrofEvents * RECORD_SIZE;
+		for (String s : strings) {
+			byte[] bytes = s.getBytes(UTF8);
+			out.writeInt(bytes.length);
+			out.write(bytes);
+		}
+		out.close();
+
+		RandomAccessFile raf = new RandomAccessFile(file, "rw");
+		try {
+			raf.writeInt(MAGIC);
+			raf.writeInt(VERSION);
+			raf.writeLong(nrofEvents);
+			raf.writeLong(stringTable);
+			raf.writeInt(strings.size());
+			raf.writeInt(RECORD_SIZE);
+		} finally {
+			raf.close();
+		}
+	}
+
+	/**
+	 * Closes the file without writing the string table and the header and
+	 * deletes the file. Used when the events couldn't be written completely,
+	 * so that no valid looking file with a partial body is left behind.
+	 */
+	public void discard() {
+		try {
+			out.close();
+		} catch (IOException e) {
+			/* the file is deleted anyway */
+		}
+		file.delete();
+	}
+
+	/**
+	 * Converts a standard external events file to a compact events file.
+	 * If the conversion fails, the compact file is deleted.
+	 * @param eventsFile The standard external events file
+	 * @param compactFile The compact file to create
+	 * @return The number of events converted
+	 * @throws IOException if reading or writing fails
+	 */
+	public static long convert(File eventsFile, File compactFile)
+			throws IOException {
+		StandardEventsReader reader = new StandardEventsReader(eventsFile);
+		CompactEventsWriter writer = new CompactEventsWriter(compactFile);
+		boolean done = false;
+		try {
+			List<ExternalEvent> events;
+			while ((events = reader.readEvents(10000)).size() > 0) {
+				for (int i=0, n=events.size(); i<n; i++) {
+					writer.write(events.get(i));
+				}
+			}
+			writer.close();
+			done = true;
+		} finally {
+			reader.close();
+			if (!done) {
+				writer.discard();
+			}
+		}
+		return writer.nrofEvents;
+	}
+
+	/**
+	 * Converts a standard external events file to a compact events file.
+	 * @param args The events file and optionally the output file (default:
+	 * the events file name with {@link CompactEventsReader#COMPACT_EXT})
+	 */
+	public static void main(String[] args) throws IOException {
+		if (args.length < 1 || args.length > 2) {
+			System.err.println("Usage: CompactEventsWriter <events file> " +
+					"[<output file>]");
+			System.exit(1);
+		}
+
+		String outName = args.length > 1 ? args[1] :
+			args[0].replaceFirst("\\.txt$", "") + COMPACT_EXT;
+		long nrof = convert(new File(args[0]), new File(outName));
+		System.out.println("Wrote " + nrof + " events to " + outName);
+	}
+}
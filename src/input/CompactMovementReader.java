@@ -0,0 +1,348 @@
+/*
+ * Copyright 2010 Aalto University, ComNet
+ * Released under GPLv3. See LICENSE.txt for details.
+ */
+package input;
+
+import java.io.DataInputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
+import java.util.Arrays;
+
+import core.SettingsError;
+
+/**
+ * <P>Reads node location traces from a compact binary file (see
+ * {@link CompactMovementWriter} for creating one). The file is memory
+ * mapped and the locations of a step are copied straight from the mapped
+ * bytes to the step's arrays. The steps are read in order, but the reader
+ * can also be moved to any time with {@link #seek(double)} using the index
+ * of the steps.</P>
+ * <P>The times and locations in the file are normalized (see
+ * {@link ExternalMovementReader#setNormalize(boolean)}); the offsets are
+ * the ones of the original trace.</P>
+ * <P>Format (version {@value #VERSION}, big-endian):</P>
+ * <UL>
+ * <LI>Header ({@value #HEADER_SIZE} bytes): magic number
+ * ({@link #MAGIC}, int), format version (int), number of steps (int),
+ * number of node IDs (int), offset of the index (long), offset of the ID
+ * table (long), and the offsets minTime, maxTime, minX, maxX, minY and maxY
+ * (doubles).</LI>
+ * <LI>Steps (in time order): time (double) and the number of locations (int)
+ * followed by the locations ({@value #MOVE_SIZE} bytes each): node ID index
+ * (int), x (double) and y (double).</LI>
+ * <LI>Index ({@value #INDEX_ENTRY_SIZE} bytes per step): time of the step
+ * (double) and offset of the step in the file (long).</LI>
+ * <LI>ID table: for each node ID the length of its UTF-8 encoding (int)
+ * followed by the encoded bytes.</LI>
+ * </UL>
+ */
+public class CompactMovementReader implements MovementTraceReader {
+	/** Extension of compact movement files */
+	public static final String COMPACT_EXT = ".emb";
+	/** Magic number in the beginning of the files ("ONEM") */
+	public static final int MAGIC = 0x4F4E454D;
+	/** Version of the format */
+	public static final int VERSION = 1;
+	/** Size of the header in bytes */
+	public static final int HEADER_SIZE = 80;
+	/** Size of the time and the location count of a step in bytes */
+	public static final int STEP_HEADER_SIZE = 12;
+	/** Size of a location in bytes */
+	public static final int MOVE_SIZE = 20;
+	/** Size of an index entry in bytes */
+	public static final int INDEX_ENTRY_SIZE = 16;
+
+	static final Charset UTF8 = Charset.forName("UTF-8");
+
+	/** minimum size of the mapped window of steps */
+	private static final long WINDOW_SIZE = 1 << 26;
+
+	private File file;
+	private RandomAccessFile raf;
+	private FileChannel channel;
+	/** the mapped part of the steps */
+	private MappedByteBuffer window;
+	/** file offset of the first mapped byte */
+	private long windowStart;
+	/** the mapped index */
+	private ByteBuffer index;
+	/** offset of the end of the steps (the start of the index) */
+	private long stepsEnd;
+	/** file offset of the next step to read */
+	private long next;
+
+	private int nrofSteps;
+	private String[] ids;
+
+	/* locations of the last step */
+	private double lastTimeStamp = -1;
+	private int nrofMoves;
+	private int[] moveIds;
+	private double[] moveXs;
+	private double[] moveYs;
+
+	private double minTime;
+	private double maxTime;
+	private double minX;
+	private double maxX;
+	private double minY;
+	private double maxY;
+
+	/**
+	 * Opens a compact movement file for reading
+	 * @param movementFile The file to read the trace from
+	 * @throws SettingsError if the file can't be read or isn't a compact
+	 * movement file of a supported version
+	 */
+	public CompactMovementReader(File movementFile) {
+		this.file = movementFile;
+		this.moveIds = new int[64];
+		this.moveXs = new double[64];
+		this.moveYs = new double[64];
+		try {
+			this.raf = new RandomAccessFile(movementFile, "r");
+			this.channel = raf.getChannel();
+			ByteBuffer header = channel.map(FileChannel.MapMode.READ_ONLY,
+					0, HEADER_SIZE);
+			if (header.getInt() != MAGIC) {
+				throw new SettingsError(movementFile + " is not a compact " +
+						"movement file");
+			}
+			int version = header.getInt();
+			if (version != VERSION) {
+				throw new SettingsError("Unsupported version " + version +
+						" of compact movement file " + movementFile +
+						" (supported: " + VERSION + ")");
+			}
+			this.nrofSteps = header.getInt();
+			int nrofIds = header.getInt();
+			this.stepsEnd = header.getLong();
+			long idTable = header.getLong();
+			this.minTime = header.getDouble();
+			this.maxTime = header.getDouble();
+			this.minX = header.getDouble();
+			this.maxX = header.getDouble();
+			this.minY = header.getDouble();
+			this.maxY = header.getDouble();
+
+			this.index = channel.map(FileChannel.MapMode.READ_ONLY,
+					stepsEnd, (long)nrofSteps * INDEX_ENTRY_SIZE);
+			readIds(idTable, nrofIds);
+			this.next = HEADER_SIZE;
+			mapWindow(next, 0);
+		} catch (IOException e) {
+			close();
+			throw new SettingsError("Can't read compact movement file " +
+					movementFile + ": " + e.getMessage());
+		}
+	}
+
+	/**
+	 * Checks if the given file is a compact movement file (i.e., starts with
+	 * the magic number)
+	 * @param file The file to check
+	 * @return True if the file is a compact movement file, false if not
+	 */
+	public static boolean isCompactMovementFile(File file) {
+		if (!file.isFile() || file.length() < HEADER_SIZE) {
+			return false;
+		}
+		DataInputStream in = null;
+		try {
+			in = new DataInputStream(new FileInputStream(file));
+			return in.readInt() == MAGIC;
+		} catch (IOException e) {
+			return false;
+		} finally {
+			if (in != null) {
+				try {
+					in.close();
+				} catch (IOException e) {}
+			}
+		}
+	}
+
+	/**
+	 * Reads the ID table
+	 */
+	private void readIds(long offset, int nrof) throws IOException {
+		this.ids = new String[nrof];
+		if (nrof == 0) {
+			return;
+		}
+		ByteBuffer table = channel.map(FileChannel.MapMode.READ_ONLY,
+				offset, channel.size() - offset);
+		byte[] bytes = new byte[64];
+		for (int i=0; i<nrof; i++) {
+			int len = table.getInt();
+			if (len > bytes.length) {
+				bytes = new byte[Math.max(len, bytes.length * 2)];
+			}
+			table.get(bytes, 0, len);
+			ids[i] = new String(bytes, 0, len, UTF8);
+		}
+	}
+
+	/**
+	 * Maps the steps starting from the given offset so that at least the
+	 * given number of bytes are mapped
+	 */
+	private void mapWindow(long start, long minSize) throws IOException {
+		long size = Math.min(Math.max(WINDOW_SIZE, minSize), stepsEnd - start);
+		this.window = channel.map(FileChannel.MapMode.READ_ONLY, start, size);
+		this.windowStart = start;
+	}
+
+	/**
+	 * Makes sure the given bytes are mapped
+	 */
+	private void ensureMapped(long offset, long size) {
+		if (offset >= windowStart &&
+				offset + size <= windowStart + window.capacity()) {
+			return;
+		}
+		try {
+			mapWindow(offset, size);
+		} catch (IOException e) {
+			throw new SettingsError("Can't read compact movement file " +
+					file + ": " + e.getMessage());
+		}
+	}
+
+	/**
+	 * Returns the number of steps in the file
+	 * @return the number of steps in the file
+	 */
+	public int getNrofSteps() {
+		return this.nrofSteps;
+	}
+
+	/**
+	 * Moves the reader so that the next step read is the first step whose
+	 * time stamp is not before the given time
+	 * @param time The time (normalized)
+	 * @return The index of the next step (the number of steps if all the
+	 * steps are before the time)
+	 */
+	public int seek(double time) {
+		int low = 0;
+		int high = nrofSteps;
+		while (low < high) {
+			int mid = (low + high) >>> 1;
+			if (index.getDouble(mid * INDEX_ENTRY_SIZE) < time) {
+				low = mid + 1;
+			} else {
+				high = mid;
+			}
+		}
+		next = (low < nrofSteps ?
+				index.getLong(low * INDEX_ENTRY_SIZE + 8) : stepsEnd);
+		return low;
+	}
+
+	public boolean readNextStep() {
+		nrofMoves = 0;
+		if (next >= stepsEnd) {
+			return false;
+		}
+
+		ensureMapped(next, STEP_HEADER_SIZE);
+		int base = (int)(next - windowStart);
+		double time = window.getDouble(base);
+		int nrof = window.getInt(base + 8);
+		long size = STEP_HEADER_SIZE + (long)nrof * MOVE_SIZE;
+		ensureMapped(next, size);
+		base = (int)(next - windowStart) + STEP_HEADER_SIZE;
+
+		if (nrof > moveIds.length) {
+			int length = Math.max(nrof, moveIds.length * 2);
+			moveIds = Arrays.copyOf(moveIds, length);
+			moveXs = Arrays.copyOf(moveXs, length);
+			moveYs = Arrays.copyOf(moveYs, length);
+		}
+		MappedByteBuffer w = this.window;
+		for (int i=0; i<nrof; i++, base += MOVE_SIZE) {
+			moveIds[i] = w.getInt(base);
+			moveXs[i] = w.getDouble(base + 4);
+			moveYs[i] = w.getDouble(base + 12);
+		}
+
+		nrofMoves = nrof;
+		lastTimeStamp = time;
+		next += size;
+		return true;
+	}
+
+	public double getLastTimeStamp() {
+		return lastTimeStamp;
+	}
+
+	public int getNrofMoves() {
+		return nrofMoves;
+	}
+
+	public int getMoveId(int i) {
+		return moveIds[i];
+	}
+
+	public double getMoveX(int i) {
+		return moveXs[i];
+	}
+
+	public double getMoveY(int i) {
+		return moveYs[i];
+	}
+
+	/**
+	 * Returns the number of distinct node IDs in the file
+	 * @return the number of distinct node IDs in the file
+	 */
+	public int getNrofIds() {
+		return ids.length;
+	}
+
+	public String getId(int index) {
+		return ids[index];
+	}
+
+	public double getMinTime() {
+		return minTime;
+	}
+
+	public double getMaxTime() {
+		return maxTime;
+	}
+
+	public double getMinX() {
+		return minX;
+	}
+
+	public double getMaxX() {
+		return maxX;
+	}
+
+	public double getMinY() {
+		return minY;
+	}
+
+	public double getMaxY() {
+		return maxY;
+	}
+
+	public void close() {
+		this.window = null;
+		this.index = null;
+		try {
+			if (this.raf != null) {
+				this.raf.close();
+			}
+		} catch (IOException e) {}
+	}
+}
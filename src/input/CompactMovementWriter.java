@@ -0,0 +1,163 @@
+/*
+ * Copyright 2010 Aalto University, ComNet
+ * Released under GPLv3. See LICENSE.txt for details.
+ */
+package input;
+
+import static input.CompactMovementReader.*;
+
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.util.Arrays;
+
+/**
+ * Writes the steps of a movement trace to a compact binary file that can be
+ * read with {@link CompactMovementReader}. The steps are written as they are
+ * read from the source, so traces of any length can be converted; only the
+ * time and the file offset of every step (for the index) are kept in memory.
+ * Can also be run from the command line to convert an external movement
+ * file:<BR>
+ * <TT>java input.CompactMovementWriter &lt;movement file&gt;
+ * [&lt;output file&gt;]</TT>
+ */
+public class CompactMovementWriter {
+	private File file;
+	private DataOutputStream out;
+	private MovementTraceReader source;
+	/** offset of the next step in the file */
+	private long offset;
+	/* the index */
+	private int nrofSteps;
+	private double[] stepTimes;
+	private long[] stepOffsets;
+
+	/**
+	 * Creates a new writer
+	 * @param file The file to write the trace to
+	 * @param source The reader whose steps are written (the offsets are
+	 * copied from it)
+	 * @throws IOException if the file can't be created
+	 */
+	public CompactMovementWriter(File file, MovementTraceReader source)
+			throws IOException {
+		this.file = file;
+		this.source = source;
+		this.out = new DataOutputStream(new BufferedOutputStream(
+				new FileOutputStream(file), 1 << 16));
+		this.stepTimes = new double[1024];
+		this.stepOffsets = new long[1024];
+		out.write(new byte[HEADER_SIZE]); /* written when closing */
+		this.offset = HEADER_SIZE;
+	}
+
+	/**
+	 * Writes the last step read from the source. The steps should be
+	 * written in time order.
+	 * @throws IOException if writing fails
+	 */
+	public void writeStep() throws IOException {
+		if (nrofSteps == stepTimes.length) {
+			stepTimes = Arrays.copyOf(stepTimes, nrofSteps * 2);
+			stepOffsets = Arrays.copyOf(stepOffsets, nrofSteps * 2);
+		}
+		int nrof = source.getNrofMoves();
+		stepTimes[nrofSteps] = source.getLastTimeStamp();
+		stepOffsets[nrofSteps] = offset;
+		nrofSteps++;
+
+		out.writeDouble(source.getLastTimeStamp());
+		out.writeInt(nrof);
+		for (int i=0; i<nrof; i++) {
+			out.writeInt(source.getMoveId(i));
+			out.writeDouble(source.getMoveX(i));
+			out.writeDouble(source.getMoveY(i));
+		}
+		offset += STEP_HEADER_SIZE + (long)nrof * MOVE_SIZE;
+	}
+
+	/**
+	 * Writes the index, the ID table and the header and closes the file
+	 * @throws IOException if writing fails
+	 */
+	public void close() throws IOException {
+		long index = offset;
+		for (int i=0; i<nrofSteps; i++) {
+			out.writeDouble(stepTimes[i]);
+			out.writeLong(stepOffsets[i]);
+		}
+		long idTable = index + (long)nrofSteps * INDEX_ENTRY_SIZE;
+		int nrofIds = source.getNrofIds();
+		for (int i=0; i<nrofIds; i++) {
+			byte[] bytes = source.getId(i).getBytes(UTF8);
+			out.writeInt(bytes.length);
+			out.write(bytes);
+		}
+		out.close();
+
+		RandomAccessFile raf = new RandomAccessFile(file, "rw");
+		try {
+			raf.writeInt(MAGIC);
+			raf.writeInt(VERSION);
+			raf.writeInt(nrofSteps);
+			raf.writeInt(nrofIds);
+			raf.writeLong(index);
+			raf.writeLong(idTable);
+			raf.writeDouble(source.getMinTime());
+			raf.writeDouble(source.getMaxTime());
+			raf.writeDouble(source.getMinX());
+			raf.writeDouble(source.getMaxX());
+			raf.writeDouble(source.getMinY());
+			raf.writeDouble(source.getMaxY());
+		} finally {
+			raf.close();
+		}
+	}
+
+	/**
+	 * Converts an external movement file to a compact movement file. The
+	 * times and locations are normalized (see
+	 * {@link ExternalMovementReader#setNormalize(boolean)}).
+	 * @param movementFile The external movement file
+	 * @param compactFile The compact file to create
+	 * @return The number of steps converted
+	 * @throws IOException if writing fails
+	 */
+	public static int convert(File movementFile, File compactFile)
+			throws IOException {
+		ExternalMovementReader reader =
+			new ExternalMovementReader(movementFile.getPath());
+		CompactMovementWriter writer = new CompactMovementWriter(compactFile,
+				reader);
+		try {
+			while (reader.readNextStep()) {
+				writer.writeStep();
+			}
+		} finally {
+			reader.close();
+			writer.close();
+		}
+		return writer.nrofSteps;
+	}
+
+	/**
+	 * Converts an external movement file to a compact movement file.
+	 * @param args The movement file and optionally the output file (default:
+	 * the movement file name with {@link CompactMovementReader#COMPACT_EXT})
+	 */
+	public static void main(String[] args) throws IOException {
+		if (args.length < 1 || args.length > 2) {
+			System.err.println("Usage: CompactMovementWriter <movement file> " +
+					"[<output file>]");
+			System.exit(1);
+		}
+
+		String outName = args.length > 1 ? args[1] :
+			args[0].replaceFirst("\\.txt$", "") + COMPACT_EXT;
+		int nrof = convert(new File(args[0]), new File(outName));
+		System.out.println("Wrote " + nrof + " steps to " + outName);
+	}
+}
@@ -46,6 +46,30 @@ public class ConnectionEvent extends ExternalEvent {
 		from.forceConnection(to, interfaceId, this.isUp);
 	}
 
+	/**
+	 * Returns the address of the node the (dis)connection is from
+	 * @return the address of the node
+	 */
+	public int getFromAddr() {
+		return this.fromAddr;
+	}
+
+	/**
+	 * Returns the address of the node the (dis)connection is to
+	 * @return the address of the node
+	 */
+	public int getToAddr() {
+		return this.toAddr;
+	}
+
+	/**
+	 * Returns true if this is a "connection up" event
+	 * @return true for a "connection up" event, false for "connection down"
+	 */
+	public boolean isUp() {
+		return this.isUp;
+	}
+
 	@Override
 	public String toString() {
 		return "CONN " + (isUp ? "up" : "down") + " @" + this.time + " " +
@@ -0,0 +1,247 @@
+/*
+ * Copyright 2010 Aalto University, ComNet
+ * Released under GPLv3. See LICENSE.txt for details.
+ */
+package input;
+
+import java.io.File;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+import java.util.regex.Pattern;
+
+import movement.MovementTrace;
+import report.Report;
+import routing.MessageRouter;
+import core.Application;
+import core.NetworkInterface;
+import core.Settings;
+import core.SettingsError;
+import core.SimError;
+import core.SimScenario;
+
+/**
+ * <P>Settings of the contact trace record and replay modes. A contact trace
+ * is a compact events file (see {@link CompactEventsReader}) of all the
+ * connection up and down events (with the interface types) and all the
+ * message events of the external event queues of a simulation run. When a
+ * trace is replayed (see {@link ContactTraceQueue}), connections are not
+ * simulated and, by default, the hosts are not moved, so simulations that
+ * differ only in routing settings can skip the movement and connectivity
+ * simulation but still see the same connection events.</P>
+ * <P>The traces are stored in a directory and identified by a key that is
+ * a hash of all the settings except the ones that only affect routing or
+ * reporting: the settings of all the router, report and application
+ * namespaces, the router, buffer size, message TTL, send queue and
+ * application settings of the groups and some settings that don't affect
+ * the results (see {@link #getKey()}). The contents of input files (e.g.,
+ * maps) are not part of the key, and neither are router specific settings
+ * in the group namespaces.</P>
+ * <P>Note that only the connection events are replayed: connection speeds
+ * that depend on the distance of the hosts are not updated, routers are
+ * updated also right after the connection events of an update interval and
+ * routers that affect connectivity (e.g., by switching interfaces off) make
+ * the traces invalid.</P>
+ */
+public class ContactTrace {
+	/** Name space of the contact trace settings ({@value}) */
+	public static final String CONTACT_TRACE_NS = "ContactTrace";
+	/** Contact trace mode -setting id ({@value}). One of
+	 * {@value #MODE_OFF} (default), {@value #MODE_RECORD},
+	 * {@value #MODE_REPLAY} and {@value #MODE_AUTO} (replay if a trace for
+	 * the current settings exists, record otherwise). */
+	public static final String MODE_S = "mode";
+	/** Directory of the contact traces -setting id ({@value}). Default is
+	 * {@value #DEF_DIR}. */
+	public static final String DIR_S = "dir";
+	/** Should the hosts be moved when a trace is replayed -setting id
+	 * ({@value}). Boolean. Default is false (the hosts stay in their initial
+	 * locations). */
+	public static final String MOVE_HOSTS_S = "moveHosts";
+
+	/** Contact traces are not used (value {@value}) */
+	public static final String MODE_OFF = "off";
+	/** A contact trace is recorded (value {@value}) */
+	public static final String MODE_RECORD = "record";
+	/** A contact trace is replayed (value {@value}) */
+	public static final String MODE_REPLAY = "replay";
+	/** A contact trace is replayed if one exists, or recorded (value
+	 * {@value}) */
+	public static final String MODE_AUTO = "auto";
+	/** Default directory of the traces ({@value}) */
+	public static final String DEF_DIR = "contacttraces";
+	/** Prefix of the trace file names */
+	public static final String FILE_PREFIX = "contacts-";
+
+	/** Regular expression of the settings that are not part of the key */
+	public static final String IGNORED_SETTINGS =
+			"Scenario\\.name|Settings\\.output|GUI\\..*|" +
+			"Report[0-9]*\\..*|" + CONTACT_TRACE_NS + "\\..*|" +
+			MovementTrace.MOVEMENT_TRACE_NS + "\\..*|" +
+			"Group[0-9]*\\.(" + SimScenario.ROUTER_S + "|" +
+			MessageRouter.B_SIZE_S + "|" + MessageRouter.MSG_TTL_S + "|" +
+			MessageRouter.SEND_QUEUE_MODE_S + "|" + SimScenario.APPCOUNT_S +
+			"|" + SimScenario.GAPPNAME_S + "[0-9]+)|" +
+			"Optimization\\.(routerDormancy|plannedRouting|routingThreads)|" +
+			"Events[0-9]*\\.(nrofPreload|prefetch|prefetchHorizon)|" +
+			"MapBasedMovement\\.mapCacheDir";
+	/** Settings that are not part of the key */
+	private static final Pattern IGNORED = Pattern.compile(IGNORED_SETTINGS);
+	/** version of the key (changed if the traces become incompatible) */
+	private static final int KEY_VERSION = 1;
+
+	private String mode;
+	private File traceFile;
+	private boolean moveHosts;
+
+	/**
+	 * Reads the contact trace settings
+	 * @throws SettingsError if the mode is not valid or a trace should be
+	 * replayed but it doesn't exist
+	 */
+	public ContactTrace() {
+		Settings s = new Settings(CONTACT_TRACE_NS);
+		this.mode = s.getSetting(MODE_S, MODE_OFF);
+		this.moveHosts = s.getBoolean(MOVE_HOSTS_S, false);
+
+		if (mode.equals(MODE_OFF)) {
+			return;
+		}
+		if (!mode.equals(MODE_RECORD) && !mode.equals(MODE_REPLAY) &&
+				!mode.equals(MODE_AUTO)) {
+			throw new SettingsError("Invalid contact trace mode '" + mode +
+					"' for setting " + CONTACT_TRACE_NS + "." + MODE_S);
+		}
+
+		this.traceFile = new File(s.getSetting(DIR_S, DEF_DIR),
+				FILE_PREFIX + getKey() + CompactEventsReader.COMPACT_EXT);
+		if (mode.equals(MODE_AUTO)) {
+			mode = traceFile.isFile() ? MODE_REPLAY : MODE_RECORD;
+		}
+		if (mode.equals(MODE_REPLAY) && !traceFile.isFile()) {
+			throw new SettingsError("No contact trace " + traceFile +
+					" for the current settings");
+		}
+	}
+
+	/**
+	 * Returns true if a contact trace should be recorded
+	 * @return true if a contact trace should be recorded
+	 */
+	public boolean isRecording() {
+		return mode.equals(MODE_RECORD);
+	}
+
+	/**
+	 * Returns true if a contact trace should be replayed
+	 * @return true if a contact trace should be replayed
+	 */
+	public boolean isReplaying() {
+		return mode.equals(MODE_REPLAY);
+	}
+
+	/**
+	 * Returns true if the hosts should be moved
+	 * @return false if a trace is replayed and the hosts should not be
+	 * moved, true otherwise
+	 */
+	public boolean moveHosts() {
+		return !isReplaying() || moveHosts;
+	}
+
+	/**
+	 * Returns the trace file for the current settings
+	 * @return the trace file or null if contact traces are not used
+	 */
+	public File getTraceFile() {
+		return traceFile;
+	}
+
+	/**
+	 * Returns the key of the contact trace of the current settings. The key
+	 * is a hash of all the settings (with the values of the current run)
+	 * except the ones that only affect routing or reporting.
+	 * @return The key (a hex string)
+	 */
+	public static String getKey() {
+		return getKey(IGNORED, false);
+	}
+
+	/**
+	 * Returns a hash of all the settings (with the values of the current run)
+	 * except the ones that match the given pattern and the settings of the
+	 * router, report and application namespaces
+	 * @param ignored Pattern of the names of the ignored settings
+	 * @param ignoreInterfaces If true, the settings of the network interface
+	 * namespaces are ignored too
+	 * @return The key (a hex string)
+	 */
+	public static String getKey(Pattern ignored, boolean ignoreInterfaces) {
+		Map<String, String> all = Settings.getAll();
+
+		/* namespaces of the routers, reports, applications and interfaces */
+		Set<String> checkedNs = new HashSet<String>();
+		Set<String> ignoredNs = new HashSet<String>();
+		for (Map.Entry<String, String> e : all.entrySet()) {
+			String name = e.getKey();
+			int dot = name.indexOf('.');
+			if (dot <= 0) {
+				continue;
+			}
+			String ns = name.substring(0, dot);
+			if (checkedNs.add(ns) && (isClass("routing." + ns,
+					MessageRouter.class) || isClass("report." + ns,
+							Report.class))) {
+				ignoredNs.add(ns);
+			}
+			if (name.substring(dot + 1).equals(SimScenario.APPTYPE_S) &&
+					(isClass("applications." + e.getValue(), Application.class)
+					|| (ignoreInterfaces && isClass("interfaces." + e.getValue(),
+							NetworkInterface.class)))) {
+				ignoredNs.add(ns);
+			}
+		}
+
+		MessageDigest md;
+		try {
+			md = MessageDigest.getInstance("SHA-1");
+		} catch (NoSuchAlgorithmException e) {
+			throw new SimError(e);
+		}
+		md.update(("v" + KEY_VERSION + "\n").getBytes(
+				CompactEventsReader.UTF8));
+		for (Map.Entry<String, String> e : all.entrySet()) {
+			String name = e.getKey();
+			int dot = name.indexOf('.');
+			if (ignored.matcher(name).matches() || (dot > 0 &&
+					ignoredNs.contains(name.substring(0, dot)))) {
+				continue;
+			}
+			md.update((name + "=" + e.getValue() + "\n").getBytes(
+					CompactEventsReader.UTF8));
+		}
+
+		StringBuilder key = new StringBuilder();
+		for (byte b : md.digest()) {
+			key.append(String.format("%02x", b & 0xff));
+		}
+		return key.toString();
+	}
+
+	/**
+	 * Returns true if a class with the given name exists and is a subclass
+	 * of the given class
+	 */
+	private static boolean isClass(String className, Class<?> superClass) {
+		try {
+			return superClass.isAssignableFrom(Class.forName(className, false,
+					ContactTrace.class.getClassLoader()));
+		} catch (ClassNotFoundException e) {
+			return false;
+		} catch (LinkageError e) {
+			return false;
+		}
+	}
+}
@@ -0,0 +1,117 @@
+/*
+ * Copyright 2010 Aalto University, ComNet
+ * Released under GPLv3. See LICENSE.txt for details.
+ */
+package input;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.List;
+
+import core.World;
+
+/**
+ * Event queue that replays a recorded contact trace (see
+ * {@link ContactTrace}). The events are replayed in the recorded order.
+ * Consecutive connection events of the same time are processed as one
+ * event, so the hosts are updated once after all the connection changes of
+ * an update interval instead of after each of them.
+ */
+public class ContactTraceQueue implements EventQueue {
+	/** number of events read from the trace at once */
+	private static final int BATCH_SIZE = 1000;
+
+	private CompactEventsReader reader;
+	/** the read events; the ones from index next on are not processed */
+	private List<ExternalEvent> events;
+	private int next;
+
+	/**
+	 * Opens a contact trace for replaying
+	 * @param traceFile The trace file
+	 */
+	public ContactTraceQueue(File traceFile) {
+		this.reader = new CompactEventsReader(traceFile);
+		this.events = new ArrayList<ExternalEvent>(0);
+		this.next = 0;
+	}
+
+	/**
+	 * Returns the next unprocessed event without removing it
+	 * @return the next event or null if there are no events left
+	 */
+	private ExternalEvent peek() {
+		if (next == events.size()) {
+			if (reader == null) {
+				return null;
+			}
+			events = reader.readEvents(BATCH_SIZE);
+			next = 0;
+			if (events.size() == 0) {
+				reader.close();
+				reader = null;
+				return null;
+			}
+		}
+		return events.get(next);
+	}
+
+	public ExternalEvent nextEvent() {
+		ExternalEvent ee = peek();
+		if (ee == null) {
+			return new ExternalEvent(Double.MAX_VALUE);
+		}
+		next++;
+		if (!(ee instanceof ConnectionEvent)) {
+			return ee;
+		}
+
+		/* collect the connection events of the same time */
+		ExternalEvent following = peek();
+		if (!(following instanceof ConnectionEvent) ||
+				following.getTime() != ee.getTime()) {
+			return ee;
+		}
+		List<ConnectionEvent> batch = new ArrayList<ConnectionEvent>();
+		batch.add((ConnectionEvent)ee);
+		do {
+			batch.add((ConnectionEvent)following);
+			next++;
+			following = peek();
+		} while (following instanceof ConnectionEvent &&
+				following.getTime() == ee.getTime());
+
+		return new ConnectionBatch(batch, ee.getTime());
+	}
+
+	public double nextEventsTime() {
+		ExternalEvent ee = peek();
+		return ee == null ? Double.MAX_VALUE : ee.getTime();
+	}
+
+	/**
+	 * Connection events of the same time that are processed in order as
+	 * one event
+	 */
+	private static class ConnectionBatch extends ExternalEvent {
+		private static final long serialVersionUID = 1L;
+		private List<ConnectionEvent> events;
+
+		public ConnectionBatch(List<ConnectionEvent> events, double time) {
+			super(time);
+			this.events = events;
+		}
+
+		@Override
+		public void processEvent(World world) {
+			for (int i=0, n=events.size(); i<n; i++) {
+				events.get(i).processEvent(world);
+			}
+		}
+
+		@Override
+		public String toString() {
+			return "CONN batch of " + events.size() + " @" + time;
+		}
+	}
+}
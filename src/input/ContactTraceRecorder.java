@@ -0,0 +1,170 @@
+/*
+ * Copyright 2010 Aalto University, ComNet
+ * Released under GPLv3. See LICENSE.txt for details.
+ */
+package input;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+
+import core.DTNHost;
+import core.InterfaceConnectionListener;
+import core.NetworkInterface;
+import core.SimClock;
+import core.SimError;
+
+/**
+ * Records a contact trace (see {@link ContactTrace}): the connection events
+ * of all the interfaces and the message events of the external event
+ * queues, in the order they happen. The trace is first written to a
+ * temporary file that replaces the trace file only if the simulation
+ * completes (see {@link #done(boolean)}), so an interrupted run never leaves
+ * a partial trace.
+ */
+public class ContactTraceRecorder implements InterfaceConnectionListener {
+	private File traceFile;
+	private File tmpFile;
+	private CompactEventsWriter writer;
+
+	/**
+	 * Creates a new recorder
+	 * @param traceFile The file where the trace is stored
+	 * @throws SimError if the trace file can't be created
+	 */
+	public ContactTraceRecorder(File traceFile) {
+		this.traceFile = traceFile;
+		try {
+			File dir = traceFile.getAbsoluteFile().getParentFile();
+			dir.mkdirs();
+			this.tmpFile = File.createTempFile(ContactTrace.FILE_PREFIX,
+					".tmp", dir);
+			this.writer = new CompactEventsWriter(tmpFile);
+		} catch (IOException e) {
+			throw new SimError("Can't create contact trace " + traceFile +
+					": " + e.getMessage(), e);
+		}
+	}
+
+	/**
+	 * Returns event queues that record the message events of the given
+	 * queues as they are processed
+	 * @param queues The queues to record
+	 * @return The recording queues in the same order
+	 */
+	public List<EventQueue> wrap(List<EventQueue> queues) {
+		List<EventQueue> wrapped = new ArrayList<EventQueue>(queues.size());
+		for (EventQueue q : queues) {
+			wrapped.add(new RecordingQueue(q));
+		}
+		return wrapped;
+	}
+
+	/**
+	 * Writes an event to the trace
+	 */
+	private void write(ExternalEvent ee) {
+		if (writer == null) {
+			return; /* already done */
+		}
+		try {
+			writer.write(ee);
+		} catch (IOException e) {
+			throw new SimError("Can't write contact trace " + tmpFile +
+					": " + e.getMessage(), e);
+		}
+	}
+
+	/**
+	 * Writes a connection event to the trace
+	 */
+	private void writeConnection(NetworkInterface iface1,
+			NetworkInterface iface2, boolean up) {
+		write(new ConnectionEvent(iface1.getHost().getAddress(),
+				iface2.getHost().getAddress(), iface1.getInterfaceType(), up,
+				SimClock.getTime()));
+	}
+
+	public void interfacesConnected(NetworkInterface iface1,
+			NetworkInterface iface2) {
+		writeConnection(iface1, iface2, true);
+	}
+
+	public void interfacesDisconnected(NetworkInterface iface1,
+			NetworkInterface iface2) {
+		writeConnection(iface1, iface2, false);
+	}
+
+	public void hostsConnected(DTNHost host1, DTNHost host2) {
+		/* the interface methods are called instead */
+	}
+
+	public void hostsDisconnected(DTNHost host1, DTNHost host2) {
+		/* the interface methods are called instead */
+	}
+
+	/**
+	 * Finishes the recording. The trace is stored only if the simulation
+	 * was completed.
+	 * @param completed True if the simulation ran until its end time
+	 * @throws SimError if the trace can't be stored
+	 */
+	public void done(boolean completed) {
+		if (writer == null) {
+			return;
+		}
+		if (!completed) {
+			writer.discard();
+			writer = null;
+			return;
+		}
+		try {
+			writer.close();
+		} catch (IOException e) {
+			tmpFile.delete();
+			throw new SimError("Can't write contact trace " + tmpFile +
+					": " + e.getMessage(), e);
+		} finally {
+			writer = null;
+		}
+
+		if (!tmpFile.renameTo(traceFile)) {
+			traceFile.delete();
+			if (!tmpFile.renameTo(traceFile)) {
+				tmpFile.delete();
+				throw new SimError("Can't rename " + tmpFile + " to " +
+						traceFile);
+			}
+		}
+	}
+
+	/**
+	 * Event queue that records the message events of another queue as they
+	 * are taken from the queue (i.e., processed). Connection events are
+	 * recorded when the connections change, so they are not recorded here.
+	 */
+	private class RecordingQueue implements EventQueue {
+		private EventQueue queue;
+
+		public RecordingQueue(EventQueue queue) {
+			this.queue = queue;
+		}
+
+		public ExternalEvent nextEvent() {
+			ExternalEvent ee = queue.nextEvent();
+			if (ee instanceof MessageEvent) {
+				write(ee);
+			} else if (!(ee instanceof ConnectionEvent) &&
+					ee.getClass() != ExternalEvent.class) {
+				throw new SimError("Can't record event " + ee + " of type " +
+						ee.getClass().getName() + " to a contact trace");
+			}
+			return ee;
+		}
+
+		public double nextEventsTime() {
+			return queue.nextEventsTime();
+		}
+	}
+}
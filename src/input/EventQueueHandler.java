@@ -48,6 +48,15 @@ public class EventQueueHandler  {
 	public static final String PRELOAD_SETTING = "nrofPreload";
 	/** path of external events file -setting id ({@value})*/
 	public static final String PATH_SETTING = "filePath";
+	/** prefetch the external events in a background thread -setting id
+	 * ({@value}). Boolean. Default is false. */
+	public static final String PREFETCH_SETTING =
+		ExternalEventsQueue.PREFETCH_SETTING;
+	/** simulated time (seconds) one batch of prefetched events should
+	 * cover -setting id ({@value}). If not defined, the batches have
+	 * {@link #PRELOAD_SETTING} events. */
+	public static final String PREFETCH_HORIZON_SETTING =
+		ExternalEventsQueue.PREFETCH_HORIZON_SETTING;
 
 	private List<EventQueue> queues;
 
@@ -71,7 +80,9 @@ public class EventQueueHandler  {
 				}
 				path = s.getSetting(PATH_SETTING);
 
-				queues.add(new ExternalEventsQueue(path, preload));
+				queues.add(new ExternalEventsQueue(path, preload,
+						s.getBoolean(PREFETCH_SETTING, false),
+						s.getDouble(PREFETCH_HORIZON_SETTING, 0)));
 			}
 			else if (s.contains(CLASS_SETTING)) { // event generator class
 				String className = CLASS_PACKAGE + "." +
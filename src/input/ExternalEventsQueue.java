@@ -7,12 +7,19 @@ package input;
 import java.io.File;
 import java.util.ArrayList;
 import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
 
+import core.DTNSim;
 import core.Settings;
+import core.SimError;
 
 /**
  * Queue of external events. This class also takes care of buffering
- * the events and preloading only a proper amount of them.
+ * the events and preloading only a proper amount of them. Optionally the
+ * events can be prefetched: a background thread reads the next batches of
+ * events to a bounded buffer while the simulation processes the current
+ * batch (see {@link #setPrefetching(boolean, double)}).
  */
 public class ExternalEventsQueue implements EventQueue {
 	/** ExternalEvents namespace ({@value})*/
@@ -21,9 +28,32 @@ public class ExternalEventsQueue implements EventQueue {
 	public static final String PRELOAD_SETTING = "nrofPreload";
 	/** path of external events file -setting id ({@value})*/
 	public static final String PATH_SETTING = "filePath";
+	/** prefetch events in a background thread -setting id ({@value}).
+	 * Boolean. Default is false. */
+	public static final String PREFETCH_SETTING = "prefetch";
+	/** simulated time that one prefetched batch should cover -setting id
+	 * ({@value}). Double (seconds). If not defined, the batches have
+	 * {@link #PRELOAD_SETTING} events. */
+	public static final String PREFETCH_HORIZON_SETTING = "prefetchHorizon";
 
 	/** default number of preloaded events */
 	public static final int DEFAULT_NROF_PRELOAD = 500;
+	/** number of prefetched batches that can wait in the buffer */
+	private static final int PREFETCH_BATCHES = 2;
+	/** limits for the size of a batch with a prefetch horizon */
+	private static final int MIN_BATCH = 16;
+	private static final int MAX_BATCH = 1 << 16;
+	/** the batch that tells that all the events have been read */
+	private static final List<ExternalEvent> END_OF_EVENTS =
+		new ArrayList<ExternalEvent>(0);
+
+	/** the running prefetch threads (stopped when the simulator resets) */
+	private static List<Prefetcher> prefetchers;
+
+	static {
+		DTNSim.registerForReset(ExternalEventsQueue.class.getCanonicalName());
+		reset();
+	}
 
 	private File eventsFile;
 	private ExternalEventsReader reader;
@@ -31,18 +61,39 @@ public class ExternalEventsQueue implements EventQueue {
 	private int nrofPreload;
 	private List<ExternalEvent> queue;
 	private boolean allEventsRead = false;
+	/** the prefetch thread (null if not prefetching) */
+	private Prefetcher prefetcher;
 
 	/**
 	 * Creates a new Queue from a file
 	 * @param filePath Path to the file where the events are read from. If
-	 * file ends with extension defined in {@link BinaryEventsReader#BINARY_EXT}
-	 * the file is assumed to be a binary file.
+	 * the file is a compact events file (see {@link CompactEventsWriter}),
+	 * it is read with a {@link CompactEventsReader}. If the file ends with
+	 * extension defined in {@link BinaryEventsReader#BINARY_EXT} the file is
+	 * assumed to be a binary file.
 	 * @param nrofPreload How many events to preload
 	 * @see BinaryEventsReader#BINARY_EXT
 	 * @see BinaryEventsReader#storeToBinaryFile(String, List)
 	 */
 	public ExternalEventsQueue(String filePath, int nrofPreload) {
+		this(filePath, nrofPreload, false, 0);
+	}
+
+	/**
+	 * Creates a new Queue from a file, optionally prefetching the events
+	 * @param filePath Path to the file where the events are read from
+	 * (see {@link #ExternalEventsQueue(String, int)})
+	 * @param nrofPreload How many events to preload (the size of the first
+	 * batch if a prefetch horizon is given)
+	 * @param prefetch If true, the events are prefetched in a background
+	 * thread
+	 * @param horizon Simulated time (seconds) one prefetched batch should
+	 * cover or 0 for batches of nrofPreload events
+	 */
+	public ExternalEventsQueue(String filePath, int nrofPreload,
+			boolean prefetch, double horizon) {
 		setNrofPreload(nrofPreload);
+		setPrefetching(prefetch, horizon);
 		init(filePath);
 	}
 
@@ -58,6 +109,8 @@ public class ExternalEventsQueue implements EventQueue {
 		else {
 			setNrofPreload(DEFAULT_NROF_PRELOAD);
 		}
+		setPrefetching(s.getBoolean(PREFETCH_SETTING, false),
+				s.getDouble(PREFETCH_HORIZON_SETTING, 0));
         String eeFilePath = s.valueFillString(s.getSetting(PATH_SETTING));
         init(eeFilePath);
     }
@@ -74,16 +127,46 @@ public class ExternalEventsQueue implements EventQueue {
 		this.nrofPreload = nrof;
 	}
 
+	/**
+	 * Sets the prefetching mode. Must be set before the queue starts
+	 * reading the events, i.e., in the constructor.
+	 * @param prefetch If true, a background thread reads the events in
+	 * batches to a buffer of {@value #PREFETCH_BATCHES} batches while the
+	 * simulation processes the previous batch. The events and their order
+	 * are the same as without prefetching.
+	 * @param horizon If positive, the size of a batch is adapted so that
+	 * a batch covers about this much simulated time, based on the event
+	 * rate of the previous batch. Otherwise all the batches have
+	 * {@link #setNrofPreload(int)} events.
+	 */
+	private void setPrefetching(boolean prefetch, double horizon) {
+		if (prefetch) {
+			this.prefetcher = new Prefetcher(horizon);
+		} else {
+			this.prefetcher = null;
+		}
+	}
+
 	private void init(String eeFilePath) {
 		this.eventsFile = new File(eeFilePath);
 
-		if (BinaryEventsReader.isBinaryEeFile(eventsFile)) {
+		if (CompactEventsReader.isCompactEeFile(eventsFile)) {
+			this.reader = new CompactEventsReader(eventsFile);
+		}
+		else if (BinaryEventsReader.isBinaryEeFile(eventsFile)) {
 			this.reader = new BinaryEventsReader(eventsFile);
 		}
 		else {
 			this.reader = new StandardEventsReader(eventsFile);
 		}
 
+		if (prefetcher != null) {
+			synchronized (ExternalEventsQueue.class) {
+				prefetchers.add(prefetcher);
+			}
+			prefetcher.start();
+		}
+
 		this.queue = readEvents(nrofPreload);
 		this.nextEventIndex = 0;
 	}
@@ -149,6 +232,17 @@ public class ExternalEventsQueue implements EventQueue {
 		if (allEventsRead) {
 			return new ArrayList<ExternalEvent>(0);
 		}
+		if (prefetcher != null) {
+			List<ExternalEvent> events = prefetcher.nextBatch();
+			if (events == END_OF_EVENTS) {
+				allEventsRead = true;
+				synchronized (ExternalEventsQueue.class) {
+					prefetchers.remove(prefetcher);
+				}
+				return new ArrayList<ExternalEvent>(0);
+			}
+			return events;
+		}
 
 		List<ExternalEvent> events = reader.readEvents(nrof);
 
@@ -160,4 +254,98 @@ public class ExternalEventsQueue implements EventQueue {
 		return events;
 	}
 
+	/**
+	 * Stops all the prefetch threads
+	 */
+	public static synchronized void reset() {
+		if (prefetchers != null) {
+			for (Prefetcher p : prefetchers) {
+				p.interrupt();
+			}
+		}
+		prefetchers = new ArrayList<Prefetcher>();
+	}
+
+	/**
+	 * Thread that reads the events in batches to a bounded buffer
+	 */
+	private class Prefetcher extends Thread {
+		private BlockingQueue<List<ExternalEvent>> batches;
+		private double horizon;
+		/** error that stopped the reading (null if none) */
+		private volatile Throwable error;
+
+		public Prefetcher(double horizon) {
+			super("ExternalEventsPrefetcher");
+			setDaemon(true); // don't keep the simulator running
+			this.horizon = horizon;
+			this.batches =
+				new ArrayBlockingQueue<List<ExternalEvent>>(PREFETCH_BATCHES);
+		}
+
+		@Override
+		public void run() {
+			int nrof = nrofPreload;
+			try {
+				while (true) {
+					List<ExternalEvent> events = reader.readEvents(nrof);
+					if (events.size() == 0) {
+						break;
+					}
+					batches.put(events);
+					if (horizon > 0) {
+						nrof = nextBatchSize(events, nrof);
+					}
+				}
+			} catch (InterruptedException e) {
+				reader.close();
+				return; // stopped
+			} catch (Throwable t) {
+				this.error = t;
+			}
+
+			reader.close();
+			try {
+				batches.put(END_OF_EVENTS);
+			} catch (InterruptedException e) {
+				// stopped
+			}
+		}
+
+		/**
+		 * Returns the size of the next batch so that it covers about the
+		 * horizon with the event rate of the previous batch
+		 */
+		private int nextBatchSize(List<ExternalEvent> events, int nrof) {
+			double span = events.get(events.size() - 1).getTime() -
+				events.get(0).getTime();
+			double size = (span > 0 ? events.size() * horizon / span :
+				nrof * 2.0);
+			return (int)Math.max(MIN_BATCH, Math.min(MAX_BATCH, size));
+		}
+
+		/**
+		 * Returns the next batch of events, waiting for it if it isn't
+		 * read yet
+		 * @return The batch or {@link ExternalEventsQueue#END_OF_EVENTS} if
+		 * all the events have been read
+		 */
+		public List<ExternalEvent> nextBatch() {
+			List<ExternalEvent> events;
+			try {
+				events = batches.take();
+			} catch (InterruptedException e) {
+				throw new SimError("Interrupted while waiting for events " +
+						"from " + eventsFile);
+			}
+			if (events == END_OF_EVENTS && error != null) {
+				if (error instanceof SimError) {
+					throw (SimError)error;
+				}
+				throw new SimError("Reading events from " + eventsFile +
+						" failed: " + error, null);
+			}
+			return events;
+		}
+	}
 }
@@ -5,11 +5,14 @@
 package input;
 
 import java.io.File;
-import java.io.FileNotFoundException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.Charset;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.List;
-import java.util.Scanner;
 
+import util.CompressedStreams;
 import util.Tuple;
 
 import core.Coord;
@@ -35,13 +38,43 @@ import core.SettingsError;
  * All lines must be sorted by time. Sampling interval (time difference between
  * two time instances) must be same for the whole file.
  * </P>
+ * <P>
+ * The file is parsed in a single pass straight from the read buffer: the
+ * numbers are parsed from the bytes and the node IDs are interned (looked
+ * up by their bytes) so that no objects are created per line.
+ * </P>
  */
-public class ExternalMovementReader {
+public class ExternalMovementReader implements MovementTraceReader {
 	/* Prefix for comment lines (lines starting with this are ignored) */
 	public static final String COMMENT_PREFIX = "#";
-	private Scanner scanner;
+	private static final Charset UTF8 = Charset.forName("UTF-8");
+
+	private InputStream in;
+	private String fileName;
+
+	/** the lines of the file */
+	private AsciiLineScanner lines;
+
+	/* the first line of the next step (not normalized) */
+	private boolean hasPending;
+	private double pendingTime;
+	private int pendingId;
+	private double pendingX;
+	private double pendingY;
+
+	/* locations of the last step */
+	private int nrofMoves;
+	private int[] moveIds;
+	private double[] moveXs;
+	private double[] moveYs;
+
+	/* the interned IDs: open addressing table of (index + 1)s */
+	private String[] ids;
+	private byte[][] idBytes;
+	private int nrofIds;
+	private int[] idTable;
+
 	private double lastTimeStamp = -1;
-	private String lastLine;
 	private double minTime;
 	private double maxTime;
 	private double minX;
@@ -59,28 +92,37 @@ public class ExternalMovementReader {
 	public ExternalMovementReader(String inFilePath) {
 		this.normalize = true;
 		File inFile = new File(inFilePath);
+		this.fileName = inFile.getPath();
 		try {
-			scanner = new Scanner(inFile);
-		} catch (FileNotFoundException e) {
-			throw new SettingsError("Couldn't find external movement input " +
-					"file " + inFile);
+			in = CompressedStreams.openInput(inFile);
+		} catch (IOException e) {
+			throw new SettingsError("Couldn't read external movement input " +
+					"file " + inFile + ": " + e.getMessage());
+		}
+		this.lines = new AsciiLineScanner(in);
+		this.moveIds = new int[64];
+		this.moveXs = new double[64];
+		this.moveYs = new double[64];
+		this.ids = new String[64];
+		this.idBytes = new byte[64][];
+		this.idTable = new int[128];
+
+		if (!nextLine()) {
+			throw new SettingsError("No offset line in " + fileName);
 		}
-
-		String offsets = scanner.nextLine();
-
 		try {
-			Scanner lineScan = new Scanner(offsets);
-			minTime = lineScan.nextDouble();
-			maxTime = lineScan.nextDouble();
-			minX = lineScan.nextDouble();
-			maxX = lineScan.nextDouble();
-			minY = lineScan.nextDouble();
-			maxY = lineScan.nextDouble();
-		} catch (Exception e) {
-			throw new SettingsError("Invalid offset line '" + offsets + "'");
+			minTime = nextNumber();
+			maxTime = nextNumber();
+			minX = nextNumber();
+			maxX = nextNumber();
+			minY = nextNumber();
+			maxY = nextNumber();
+		} catch (NumberFormatException e) {
+			throw new SettingsError("Invalid offset line '" + lineString() +
+					"'");
 		}
 
-		lastLine = scanner.nextLine();
+		readPending();
 	}
 
 	/**
@@ -102,58 +144,180 @@ public class ExternalMovementReader {
 		ArrayList<Tuple<String, Coord>> moves =
 			new ArrayList<Tuple<String, Coord>>();
 
-		if (!scanner.hasNextLine()) {
+		if (!readNextStep()) {
 			return moves;
 		}
 
-		Scanner lineScan = new Scanner(lastLine);
-		double time = lineScan.nextDouble();
-		String id = lineScan.next();
-		double x = lineScan.nextDouble();
-		double y = lineScan.nextDouble();
+		for (int i=0; i<nrofMoves; i++) {
+			moves.add(new Tuple<String, Coord>(ids[moveIds[i]],
+					new Coord(moveXs[i], moveYs[i])));
+		}
+		return moves;
+	}
+
+	/**
+	 * Reads the locations of the next time instance
+	 * @return true if a step was read, false if there were no more moves
+	 * @throws SettingError if an invalid line was read
+	 */
+	public boolean readNextStep() {
+		nrofMoves = 0;
+		if (!hasPending) {
+			return false;
+		}
 
+		double time = normalizedTime(pendingTime);
+		do {
+			addMove(pendingId, pendingX, pendingY);
+			readPending();
+		} while (hasPending && normalizedTime(pendingTime) == time);
+
+		lastTimeStamp = time;
+		return true;
+	}
+
+	private double normalizedTime(double time) {
+		return normalize ? time - minTime : time;
+	}
+
+	private void addMove(int id, double x, double y) {
+		if (nrofMoves == moveIds.length) {
+			int size = nrofMoves * 2;
+			moveIds = Arrays.copyOf(moveIds, size);
+			moveXs = Arrays.copyOf(moveXs, size);
+			moveYs = Arrays.copyOf(moveYs, size);
+		}
 		if (normalize) {
-			time -= minTime;
 			x -= minX;
 			y -= minY;
 		}
+		moveIds[nrofMoves] = id;
+		moveXs[nrofMoves] = x;
+		moveYs[nrofMoves] = y;
+		nrofMoves++;
+	}
 
-		lastTimeStamp = time;
+	/**
+	 * Reads the next location line (skipping empty and comment lines) to
+	 * the pending location
+	 */
+	private void readPending() {
+		while (nextLine()) {
+			int lineStart = lines.getLineStart();
+			if (lines.getLineEnd() > lineStart &&
+					lines.getBuffer()[lineStart] == '#') {
+				continue; /* comment line */
+			}
+			if (!lines.nextToken()) {
+				continue; /* empty line */
+			}
+			try {
+				lines.rewind(); /* the time is the first token */
+				pendingTime = nextNumber();
+				if (!lines.nextToken()) {
+					throw new NumberFormatException();
+				}
+				pendingId = internToken();
+				pendingX = nextNumber();
+				pendingY = nextNumber();
+			} catch (NumberFormatException e) {
+				throw new SettingsError("Invalid line '" + lineString() +
+						"' in " + fileName);
+			}
+			hasPending = true;
+			return;
+		}
+		hasPending = false;
+	}
 
-		while (scanner.hasNextLine() && lastTimeStamp == time) {
-			lastLine = scanner.nextLine();
+	/**
+	 * Moves to the next token and parses it as a decimal number
+	 * @throws NumberFormatException if there was no valid number
+	 */
+	private double nextNumber() {
+		if (!lines.nextToken()) {
+			throw new NumberFormatException();
+		}
+		return AsciiNumbers.parseDouble(lines.getBuffer(),
+				lines.getTokenStart(), lines.getTokenEnd());
+	}
 
-			if (lastLine.trim().length() == 0 ||
-					lastLine.startsWith(COMMENT_PREFIX)) {
-				continue; /* skip empty and comment lines */
+	/**
+	 * Returns the index of the ID in the current token, interning the ID
+	 * if it hasn't been seen before
+	 */
+	private int internToken() {
+		byte[] buf = lines.getBuffer();
+		int tokStart = lines.getTokenStart();
+		int tokEnd = lines.getTokenEnd();
+		int len = tokEnd - tokStart;
+		int hash = len;
+		for (int i=tokStart; i<tokEnd; i++) {
+			hash = 31 * hash + buf[i];
+		}
+		int mask = idTable.length - 1;
+		int slot = (hash ^ (hash >>> 16)) & mask;
+		while (idTable[slot] != 0) {
+			int index = idTable[slot] - 1;
+			byte[] bytes = idBytes[index];
+			if (bytes.length == len) {
+				int i = 0;
+				while (i < len && bytes[i] == buf[tokStart + i]) {
+					i++;
+				}
+				if (i == len) {
+					return index;
+				}
 			}
+			slot = (slot + 1) & mask;
+		}
 
-			// add previous line's tuple
-			moves.add(new Tuple<String, Coord>(id, new Coord(x,y)));
-
-			lineScan = new Scanner(lastLine);
+		if (nrofIds == ids.length) {
+			ids = Arrays.copyOf(ids, nrofIds * 2);
+			idBytes = Arrays.copyOf(idBytes, nrofIds * 2);
+		}
+		int index = nrofIds++;
+		idBytes[index] = Arrays.copyOfRange(buf, tokStart, tokEnd);
+		ids[index] = new String(idBytes[index], UTF8);
+		idTable[slot] = index + 1;
+		if (nrofIds * 2 > idTable.length) {
+			rehashIds();
+		}
+		return index;
+	}
 
-			try {
-				time = lineScan.nextDouble();
-				id = lineScan.next();
-				x = lineScan.nextDouble();
-				y = lineScan.nextDouble();
-			} catch (Exception e) {
-				throw new SettingsError("Invalid line '" + lastLine + "'");
+	private void rehashIds() {
+		idTable = new int[idTable.length * 2];
+		int mask = idTable.length - 1;
+		for (int index=0; index<nrofIds; index++) {
+			byte[] bytes = idBytes[index];
+			int hash = bytes.length;
+			for (byte b : bytes) {
+				hash = 31 * hash + b;
 			}
-
-			if (normalize) {
-				time -= minTime;
-				x -= minX;
-				y -= minY;
+			int slot = (hash ^ (hash >>> 16)) & mask;
+			while (idTable[slot] != 0) {
+				slot = (slot + 1) & mask;
 			}
+			idTable[slot] = index + 1;
 		}
+	}
 
-		if (!scanner.hasNextLine()) {	// add the last tuple of the file
-			moves.add(new Tuple<String, Coord>(id, new Coord(x,y)));
-		}
+	private String lineString() {
+		return lines.lineString(UTF8);
+	}
 
-		return moves;
+	/**
+	 * Moves to the next line of the file
+	 * @return true if there was a line, false if the file ended
+	 */
+	private boolean nextLine() {
+		try {
+			return lines.nextLine();
+		} catch (IOException e) {
+			throw new SettingsError("Reading external movement file " +
+					fileName + " failed: " + e.getMessage());
+		}
 	}
 
 	/**
@@ -165,6 +329,30 @@ public class ExternalMovementReader {
 		return lastTimeStamp;
 	}
 
+	public int getNrofMoves() {
+		return nrofMoves;
+	}
+
+	public int getMoveId(int i) {
+		return moveIds[i];
+	}
+
+	public double getMoveX(int i) {
+		return moveXs[i];
+	}
+
+	public double getMoveY(int i) {
+		return moveYs[i];
+	}
+
+	public int getNrofIds() {
+		return nrofIds;
+	}
+
+	public String getId(int index) {
+		return ids[index];
+	}
+
 	/**
 	 * Returns offset maxTime
 	 * @return the maxTime
@@ -213,4 +401,10 @@ public class ExternalMovementReader {
 		return minY;
 	}
 
+	public void close() {
+		try {
+			in.close();
+		} catch (IOException e) {}
+	}
+
 }
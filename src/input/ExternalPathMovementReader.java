@@ -7,11 +7,18 @@ package input;
 
 import java.io.BufferedReader;
 import java.io.File;
-import java.io.FileNotFoundException;
-import java.io.FileReader;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
 import java.io.IOException;
+import java.io.InputStream;
 import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.HashMap;
 import java.util.LinkedList;
 import java.util.List;
@@ -20,7 +27,10 @@ import java.util.Scanner;
 import java.util.zip.ZipEntry;
 import java.util.zip.ZipFile;
 
+import util.CompressedStreams;
+import core.DTNSim;
 import core.SettingsError;
+import core.SimError;
 
 
 /**
@@ -46,8 +56,18 @@ import core.SettingsError;
  * </p>
  *
  * <p>Trace and activity files ending in .zip are assumed to be
- * compressed and will be automatically uncompressed during reading. The whole
- * trace is loaded into memory at once.</p>
+ * compressed and will be automatically uncompressed during reading. Gzip
+ * compressed files are detected and uncompressed on the fly (see
+ * {@link CompressedStreams}). The whole trace is loaded into memory at
+ * once.</p>
+ *
+ * <p>In the streaming mode (see {@link #getStreamingInstance(String,
+ * String)}) the trace is only indexed when the reader is created: for every
+ * path (line) of a node the byte offset, length and start time are stored.
+ * The points of a path are read from the file and parsed to primitive arrays
+ * only when the path is needed (see {@link #readPath(int, int,
+ * PathPoints)}). Compressed trace files (.zip and .gz) are uncompressed to a
+ * temporary file for this.</p>
  *
  * @author teemuk
  *
@@ -56,6 +76,15 @@ public class ExternalPathMovementReader {
 	 // Singletons are evil, but I'm lazy
 	private static Map<String, ExternalPathMovementReader> singletons =
 		new HashMap<String, ExternalPathMovementReader>();
+	private static Map<String, ExternalPathMovementReader> streamingSingletons =
+		new HashMap<String, ExternalPathMovementReader>();
+	/** size of the read buffers */
+	private static final int BUFFER_SIZE = 1 << 16;
+
+	static {
+		DTNSim.registerForReset(
+				ExternalPathMovementReader.class.getCanonicalName());
+	}
 
 	/**
 	 * Represents a point on the path.
@@ -74,11 +103,49 @@ public class ExternalPathMovementReader {
 		public double end;
 	}
 
+	/**
+	 * Points of one path in primitive arrays (reused between the paths)
+	 */
+	public static class PathPoints {
+		/** number of points in the path */
+		public int size;
+		public double[] time = new double[16];
+		public double[] x = new double[16];
+		public double[] y = new double[16];
+
+		private void add(double time, double x, double y) {
+			if (size == this.time.length) {
+				this.time = Arrays.copyOf(this.time, size * 2);
+				this.x = Arrays.copyOf(this.x, size * 2);
+				this.y = Arrays.copyOf(this.y, size * 2);
+			}
+			this.time[size] = time;
+			this.x[size] = x;
+			this.y[size] = y;
+			size++;
+		}
+	}
+
 	// Path cache
 	private List<List<List<Entry>>> paths = null;
 	// Activity cache
 	private List<List<ActiveTime>> activeTimes = null;
 
+	// Path index of the streaming mode (by node ID and path)
+	private boolean streaming;
+	private FileChannel traceChannel;
+	/** uncompressed copy of a compressed trace (null if not needed) */
+	private File tmpFile;
+	private String traceName;
+	private int[] nrofPaths;
+	private long[][] pathOffsets;
+	private int[][] pathLengths;
+	private double[][] pathStarts;
+	/** buffer for reading a path from the file */
+	private byte[] lineBuf;
+	/** tokenizer of the paths read from the file */
+	private AsciiLineScanner pathTokens;
+
 	// Settings
 	private boolean normalize = true;
 	private double minTime;
@@ -116,12 +183,12 @@ public class ExternalPathMovementReader {
 						new InputStreamReader(zf.getInputStream(ze)));
 				traceSize = ze.getSize();
 			} else {
-				reader = new BufferedReader(
-					new FileReader(traceFilePath));
+				reader = new BufferedReader(new InputStreamReader(
+						CompressedStreams.openInput(inFile)), BUFFER_SIZE);
 			}
-		} catch (FileNotFoundException e1) {
-			throw new SettingsError("Couldn't find external movement input " +
-					"file " + inFile);
+		} catch (IOException e1) {
+			throw new SettingsError("Couldn't read external movement input " +
+					"file " + inFile + ": " + e1.getMessage());
 		}
 
 		/*Scanner scanner = null;
@@ -154,7 +221,7 @@ public class ExternalPathMovementReader {
 		// Initialize path cache
 		this.paths = new ArrayList<List<List<Entry>>>(this.maxID + 1);
 		for (int i=0; i<=this.maxID; i++) {
-			this.paths.add(i, new LinkedList<List<Entry>>());
+			this.paths.add(i, new ArrayList<List<Entry>>());
 		}
 
 		// Parse traces
@@ -177,7 +244,7 @@ public class ExternalPathMovementReader {
 			Scanner traceScan = new Scanner(line);
 			int id = traceScan.nextInt();
 			List<List<Entry>> paths = this.paths.get(id);
-			List<Entry> path = new LinkedList<Entry>();
+			List<Entry> path = new ArrayList<Entry>();
 			while (traceScan.hasNext()) {
 				String dataPoint = traceScan.next();
 				int d1 = dataPoint.indexOf(',');
@@ -201,9 +268,175 @@ public class ExternalPathMovementReader {
 			line = reader.readLine();
 		}
 
-		// Parse activity times
-		inFile = new File(activityFilePath);
-		reader = null;
+		readActivityTimes(activityFilePath);
+	}
+
+	/**
+	 * Creates a new reader without reading anything (for the streaming mode)
+	 */
+	private ExternalPathMovementReader() { }
+
+	/**
+	 * Indexes the trace file for the streaming mode: stores the offset,
+	 * length and start time of every path
+	 * @param traceFilePath	path to the trace file
+	 */
+	private void indexTrace(String traceFilePath) throws IOException {
+		File inFile = new File(traceFilePath);
+		if (!inFile.exists()) {
+			throw new SettingsError("Couldn't find external movement input " +
+					"file " + inFile);
+		}
+		if (traceFilePath.endsWith(".zip") ||
+				CompressedStreams.isGzipFile(inFile)) {
+			inFile = uncompress(traceFilePath);
+			this.tmpFile = inFile;
+		}
+		this.streaming = true;
+		this.traceName = traceFilePath;
+		this.lineBuf = new byte[1024];
+		this.pathTokens = new AsciiLineScanner();
+
+		InputStream in = new FileInputStream(inFile);
+		try {
+			AsciiLineScanner lines = new AsciiLineScanner(in);
+			if (!lines.nextLine()) {
+				throw new SettingsError("No offset line found.");
+			}
+			parseIndexHeader(lines);
+			while (lines.nextLine()) {
+				indexPath(lines);
+			}
+		} finally {
+			in.close();
+		}
+
+		this.traceChannel = new RandomAccessFile(inFile, "r").getChannel();
+	}
+
+	/**
+	 * Parses the offset line of the trace in the streaming mode
+	 */
+	private void parseIndexHeader(AsciiLineScanner lines) {
+		byte[] buf = lines.getBuffer();
+		try {
+			lines.nextToken();
+			this.maxID = AsciiNumbers.parseInt(buf, lines.getTokenStart(),
+					lines.getTokenEnd());
+			double[] values = new double[6];
+			for (int i=0; i<values.length; i++) {
+				if (!lines.nextToken()) {
+					throw new NumberFormatException();
+				}
+				values[i] = AsciiNumbers.parseDouble(buf,
+						lines.getTokenStart(), lines.getTokenEnd());
+			}
+			this.minTime = values[0];
+			this.maxTime = values[1];
+			this.minX = values[2];
+			this.maxX = values[3];
+			this.minY = values[4];
+			this.maxY = values[5];
+		} catch (NumberFormatException e) {
+			throw new SettingsError("Invalid offset line '" +
+					lines.lineString(Charset.defaultCharset()) + "'");
+		}
+
+		this.nrofPaths = new int[this.maxID + 1];
+		this.pathOffsets = new long[this.maxID + 1][];
+		this.pathLengths = new int[this.maxID + 1][];
+		this.pathStarts = new double[this.maxID + 1][];
+	}
+
+	/**
+	 * Adds a path (a line of the trace) to the index of the streaming mode.
+	 * Empty lines and lines without any points are skipped.
+	 */
+	private void indexPath(AsciiLineScanner lines) {
+		byte[] buf = lines.getBuffer();
+		if (!lines.nextToken()) {
+			return; // Skip empty lines
+		}
+		int id;
+		double time;
+		try {
+			id = AsciiNumbers.parseInt(buf, lines.getTokenStart(),
+					lines.getTokenEnd());
+			if (!lines.nextToken()) {
+				return;
+			}
+			int comma = lines.getTokenStart();
+			while (comma < lines.getTokenEnd() && buf[comma] != ',') {
+				comma++;
+			}
+			time = AsciiNumbers.parseDouble(buf, lines.getTokenStart(),
+					comma);
+		} catch (NumberFormatException e) {
+			throw new SettingsError("Invalid line '" +
+					lines.lineString(Charset.defaultCharset()) + "' in " + traceName);
+		}
+		if (id < 0 || id > this.maxID) {
+			throw new SettingsError("Invalid node ID " + id + " in " +
+					traceName + " (max ID " + this.maxID + ")");
+		}
+		if (this.normalize) {
+			time -= this.minTime;
+		}
+
+		int n = nrofPaths[id];
+		if (n == 0) {
+			pathOffsets[id] = new long[4];
+			pathLengths[id] = new int[4];
+			pathStarts[id] = new double[4];
+		} else if (n == pathOffsets[id].length) {
+			pathOffsets[id] = Arrays.copyOf(pathOffsets[id], n * 2);
+			pathLengths[id] = Arrays.copyOf(pathLengths[id], n * 2);
+			pathStarts[id] = Arrays.copyOf(pathStarts[id], n * 2);
+		}
+		pathOffsets[id][n] = lines.getLineOffset();
+		pathLengths[id][n] = lines.getLineEnd() - lines.getLineStart();
+		pathStarts[id][n] = time;
+		nrofPaths[id]++;
+	}
+
+	/**
+	 * Uncompresses a .zip (the first entry) or a .gz file to a temporary
+	 * file
+	 * @param path Path of the compressed file
+	 * @return The temporary file
+	 */
+	private static File uncompress(String path) throws IOException {
+		InputStream in;
+		if (path.endsWith(".zip")) {
+			ZipFile zf = new ZipFile(path);
+			in = zf.getInputStream(zf.entries().nextElement());
+		} else {
+			in = CompressedStreams.openInput(new File(path));
+		}
+		File tmp = File.createTempFile("pathtrace", ".txt");
+		tmp.deleteOnExit();
+		OutputStream out = new FileOutputStream(tmp);
+		try {
+			byte[] buf = new byte[BUFFER_SIZE];
+			int n;
+			while ((n = in.read(buf)) > 0) {
+				out.write(buf, 0, n);
+			}
+		} finally {
+			in.close();
+			out.close();
+		}
+		return tmp;
+	}
+
+	/**
+	 * Parses the activity times
+	 * @param activityFilePath	path to the activity file
+	 */
+	private void readActivityTimes(String activityFilePath)
+			throws IOException {
+		File inFile = new File(activityFilePath);
+		BufferedReader reader = null;
 		try {
 			if (activityFilePath.endsWith(".zip")) {
 				// Grab the first entry from the zip file
@@ -213,12 +446,12 @@ public class ExternalPathMovementReader {
 				reader = new BufferedReader(
 						new InputStreamReader(zf.getInputStream(ze)));
 			} else {
-				reader = new BufferedReader(
-					new FileReader(activityFilePath));
+				reader = new BufferedReader(new InputStreamReader(
+						CompressedStreams.openInput(inFile)), BUFFER_SIZE);
 			}
-		} catch (FileNotFoundException e) {
-			throw new SettingsError("Couldn't find external activity input " +
-					"file " + inFile);
+		} catch (IOException e) {
+			throw new SettingsError("Couldn't read external activity input " +
+					"file " + inFile + ": " + e.getMessage());
 		}
 
 		// Init activity cache
@@ -228,7 +461,7 @@ public class ExternalPathMovementReader {
 		}
 
 		// Parse the file
-		line = reader.readLine();
+		String line = reader.readLine();
 		while (line != null) {
 			Scanner traceScan = new Scanner(line);
 			int id = traceScan.nextInt();
@@ -255,9 +488,108 @@ public class ExternalPathMovementReader {
 	 * @return		full path for the node.
 	 */
 	public List<List<ExternalPathMovementReader.Entry>> getPaths(int ID) {
+		if (this.streaming) {
+			throw new SimError("The paths of a streaming reader can only " +
+					"be read with readPath");
+		}
 		return this.paths.get(ID);
 	}
 
+	/**
+	 * Returns the number of paths of a node
+	 * @param ID	ID of the node
+	 * @return		number of paths of the node
+	 */
+	public int getNrofPaths(int ID) {
+		if (this.streaming) {
+			return ID < this.nrofPaths.length ? this.nrofPaths[ID] : 0;
+		}
+		return this.paths.get(ID).size();
+	}
+
+	/**
+	 * Returns the start time (time of the first point) of a path
+	 * @param ID	ID of the node
+	 * @param path	index of the path
+	 * @return		start time of the path
+	 */
+	public double getPathStart(int ID, int path) {
+		if (this.streaming) {
+			return this.pathStarts[ID][path];
+		}
+		return this.paths.get(ID).get(path).get(0).time;
+	}
+
+	/**
+	 * Reads the points of a path. In the streaming mode the path is read
+	 * and parsed from the trace file.
+	 * @param ID		ID of the node
+	 * @param path		index of the path
+	 * @param points	where the points are stored (old points are cleared)
+	 * @return			the points
+	 */
+	public PathPoints readPath(int ID, int path, PathPoints points) {
+		points.size = 0;
+		if (!this.streaming) {
+			for (Entry e : this.paths.get(ID).get(path)) {
+				points.add(e.time, e.x, e.y);
+			}
+			return points;
+		}
+
+		int len = this.pathLengths[ID][path];
+		if (len > this.lineBuf.length) {
+			this.lineBuf = new byte[Math.max(len, this.lineBuf.length * 2)];
+		}
+		byte[] buf = this.lineBuf;
+		ByteBuffer bb = ByteBuffer.wrap(buf, 0, len);
+		long offset = this.pathOffsets[ID][path];
+		try {
+			while (bb.hasRemaining()) {
+				if (traceChannel.read(bb, offset + bb.position()) < 0) {
+					throw new IOException("unexpected end of file");
+				}
+			}
+		} catch (IOException e) {
+			throw new SimError("Can't read path " + path + " of node " + ID +
+					" from " + this.traceName + ": " + e.getMessage(), e);
+		}
+
+		AsciiLineScanner tokens = this.pathTokens;
+		tokens.setLine(buf, 0, len);
+		tokens.nextToken(); /* the ID */
+		try {
+			while (tokens.nextToken()) {
+				int start = tokens.getTokenStart();
+				int end = tokens.getTokenEnd();
+				int d1 = start;
+				while (d1 < end && buf[d1] != ',') {
+					d1++;
+				}
+				int d2 = d1 + 1;
+				while (d2 < end && buf[d2] != ',') {
+					d2++;
+				}
+				if (d2 >= end) {
+					throw new NumberFormatException();
+				}
+				double t = AsciiNumbers.parseDouble(buf, start, d1);
+				double x = AsciiNumbers.parseDouble(buf, d1 + 1, d2);
+				double y = AsciiNumbers.parseDouble(buf, d2 + 1, end);
+				if (this.normalize) {
+					t -= this.minTime;
+					x -= this.minX;
+					y -= this.minY;
+				}
+				points.add(t, x, y);
+			}
+		} catch (RuntimeException e) {
+			throw new SimError("Invalid path '" + new String(buf, 0, len) +
+					"' in " + this.traceName);
+		}
+		return points;
+	}
+
 	/**
 	 * Returns the active time for the given ID.
 	 *
@@ -351,4 +683,66 @@ public class ExternalPathMovementReader {
 		}
 		return ExternalPathMovementReader.singletons.get(traceFilePath);
 	}
+
+	/**
+	 * Get a streaming instance of the reader for the given file path. The
+	 * trace file is only indexed and the paths are read when they are
+	 * needed. Like with {@link #getInstance(String, String)}, a file is
+	 * indexed only once.
+	 *
+	 * @param traceFilePath path where the trace file is read from
+	 * @param activeFilePath path where the activity file is read from
+	 * @return streaming instance of the reader for the given trace file
+	 */
+	public static ExternalPathMovementReader getStreamingInstance(
+			String traceFilePath, String activeFilePath) {
+		ExternalPathMovementReader reader =
+			streamingSingletons.get(traceFilePath);
+		if (reader == null) {
+			reader = new ExternalPathMovementReader();
+			try {
+				reader.indexTrace(traceFilePath);
+				reader.readActivityTimes(activeFilePath);
+			} catch (IOException e) {
+				reader.close();
+				throw new SettingsError("Can't read external movement trace " +
+						traceFilePath + ": " + e.getMessage());
+			} catch (SettingsError e) {
+				reader.close();
+				throw e;
+			}
+			streamingSingletons.put(traceFilePath, reader);
+		}
+		return reader;
+	}
+
+	/**
+	 * Closes the trace file of a streaming reader and deletes the
+	 * uncompressed copy of the trace (if any)
+	 */
+	private void close() {
+		if (this.traceChannel != null) {
+			try {
+				this.traceChannel.close();
+			} catch (IOException e) {
+				/* nothing is written */
+			}
+			this.traceChannel = null;
+		}
+		if (this.tmpFile != null) {
+			this.tmpFile.delete();
+			this.tmpFile = null;
+		}
+	}
+
+	/**
+	 * Closes the streaming readers and forgets them so the traces are
+	 * indexed again for the next run
+	 */
+	public static void reset() {
+		for (ExternalPathMovementReader reader : streamingSingletons.values()) {
+			reader.close();
+		}
+		streamingSingletons.clear();
+	}
 }
@@ -0,0 +1,110 @@
+/*
+ * Copyright 2010 Aalto University, ComNet
+ * Released under GPLv3. See LICENSE.txt for details.
+ */
+package input;
+
+/**
+ * Interface for readers of node location traces (see
+ * {@link movement.ExternalMovement}). The trace is read one time instance
+ * (step) at a time; the locations of the step are available through the
+ * getters until the next step is read. The node IDs of the trace are
+ * interned: every distinct ID gets an index (in the order of the first
+ * appearance) that stays the same for the whole trace.
+ */
+public interface MovementTraceReader {
+
+	/**
+	 * Reads the locations of the next time instance
+	 * @return true if a step was read, false if there were no more steps
+	 */
+	public boolean readNextStep();
+
+	/**
+	 * Returns the time stamp of the last step read with
+	 * {@link #readNextStep()}
+	 * @return The time stamp
+	 */
+	public double getLastTimeStamp();
+
+	/**
+	 * Returns the number of locations in the last step
+	 * @return the number of locations in the last step
+	 */
+	public int getNrofMoves();
+
+	/**
+	 * Returns the index of the node ID of a location of the last step
+	 * @param i Index of the location in the step
+	 * @return The index of the node ID (see {@link #getId(int)})
+	 */
+	public int getMoveId(int i);
+
+	/**
+	 * Returns the x coordinate of a location of the last step
+	 * @param i Index of the location in the step
+	 * @return The x coordinate
+	 */
+	public double getMoveX(int i);
+
+	/**
+	 * Returns the y coordinate of a location of the last step
+	 * @param i Index of the location in the step
+	 * @return The y coordinate
+	 */
+	public double getMoveY(int i);
+
+	/**
+	 * Returns the number of distinct node IDs read so far
+	 * @return the number of distinct node IDs read so far
+	 */
+	public int getNrofIds();
+
+	/**
+	 * Returns the node ID that has the given index
+	 * @param index The index of the ID
+	 * @return The node ID
+	 */
+	public String getId(int index);
+
+	/**
+	 * Returns offset minTime
+	 * @return the minTime
+	 */
+	public double getMinTime();
+
+	/**
+	 * Returns offset maxTime
+	 * @return the maxTime
+	 */
+	public double getMaxTime();
+
+	/**
+	 * Returns offset minX
+	 * @return the minX
+	 */
+	public double getMinX();
+
+	/**
+	 * Returns offset maxX
+	 * @return the maxX
+	 */
+	public double getMaxX();
+
+	/**
+	 * Returns offset minY
+	 * @return the minY
+	 */
+	public double getMinY();
+
+	/**
+	 * Returns offset maxY
+	 * @return the maxY
+	 */
+	public double getMaxY();
+
+	/**
+	 * Closes the input file
+	 */
+	public void close();
+}
@@ -4,11 +4,10 @@
  */
 package input;
 
-import java.io.BufferedReader;
 import java.io.File;
-import java.io.FileNotFoundException;
-import java.io.FileReader;
 import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.Charset;
 import java.lang.Integer;
 import java.lang.NumberFormatException;
 import java.util.ArrayList;
@@ -16,6 +15,7 @@ import java.util.List;
 import java.util.Scanner;
 import java.util.regex.Pattern;
 
+import util.CompressedStreams;
 import core.SimError;
 
 /**
@@ -66,157 +66,512 @@ public class StandardEventsReader implements ExternalEventsReader {
 	/** Message identifier to use to refer to all messages ({@value}) */
 	public static final String ALL_MESSAGES_ID = "*";
 
-	//private Scanner scanner;
-	private BufferedReader reader;
+	/** number of slots in the message ID cache */
+	private static final int ID_CACHE_SIZE = 1 << 12;
+	/** lines that are skipped: empty and comment lines */
+	private static final Pattern SKIP_PATTERN =
+		Pattern.compile("(#.*)|(^\\s*$)");
+	private static final Charset ASCII = Charset.forName("US-ASCII");
 
+	/* return values of the fast parser */
+	private static final int PARSED = 0;
+	private static final int SKIPPED = 1;
+	private static final int FAILED = 2;
+
+	private InputStream in;
+	private String fileName;
+	/** use the fast parser for the lines it can parse */
+	private boolean fastParsing;
+
+	/** the lines of the file */
+	private AsciiLineScanner lines;
+	/** buffer of the current line (see {@link AsciiLineScanner#getBuffer()}) */
+	private byte[] buf;
+	/** why the fast parser failed with the current line (null if not) */
+	private String failure;
+	/** recently parsed message IDs by the hash of their bytes */
+	private String[] idCache;
+
+	/**
+	 * Creates a new reader that parses the well formed lines with a fast
+	 * byte-level parser
+	 * @param eventsFile The file to read the events from
+	 */
 	public StandardEventsReader(File eventsFile){
+		this(eventsFile, true);
+	}
+
+	/**
+	 * Creates a new reader.
+	 * @param eventsFile The file to read the events from
+	 * @param fastParsing If true, the lines are parsed directly from the
+	 * bytes of the file; only the lines the fast parser doesn't understand
+	 * (e.g., malformed lines or unusual number formats) are parsed with the
+	 * general parser. If false, all the lines are parsed with the general
+	 * parser.
+	 */
+	public StandardEventsReader(File eventsFile, boolean fastParsing) {
 		try {
-			//this.scanner = new Scanner(eventsFile);
-			this.reader = new BufferedReader(new FileReader(eventsFile));
-		} catch (FileNotFoundException e) {
+			this.in = CompressedStreams.openInput(eventsFile);
+		} catch (IOException e) {
 			throw new SimError(e.getMessage(),e);
 		}
+		this.fileName = eventsFile.getPath();
+		this.fastParsing = fastParsing;
+		this.lines = new AsciiLineScanner(in);
+		this.idCache = new String[ID_CACHE_SIZE];
 	}
 
 
 	public List<ExternalEvent> readEvents(int nrof) {
 		ArrayList<ExternalEvent> events = new ArrayList<ExternalEvent>(nrof);
-		int eventsRead = 0;
-		// skip empty and comment lines
-		Pattern skipPattern = Pattern.compile("(#.*)|(^\\s*$)");
 
-		String line;
-		try {
-			line = this.reader.readLine();
-		} catch (IOException e1) {
-			throw new SimError("Reading from external event file failed.");
-		}
-		while (eventsRead < nrof && line != null) {
-			Scanner lineScan = new Scanner(line);
-			if (skipPattern.matcher(line).matches()) {
-				// skip empty and comment lines
-				try {
-					line = this.reader.readLine();
-				} catch (IOException e) {
-					throw new SimError("Reading from external event file " +
-							"failed.");
+		while (events.size() < nrof && nextLine()) {
+			if (fastParsing && lines.isLineAscii()) {
+				int result = parseFast(events);
+				if (result != FAILED) {
+					continue;
 				}
-				continue;
+			} else {
+				this.failure = null;
 			}
 
-			double time;
-			String action;
-			String msgId;
-			int hostAddr;
-			int host2Addr;
-
+			/* fall back to the general parser */
+			String line = lines.lineString(Charset.defaultCharset());
 			try {
-				time = lineScan.nextDouble();
-				action = lineScan.next();
-
-				if (action.equals(DROP)) {
-					msgId = lineScan.next();
-					hostAddr = getHostAddress(lineScan.next());
-					events.add(new MessageDeleteEvent(hostAddr, msgId,
-							time, true));
+				ExternalEvent ee = parseEvent(line);
+				if (ee != null) {
+					events.add(ee);
+				}
+			} catch (SimError e) {
+				throw new SimError(parseError(events.size() + 1, line) +
+						": " + e.getMessage(), e.getException());
+			} catch (Exception e) {
+				throw new SimError(parseError(events.size() + 1, line), e);
+			}
+		}
+
+		return events;
+	}
+
+	/**
+	 * Returns the description of an error in parsing the current line
+	 * @param eventNr Number of the event in this read
+	 * @param line The line
+	 * @return The description with the position of the error
+	 */
+	private String parseError(int eventNr, String line) {
+		return "Can't parse external event " + eventNr + " from '" + line +
+			"' (" + fileName + ":" + lines.getLineNr() +
+			(failure != null ? ", " + failure : "") + ")";
+	}
+
+	/**
+	 * Parses an event from a line with the general (Scanner based) parser
+	 * @param line The line to parse
+	 * @return The event or null if the line is an empty or a comment line
+	 * @throws Exception if the line can't be parsed
+	 */
+	private ExternalEvent parseEvent(String line) throws Exception {
+		if (SKIP_PATTERN.matcher(line).matches()) {
+			return null; // skip empty and comment lines
+		}
+
+		Scanner lineScan = new Scanner(line);
+		double time;
+		String action;
+		String msgId;
+		int hostAddr;
+		int host2Addr;
+
+		time = lineScan.nextDouble();
+		action = lineScan.next();
+
+		if (action.equals(DROP)) {
+			msgId = lineScan.next();
+			hostAddr = getHostAddress(lineScan.next());
+			return new MessageDeleteEvent(hostAddr, msgId, time, true);
+		}
+		else if (action.equals(REMOVE)) {
+			msgId = lineScan.next();
+			hostAddr = getHostAddress(lineScan.next());
+			return new MessageDeleteEvent(hostAddr, msgId, time, false);
+		}
+		else if (action.equals(CONNECTION)) {
+			String connEventType;
+			boolean isUp;
+			hostAddr = getHostAddress(lineScan.next());
+			host2Addr = getHostAddress(lineScan.next());
+			connEventType = lineScan.next();
+
+			String interfaceId = null;
+			if (lineScan.hasNext()) {
+				interfaceId = lineScan.next();
+			}
+
+			if (connEventType.equalsIgnoreCase(CONNECTION_UP)) {
+				isUp = true;
+			}
+			else if (connEventType.equalsIgnoreCase(CONNECTION_DOWN)) {
+				isUp = false;
+			}
+			else {
+				throw new SimError("Unknown up/down value '" +
+						connEventType + "'");
+			}
+
+			return new ConnectionEvent(hostAddr, host2Addr, interfaceId,
+					isUp, time);
+		}
+		else {
+			msgId = lineScan.next();
+			hostAddr = getHostAddress(lineScan.next());
+
+			host2Addr = getHostAddress(lineScan.next());
+
+			if (action.equals(CREATE)){
+				int size = 0;
+
+				if (lineScan.hasNextInt()){
+					size = lineScan.nextInt();
+				}
+				else if (lineScan.hasNext()){
+					size = convertToInteger(lineScan.next());
+				}else{
+					throw new Exception("Invalid number of columns for CREATE event");
 				}
-				else if (action.equals(REMOVE)) {
-					msgId = lineScan.next();
-					hostAddr = getHostAddress(lineScan.next());
-					events.add(new MessageDeleteEvent(hostAddr, msgId,
-							time, false));
+
+				int respSize = 0;
+				if (lineScan.hasNextInt()) {
+					respSize = lineScan.nextInt();
 				}
-				else if (action.equals(CONNECTION)) {
-					String connEventType;
-					boolean isUp;
-					hostAddr = getHostAddress(lineScan.next());
-					host2Addr = getHostAddress(lineScan.next());
-					connEventType = lineScan.next();
-
-					String interfaceId = null;
-					if (lineScan.hasNext()) {
-						interfaceId = lineScan.next();
-					}
-
-					if (connEventType.equalsIgnoreCase(CONNECTION_UP)) {
-						isUp = true;
-					}
-					else if (connEventType.equalsIgnoreCase(CONNECTION_DOWN)) {
-						isUp = false;
-					}
-					else {
-						throw new SimError("Unknown up/down value '" +
-								connEventType + "'");
-					}
-
-					ConnectionEvent ce = new ConnectionEvent(hostAddr,
-							host2Addr, interfaceId, isUp, time);
-
-					events.add(ce);
+				else if(lineScan.hasNext()) {
+					respSize = convertToInteger(lineScan.next());
 				}
-				else {
-					msgId = lineScan.next();
-					hostAddr = getHostAddress(lineScan.next());
-
-					host2Addr = getHostAddress(lineScan.next());
-
-					if (action.equals(CREATE)){
-						int size = 0;
-
-						if (lineScan.hasNextInt()){
-							size = lineScan.nextInt();
-						}
-						else if (lineScan.hasNext()){
-							size = convertToInteger(lineScan.next());
-						}else{
-							throw new Exception("Invalid number of columns for CREATE event");
-						}
-
-						int respSize = 0;
-						if (lineScan.hasNextInt()) {
-							respSize = lineScan.nextInt();
-						}
-						else if(lineScan.hasNext()) {
-							respSize = convertToInteger(lineScan.next());
-						}
-						events.add(new MessageCreateEvent(hostAddr, host2Addr,
-								msgId, size, respSize, time));
-					}
-					else {
-						int stage = -1;
-						if (action.equals(SEND)) {
-							stage = MessageRelayEvent.SENDING;
-						}
-						else if (action.equals(DELIVERED)) {
-							stage = MessageRelayEvent.TRANSFERRED;
-						}
-						else if (action.equals(ABORT)) {
-							stage = MessageRelayEvent.ABORTED;
-						}
-						else {
-							throw new SimError("Unknown action '" + action +
-								"' in external events");
-						}
-						events.add(new MessageRelayEvent(hostAddr, host2Addr,
-								msgId, time, stage));
-					}
+				return new MessageCreateEvent(hostAddr, host2Addr, msgId,
+						size, respSize, time);
+			}
+			else {
+				int stage = -1;
+				if (action.equals(SEND)) {
+					stage = MessageRelayEvent.SENDING;
 				}
-				// discard the newline in the end
-				if (lineScan.hasNextLine()) {
-					lineScan.nextLine(); // TODO: test
+				else if (action.equals(DELIVERED)) {
+					stage = MessageRelayEvent.TRANSFERRED;
 				}
-				eventsRead++;
-				if (eventsRead < nrof) {
-					line = this.reader.readLine();
+				else if (action.equals(ABORT)) {
+					stage = MessageRelayEvent.ABORTED;
 				}
-			} catch (Exception e) {
-				e.printStackTrace();
-				throw new SimError("Can't parse external event " +
-						(eventsRead+1) + " from '" + line + "'", e);
+				else {
+					throw new SimError("Unknown action '" + action +
+						"' in external events");
+				}
+				return new MessageRelayEvent(hostAddr, host2Addr, msgId,
+						time, stage);
 			}
 		}
+	}
 
-		return events;
+	/**
+	 * Parses the current line directly from the read buffer. Understands
+	 * the same well formed lines as {@link #parseEvent(String)} but only
+	 * plain decimal numbers. The only objects it creates are the event
+	 * and, for new message IDs, the ID string.
+	 * @param events The list to add the parsed event to
+	 * @return {@link #PARSED} if an event was added, {@link #SKIPPED} for
+	 * empty and comment lines, and {@link #FAILED} if the line must be
+	 * parsed with the general parser ({@link #failure} tells why)
+	 */
+	private int parseFast(List<ExternalEvent> events) {
+		AsciiLineScanner lines = this.lines;
+		this.failure = null;
+		int lineStart = lines.getLineStart();
+		if (lines.getLineEnd() > lineStart && buf[lineStart] == '#') {
+			return SKIPPED;
+		}
+		if (!lines.nextToken()) {
+			return SKIPPED; // only whitespace
+		}
+
+		double time = parseTime();
+		if (failure != null) {
+			return FAILED;
+		}
+		if (!lines.nextToken()) {
+			return fail("action missing");
+		}
+
+		int actionStart = lines.getTokenStart();
+		int actionLen = lines.getTokenEnd() - actionStart;
+		byte a0 = buf[actionStart];
+		byte a1 = actionLen > 1 ? buf[actionStart + 1] : 0;
+
+		if (actionLen == 4 && a0 == 'C' && a1 == 'O' &&
+				buf[actionStart + 2] == 'N' && buf[actionStart + 3] == 'N') {
+			int hostAddr = nextHostAddress();
+			int host2Addr = nextHostAddress();
+			if (failure != null) {
+				return FAILED;
+			}
+			if (!lines.nextToken()) {
+				return fail("up/down missing");
+			}
+			boolean isUp;
+			if (tokenEqualsIgnoreCase(CONNECTION_UP)) {
+				isUp = true;
+			} else if (tokenEqualsIgnoreCase(CONNECTION_DOWN)) {
+				isUp = false;
+			} else {
+				return fail("unknown up/down value");
+			}
+			String interfaceId = lines.nextToken() ? tokenString() : null;
+			events.add(new ConnectionEvent(hostAddr, host2Addr, interfaceId,
+					isUp, time));
+			return PARSED;
+		}
+
+		if (!lines.nextToken()) {
+			return fail("message ID missing");
+		}
+		String msgId = tokenString();
+		int hostAddr = nextHostAddress();
+		if (failure != null) {
+			return FAILED;
+		}
+
+		if (actionLen == 2 && a0 == 'D' && a1 == 'R') {
+			events.add(new MessageDeleteEvent(hostAddr, msgId, time, true));
+			return PARSED;
+		}
+		if (actionLen == 1 && a0 == 'R') {
+			events.add(new MessageDeleteEvent(hostAddr, msgId, time, false));
+			return PARSED;
+		}
+
+		int host2Addr = nextHostAddress();
+		if (failure != null) {
+			return FAILED;
+		}
+
+		if (actionLen == 1 && a0 == 'C') {
+			if (!lines.nextToken()) {
+				return fail("message size missing");
+			}
+			int size = parseSize();
+			int respSize = 0;
+			if (failure == null && lines.nextToken()) {
+				respSize = parseSize();
+			}
+			if (failure != null) {
+				return FAILED;
+			}
+			events.add(new MessageCreateEvent(hostAddr, host2Addr, msgId,
+					size, respSize, time));
+			return PARSED;
+		}
+
+		int stage;
+		if (actionLen == 1 && a0 == 'S') {
+			stage = MessageRelayEvent.SENDING;
+		} else if (actionLen == 2 && a0 == 'D' && a1 == 'E') {
+			stage = MessageRelayEvent.TRANSFERRED;
+		} else if (actionLen == 1 && a0 == 'A') {
+			stage = MessageRelayEvent.ABORTED;
+		} else {
+			return fail(actionStart, "unknown action");
+		}
+		events.add(new MessageRelayEvent(hostAddr, host2Addr, msgId, time,
+				stage));
+		return PARSED;
+	}
+
+	/**
+	 * Marks the fast parsing of the line failed at the current token
+	 * @param reason Why the parsing failed
+	 * @return {@link #FAILED}
+	 */
+	private int fail(String reason) {
+		return fail(lines.getTokenStart(), reason);
+	}
+
+	/**
+	 * Marks the fast parsing of the line failed at the given position
+	 * @param at Index of the byte where the parsing failed
+	 * @param reason Why the parsing failed
+	 * @return {@link #FAILED}
+	 */
+	private int fail(int at, String reason) {
+		this.failure = "column " + (at - lines.getLineStart() + 1) + ": " +
+			reason;
+		return FAILED;
+	}
+
+	/**
+	 * Parses the current token as a plain decimal number
+	 * (<code>[-]digits[.digits]</code>, see
+	 * {@link AsciiNumbers#parseDouble(byte[], int, int)}). Other forms are
+	 * left for the general parser.
+	 */
+	private double parseTime() {
+		int start = lines.getTokenStart();
+		int end = lines.getTokenEnd();
+		for (int i=start; i<end; i++) {
+			byte b = buf[i];
+			if ((b < '0' || b > '9') && b != '.' &&
+					!(i == start && b == '-')) {
+				fail("invalid time");
+				return 0;
+			}
+		}
+		try {
+			return AsciiNumbers.parseDouble(buf, start, end);
+		} catch (NumberFormatException e) {
+			fail("invalid time");
+			return 0;
+		}
+	}
+
+	/**
+	 * Parses the current token as a size: an integer with an optional unit
+	 * suffix (see {@link #convertToInteger(String)})
+	 */
+	private int parseSize() {
+		int tokStart = lines.getTokenStart();
+		int tokEnd = lines.getTokenEnd();
+		int i = tokStart;
+		long value = 0;
+		while (i < tokEnd && buf[i] >= '0' && buf[i] <= '9') {
+			value = value * 10 + (buf[i] - '0');
+			if (value > Integer.MAX_VALUE) {
+				fail("size too large");
+				return 0;
+			}
+			i++;
+		}
+		if (i == tokStart) {
+			fail("invalid size");
+			return 0;
+		}
+
+		int number = (int)value;
+		int unitLen = tokEnd - i;
+		if (unitLen == 0) {
+			return number;
+		}
+		byte u = buf[i];
+		int mult;
+		if (u == 'k') {
+			mult = 1000;
+		} else if (u == 'M') {
+			mult = 1000000;
+		} else if (u == 'G') {
+			mult = 1000000000;
+		} else {
+			fail("invalid size unit");
+			return 0;
+		}
+		if (unitLen == 3 && buf[i + 1] == 'i' && buf[i + 2] == 'B') {
+			mult = (u == 'k' ? 1024 : u == 'M' ? 1048576 : 1073741824);
+		} else if (unitLen != 1) {
+			fail("invalid size unit");
+			return 0;
+		}
+		return number * mult;
+	}
+
+	/**
+	 * Moves to the next token and parses a host address from it (see
+	 * {@link #getHostAddress(String)})
+	 */
+	private int nextHostAddress() {
+		if (failure != null) {
+			return -1;
+		}
+		if (!lines.nextToken()) {
+			fail("host ID missing");
+			return -1;
+		}
+		int tokStart = lines.getTokenStart();
+		int tokEnd = lines.getTokenEnd();
+		int i = tokEnd;
+		while (i > tokStart && buf[i - 1] >= '0' && buf[i - 1] <= '9') {
+			i--;
+		}
+		if (i == tokEnd || tokEnd - i > 9) {
+			fail("invalid host ID");
+			return -1;
+		}
+		for (int j=tokStart; j<i; j++) {
+			if (buf[j] >= '0' && buf[j] <= '9') {
+				fail("invalid host ID");
+				return -1;
+			}
+		}
+		int address = 0;
+		for (; i<tokEnd; i++) {
+			address = address * 10 + (buf[i] - '0');
+		}
+		return address;
+	}
+
+	private boolean tokenEqualsIgnoreCase(String s) {
+		int tokStart = lines.getTokenStart();
+		if (lines.getTokenEnd() - tokStart != s.length()) {
+			return false;
+		}
+		for (int i=0; i<s.length(); i++) {
+			if (Character.toLowerCase((char)buf[tokStart + i]) !=
+					Character.toLowerCase(s.charAt(i))) {
+				return false;
+			}
+		}
+		return true;
+	}
+
+	/**
+	 * Returns the current token as a string. Recently seen strings are
+	 * reused so that the events of the same message share the ID string.
+	 */
+	private String tokenString() {
+		int tokStart = lines.getTokenStart();
+		int tokEnd = lines.getTokenEnd();
+		int len = tokEnd - tokStart;
+		int hash = len;
+		for (int i=tokStart; i<tokEnd; i++) {
+			hash = 31 * hash + buf[i];
+		}
+		int slot = (hash ^ (hash >>> 16)) & (ID_CACHE_SIZE - 1);
+
+		String cached = idCache[slot];
+		if (cached != null && cached.length() == len) {
+			int i = 0;
+			while (i < len && cached.charAt(i) == buf[tokStart + i]) {
+				i++;
+			}
+			if (i == len) {
+				return cached;
+			}
+		}
+
+		String s = new String(buf, tokStart, len, ASCII);
+		idCache[slot] = s;
+		return s;
+	}
+
+	/**
+	 * Moves to the next line of the file
+	 * @return true if there was a line, false if the file ended
+	 */
+	private boolean nextLine() {
+		boolean hasLine;
+		try {
+			hasLine = lines.nextLine();
+		} catch (IOException e) {
+			throw new SimError("Reading from external event file " +
+					"failed.", e);
+		}
+		this.buf = lines.getBuffer();
+		return hasLine;
 	}
 
 	/**
@@ -244,7 +599,7 @@ public class StandardEventsReader implements ExternalEventsReader {
 
 	public void close() {
 		try {
-			this.reader.close();
+			this.in.close();
 		} catch (IOException e) {}
 	}
 
@@ -5,9 +5,9 @@
 package input;
 
 import java.io.File;
-import java.io.FileReader;
 import java.io.IOException;
 import java.io.Reader;
+import java.util.ArrayList;
 import java.util.Collection;
 import java.util.Hashtable;
 import java.util.List;
@@ -22,8 +22,18 @@ import core.Coord;
  * <STRONG>Note</STRONG>: Understands only <CODE>LINESTRING</CODE>s and
  * <CODE>MULTILINESTRING</CODE>s. Skips all <CODE>POINT</CODE> data.
  * Other data causes IOException.
+ * <P>The nodes are looked up by their coordinates with an open addressing
+ * hash table keyed by the bits of the coordinate values, so no
+ * {@link Coord#hashCode()} strings are created while reading. The
+ * coordinate to node map is built once when it is requested.</P>
  */
 public class WKTMapReader extends WKTReader {
+	/** the nodes in the order they were created */
+	private List<MapNode> nodeList;
+	/** indexes+1 of the nodes in nodeList by the hash of their location
+	 * (0 = empty slot) */
+	private int[] nodeTable;
+	/** map of the nodes (null if not built after the last change) */
 	private Hashtable<Coord, MapNode> nodes;
 	/** are all paths bidirectional */
 	private boolean bidirectionalPaths = true;
@@ -36,7 +46,8 @@ public class WKTMapReader extends WKTReader {
 	 */
 	public WKTMapReader(boolean bidi) {
 		this.bidirectionalPaths = bidi;
-		this.nodes = new Hashtable<Coord, MapNode>();
+		this.nodeList = new ArrayList<MapNode>();
+		this.nodeTable = new int[1024];
 	}
 
 	/**
@@ -52,7 +63,7 @@ public class WKTMapReader extends WKTReader {
 	 * @return the map nodes that were read in a collection
 	 */
 	public Collection<MapNode> getNodes() {
-		return this.nodes.values();
+		return getNodesHash().values();
 	}
 
 	/**
@@ -60,6 +71,13 @@ public class WKTMapReader extends WKTReader {
 	 * @return the original Map object that was used to read the map
 	 */
 	public Map<Coord, MapNode> getNodesHash() {
+		if (this.nodes == null) {
+			/* same insertion order -> same iteration order as always */
+			this.nodes = new Hashtable<Coord, MapNode>();
+			for (MapNode n : nodeList) {
+				this.nodes.put(n.getLocation(), n);
+			}
+		}
 		return this.nodes;
 	}
 
@@ -68,7 +86,7 @@ public class WKTMapReader extends WKTReader {
 	 * @return new a SimMap that is based on the read map
 	 */
 	public SimMap getMap() {
-		return new SimMap(this.nodes);
+		return new SimMap(getNodesHash());
 	}
 
 	/**
@@ -78,7 +96,7 @@ public class WKTMapReader extends WKTReader {
 	 * @throws IOException If something went wrong while reading the file
 	 */
 	public void addPaths(File file, int type) throws IOException {
-		addPaths(new FileReader(file), type);
+		addPaths(openReader(file), type);
 	}
 
 
@@ -135,11 +153,26 @@ public class WKTMapReader extends WKTReader {
 	private MapNode createOrUpdateNode(Coord c, MapNode previous) {
 		MapNode n = null;
 
-		n = nodes.get(c);	// try to get the node at that location
+		// try to get the node at that location
+		int mask = nodeTable.length - 1;
+		int slot = hash(c.getX(), c.getY()) & mask;
+		while (nodeTable[slot] != 0) {
+			MapNode candidate = nodeList.get(nodeTable[slot] - 1);
+			if (candidate.getLocation().equals(c)) {
+				n = candidate;
+				break;
+			}
+			slot = (slot + 1) & mask;
+		}
 
 		if (n == null) { 	// no node in that location -> create new
 			n = new MapNode(c);
-			nodes.put(c, n);
+			nodeList.add(n);
+			nodeTable[slot] = nodeList.size();
+			if (nodeList.size() * 2 > nodeTable.length) {
+				rehash();
+			}
+			this.nodes = null;
 		}
 
 		if (previous != null) {
@@ -156,4 +189,32 @@ public class WKTMapReader extends WKTReader {
 		return n;
 	}
 
+	/**
+	 * Returns a hash of a location. Values that are equal as doubles
+	 * (also 0.0 and -0.0) have the same hash.
+	 */
+	private static int hash(double x, double y) {
+		long bx = (x == 0 ? 0 : Double.doubleToLongBits(x));
+		long by = (y == 0 ? 0 : Double.doubleToLongBits(y));
+		long h = bx * 0x9E3779B97F4A7C15L + by;
+		h *= 0xC2B2AE3D27D4EB4FL;
+		return (int)(h ^ (h >>> 32));
+	}
+
+	/**
+	 * Grows the node hash table
+	 */
+	private void rehash() {
+		nodeTable = new int[nodeTable.length * 2];
+		int mask = nodeTable.length - 1;
+		for (int i=0, n=nodeList.size(); i<n; i++) {
+			Coord c = nodeList.get(i).getLocation();
+			int slot = hash(c.getX(), c.getY()) & mask;
+			while (nodeTable[slot] != 0) {
+				slot = (slot + 1) & mask;
+			}
+			nodeTable[slot] = i + 1;
+		}
+	}
+
 }
@@ -4,16 +4,16 @@
  */
 package input;
 
-import java.io.BufferedReader;
 import java.io.File;
-import java.io.FileReader;
+import java.io.InputStreamReader;
 import java.io.IOException;
 import java.io.Reader;
 import java.io.StringReader;
 import java.util.ArrayList;
 import java.util.List;
-import java.util.Scanner;
+import java.util.NoSuchElementException;
 
+import util.CompressedStreams;
 import core.Coord;
 
 /**
@@ -21,6 +21,9 @@ import core.Coord;
  * <A HREF="http://en.wikipedia.org/wiki/Well-known_text">Wikipedia</A> for
  * WKT syntax details. For example, <A HREF="http://openjump.org/">Open JUMP</A>
  * GIS program can save compatible data from many other formats.<BR>
+ * The input is read through an unsynchronized buffer and the coordinates
+ * are tokenized by hand (not with <CODE>Scanner</CODE>s), so even large map
+ * files are read quickly.
  */
 public class WKTReader {
 	/** known WKT type LINESTRING */
@@ -33,7 +36,7 @@ public class WKTReader {
 	/** are all lines of the file read */
 	private boolean done;
 	/** reader for the data */
-	private BufferedReader reader;
+	private Reader reader;
 
 	/**
 	 * Read point data from a file
@@ -42,7 +45,7 @@ public class WKTReader {
 	 * @throws IOException if something went wrong while reading
 	 */
 	public List<Coord> readPoints(File file) throws IOException {
-		return readPoints(new FileReader(file));
+		return readPoints(openReader(file));
 	}
 
 	/**
@@ -80,7 +83,7 @@ public class WKTReader {
 		List<List<Coord>> lines = new ArrayList<List<Coord>>();
 
 		String type;
-		init(new FileReader(file));
+		init(openReader(file));
 
 		while((type = nextType()) != null) {
 			if (type.equals(LINESTRING)) {
@@ -96,13 +99,24 @@ public class WKTReader {
 	}
 
 
+	/**
+	 * Opens a reader for a file. Gzip compressed files are decompressed
+	 * on the fly (see {@link CompressedStreams}).
+	 * @param file The file to read
+	 * @return A reader for the (uncompressed) contents of the file
+	 * @throws IOException if the file can't be opened
+	 */
+	protected static Reader openReader(File file) throws IOException {
+		return new InputStreamReader(CompressedStreams.openInput(file));
+	}
+
 	/**
 	 * Initialize the reader to use a certain input reader
 	 * @param input The input to use
 	 */
 	protected void init(Reader input) {
 		setDone(false);
-		reader = new BufferedReader(input);
+		reader = new UnsyncBufferedReader(input);
 	}
 
 	/**
@@ -154,7 +168,7 @@ public class WKTReader {
 	 * @throws IOException
 	 */
 	protected String readWord(Reader r) throws IOException {
-		StringBuffer buf = new StringBuffer();
+		StringBuilder buf = new StringBuilder();
 		char c = skipAllWhitespace(r);
 
 		// read non-whitespace part
@@ -197,17 +211,15 @@ public class WKTReader {
 	 */
 	protected Coord parsePoint() throws IOException {
 		String coords = readNestedContents(reader);
-		Scanner s = new Scanner(coords);
-		double x,y;
+		double[] xy = new double[2];
 
 		try {
-			x = s.nextDouble();
-			y = s.nextDouble();
+			parseTuple(coords, 0, coords.length(), xy);
 		} catch (RuntimeException e) {
 			throw new IOException("Bad coordinate values: '" + coords + "'");
 		}
 
-		return new Coord(x,y);
+		return new Coord(xy[0], xy[1]);
 	}
 
 	/**
@@ -246,7 +258,7 @@ public class WKTReader {
 	 * @return The text between the parentheses
 	 */
 	public String readNestedContents(Reader r) throws IOException {
-		StringBuffer contents = new StringBuffer();
+		StringBuilder contents = new StringBuilder();
 		int parOpen; // nrof open parentheses
 		char c = '\0';
 
@@ -288,26 +300,52 @@ public class WKTReader {
 	 */
 	protected List<Coord> parseLineString(String line) {
 		List<Coord> coords = new ArrayList<Coord>();
-		Scanner lineScan;
-		Scanner tupleScan;
-		double x,y;
-		Coord c;
-
-		lineScan = new Scanner(line);
-		lineScan.useDelimiter(",");
-
-		while (lineScan.hasNext()) {
-			tupleScan = new Scanner(lineScan.next());
-			x = Double.parseDouble(tupleScan.next());
-			y = Double.parseDouble(tupleScan.next());
-			c = new Coord(x,y);
-
-			coords.add(c);
+		double[] xy = new double[2];
+		int start = 0;
+		int len = line.length();
+
+		while (start < len) {
+			int end = line.indexOf(',', start);
+			if (end < 0) {
+				end = len;
+			}
+			parseTuple(line, start, end, xy);
+			coords.add(new Coord(xy[0], xy[1]));
+			start = end + 1;
 		}
 
 		return coords;
 	}
 
+	/**
+	 * Parses the first two whitespace separated values of a coordinate
+	 * tuple (possible further values, e.g. Z, are ignored)
+	 * @param s The string that contains the tuple
+	 * @param start Index of the start of the tuple
+	 * @param end Index of the end of the tuple
+	 * @param xy Array where the x and y values are stored
+	 * @throws NoSuchElementException if the tuple has less than two values
+	 * @throws NumberFormatException if a value isn't a valid number
+	 */
+	private static void parseTuple(String s, int start, int end,
+			double[] xy) {
+		int i = start;
+		for (int k=0; k<2; k++) {
+			while (i < end && Character.isWhitespace(s.charAt(i))) {
+				i++;
+			}
+			int tokStart = i;
+			while (i < end && !Character.isWhitespace(s.charAt(i))) {
+				i++;
+			}
+			if (i == tokStart) {
+				throw new NoSuchElementException("Missing coordinate value " +
+						"in '" + s.substring(start, end) + "'");
+			}
+			xy[k] = Double.parseDouble(s.substring(tokStart, i));
+		}
+	}
+
 	/**
 	 * Returns true if the whole file has been read
 	 * @return true if the whole file has been read
@@ -324,4 +362,50 @@ public class WKTReader {
 		this.done = done;
 	}
 
+	/**
+	 * Buffered reader whose single character reads are not synchronized
+	 */
+	private static class UnsyncBufferedReader extends Reader {
+		private Reader in;
+		private char[] buf;
+		private int pos;
+		private int limit;
+
+		public UnsyncBufferedReader(Reader in) {
+			this.in = in;
+			this.buf = new char[1 << 14];
+		}
+
+		@Override
+		public int read() throws IOException {
+			if (pos == limit) {
+				limit = in.read(buf, 0, buf.length);
+				pos = 0;
+				if (limit <= 0) {
+					limit = 0;
+					return -1;
+				}
+			}
+			return buf[pos++];
+		}
+
+		@Override
+		public int read(char[] cbuf, int off, int len) throws IOException {
+			if (len == 0) {
+				return 0;
+			}
+			if (pos == limit) {
+				return in.read(cbuf, off, len);
+			}
+			int n = Math.min(len, limit - pos);
+			System.arraycopy(buf, pos, cbuf, off, n);
+			pos += n;
+			return n;
+		}
+
+		@Override
+		public void close() throws IOException {
+			in.close();
+		}
+	}
 }
@@ -4,12 +4,13 @@
  */
 package movement;
 
+import input.CompactMovementReader;
 import input.ExternalMovementReader;
+import input.MovementTraceReader;
 
-import java.util.HashMap;
-import java.util.LinkedList;
-import java.util.List;
-import java.util.Map;
+import java.io.File;
+import java.util.ArrayDeque;
+import java.util.Arrays;
 import java.util.Queue;
 
 import util.Tuple;
@@ -20,7 +21,12 @@ import core.Settings;
 import core.SimClock;
 
 /**
- * Movement model that uses external data of node locations.
+ * Movement model that uses external data of node locations. The data is
+ * read either from an external movement file (see
+ * {@link ExternalMovementReader}) or from a compact movement file (see
+ * {@link CompactMovementReader}). Only a few sampling intervals of the
+ * future locations are read ahead of the simulation time (see
+ * {@link #NROF_PRELOAD_S}).
  */
 public class ExternalMovement extends MovementModel {
 	/** Namespace for settings */
@@ -32,13 +38,16 @@ public class ExternalMovement extends MovementModel {
 
 	/** default initial location for excess nodes */
 	private static final Coord DEF_INIT_LOC = new Coord(0,0);
-	private static ExternalMovementReader reader;
+	private static MovementTraceReader reader;
 	private static String inputFileName;
 
-	/** mapping of external id to movement model */
-	private static Map<String, ExternalMovement> idMapping;
-	/** initial locations for nodes */
-	private static List<Tuple<String, Coord>> initLocations;
+	/** movement models by the (interned) external id index of the reader */
+	private static ExternalMovement[] idMapping;
+	/** external id indexes and initial locations for nodes */
+	private static int[] initIds;
+	private static Coord[] initLocations;
+	/** number of initial locations given out */
+	private static int nrofInitUsed;
 	/** time of the very first location data */
 	private static double initTime;
 	/** sampling interval (seconds) of the location data */
@@ -80,11 +89,11 @@ public class ExternalMovement extends MovementModel {
 		if (idMapping == null) {
 			// run these the first time object is created or after reset call
 			Settings s = new Settings(EXTERNAL_MOVEMENT_NS);
-			idMapping = new HashMap<String, ExternalMovement>();
 			inputFileName = s.getSetting(MOVEMENT_FILE_S);
-			reader = new ExternalMovementReader(inputFileName);
+			reader = openReader(inputFileName);
+			idMapping = new ExternalMovement[reader.getNrofIds()];
 
-			initLocations = reader.readNextMovements();
+			readInitLocations();
 			initTime = reader.getLastTimeStamp();
 			samplingInterval = -1;
 			lastPreloadTime = -1;
@@ -107,17 +116,23 @@ public class ExternalMovement extends MovementModel {
 	private ExternalMovement(MovementModel mm) {
 		super(mm);
 
-		pathQueue = new LinkedList<Tuple<Double, Path>>();
+		pathQueue = new ArrayDeque<Tuple<Double, Path>>();
 		latestPath = null;
 
-		if (initLocations.size() > 0) { // we have location data left
+		if (nrofInitUsed < initLocations.length) { // location data left
 			// gets a new location from the list
-			Tuple<String, Coord> initLoc = initLocations.remove(0);
-			this.intialLocation = this.latestLocation = initLoc.getValue();
+			int id = initIds[nrofInitUsed];
+			this.intialLocation = this.latestLocation =
+				initLocations[nrofInitUsed];
+			nrofInitUsed++;
 			this.latestPathStartTime = initTime;
 
 			// puts the new model to model map for later updates
-			idMapping.put(initLoc.getKey(), this);
+			if (id >= idMapping.length) {
+				idMapping = Arrays.copyOf(idMapping,
+						Math.max(id + 1, idMapping.length * 2));
+			}
+			idMapping[id] = this;
 			isActive = true;
 		}
 		else {
@@ -127,6 +142,35 @@ public class ExternalMovement extends MovementModel {
 		}
 	}
 
+	/**
+	 * Opens a reader for the movement file
+	 * @param fileName Path of the external or compact movement file
+	 * @return The reader
+	 */
+	private static MovementTraceReader openReader(String fileName) {
+		File file = new File(fileName);
+		if (CompactMovementReader.isCompactMovementFile(file)) {
+			return new CompactMovementReader(file);
+		}
+		return new ExternalMovementReader(fileName);
+	}
+
+	/**
+	 * Reads the first step of locations as the initial locations
+	 */
+	private static void readInitLocations() {
+		reader.readNextStep();
+		int nrof = reader.getNrofMoves();
+		initIds = new int[nrof];
+		initLocations = new Coord[nrof];
+		for (int i=0; i<nrof; i++) {
+			initIds[i] = reader.getMoveId(i);
+			initLocations[i] = new Coord(reader.getMoveX(i),
+					reader.getMoveY(i));
+		}
+		nrofInitUsed = 0;
+	}
+
 	/**
 	 * Checks if more paths should be preloaded and preloads them if
 	 * needed.
@@ -159,13 +203,15 @@ public class ExternalMovement extends MovementModel {
 	 * Adds a new location with a time to this model's move pattern. If the
 	 * node stayed stationary during the update, the current path is put to the
 	 * queue and a new path is started once the node starts moving.
-	 * @param loc The location
+	 * @param x The x coordinate of the location
+	 * @param y The y coordinate of the location
 	 * @param time When should the node be there
 	 */
-	private void addLocation(Coord loc, double time) {
+	private void addLocation(double x, double y, double time) {
 		assert samplingInterval > 0 : "Non-positive sampling interval!";
 
-		if (loc.equals(latestLocation)) { // node didn't move
+		if (x == latestLocation.getX() && y == latestLocation.getY()) {
+			// node didn't move
 			if (latestPath != null) {
 				// constructing path -> end constructing and put it in the queue
 				pathQueue.add(new Tuple<Double, Path>
@@ -181,6 +227,7 @@ public class ExternalMovement extends MovementModel {
 			latestPath = new Path();
 		}
 
+		Coord loc = new Coord(x, y);
 		double speed = loc.distance(this.latestLocation) / samplingInterval;
 		latestPath.addWaypoint(loc, speed);
 
@@ -244,22 +291,25 @@ public class ExternalMovement extends MovementModel {
 	 * were read.
 	 */
 	private static double readMorePaths() {
-		List<Tuple<String, Coord>> list = reader.readNextMovements();
+		boolean read = reader.readNextStep();
 		double time = reader.getLastTimeStamp();
 
 		if (samplingInterval == -1) {
 			samplingInterval = time - initTime;
 		}
 
-		for (Tuple<String, Coord> t : list) {
-			ExternalMovement em = idMapping.get(t.getKey());
-			if (em != null) { // skip unknown IDs, i.e. IDs not mentioned in...
-				// ...init phase or if there are more IDs than nodes
-				em.addLocation(t.getValue(), time);
+		ExternalMovement[] models = idMapping;
+		for (int i=0, n=reader.getNrofMoves(); i<n; i++) {
+			int id = reader.getMoveId(i);
+			// skip unknown IDs, i.e. IDs not mentioned in init phase or
+			// if there are more IDs than nodes
+			if (id < models.length && models[id] != null) {
+				models[id].addLocation(reader.getMoveX(i),
+						reader.getMoveY(i), time);
 			}
 		}
 
-		if (list.size() > 0) {
+		if (read && reader.getNrofMoves() > 0) {
 			return time;
 		}
 		else {
@@ -271,6 +321,10 @@ public class ExternalMovement extends MovementModel {
 	 * Reset state so that next instance will have a fresh state
 	 */
 	public static void reset() {
+		if (reader != null) {
+			reader.close();
+			reader = null;
+		}
 		idMapping = null;
 	}
 
@@ -5,6 +5,7 @@
 package movement;
 
 import input.ExternalPathMovementReader;
+import input.ExternalPathMovementReader.PathPoints;
 
 import java.util.List;
 
@@ -25,19 +26,30 @@ public class ExternalPathMovement extends MovementModel {
 	public static final String MOVEMENT_FILE_S = "traceFile";
 	/** activity file's path -setting id ({@value})*/
 	public static final String ACTIVITY_FILE_S = "activeFile";
+	/** streaming trace -setting id ({@value}). Boolean. If true, the trace
+	 * file is only indexed at startup and the paths of a node are read from
+	 * the file when the node needs them (see
+	 * {@link ExternalPathMovementReader#getStreamingInstance(String, String)}).
+	 * Default is false. */
+	public static final String STREAMING_S = "streamingTrace";
 
 	// Settings
 	private String traceFile;
 	private String activeFile;
+	private boolean streaming;
 
 	// Node's paths
-	private List<List<ExternalPathMovementReader.Entry>> paths;
+	private ExternalPathMovementReader reader;
+	private int nrofPaths;
 	private int curPath=0;
 	private List<ExternalPathMovementReader.ActiveTime> active;
+	/** points of the path that is given out */
+	private PathPoints points;
 
 	public ExternalPathMovement(Settings settings) {
 		this.traceFile = settings.getSetting(MOVEMENT_FILE_S);
 		this.activeFile = settings.getSetting(ACTIVITY_FILE_S);
+		this.streaming = settings.getBoolean(STREAMING_S, false);
 	}
 
 	/**
@@ -48,6 +60,8 @@ public class ExternalPathMovement extends MovementModel {
 	public ExternalPathMovement(ExternalPathMovement mm) {
 		this.traceFile = mm.traceFile;
 		this.activeFile = mm.activeFile;
+		this.streaming = mm.streaming;
+		this.points = new PathPoints();
 	}
 
 	/**
@@ -56,10 +70,14 @@ public class ExternalPathMovement extends MovementModel {
 	 */
 	private void init() {
 		// Get paths for this node
-		ExternalPathMovementReader reader =
-			ExternalPathMovementReader.getInstance(this.traceFile,
-					this.activeFile);
-		this.paths = reader.getPaths(getHost().getAddress());
+		if (this.streaming) {
+			this.reader = ExternalPathMovementReader.getStreamingInstance(
+					this.traceFile, this.activeFile);
+		} else {
+			this.reader = ExternalPathMovementReader.getInstance(
+					this.traceFile, this.activeFile);
+		}
+		this.nrofPaths = reader.getNrofPaths(getHost().getAddress());
 		this.active = reader.getActive(getHost().getAddress());
 	}
 
@@ -90,43 +108,40 @@ public class ExternalPathMovement extends MovementModel {
 
 		// Check whether we're moving or waiting for the next path to start
 		double t = SimClock.getTime();
-		if (t < this.paths.get(this.curPath).get(0).time) {
+		if (t < this.nextPathAvailable()) {
 			return null;
 		}
 
 		// Get the path
-		List<ExternalPathMovementReader.Entry> path =
-			this.paths.get(this.curPath);
+		PathPoints path = this.reader.readPath(getHost().getAddress(),
+				this.curPath, this.points);
 		this.curPath++;
 
 		// Drop the node to the the beginning of the new path in case the
 		// previous path ended somewhere else.
 		Coord curPos = super.getHost().getLocation();
-		ExternalPathMovementReader.Entry pathStart = path.get(0);
-		if (curPos.getX() != pathStart.x ||
-				curPos.getY() != pathStart.y) {
-			Coord c = new Coord(pathStart.x, pathStart.y);
+		if (curPos.getX() != path.x[0] ||
+				curPos.getY() != path.y[0]) {
+			Coord c = new Coord(path.x[0], path.y[0]);
 			super.getHost().setLocation(c);
 		}
 
 		// If this is a stationary path, return only the fist point
-		if (path.size() == 1) {
+		if (path.size == 1) {
 			Path p = new Path(0);
-			ExternalPathMovementReader.Entry e = path.get(0);
-			Coord c = new Coord(e.x, e.y);
+			Coord c = new Coord(path.x[0], path.y[0]);
 			p.addWaypoint(c);
 			return p;
 		}
 
 		// Build and return the whole path at once
 		Path p = new Path();
-		for (int i=1; i < path.size(); i++) {
-			ExternalPathMovementReader.Entry e = path.get(i);
-			ExternalPathMovementReader.Entry e2 = path.get(i-1);
-			Coord c = new Coord(e.x, e.y);
-			double dt = e.time - e2.time;
-			double ds = Math.sqrt( (e.x - e2.x) * (e.x - e2.x) +
-					(e.y - e2.y) * (e.y - e2.y));
+		for (int i=1; i < path.size; i++) {
+			Coord c = new Coord(path.x[i], path.y[i]);
+			double dt = path.time[i] - path.time[i-1];
+			double dx = path.x[i] - path.x[i-1];
+			double dy = path.y[i] - path.y[i-1];
+			double ds = Math.sqrt(dx * dx + dy * dy);
 			double v = ds/dt;
 			p.addWaypoint(c, v);
 		}
@@ -137,11 +152,12 @@ public class ExternalPathMovement extends MovementModel {
 	@Override
 	public Coord getInitialLocation() {
 		// Return the first point of the first path
-		if (this.paths.size() > 0 &&
-				this.paths.get(0).size() > 0) {
-			ExternalPathMovementReader.Entry e = this.paths.get(0).get(0);
-			Coord c = new Coord(e.x, e.y);
-			return c;
+		if (this.nrofPaths > 0) {
+			PathPoints path = this.reader.readPath(getHost().getAddress(), 0,
+					this.points);
+			if (path.size > 0) {
+				return new Coord(path.x[0], path.y[0]);
+			}
 		}
 		return new Coord(0.0, 0.0);
 	}
@@ -154,8 +170,9 @@ public class ExternalPathMovement extends MovementModel {
 
 	@Override
 	public double nextPathAvailable() {
-		if (this.curPath < this.paths.size())
-			return this.paths.get(this.curPath).get(0).time;
+		if (this.curPath < this.nrofPaths)
+			return this.reader.getPathStart(getHost().getAddress(),
+					this.curPath);
 		else
 			return Double.MAX_VALUE;
 	}
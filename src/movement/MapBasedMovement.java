@@ -8,10 +8,11 @@ import input.WKTMapReader;
 
 import java.io.File;
 import java.io.IOException;
+import java.util.ArrayDeque;
 import java.util.ArrayList;
-import java.util.HashSet;
+import java.util.Collections;
+import java.util.IdentityHashMap;
 import java.util.Iterator;
-import java.util.LinkedList;
 import java.util.List;
 import java.util.Queue;
 import java.util.Set;
@@ -19,6 +20,7 @@ import java.util.Vector;
 
 import movement.map.MapNode;
 import movement.map.SimMap;
+import movement.map.SimMapCache;
 import core.Coord;
 import core.Settings;
 import core.SettingsError;
@@ -45,6 +47,13 @@ public class MapBasedMovement extends MovementModel implements SwitchableMovemen
 	public static final String NROF_FILES_S = "nrofMapFiles";
 	/** map file -setting id ({@value})*/
 	public static final String FILE_S = "mapFile";
+	/**
+	 * Map cache directory -setting id ({@value}). If set, the finished maps
+	 * are stored to this directory and later runs with the same map files
+	 * (by content) read the map from there (see {@link SimMapCache}).
+	 * Default is not to cache maps on disk.
+	 */
+	public static final String MAP_CACHE_DIR_S = "mapCacheDir";
 
 	/**
 	 * Per node group setting for selecting map node types that are OK for
@@ -283,26 +292,47 @@ public class MapBasedMovement extends MovementModel implements SwitchableMovemen
 			}
 		}
 
-		try {
-			int nrofMapFiles = settings.getInt(NROF_FILES_S);
+		int nrofMapFiles = settings.getInt(NROF_FILES_S);
+		List<File> mapFiles = new ArrayList<File>();
+		for (int i = 1; i <= nrofMapFiles; i++ ) {
+			String pathFile = settings.getSetting(FILE_S + i);
+			cachedMapFiles.add(pathFile);
+			mapFiles.add(new File(pathFile));
+		}
+		nrofMapFilesRead = nrofMapFiles;
 
-			for (int i = 1; i <= nrofMapFiles; i++ ) {
-				String pathFile = settings.getSetting(FILE_S + i);
-				cachedMapFiles.add(pathFile);
-				r.addPaths(new File(pathFile), i);
+		File cacheFile = null;
+		String cacheKey = null;
+		simMap = null;
+		try {
+			if (settings.contains(MAP_CACHE_DIR_S)) {
+				cacheKey = SimMapCache.getKey(mapFiles, "bidi");
+				cacheFile = SimMapCache.getCacheFile(
+						new File(settings.getSetting(MAP_CACHE_DIR_S)),
+						cacheKey);
+				simMap = SimMapCache.read(cacheFile, cacheKey);
 			}
 
-			nrofMapFilesRead = nrofMapFiles;
+			if (simMap == null) {
+				for (int i = 0; i < nrofMapFiles; i++) {
+					r.addPaths(mapFiles.get(i), i + 1);
+				}
+				simMap = r.getMap();
+				checkMapConnectedness(simMap.getNodes());
+				// mirrors the map (y' = -y) and moves its upper left corner
+				// to origo
+				simMap.mirror();
+				Coord offset = simMap.getMinBound().clone();
+				simMap.translate(-offset.getX(), -offset.getY());
+
+				if (cacheFile != null) {
+					SimMapCache.write(cacheFile, cacheKey, simMap);
+				}
+			}
 		} catch (IOException e) {
 			throw new SimError(e.toString(),e);
 		}
 
-		simMap = r.getMap();
-		checkMapConnectedness(simMap.getNodes());
-		// mirrors the map (y' = -y) and moves its upper left corner to origo
-		simMap.mirror();
-		Coord offset = simMap.getMinBound().clone();
-		simMap.translate(-offset.getX(), -offset.getY());
 		checkCoordValidity(simMap.getNodes());
 
 		cachedMap = simMap;
@@ -315,8 +345,10 @@ public class MapBasedMovement extends MovementModel implements SwitchableMovemen
 	 * @throws SettingsError if all map nodes are not connected
 	 */
 	private void checkMapConnectedness(List<MapNode> nodes) {
-		Set<MapNode> visited = new HashSet<MapNode>();
-		Queue<MapNode> unvisited = new LinkedList<MapNode>();
+		// nodes are marked visited when they are queued (linear time BFS)
+		Set<MapNode> visited = Collections.newSetFromMap(
+				new IdentityHashMap<MapNode, Boolean>());
+		Queue<MapNode> unvisited = new ArrayDeque<MapNode>();
 		MapNode firstNode;
 		MapNode next = null;
 
@@ -327,12 +359,11 @@ public class MapBasedMovement extends MovementModel implements SwitchableMovemen
 		firstNode = nodes.get(0);
 
 		visited.add(firstNode);
-		unvisited.addAll(firstNode.getNeighbors());
+		unvisited.add(firstNode);
 
 		while ((next = unvisited.poll()) != null) {
-			visited.add(next);
 			for (MapNode n: next.getNeighbors()) {
-				if (!visited.contains(n) && ! unvisited.contains(n)) {
+				if (visited.add(n)) {
 					unvisited.add(n);
 				}
 			}
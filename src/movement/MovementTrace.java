@@ -0,0 +1,165 @@
+/*
+ * Copyright 2010 Aalto University, ComNet
+ * Released under GPLv3. See LICENSE.txt for details.
+ */
+package movement;
+
+import input.ContactTrace;
+
+import java.io.File;
+import java.util.regex.Pattern;
+
+import core.Settings;
+import core.SettingsError;
+import core.SimScenario;
+
+/**
+ * <P>Settings of the movement trace record and replay modes. A movement
+ * trace stores, per host, everything the hosts asked from their movement
+ * models during a simulation run: the initial location, the paths (waypoints
+ * and speeds), the times of the next paths and the changes of the activeness
+ * of the movement. When a trace is replayed (see {@link RecordedMovement}),
+ * the original movement models are not used for the hosts, so the hosts
+ * move through exactly the same positions at every update without the cost
+ * of e.g. the path finding on a map.</P>
+ * <P>The traces are stored in a directory and identified by a key that is
+ * a hash of all the settings except the ones that affect only routing,
+ * reporting, external events or connectivity (see {@link ContactTrace} and
+ * {@link #getKey()}). The contents of input files (e.g., maps) are not part
+ * of the key.</P>
+ * <P>The trace files start with the {@link #MAGIC} number, the
+ * {@link #VERSION} of the format and the key. Then come chunks of the hosts'
+ * record streams, each prefixed with the host's address and the length of
+ * the chunk, and an address of -1 at the end. A host's records start with
+ * a tag byte. The waypoints are coded per host as (zigzag) variable length
+ * deltas of indexes to the waypoints the host has already visited, and only
+ * new waypoints are stored as coordinates. Coordinates, speeds and times are
+ * stored as exact doubles so the replayed locations are identical to the
+ * recorded ones.</P>
+ */
+public class MovementTrace {
+	/** Name space of the movement trace settings ({@value}) */
+	public static final String MOVEMENT_TRACE_NS = "MovementTrace";
+	/** Movement trace mode -setting id ({@value}). One of
+	 * {@value #MODE_OFF} (default), {@value #MODE_RECORD},
+	 * {@value #MODE_REPLAY} and {@value #MODE_AUTO} (replay if a trace for
+	 * the current settings exists, record otherwise). */
+	public static final String MODE_S = "mode";
+	/** Directory of the movement traces -setting id ({@value}). Default is
+	 * {@value #DEF_DIR}. */
+	public static final String DIR_S = "dir";
+
+	/** Movement traces are not used (value {@value}) */
+	public static final String MODE_OFF = "off";
+	/** A movement trace is recorded (value {@value}) */
+	public static final String MODE_RECORD = "record";
+	/** A movement trace is replayed (value {@value}) */
+	public static final String MODE_REPLAY = "replay";
+	/** A movement trace is replayed if one exists, or recorded (value
+	 * {@value}) */
+	public static final String MODE_AUTO = "auto";
+	/** Default directory of the traces ({@value}) */
+	public static final String DEF_DIR = "movementtraces";
+	/** Prefix of the trace file names */
+	public static final String FILE_PREFIX = "movements-";
+	/** Extension of the trace file names */
+	public static final String FILE_EXT = ".bin";
+
+	/** Magic number in the beginning of the trace files ("ONEM") */
+	public static final int MAGIC = 0x4F4E454D;
+	/** Version of the trace file format */
+	public static final int VERSION = 1;
+
+	/** Record tag: initial location (a waypoint) */
+	static final int TAG_INIT = 0;
+	/** Record tag: a path (number of waypoints, index of the next
+	 * waypoint, number of speeds, the speeds and the waypoints) */
+	static final int TAG_PATH = 1;
+	/** Record tag: no path (null) */
+	static final int TAG_NO_PATH = 2;
+	/** Record tag: time of the next path */
+	static final int TAG_WAIT = 3;
+	/** Record tag: the movement became active (time of the change) */
+	static final int TAG_ACTIVE = 4;
+	/** Record tag: the movement became inactive (time of the change) */
+	static final int TAG_INACTIVE = 5;
+	/** Waypoint code of a new waypoint (followed by the coordinates);
+	 * the codes of known waypoints are zigzag index deltas plus one */
+	static final int NEW_WAYPOINT = 0;
+
+	/** Settings that are not part of the key in addition to the ones of
+	 * the contact traces */
+	private static final Pattern IGNORED = Pattern.compile(
+			ContactTrace.IGNORED_SETTINGS + "|Events[0-9]*\\..*|" +
+			SimScenario.SCENARIO_NS + "\\." + SimScenario.SIM_CON_S + "|" +
+			SimScenario.SCENARIO_NS + "\\." + SimScenario.NROF_INTTYPES_S +
+			"|Group[0-9]*\\.(" + SimScenario.NROF_INTERF_S + "|" +
+			SimScenario.INTERFACENAME_S + "[0-9]+)|" +
+			"Optimization\\.cellSizeMult");
+
+	private String mode;
+	private File traceFile;
+
+	/**
+	 * Reads the movement trace settings
+	 * @throws SettingsError if the mode is not valid or a trace should be
+	 * replayed but it doesn't exist
+	 */
+	public MovementTrace() {
+		Settings s = new Settings(MOVEMENT_TRACE_NS);
+		this.mode = s.getSetting(MODE_S, MODE_OFF);
+
+		if (mode.equals(MODE_OFF)) {
+			return;
+		}
+		if (!mode.equals(MODE_RECORD) && !mode.equals(MODE_REPLAY) &&
+				!mode.equals(MODE_AUTO)) {
+			throw new SettingsError("Invalid movement trace mode '" + mode +
+					"' for setting " + MOVEMENT_TRACE_NS + "." + MODE_S);
+		}
+
+		this.traceFile = new File(s.getSetting(DIR_S, DEF_DIR),
+				FILE_PREFIX + getKey() + FILE_EXT);
+		if (mode.equals(MODE_AUTO)) {
+			mode = traceFile.isFile() ? MODE_REPLAY : MODE_RECORD;
+		}
+		if (mode.equals(MODE_REPLAY) && !traceFile.isFile()) {
+			throw new SettingsError("No movement trace " + traceFile +
+					" for the current settings");
+		}
+	}
+
+	/**
+	 * Returns true if a movement trace should be recorded
+	 * @return true if a movement trace should be recorded
+	 */
+	public boolean isRecording() {
+		return mode.equals(MODE_RECORD);
+	}
+
+	/**
+	 * Returns true if a movement trace should be replayed
+	 * @return true if a movement trace should be replayed
+	 */
+	public boolean isReplaying() {
+		return mode.equals(MODE_REPLAY);
+	}
+
+	/**
+	 * Returns the trace file for the current settings
+	 * @return the trace file or null if movement traces are not used
+	 */
+	public File getTraceFile() {
+		return traceFile;
+	}
+
+	/**
+	 * Returns the key of the movement trace of the current settings. The
+	 * key is a hash of all the settings (with the values of the current run)
+	 * except the ones that don't affect the movement.
+	 * @return The key (a hex string)
+	 */
+	public static String getKey() {
+		return ContactTrace.getKey(IGNORED, true);
+	}
+}
@@ -0,0 +1,377 @@
+/*
+ * Copyright 2010 Aalto University, ComNet
+ * Released under GPLv3. See LICENSE.txt for details.
+ */
+package movement;
+
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import core.Coord;
+import core.DTNHost;
+import core.ModuleCommunicationBus;
+import core.SimClock;
+import core.SimError;
+
+/**
+ * Records a movement trace (see {@link MovementTrace}). The movement models
+ * of the hosts are wrapped (see {@link #wrap(MovementModel)}) so that all
+ * the answers they give to their hosts are written to the hosts' record
+ * streams. The streams are buffered per host and written to the trace in
+ * chunks. The trace is first written to a temporary file that replaces the
+ * trace file only if the simulation completes (see {@link #done(boolean)}),
+ * so an interrupted run never leaves a partial trace.
+ */
+public class MovementTraceRecorder {
+	/** size of the host's buffer when it is written as a chunk */
+	private static final int CHUNK_SIZE = 1 << 13;
+
+	private File traceFile;
+	private File tmpFile;
+	private DataOutputStream out;
+	/** record streams of the hosts, indexed by host address */
+	private List<HostRecords> hosts;
+
+	/**
+	 * Creates a new recorder
+	 * @param traceFile The file where the trace is stored
+	 * @throws SimError if the trace file can't be created
+	 */
+	public MovementTraceRecorder(File traceFile) {
+		this.traceFile = traceFile;
+		this.hosts = new ArrayList<HostRecords>();
+		try {
+			File dir = traceFile.getAbsoluteFile().getParentFile();
+			dir.mkdirs();
+			this.tmpFile = File.createTempFile(MovementTrace.FILE_PREFIX,
+					".tmp", dir);
+			this.out = new DataOutputStream(new BufferedOutputStream(
+					new FileOutputStream(tmpFile), 1 << 16));
+			out.writeInt(MovementTrace.MAGIC);
+			out.writeInt(MovementTrace.VERSION);
+		} catch (IOException e) {
+			throw new SimError("Can't create movement trace " + traceFile +
+					": " + e.getMessage(), e);
+		}
+	}
+
+	/**
+	 * Returns a movement model prototype whose replicates record the
+	 * movement of the replicates of the given prototype
+	 * @param proto The movement model prototype to record
+	 * @return The recording prototype
+	 */
+	public MovementModel wrap(MovementModel proto) {
+		return new RecordingMovement(proto);
+	}
+
+	/**
+	 * Returns the record stream of a host
+	 */
+	private HostRecords getRecords(int address) {
+		while (hosts.size() <= address) {
+			hosts.add(null);
+		}
+		HostRecords r = hosts.get(address);
+		if (r == null) {
+			r = new HostRecords(address);
+			hosts.set(address, r);
+		}
+		return r;
+	}
+
+	/**
+	 * Writes a chunk of a host's records to the trace
+	 */
+	private void writeChunk(HostRecords r) {
+		if (out == null) {
+			r.length = 0;
+			return; /* already done */
+		}
+		try {
+			out.writeInt(r.address);
+			out.writeInt(r.length);
+			out.write(r.buffer, 0, r.length);
+		} catch (IOException e) {
+			throw new SimError("Can't write movement trace " + tmpFile +
+					": " + e.getMessage(), e);
+		}
+		r.length = 0;
+	}
+
+	/**
+	 * Finishes the recording. The trace is stored only if the simulation
+	 * was completed.
+	 * @param completed True if the simulation ran until its end time
+	 * @throws SimError if the trace can't be stored
+	 */
+	public void done(boolean completed) {
+		if (out == null) {
+			return;
+		}
+		try {
+			if (completed) {
+				for (HostRecords r : hosts) {
+					if (r != null && r.length > 0) {
+						writeChunk(r);
+					}
+				}
+				out.writeInt(-1);
+			}
+			out.close();
+		} catch (IOException e) {
+			tmpFile.delete();
+			throw new SimError("Can't write movement trace " + tmpFile +
+					": " + e.getMessage(), e);
+		} finally {
+			out = null;
+		}
+
+		if (!completed) {
+			tmpFile.delete();
+			return;
+		}
+		if (!tmpFile.renameTo(traceFile)) {
+			traceFile.delete();
+			if (!tmpFile.renameTo(traceFile)) {
+				tmpFile.delete();
+				throw new SimError("Can't rename " + tmpFile + " to " +
+						traceFile);
+			}
+		}
+	}
+
+	/**
+	 * Buffered record stream of one host
+	 */
+	private class HostRecords {
+		private int address;
+		private byte[] buffer;
+		private int length;
+		/** indexes of the waypoints this host has visited */
+		private Map<Waypoint, Integer> waypoints;
+		private int lastIndex;
+		/** the last recorded activeness (-1 = not recorded yet) */
+		private int active;
+
+		public HostRecords(int address) {
+			this.address = address;
+			this.buffer = new byte[256];
+			this.length = 0;
+			this.waypoints = new HashMap<Waypoint, Integer>();
+			this.lastIndex = 0;
+			this.active = -1;
+		}
+
+		public void init(Coord location) {
+			writeByte(MovementTrace.TAG_INIT);
+			writeWaypoint(location);
+			endRecord();
+		}
+
+		public void path(Path path) {
+			if (path == null) {
+				writeByte(MovementTrace.TAG_NO_PATH);
+				endRecord();
+				return;
+			}
+
+			List<Coord> coords = path.getCoords();
+			List<Double> speeds = path.getSpeeds();
+			int nrofCoords = coords.size();
+			int nrofSpeeds = speeds.size();
+			if (nrofSpeeds > 1 && nrofSpeeds != nrofCoords) {
+				throw new SimError("Can't record a path with " + nrofSpeeds +
+						" speeds for " + nrofCoords + " waypoints");
+			}
+
+			writeByte(MovementTrace.TAG_PATH);
+			writeVarint(nrofCoords);
+			writeVarint(path.getNextWaypointIndex());
+			writeVarint(nrofSpeeds);
+			for (int i=0; i<nrofSpeeds; i++) {
+				writeDouble(speeds.get(i));
+			}
+			for (int i=0; i<nrofCoords; i++) {
+				writeWaypoint(coords.get(i));
+			}
+			endRecord();
+		}
+
+		public void nextPathAvailable(double time) {
+			writeByte(MovementTrace.TAG_WAIT);
+			writeDouble(time);
+			endRecord();
+		}
+
+		public void active(boolean isActive) {
+			int a = isActive ? 1 : 0;
+			if (a == active) {
+				return;
+			}
+			active = a;
+			writeByte(isActive ? MovementTrace.TAG_ACTIVE :
+				MovementTrace.TAG_INACTIVE);
+			writeDouble(SimClock.getTime());
+			endRecord();
+		}
+
+		private void endRecord() {
+			if (length >= CHUNK_SIZE) {
+				writeChunk(this);
+			}
+		}
+
+		/**
+		 * Writes a known waypoint as a delta of its index and a new
+		 * waypoint as coordinates
+		 */
+		private void writeWaypoint(Coord c) {
+			Waypoint wp = new Waypoint(c);
+			Integer index = waypoints.get(wp);
+			if (index == null) {
+				index = waypoints.size();
+				waypoints.put(wp, index);
+				writeVarint(MovementTrace.NEW_WAYPOINT);
+				writeDouble(c.getX());
+				writeDouble(c.getY());
+			} else {
+				int delta = index - lastIndex;
+				writeVarint(((delta << 1) ^ (delta >> 31)) + 1);
+			}
+			lastIndex = index;
+		}
+
+		private void ensureCapacity(int n) {
+			if (length + n > buffer.length) {
+				byte[] bigger = new byte[Math.max(buffer.length * 2,
+						length + n)];
+				System.arraycopy(buffer, 0, bigger, 0, length);
+				buffer = bigger;
+			}
+		}
+
+		private void writeByte(int b) {
+			ensureCapacity(1);
+			buffer[length++] = (byte)b;
+		}
+
+		private void writeVarint(int value) {
+			ensureCapacity(5);
+			while ((value & ~0x7f) != 0) {
+				buffer[length++] = (byte)((value & 0x7f) | 0x80);
+				value >>>= 7;
+			}
+			buffer[length++] = (byte)value;
+		}
+
+		private void writeDouble(double d) {
+			ensureCapacity(8);
+			long bits = Double.doubleToRawLongBits(d);
+			for (int shift = 56; shift >= 0; shift -= 8) {
+				buffer[length++] = (byte)(bits >>> shift);
+			}
+		}
+	}
+
+	/**
+	 * Coordinates of a waypoint as a dictionary key. The coordinates are
+	 * compared by their exact bits.
+	 */
+	private static class Waypoint {
+		private long x;
+		private long y;
+
+		public Waypoint(Coord c) {
+			this.x = Double.doubleToRawLongBits(c.getX());
+			this.y = Double.doubleToRawLongBits(c.getY());
+		}
+
+		@Override
+		public boolean equals(Object o) {
+			if (!(o instanceof Waypoint)) {
+				return false;
+			}
+			Waypoint w = (Waypoint)o;
+			return x == w.x && y == w.y;
+		}
+
+		@Override
+		public int hashCode() {
+			long h = x * 31 + y;
+			return (int)(h ^ (h >>> 32));
+		}
+	}
+
+	/**
+	 * Movement model that records the answers of another movement model
+	 * to the record stream of its host
+	 */
+	private class RecordingMovement extends MovementModel {
+		private MovementModel model;
+		private HostRecords records;
+
+		public RecordingMovement(MovementModel model) {
+			super(model);
+			this.model = model;
+		}
+
+		@Override
+		public void setHost(DTNHost host) {
+			super.setHost(host);
+			model.setHost(host);
+			this.records = getRecords(host.getAddress());
+		}
+
+		@Override
+		public void setComBus(ModuleCommunicationBus comBus) {
+			super.setComBus(comBus);
+			model.setComBus(comBus);
+		}
+
+		@Override
+		public Coord getInitialLocation() {
+			Coord c = model.getInitialLocation();
+			records.init(c);
+			return c;
+		}
+
+		@Override
+		public Path getPath() {
+			Path p = model.getPath();
+			records.path(p);
+			return p;
+		}
+
+		@Override
+		public double nextPathAvailable() {
+			double time = model.nextPathAvailable();
+			records.nextPathAvailable(time);
+			return time;
+		}
+
+		@Override
+		public boolean isActive() {
+			boolean active = model.isActive();
+			records.active(active);
+			return active;
+		}
+
+		@Override
+		public MovementModel replicate() {
+			return new RecordingMovement(model.replicate());
+		}
+
+		@Override
+		public String toString() {
+			return model.toString();
+		}
+	}
+}
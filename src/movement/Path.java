@@ -94,6 +94,14 @@ public class Path  {
 		return coords.get(nextWpIndex++);
 	}
 
+	/**
+	 * Returns the index of the next waypoint
+	 * @return the index of the next waypoint
+	 */
+	int getNextWaypointIndex() {
+		return this.nextWpIndex;
+	}
+
 	/**
 	 * Returns true if the path has more waypoints, false if not
 	 * @return true if the path has more waypoints, false if not
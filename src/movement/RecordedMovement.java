@@ -0,0 +1,348 @@
+/*
+ * Copyright 2010 Aalto University, ComNet
+ * Released under GPLv3. See LICENSE.txt for details.
+ */
+package movement;
+
+import java.io.BufferedInputStream;
+import java.io.DataInputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.List;
+
+import core.Coord;
+import core.DTNHost;
+import core.SimClock;
+import core.SimError;
+
+/**
+ * Movement model that replays a recorded movement trace (see
+ * {@link MovementTrace} and {@link MovementTraceRecorder}). Each host gets
+ * the same initial location, paths, next path times and activeness it got
+ * from its movement model when the trace was recorded, so the hosts'
+ * locations are identical at every update as long as the hosts are created
+ * and updated the same way as in the recording run.
+ */
+public class RecordedMovement extends MovementModel {
+	private Trace trace;
+	private HostRecords records;
+	private boolean active;
+
+	/**
+	 * Creates a new prototype that replays the movement of the hosts that
+	 * were created with the given prototype
+	 * @param proto The prototype of the recorded movement model (its
+	 * settings, e.g. the world size, are used by this model)
+	 * @param trace The movement trace
+	 */
+	public RecordedMovement(MovementModel proto, Trace trace) {
+		super(proto);
+		this.trace = trace;
+		this.active = true;
+	}
+
+	/**
+	 * Copy constructor.
+	 * @param rm The RecordedMovement prototype
+	 */
+	protected RecordedMovement(RecordedMovement rm) {
+		super(rm);
+		this.trace = rm.trace;
+		this.active = rm.active;
+	}
+
+	@Override
+	public void setHost(DTNHost host) {
+		super.setHost(host);
+		this.records = trace.getRecords(host.getAddress());
+	}
+
+	@Override
+	public Coord getInitialLocation() {
+		records.expect(MovementTrace.TAG_INIT);
+		return records.readWaypoint();
+	}
+
+	@Override
+	public Path getPath() {
+		int tag = records.readTag();
+		if (tag == MovementTrace.TAG_NO_PATH) {
+			return null;
+		}
+		if (tag != MovementTrace.TAG_PATH) {
+			throw records.mismatch(tag, MovementTrace.TAG_PATH);
+		}
+
+		int nrofCoords = records.readVarint();
+		int nextIndex = records.readVarint();
+		int nrofSpeeds = records.readVarint();
+		double[] speeds = new double[nrofSpeeds];
+		for (int i=0; i<nrofSpeeds; i++) {
+			speeds[i] = records.readDouble();
+		}
+
+		Path p = new Path();
+		if (nrofSpeeds == 1) {
+			p.setSpeed(speeds[0]);
+		}
+		for (int i=0; i<nrofCoords; i++) {
+			if (nrofSpeeds > 1) {
+				p.addWaypoint(records.readWaypoint(), speeds[i]);
+			} else {
+				p.addWaypoint(records.readWaypoint());
+			}
+		}
+		for (int i=0; i<nextIndex; i++) {
+			p.getNextWaypoint();
+		}
+		return p;
+	}
+
+	@Override
+	public double nextPathAvailable() {
+		records.expect(MovementTrace.TAG_WAIT);
+		return records.readDouble();
+	}
+
+	/**
+	 * Returns the recorded activeness of the current time
+	 */
+	@Override
+	public boolean isActive() {
+		double now = SimClock.getTime();
+		int tag;
+		while (((tag = records.peekTag()) == MovementTrace.TAG_ACTIVE ||
+				tag == MovementTrace.TAG_INACTIVE) &&
+				records.peekTime() <= now) {
+			records.readTag();
+			records.readDouble();
+			active = (tag == MovementTrace.TAG_ACTIVE);
+		}
+		return active;
+	}
+
+	@Override
+	public RecordedMovement replicate() {
+		return new RecordedMovement(this);
+	}
+
+	/**
+	 * An open movement trace file whose chunks are read as the hosts need
+	 * them. The chunks of other hosts that are read on the way are queued.
+	 */
+	public static class Trace {
+		private File file;
+		private DataInputStream in;
+		/** record streams of the hosts, indexed by host address */
+		private List<HostRecords> hosts;
+
+		/**
+		 * Opens a movement trace
+		 * @param file The trace file
+		 * @throws SimError if the file can't be read or isn't a movement
+		 * trace of the supported version
+		 */
+		public Trace(File file) {
+			this.file = file;
+			this.hosts = new ArrayList<HostRecords>();
+			try {
+				this.in = new DataInputStream(new BufferedInputStream(
+						new FileInputStream(file), 1 << 16));
+				if (in.readInt() != MovementTrace.MAGIC ||
+						in.readInt() != MovementTrace.VERSION) {
+					in.close();
+					throw new SimError(file + " is not a movement trace " +
+							"of version " + MovementTrace.VERSION);
+				}
+			} catch (IOException e) {
+				throw new SimError("Can't read movement trace " + file +
+						": " + e.getMessage(), e);
+			}
+		}
+
+		/**
+		 * Returns the record stream of a host
+		 */
+		private HostRecords getRecords(int address) {
+			while (hosts.size() <= address) {
+				hosts.add(null);
+			}
+			HostRecords r = hosts.get(address);
+			if (r == null) {
+				r = new HostRecords(this, address);
+				hosts.set(address, r);
+			}
+			return r;
+		}
+
+		/**
+		 * Reads the next chunk of the trace to its host's queue
+		 * @return False if there are no more chunks
+		 */
+		private boolean readChunk() {
+			if (in == null) {
+				return false;
+			}
+			try {
+				int address = in.readInt();
+				if (address < 0) {
+					close();
+					return false;
+				}
+				byte[] chunk = new byte[in.readInt()];
+				in.readFully(chunk);
+				getRecords(address).chunks.add(chunk);
+				return true;
+			} catch (EOFException e) {
+				throw new SimError("Movement trace " + file + " is truncated");
+			} catch (IOException e) {
+				throw new SimError("Can't read movement trace " + file +
+						": " + e.getMessage(), e);
+			}
+		}
+
+		/**
+		 * Closes the trace file
+		 */
+		public void close() {
+			if (in == null) {
+				return;
+			}
+			try {
+				in.close();
+			} catch (IOException e) {
+				/* nothing is written */
+			}
+			in = null;
+		}
+	}
+
+	/**
+	 * Record stream of one host
+	 */
+	private static class HostRecords {
+		private Trace trace;
+		private int address;
+		private ArrayDeque<byte[]> chunks;
+		private byte[] chunk;
+		private int pos;
+		/** the waypoints this host has visited */
+		private List<Coord> waypoints;
+		private int lastIndex;
+
+		public HostRecords(Trace trace, int address) {
+			this.trace = trace;
+			this.address = address;
+			this.chunks = new ArrayDeque<byte[]>();
+			this.waypoints = new ArrayList<Coord>();
+			this.lastIndex = 0;
+		}
+
+		/**
+		 * Makes sure there are unread bytes in the current chunk
+		 * @return False if the host's records have ended
+		 */
+		private boolean fill() {
+			while (chunk == null || pos == chunk.length) {
+				if (chunks.isEmpty() && !trace.readChunk()) {
+					return false;
+				}
+				chunk = chunks.poll();
+				pos = 0;
+			}
+			return true;
+		}
+
+		private int readByte() {
+			if (!fill()) {
+				throw new SimError("Movement trace " + trace.file +
+						" ended for host " + address);
+			}
+			return chunk[pos++] & 0xff;
+		}
+
+		/**
+		 * Returns the tag of the next record without reading it
+		 * @return The tag or -1 if there are no more records
+		 */
+		public int peekTag() {
+			return fill() ? chunk[pos] & 0xff : -1;
+		}
+
+		/**
+		 * Returns the time of the next (activeness) record without reading
+		 * it. Records never span chunks.
+		 */
+		public double peekTime() {
+			long bits = 0;
+			for (int i=1; i<=8; i++) {
+				bits = (bits << 8) | (chunk[pos + i] & 0xff);
+			}
+			return Double.longBitsToDouble(bits);
+		}
+
+		public int readTag() {
+			return readByte();
+		}
+
+		/**
+		 * Reads the tag of the next record and checks that it is the
+		 * expected one
+		 */
+		public void expect(int tag) {
+			int read = readTag();
+			if (read != tag) {
+				throw mismatch(read, tag);
+			}
+		}
+
+		public SimError mismatch(int read, int expected) {
+			return new SimError("Movement trace " + trace.file + " doesn't " +
+					"match the simulation: record " + read + " instead of " +
+					expected + " for host " + address + " at " +
+					SimClock.getTime());
+		}
+
+		public int readVarint() {
+			int value = 0;
+			int shift = 0;
+			int b;
+			do {
+				b = readByte();
+				value |= (b & 0x7f) << shift;
+				shift += 7;
+			} while ((b & 0x80) != 0);
+			return value;
+		}
+
+		public double readDouble() {
+			long bits = 0;
+			for (int i=0; i<8; i++) {
+				bits = (bits << 8) | readByte();
+			}
+			return Double.longBitsToDouble(bits);
+		}
+
+		/**
+		 * Reads a waypoint
+		 * @return A new Coord with the waypoint's coordinates
+		 */
+		public Coord readWaypoint() {
+			int code = readVarint();
+			int index;
+			if (code == MovementTrace.NEW_WAYPOINT) {
+				index = waypoints.size();
+				waypoints.add(new Coord(readDouble(), readDouble()));
+			} else {
+				int zigzag = code - 1;
+				index = lastIndex + ((zigzag >>> 1) ^ -(zigzag & 1));
+			}
+			lastIndex = index;
+			return waypoints.get(index).clone();
+		}
+	}
+}
@@ -88,6 +88,22 @@ public class MapNode implements Comparable<MapNode> {
 		return 1 << type; // create the mask by bitwise shift
 	}
 
+	/**
+	 * Returns the bit mask of the node's types
+	 * @return the bit mask of the node's types (0 if no types are defined)
+	 */
+	int getTypeMask() {
+		return this.type;
+	}
+
+	/**
+	 * Sets the bit mask of the node's types
+	 * @param typeMask The bit mask (see {@link #getTypeMask()})
+	 */
+	void setTypeMask(int typeMask) {
+		this.type = typeMask;
+	}
+
 	/**
 	 * Adds the node as this node's neighbour (unless the node is null)
 	 * @param node The node to add or null for no action
@@ -6,6 +6,7 @@ package movement.map;
 
 import java.io.Serializable;
 import java.util.ArrayList;
+import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
 
@@ -37,6 +38,23 @@ public class SimMap implements Serializable {
 		setBounds();
 	}
 
+	/**
+	 * Creates a map of nodes that have already been mirrored and translated
+	 * (e.g., a map read from a {@link SimMapCache}). The coordinate to node
+	 * map is built when it is first needed.
+	 * @param nodes The nodes of the map
+	 * @param offset The offset of the translations made to the nodes
+	 * @param mirrored True if the nodes have been mirrored
+	 */
+	public SimMap(List<MapNode> nodes, Coord offset, boolean mirrored) {
+		this.offset = offset;
+		this.nodes = new ArrayList<MapNode>(nodes);
+		this.nodesMap = new HashMap<Coord, MapNode>();
+		this.isMirrored = mirrored;
+		this.needsRehash = true;
+		setBounds();
+	}
+
 	/**
 	 * Returns all the map nodes in a list
 	 * @return all the map nodes in a list
@@ -57,6 +75,7 @@ public class SimMap implements Serializable {
 			for (MapNode node : getNodes()) {
 				nodesMap.put(node.getLocation(), node); // re-hash
 			}
+			needsRehash = false;
 		}
 
 		return nodesMap.get(c);
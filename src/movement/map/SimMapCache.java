@@ -0,0 +1,210 @@
+/*
+ * Copyright 2010 Aalto University, ComNet
+ * Released under GPLv3. See LICENSE.txt for details.
+ */
+package movement.map;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+
+import core.Coord;
+import core.SimError;
+
+/**
+ * <P>On-disk cache of finished (read, mirrored and translated)
+ * {@link SimMap}s. A cached map is identified by a key that is a hash of the
+ * contents of the map files it was read from (see
+ * {@link #getKey(List, String)}), so a changed map file never matches an old
+ * cache file.</P>
+ * <P>The cache files store the nodes in the order of the map's node list,
+ * with their locations, types and neighbors (as node indexes, in the order
+ * of the neighbor lists), so a map read from the cache behaves exactly like
+ * the original one.</P>
+ */
+public class SimMapCache {
+	/** Magic number in the beginning of the cache files ("ONES") */
+	public static final int MAGIC = 0x4F4E4553;
+	/** Version of the cache file format */
+	public static final int VERSION = 1;
+	/** Prefix of the cache file names */
+	public static final String FILE_PREFIX = "simmap-";
+	/** Extension of the cache file names */
+	public static final String FILE_EXT = ".bin";
+
+	private static final char[] HEX = "0123456789abcdef".toCharArray();
+
+	private SimMapCache() {}
+
+	/**
+	 * Returns the key of the map that is read from the given files
+	 * @param mapFiles The map files in the order they are read
+	 * @param options Any other options that affect the resulting map
+	 * @return The key (a hex string)
+	 * @throws IOException if a map file can't be read
+	 */
+	public static String getKey(List<File> mapFiles, String options)
+			throws IOException {
+		MessageDigest md;
+		try {
+			md = MessageDigest.getInstance("SHA-1");
+		} catch (NoSuchAlgorithmException e) {
+			throw new SimError(e);
+		}
+		byte[] buf = new byte[1 << 16];
+
+		md.update((VERSION + ":" + options + ":" + mapFiles.size()).getBytes());
+		for (File f : mapFiles) {
+			InputStream in = new FileInputStream(f);
+			try {
+				long length = 0;
+				int n;
+				while ((n = in.read(buf)) > 0) {
+					md.update(buf, 0, n);
+					length += n;
+				}
+				/* file boundary */
+				md.update(("|" + length + "|").getBytes());
+			} finally {
+				in.close();
+			}
+		}
+
+		byte[] digest = md.digest();
+		char[] hex = new char[digest.length * 2];
+		for (int i=0; i<digest.length; i++) {
+			hex[2 * i] = HEX[(digest[i] >> 4) & 0xf];
+			hex[2 * i + 1] = HEX[digest[i] & 0xf];
+		}
+		return new String(hex);
+	}
+
+	/**
+	 * Returns the cache file of a map
+	 * @param cacheDir The cache directory
+	 * @param key Key of the map
+	 * @return The cache file
+	 */
+	public static File getCacheFile(File cacheDir, String key) {
+		return new File(cacheDir, FILE_PREFIX + key + FILE_EXT);
+	}
+
+	/**
+	 * Reads a map from a cache file
+	 * @param file The cache file
+	 * @param key Key of the requested map
+	 * @return The map or null if the file doesn't exist or doesn't contain
+	 * the requested map (or is otherwise invalid)
+	 */
+	public static SimMap read(File file, String key) {
+		if (!file.isFile()) {
+			return null;
+		}
+		DataInputStream in = null;
+		try {
+			in = new DataInputStream(new BufferedInputStream(
+					new FileInputStream(file), 1 << 16));
+			if (in.readInt() != MAGIC || in.readInt() != VERSION ||
+					!in.readUTF().equals(key)) {
+				return null;
+			}
+			boolean mirrored = in.readBoolean();
+			Coord offset = new Coord(in.readDouble(), in.readDouble());
+			int nrof = in.readInt();
+
+			List<MapNode> nodes = new ArrayList<MapNode>(nrof);
+			for (int i=0; i<nrof; i++) {
+				MapNode n = new MapNode(new Coord(in.readDouble(),
+						in.readDouble()));
+				n.setTypeMask(in.readInt());
+				nodes.add(n);
+			}
+			for (int i=0; i<nrof; i++) {
+				List<MapNode> neighbors = nodes.get(i).getNeighbors();
+				for (int j=0, nrofNeighbors=in.readInt(); j<nrofNeighbors;
+						j++) {
+					neighbors.add(nodes.get(in.readInt()));
+				}
+			}
+
+			return new SimMap(nodes, offset, mirrored);
+		} catch (IOException e) {
+			return null; /* broken cache file -> read the map files */
+		} catch (RuntimeException e) {
+			return null;
+		} finally {
+			if (in != null) {
+				try {
+					in.close();
+				} catch (IOException e) {}
+			}
+		}
+	}
+
+	/**
+	 * Writes a map to a cache file. The file is first written to a
+	 * temporary file that is then renamed, so concurrent runs never see a
+	 * partial cache file.
+	 * @param file The cache file
+	 * @param key Key of the map
+	 * @param map The map
+	 * @throws IOException if writing fails
+	 */
+	public static void write(File file, String key, SimMap map)
+			throws IOException {
+		List<MapNode> nodes = map.getNodes();
+		Map<MapNode, Integer> indexes = new IdentityHashMap<MapNode, Integer>();
+		for (int i=0, n=nodes.size(); i<n; i++) {
+			indexes.put(nodes.get(i), i);
+		}
+
+		File dir = file.getAbsoluteFile().getParentFile();
+		dir.mkdirs();
+		File tmp = File.createTempFile(FILE_PREFIX, ".tmp", dir);
+		DataOutputStream out = new DataOutputStream(new BufferedOutputStream(
+				new FileOutputStream(tmp), 1 << 16));
+		try {
+			out.writeInt(MAGIC);
+			out.writeInt(VERSION);
+			out.writeUTF(key);
+			out.writeBoolean(map.isMirrored());
+			out.writeDouble(map.getOffset().getX());
+			out.writeDouble(map.getOffset().getY());
+			out.writeInt(nodes.size());
+			for (MapNode n : nodes) {
+				out.writeDouble(n.getLocation().getX());
+				out.writeDouble(n.getLocation().getY());
+				out.writeInt(n.getTypeMask());
+			}
+			for (MapNode n : nodes) {
+				List<MapNode> neighbors = n.getNeighbors();
+				out.writeInt(neighbors.size());
+				for (MapNode neighbor : neighbors) {
+					out.writeInt(indexes.get(neighbor));
+				}
+			}
+		} finally {
+			out.close();
+		}
+
+		if (!tmp.renameTo(file)) {
+			file.delete();
+			if (!tmp.renameTo(file)) {
+				tmp.delete();
+				throw new IOException("Can't rename " + tmp + " to " + file);
+			}
+		}
+	}
+}
@@ -14,6 +14,7 @@ import core.DTNHost;
 import core.Message;
 import core.Settings;
 import core.SettingsError;
+import routing.util.MessageHolderIndex;
 
 /**
  * Reports which messages are available (either in the buffer or at one
@@ -88,6 +89,22 @@ public class MessageAvailabilityReport extends MessageLocationReport {
 
 			msgIds = new HashSet<String>();
 
+			if (this.reportedIndexes != null) {
+				/* check the holders of the reported messages from the index
+				 * instead of going through the buffers */
+				List<Connection> connections = host.getConnections();
+				for (int index : this.reportedIndexes) {
+					if (isAvailable(index, host, connections)) {
+						msgIds.add(Message.getIdForIndex(index));
+					}
+				}
+				for (String id : msgIds) {
+					idString += " " + id;
+				}
+				write(host + idString);
+				continue;
+			}
+
 			/* add own messages */
 			for (Message m : host.getMessageCollection()) {
 				if (!isTracked(m)) {
@@ -113,4 +130,28 @@ public class MessageAvailabilityReport extends MessageLocationReport {
 			write(host + idString);
 		}
 	}
+
+	/**
+	 * Returns true if the host or any of the hosts it is connected to has
+	 * the message in its buffer
+	 * @param index ID index of the message
+	 * @param host The host
+	 * @param connections The connections of the host
+	 * @return true if the message is available for the host
+	 */
+	private boolean isAvailable(int index, DTNHost host,
+			List<Connection> connections) {
+		if (MessageHolderIndex.getNrofHolders(index) == 0) {
+			return false;
+		}
+		if (MessageHolderIndex.isHolder(index, host)) {
+			return true;
+		}
+		for (Connection c : connections) {
+			if (MessageHolderIndex.isHolder(index, c.getOtherNode(host))) {
+				return true;
+			}
+		}
+		return false;
+	}
 }
@@ -12,6 +12,7 @@ import java.util.Map;
 
 import core.DTNHost;
 import core.Message;
+import routing.util.MessageHolderIndex;
 
 /**
  * Reports the amount of messages in the system at each time interval. Uses the
@@ -20,7 +21,8 @@ import core.Message;
 public class MessageCopyCountReport extends MessageLocationReport {
 
 	/**
-	 * Creates a snapshot of message counts
+	 * Creates a snapshot of message counts. The counts are read from the
+	 * {@link MessageHolderIndex} instead of going through all the buffers.
 	 * @param hosts The list of hosts in the world
 	 */
 	@Override
@@ -29,14 +31,18 @@ public class MessageCopyCountReport extends MessageLocationReport {
 		write("[" + (int) getSimTime() + "]"); /* write sim time stamp */
 		ArrayList<String> keys;
 
-		for (DTNHost host : hosts) {
-			for (Message m : host.getMessageCollection()) {
-				Integer oldCount;
-				if (!isTracked(m)) {
-					continue;
+		if (this.reportedIndexes != null) {
+			for (int index : this.reportedIndexes) {
+				int count = MessageHolderIndex.getNrofHolders(index);
+				if (count > 0) {
+					counts.put(Message.getIdForIndex(index), count);
 				}
-				oldCount = counts.get(m.getId());
-				counts.put(m.getId(), (oldCount == null ? 1 : oldCount + 1));
+			}
+		} else {
+			for (int i = MessageHolderIndex.nextHeldMessage(0); i >= 0;
+					i = MessageHolderIndex.nextHeldMessage(i + 1)) {
+				counts.put(Message.getIdForIndex(i),
+						MessageHolderIndex.getNrofHolders(i));
 			}
 		}
 
@@ -11,6 +11,7 @@ import core.DTNHost;
 import core.Message;
 import core.Settings;
 import core.UpdateListener;
+import routing.util.MessageHolderIndex;
 
 
 /**
@@ -32,6 +33,8 @@ public class MessageLocationReport extends Report implements UpdateListener {
 	protected double lastUpdate;
 	/** Identifiers of the message which are reported */
 	protected HashSet<String> reportedMessages;
+	/** ID indexes of the reported messages (null if all are reported) */
+	protected int[] reportedIndexes;
 
 	/**
 	 * Constructor. Reads the settings and initializes the report module.
@@ -46,8 +49,14 @@ public class MessageLocationReport extends Report implements UpdateListener {
 			for (String msgId : settings.getCsvSetting(REPORTED_MESSAGES)) {
 				this.reportedMessages.add(msgId);
 			}
+			this.reportedIndexes = new int[reportedMessages.size()];
+			int i = 0;
+			for (String msgId : this.reportedMessages) {
+				this.reportedIndexes[i++] = Message.indexOfId(msgId);
+			}
 		} else {
 			this.reportedMessages = null; /* all messages */
+			this.reportedIndexes = null;
 		}
 
 		init();
@@ -73,8 +82,17 @@ public class MessageLocationReport extends Report implements UpdateListener {
 	 * @return True if the message is tracked, false if not
 	 */
 	protected boolean isTracked(Message m) {
+		return isTracked(m.getId());
+	}
+
+	/**
+	 * Returns true if the message with the given ID is tracked by the report
+	 * @param id The message ID
+	 * @return True if the message is tracked, false if not
+	 */
+	protected boolean isTracked(String id) {
 		return (this.reportedMessages == null ||
-				this.reportedMessages.contains(m.getId()));
+				this.reportedMessages.contains(id));
 	}
 
 	/**
@@ -85,9 +103,23 @@ public class MessageLocationReport extends Report implements UpdateListener {
 		boolean isFirstMessage;
 		String reportLine;
 
+		long[] holders = null;
+
 		write ("[" + (int)getSimTime() + "]"); /* write sim time stamp */
 
+		if (this.reportedIndexes != null) {
+			/* only the buffers of the hosts that have some of the reported
+			 * messages need to be checked */
+			holders = new long[MessageHolderIndex.getAddressWords()];
+			for (int index : this.reportedIndexes) {
+				MessageHolderIndex.addHoldersTo(index, holders);
+			}
+		}
+
 		for (DTNHost host : hosts) {
+			if (holders != null && !isSet(holders, host.getAddress())) {
+				continue;
+			}
 			isFirstMessage = true;
 			reportLine = "";
 			for (Message m : host.getMessageCollection()) {
@@ -105,4 +137,12 @@ public class MessageLocationReport extends Report implements UpdateListener {
 		}
 	}
 
+	/**
+	 * Returns true if the bit of the given address is set in the bitset
+	 */
+	private static boolean isSet(long[] bits, int address) {
+		int w = address >> 6;
+		return w < bits.length && (bits[w] & (1L << address)) != 0;
+	}
+
 }
@@ -5,8 +5,8 @@
 package report;
 
 import java.io.File;
-import java.io.FileWriter;
 import java.io.IOException;
+import java.io.OutputStreamWriter;
 import java.io.PrintWriter;
 import java.util.ArrayList;
 import java.util.Collections;
@@ -14,6 +14,7 @@ import java.util.HashSet;
 import java.util.List;
 import java.util.Set;
 
+import util.CompressedStreams;
 import core.Settings;
 import core.SimClock;
 import core.SimError;
@@ -49,6 +50,12 @@ public abstract class Report {
 	 *  respective report classes for details. Default is 0. Must be a positive
 	 *  integer or 0. */
 	public static final String WARMUP_S = "warmup";
+	/** Compress output -setting id ({@value}). Boolean. If true, the report
+	 * files are gzip compressed and {@link CompressedStreams#GZIP_EXT} is
+	 * appended to their names. Reports whose output file name ends with
+	 * {@link CompressedStreams#GZIP_EXT} are always compressed.
+	 * Default is false. */
+	public static final String COMPRESS_SETTING = "compress";
 	/** Suffix of report files without explicit output */
 	public static final String OUT_SUFFIX = ".txt";
 	/** Suffix for reports that are created on n second intervals */
@@ -67,6 +74,7 @@ public abstract class Report {
 	private double lastReportTime;
 	private String outFileName;
 	private String scenarioName;
+	private boolean compress;
 
 	/**
 	 * Constructor.
@@ -107,6 +115,8 @@ public abstract class Report {
 			precision = DEF_PRECISION;
 		}
 
+		this.compress = settings.getBoolean(COMPRESS_SETTING, false);
+
 		if (settings.contains(OUTPUT_SETTING)) {
 			outFileName = settings.getSetting(OUTPUT_SETTING);
 			// fill value place holders in the name
@@ -187,12 +197,17 @@ public abstract class Report {
 	}
 
 	/**
-	 * Creates a new output file
+	 * Creates a new output file. If compression is enabled, the file is
+	 * created with {@link CompressedStreams#GZIP_EXT} appended to the name.
 	 * @param outFileName Name (&path) of the file to create
 	 */
 	private void createOutput(String outFileName) {
+		if (compress && !outFileName.endsWith(CompressedStreams.GZIP_EXT)) {
+			outFileName += CompressedStreams.GZIP_EXT;
+		}
 		try {
-			this.out = new PrintWriter(new FileWriter(outFileName));
+			this.out = new PrintWriter(new OutputStreamWriter(
+					CompressedStreams.openOutput(new File(outFileName))));
 		} catch (IOException e) {
 			throw new SimError("Couldn't open file '" + outFileName +
 					"' for report output\n" + e.getMessage(), e);
@@ -8,11 +8,13 @@ import java.util.ArrayList;
 import java.util.Collection;
 import java.util.Collections;
 import java.util.List;
-import java.util.Random;
 
 import routing.util.EnergyModel;
+import routing.util.MessageTimerTable;
 import routing.util.MessageTransferAcceptPolicy;
 import routing.util.RoutingInfo;
+import routing.util.TransferCandidates;
+import util.TimingWheel;
 import util.Tuple;
 
 import core.Connection;
@@ -37,6 +39,20 @@ public abstract class ActiveRouter extends MessageRouter {
 	 * from message buffer */
 	protected boolean deleteDelivered;
 
+	/** Transfer batch time -setting id ({@value}). Double valued.
+	 * If greater than zero, when a transfer is started, the following
+	 * messages of the same decision step (that are for the same connection)
+	 * are queued to be transferred right after it as long as the connection
+	 * is reserved for less than this many seconds ahead. Only connections
+	 * that support queued transfers (e.g., {@link core.CBRConnection}) are
+	 * batched. The transfers are finalized in the router updates, so the
+	 * delivery times of batched messages are quantized to the update
+	 * interval like the ones of single transfers. Default = 0 (no batching).
+	 */
+	public static final String TRANSFER_BATCH_S = "transferBatchTime";
+	/** how many seconds of link time can be reserved ahead (0 = none) */
+	private double transferBatchTime;
+
 	/** prefix of all response message IDs */
 	public static final String RESPONSE_PREFIX = "R_";
 	/** how often TTL check (discarding old messages) is performed */
@@ -45,9 +61,31 @@ public abstract class ActiveRouter extends MessageRouter {
 	protected ArrayList<Connection> sendingConnections;
 	/** sim time when the last TTL check was done */
 	private double lastTtlCheck;
+	/** expiry timers of the buffered messages (with finite TTL) */
+	private TimingWheel<Message> ttlWheel;
+	/** the timers of the buffered messages in the TTL wheel */
+	private MessageTimerTable ttlTimers;
+	/** messages popped from the TTL wheel (reused between the checks) */
+	private ArrayList<Message> expiredMessages;
+	/** candidates for delivering messages to their final recipients
+	 * (reused between the updates) */
+	private TransferCandidates deliverableCandidates;
+	/** list for ordering the messages to try (reused between the updates) */
+	private ArrayList<Message> messagesToTry;
 
 	private MessageTransferAcceptPolicy policy;
 	private EnergyModel energy;
+	/** are the routing decisions made by the planned routing engine */
+	private boolean plannedRouting;
+	/** transfers planned for the commit phase of planned routing */
+	private TransferCandidates plannedTransfers;
+	/** number of deliverable messages at the start of the plan */
+	private int nrofPlannedDeliverable;
+	/** did the router plan (i.e., would it have made decisions in the
+	 * update) */
+	private boolean planned;
+	/** position of the next planned transfer to try */
+	private int nextPlanned;
 
 	/**
 	 * Constructor. Creates a new message router based on the settings in
@@ -60,6 +98,7 @@ public abstract class ActiveRouter extends MessageRouter {
 		this.policy = new MessageTransferAcceptPolicy(s);
 
 		this.deleteDelivered = s.getBoolean(DELETE_DELIVERED_S, false);
+		this.transferBatchTime = s.getDouble(TRANSFER_BATCH_S, 0);
 
 		if (s.contains(EnergyModel.INIT_ENERGY_S)) {
 			this.energy = new EnergyModel(s);
@@ -75,6 +114,7 @@ public abstract class ActiveRouter extends MessageRouter {
 	protected ActiveRouter(ActiveRouter r) {
 		super(r);
 		this.deleteDelivered = r.deleteDelivered;
+		this.transferBatchTime = r.transferBatchTime;
 		this.policy = r.policy;
 		this.energy = (r.energy != null ? r.energy.replicate() : null);
 	}
@@ -84,6 +124,11 @@ public abstract class ActiveRouter extends MessageRouter {
 		super.init(host, mListeners);
 		this.sendingConnections = new ArrayList<Connection>(1);
 		this.lastTtlCheck = 0;
+		this.ttlWheel = new TimingWheel<Message>(1.0);
+		this.ttlTimers = new MessageTimerTable();
+		this.expiredMessages = new ArrayList<Message>();
+		this.deliverableCandidates = new TransferCandidates();
+		this.messagesToTry = new ArrayList<Message>();
 	}
 
 	/**
@@ -110,9 +155,17 @@ public abstract class ActiveRouter extends MessageRouter {
 		 * (startTransfer may remove messages) */
 		ArrayList<Message> temp =
 			new ArrayList<Message>(this.getMessageCollection());
-		for (Message m : temp) {
+		for (int i=0, n=temp.size(); i<n; i++) {
+			Message m = temp.get(i);
 			if (other == m.getTo()) {
 				if (startTransfer(m, con) == RCV_OK) {
+					/* queue the other deliverable messages after it */
+					for (int j=i+1; j<n && canQueueTransfer(con); j++) {
+						if (other == temp.get(j).getTo() &&
+								queueTransfer(temp.get(j), con) > 0) {
+							break;
+						}
+					}
 					return true;
 				}
 			}
@@ -190,13 +243,58 @@ public abstract class ActiveRouter extends MessageRouter {
 		if (retVal == RCV_OK) { // started transfer
 			addToSendingConnections(con);
 		}
-		else if (deleteDelivered && retVal == DENIED_OLD &&
+		else {
+			checkDeliveredDenial(m, con, retVal);
+		}
+
+		return retVal;
+	}
+
+	/**
+	 * Returns true if more messages can be queued to the connection
+	 * after the ongoing transfer in this decision step, i.e., if transfer
+	 * batching is enabled (see {@link #TRANSFER_BATCH_S}), the connection
+	 * supports it, and the link isn't reserved too far ahead yet.
+	 * @param con The connection this router is sending through
+	 * @return true if a message can be queued with
+	 * {@link #queueTransfer(Message, Connection)}
+	 */
+	protected boolean canQueueTransfer(Connection con) {
+		return this.transferBatchTime > 0 && con.canQueueTransfer(getHost(),
+				SimClock.getTime() + this.transferBatchTime);
+	}
+
+	/**
+	 * Tries to queue a message to be transferred after the ongoing
+	 * transfer(s) of a connection this router is sending through
+	 * @param m The message to transfer
+	 * @param con The connection to use
+	 * @return the value returned by
+	 * {@link Connection#queueTransfer(DTNHost, Message)}
+	 */
+	protected int queueTransfer(Message m, Connection con) {
+		if (!policy.acceptSending(getHost(),
+				con.getOtherNode(getHost()), con, m)) {
+			return MessageRouter.DENIED_POLICY;
+		}
+
+		int retVal = con.queueTransfer(getHost(), m);
+		if (retVal != RCV_OK) {
+			checkDeliveredDenial(m, con, retVal);
+		}
+		return retVal;
+	}
+
+	/**
+	 * Deletes the message if the final recipient denied it because it
+	 * already has it and deleting delivered messages is enabled
+	 */
+	private void checkDeliveredDenial(Message m, Connection con, int retVal) {
+		if (deleteDelivered && retVal == DENIED_OLD &&
 				m.getTo() == con.getOtherNode(this.getHost())) {
 			/* final recipient has already received the msg -> delete it */
 			this.deleteMessage(m.getId(), false);
 		}
-
-		return retVal;
 	}
 
 	/**
@@ -228,12 +326,17 @@ public abstract class ActiveRouter extends MessageRouter {
 	 * does not fit into buffer
 	 */
 	protected int checkReceiving(Message m, DTNHost from) {
+		int pendingBytes = 0; // bytes already coming through the connection
 		if (isTransferring()) {
-			return TRY_LATER_BUSY; // only one connection at a time
+			Connection batch = getQueueingConnection(from);
+			if (batch == null) {
+				return TRY_LATER_BUSY; // only one connection at a time
+			}
+			pendingBytes = batch.getQueuedByteCount();
 		}
 
 		if ( hasMessage(m.getId()) || isDeliveredMessage(m) ||
-				super.isBlacklistedMessage(m.getId())) {
+				super.isBlacklistedMessage(m)) {
 			return DENIED_OLD; // already seen this message -> reject it
 		}
 
@@ -251,13 +354,40 @@ public abstract class ActiveRouter extends MessageRouter {
 		}
 
 		/* remove oldest messages but not the ones being sent */
-		if (!makeRoomForMessage(m.getSize())) {
+		if (!makeRoomForMessage(m.getSize() + pendingBytes)) {
 			return DENIED_NO_SPACE; // couldn't fit into buffer -> reject
 		}
 
 		return RCV_OK;
 	}
 
+	/**
+	 * Returns the connection through which the given host is offering a
+	 * message to be queued after its ongoing transfer to this host, if that
+	 * transfer is the only thing this router is busy with.
+	 * @param from The host offering a message
+	 * @return The connection or null if there's no such connection or this
+	 * router is busy with other transfers
+	 */
+	private Connection getQueueingConnection(DTNHost from) {
+		if (this.sendingConnections.size() > 0) {
+			return null;
+		}
+
+		Connection batch = null;
+		List<Connection> connections = getConnections();
+		for (int i=0, n=connections.size(); i<n; i++) {
+			Connection con = connections.get(i);
+			if (!con.isReadyForTransfer()) {
+				if (!con.isQueueingFrom(from)) {
+					return null; // busy with something else
+				}
+				batch = con;
+			}
+		}
+		return batch;
+	}
+
 	/**
 	 * Removes messages from the buffer (oldest first) until
 	 * there's enough space for the new message.
@@ -288,16 +418,59 @@ public abstract class ActiveRouter extends MessageRouter {
 	}
 
 	/**
-	 * Drops messages whose TTL is less than zero.
+	 * Drops messages whose TTL is less than zero. Only the messages whose
+	 * timers have fired in the TTL wheel are checked.
 	 */
 	protected void dropExpiredMessages() {
-		Message[] messages = getMessageCollection().toArray(new Message[0]);
-		for (int i=0; i<messages.length; i++) {
-			int ttl = messages[i].getTtl();
-			if (ttl <= 0) {
-				deleteMessage(messages[i].getId(), true);
+		ArrayList<Message> expired = this.expiredMessages;
+		ttlWheel.advance(SimClock.getTime(), expired);
+
+		for (int i=0, n=expired.size(); i<n; i++) {
+			Message m = expired.get(i);
+			if (m.getTtl() <= 0) {
+				deleteMessage(m.getId(), true);
+			}
+			else { /* in the same wheel tick but not yet expired */
+				addTtlTimer(m);
+			}
+		}
+		expired.clear();
+	}
+
+	/**
+	 * Adds the message to the TTL wheel. The timer fires when less than
+	 * one full minute of the TTL is left, i.e., when
+	 * {@link Message#getTtl()} starts to return values less than one.
+	 * @param m The message whose timer is added
+	 */
+	private void addTtlTimer(Message m) {
+		double expiry = m.getExpiryTime();
+		if (expiry == Double.MAX_VALUE) {
+			return; /* infinite TTL */
+		}
+		ttlTimers.put(m, ttlWheel.add(m, expiry - 60));
+	}
+
+	@Override
+	protected void addToMessages(Message m, boolean newMessage) {
+		super.addToMessages(m, newMessage);
+		TimingWheel.Timer<Message> old = ttlTimers.remove(m);
+		if (old != null) {
+			ttlWheel.remove(old);
+		}
+		addTtlTimer(m);
+	}
+
+	@Override
+	protected Message removeFromMessages(String id) {
+		Message m = super.removeFromMessages(id);
+		if (m != null) {
+			TimingWheel.Timer<Message> timer = ttlTimers.remove(m);
+			if (timer != null) {
+				ttlWheel.remove(timer);
 			}
 		}
+		return m;
 	}
 
 	/**
@@ -381,10 +554,19 @@ public abstract class ActiveRouter extends MessageRouter {
 			return null;
 		}
 
-		for (Tuple<Message, Connection> t : tuples) {
+		for (int i=0, n=tuples.size(); i<n; i++) {
+			Tuple<Message, Connection> t = tuples.get(i);
 			Message m = t.getKey();
 			Connection con = t.getValue();
 			if (startTransfer(m, con) == RCV_OK) {
+				/* queue the following messages for the same connection */
+				for (int j=i+1; j<n && canQueueTransfer(con); j++) {
+					Tuple<Message, Connection> next = tuples.get(j);
+					if (next.getValue() == con &&
+							queueTransfer(next.getKey(), con) > 0) {
+						break;
+					}
+				}
 				return t;
 			}
 		}
@@ -392,6 +574,48 @@ public abstract class ActiveRouter extends MessageRouter {
 		return null;
 	}
 
+	/**
+	 * Tries to send the messages of the candidates to the connections of the
+	 * candidates in the order they are in the list until one of the
+	 * connections starts transferring or all candidates have been tried.
+	 * @param candidates The candidates to try
+	 * @return The connection that accepted the message or null if none of
+	 * the connections accepted the message that was meant for them.
+	 */
+	protected Connection tryMessagesForConnected(
+			TransferCandidates candidates) {
+		for (int i=0, n=candidates.size(); i<n; i++) {
+			TransferCandidates.Candidate c = candidates.get(i);
+			Connection con = c.getConnection();
+			if (startTransfer(c.getMessage(), con) == RCV_OK) {
+				queueFollowing(candidates, i + 1, con);
+				return con;
+			}
+		}
+
+		return null;
+	}
+
+	/**
+	 * Queues the messages of the candidates for the given connection,
+	 * starting from the given position, after the connection's ongoing
+	 * transfer (if transfer batching is enabled)
+	 * @param candidates The candidates
+	 * @param from Position of the first candidate to try
+	 * @param con The connection that is transferring
+	 */
+	private void queueFollowing(TransferCandidates candidates, int from,
+			Connection con) {
+		for (int j=from, n=candidates.size(); j<n && canQueueTransfer(con);
+				j++) {
+			TransferCandidates.Candidate next = candidates.get(j);
+			if (next.getConnection() == con &&
+					queueTransfer(next.getMessage(), con) > 0) {
+				break;
+			}
+		}
+	}
+
 	 /**
 	  * Goes trough the messages until the other node accepts one
 	  * for receiving (or doesn't accept any). If a transfer is started, the
@@ -402,9 +626,16 @@ public abstract class ActiveRouter extends MessageRouter {
 	  * transfer was started.
 	  */
 	protected Message tryAllMessages(Connection con, List<Message> messages) {
-		for (Message m : messages) {
+		for (int i=0, n=messages.size(); i<n; i++) {
+			Message m = messages.get(i);
 			int retVal = startTransfer(m, con);
 			if (retVal == RCV_OK) {
+				/* queue the following messages (if batching) */
+				for (int j=i+1; j<n && canQueueTransfer(con); j++) {
+					if (queueTransfer(messages.get(j), con) > 0) {
+						break;
+					}
+				}
 				return m;	// accepted a message, don't try others
 			}
 			else if (retVal > 0) {
@@ -453,11 +684,34 @@ public abstract class ActiveRouter extends MessageRouter {
 			return null;
 		}
 
-		List<Message> messages =
-			new ArrayList<Message>(this.getMessageCollection());
+		List<Message> messages = this.messagesToTry;
+		messages.clear();
+		for (Message m : this.getMessageCollection()) {
+			messages.add(m);
+		}
 		this.sortByQueueMode(messages);
 
-		return tryMessagesToConnections(messages, connections);
+		Connection con = tryMessagesToConnections(messages, connections);
+		messages.clear();
+		return con;
+	}
+
+	/**
+	 * Adds all the given messages for all the given connections to a
+	 * transfer plan in the order {@link #tryMessagesToConnections(List,
+	 * List)} would try them, i.e., connections first and then messages.
+	 * @param plan The plan to add the candidates to
+	 * @param messages The messages
+	 * @param connections The connections
+	 */
+	protected void planMessagesToConnections(TransferCandidates plan,
+			List<Message> messages, List<Connection> connections) {
+		for (int i=0, n=connections.size(); i<n; i++) {
+			Connection con = connections.get(i);
+			for (int j=0, k=messages.size(); j<k; j++) {
+				plan.add(messages.get(j), con);
+			}
+		}
 	}
 
 	/**
@@ -475,12 +729,15 @@ public abstract class ActiveRouter extends MessageRouter {
 			return null;
 		}
 
-		@SuppressWarnings(value = "unchecked")
-		Tuple<Message, Connection> t =
-			tryMessagesForConnected(sortByQueueMode(getMessagesForConnected()));
+		TransferCandidates deliverable = this.deliverableCandidates;
+		collectDeliverableMessages(deliverable);
 
-		if (t != null) {
-			return t.getValue(); // started transfer
+		if (deliverable.size() > 0) {
+			Connection con = tryMessagesForConnected(deliverable);
+			deliverable.clear();
+			if (con != null) {
+				return con; // started transfer
+			}
 		}
 
 		// didn't start transfer to any node -> ask messages from connected
@@ -495,6 +752,205 @@ public abstract class ActiveRouter extends MessageRouter {
 
 
 
+	/**
+	 * Collects the messages whose final recipient is some host that this
+	 * host is connected to, as message-connection candidates ordered by
+	 * the queue mode
+	 * @param deliverable The (empty) list where the candidates are put
+	 */
+	private void collectDeliverableMessages(TransferCandidates deliverable) {
+		List<Connection> connections = getConnections();
+		deliverable.clear();
+		if (getNrofMessages() > 0) {
+			for (Message m : getMessageCollection()) {
+				for (int i=0, n=connections.size(); i<n; i++) {
+					Connection con = connections.get(i);
+					if (m.getTo() == con.getOtherNode(getHost())) {
+						deliverable.add(m, con);
+					}
+				}
+			}
+		}
+		if (deliverable.size() > 0) {
+			sortByQueueMode(deliverable);
+		}
+	}
+
+	/**
+	 * Returns true if this router supports planned routing, i.e., it can
+	 * make its routing decisions in two phases using
+	 * {@link #planTransfers()} and {@link #commitTransfers()}. Routers that
+	 * return true must implement {@link #planOtherTransfers(
+	 * TransferCandidates)} and skip their decisions in {@link #update()}
+	 * when {@link #isPlannedRouting()} returns true. The default
+	 * implementation returns false.
+	 * @return true if planned routing is supported
+	 */
+	protected boolean supportsPlannedRouting() {
+		return false;
+	}
+
+	/**
+	 * Sets the planned routing mode (see {@link PlannedRoutingEngine}).
+	 * Has no effect if the router doesn't support planned routing.
+	 * @param planned If true, the routing decisions are made in
+	 * {@link #planTransfers()} and {@link #commitTransfers()} instead of
+	 * {@link #update()}
+	 */
+	public void setPlannedRouting(boolean planned) {
+		this.plannedRouting = planned && supportsPlannedRouting();
+	}
+
+	/**
+	 * Returns true if the routing decisions of this router are made by
+	 * the planned routing engine instead of the update method
+	 * @return true if the planned routing mode is on
+	 */
+	public boolean isPlannedRouting() {
+		return this.plannedRouting;
+	}
+
+	/**
+	 * Plans the transfers this router would try to start now: the
+	 * messages that could be delivered to their final recipients, followed
+	 * by the other candidates of the router (see
+	 * {@link #planOtherTransfers(TransferCandidates)}). Planning doesn't
+	 * start any transfers and only reads the state of this router and the
+	 * routers of the connected hosts, so the hosts of different connected
+	 * components can plan their transfers in parallel. The planned
+	 * transfers are tried with {@link #commitDeliverableTransfers()} and
+	 * {@link #commitTransfers()}.
+	 * @return true if some transfers were planned
+	 */
+	public boolean planTransfers() {
+		if (this.plannedTransfers == null) {
+			this.plannedTransfers = new TransferCandidates();
+		}
+		TransferCandidates plan = this.plannedTransfers;
+		plan.clear();
+		this.nextPlanned = 0;
+		this.nrofPlannedDeliverable = 0;
+		this.planned = false;
+
+		if (!plannedRouting || !canStartTransfer() || isTransferring()) {
+			return false;
+		}
+
+		TransferCandidates deliverable = this.deliverableCandidates;
+		collectDeliverableMessages(deliverable);
+		plan.addAll(deliverable);
+		this.nrofPlannedDeliverable = deliverable.size();
+		this.planned = true;
+		deliverable.clear();
+
+		planOtherTransfers(plan);
+		return plan.size() > 0;
+	}
+
+	/**
+	 * Adds the router specific message-connection candidates to the plan,
+	 * in the order they should be tried. Called from
+	 * {@link #planTransfers()} (possibly in another thread), so
+	 * implementations must not change the state of any other routers than
+	 * this one and the ones of the connected hosts (e.g., caches), and
+	 * must not start transfers or inform message listeners. The default
+	 * implementation adds nothing.
+	 * @param plan The plan to add the candidates to
+	 */
+	protected void planOtherTransfers(TransferCandidates plan) { }
+
+	/**
+	 * Tries to start the planned transfers of messages that could be
+	 * delivered to their final recipients (the first candidates of the
+	 * plan) and, if none of them started, asks the connected hosts for
+	 * their messages to this host, like {@link
+	 * #exchangeDeliverableMessages()} does. The planned routing engine
+	 * calls this for all the routers before {@link #commitTransfers()} so
+	 * that, as in the update of the routers, deliverable messages take
+	 * precedence over the other ones.
+	 * @return The connection that started a transfer or null if no transfer
+	 * was started
+	 */
+	public Connection commitDeliverableTransfers() {
+		Connection started = commitPlanned(this.nrofPlannedDeliverable,
+				false);
+		if (started != null || !this.planned || isTransferring()) {
+			return started;
+		}
+
+		List<Connection> connections = getConnections();
+		for (int i=0, n=connections.size(); i<n; i++) {
+			Connection con = connections.get(i);
+			if (con.getOtherNode(getHost()).requestDeliverableMessages(con)) {
+				return con;
+			}
+		}
+		return null;
+	}
+
+	/**
+	 * Tries to start the transfers planned by {@link #planTransfers()} in
+	 * the planned order until one of them starts (more messages can be
+	 * queued after it if transfer batching is enabled) and clears the plan.
+	 * @return The connection that started a transfer or null if no transfer
+	 * was started
+	 */
+	public Connection commitTransfers() {
+		return commitPlanned(this.plannedTransfers == null ? 0 :
+			this.plannedTransfers.size(), true);
+	}
+
+	/**
+	 * Tries to start the planned transfers from the next untried one up to
+	 * the given position. Candidates that have become stale after the
+	 * planning (message no longer in the buffer or connection down) are
+	 * skipped, as are the rest of the candidates of a connection whose
+	 * other end told to try later.
+	 * @param end Position of the candidate to stop at (exclusive)
+	 * @param clear If true, the plan is cleared after the commit
+	 * @return The connection that started a transfer or null if no transfer
+	 * was started
+	 */
+	private Connection commitPlanned(int end, boolean clear) {
+		TransferCandidates plan = this.plannedTransfers;
+		if (plan == null || plan.size() == 0) {
+			return null;
+		}
+
+		Connection started = null;
+		List<Connection> busy = null;
+		if (this.nextPlanned < end && !isTransferring()) {
+			for (int i=this.nextPlanned; i<end; i++) {
+				TransferCandidates.Candidate c = plan.get(i);
+				Connection con = c.getConnection();
+				Message m = c.getMessage();
+				if (!con.isUp() || getMessage(m.getId()) != m ||
+						(busy != null && busy.contains(con))) {
+					continue; // stale candidate
+				}
+				int retVal = startTransfer(m, con);
+				if (retVal == RCV_OK) {
+					queueFollowing(plan, i + 1, con);
+					started = con;
+					break;
+				}
+				else if (retVal > 0) { // try later -> skip the other messages
+					if (busy == null) {
+						busy = new ArrayList<Connection>(2);
+					}
+					busy.add(con);
+				}
+			}
+		}
+		this.nextPlanned = (started != null ? plan.size() : end);
+
+		if (clear) {
+			plan.clear();
+			this.nextPlanned = 0;
+		}
+		return started;
+	}
+
 	/**
 	 * Shuffles a messages list so the messages are in random order.
 	 * @param messages The list to sort and shuffle
@@ -504,8 +960,7 @@ public abstract class ActiveRouter extends MessageRouter {
 			return; // nothing to shuffle
 		}
 
-		Random rng = new Random(SimClock.getIntTime());
-		Collections.shuffle(messages, rng);
+		Collections.shuffle(messages, getQueueRng());
 	}
 
 	/**
@@ -551,11 +1006,9 @@ public abstract class ActiveRouter extends MessageRouter {
 	 * @return True if the message is being sent false if not
 	 */
 	public boolean isSending(String msgId) {
-		for (Connection con : this.sendingConnections) {
-			if (con.getMessage() == null) {
-				continue; // transmission is finalized
-			}
-			if (con.getMessage().getId().equals(msgId)) {
+		for (int i=0, n=this.sendingConnections.size(); i<n; i++) {
+			/* includes the messages queued after the current transfer */
+			if (this.sendingConnections.get(i).isTransferring(msgId)) {
 				return true;
 			}
 		}
@@ -587,16 +1040,19 @@ public abstract class ActiveRouter extends MessageRouter {
 			boolean removeCurrent = false;
 			Connection con = sendingConnections.get(i);
 
-			/* finalize ready transfers */
+			/* finalize ready transfers (all the ones that are ready by now if
+			 * transfers were queued after each other) */
 			if (con.isMessageTransferred()) {
-				if (con.getMessage() != null) {
+				while (con.getMessage() != null && con.isMessageTransferred()) {
 					transferDone(con);
 					con.finalizeTransfer();
 				} /* else: some other entity aborted transfer */
-				removeCurrent = true;
+				removeCurrent = con.getMessage() == null;
 			}
 			/* remove connections that have gone down */
 			else if (!con.isUp()) {
+				/* queued messages never started -> dropped without aborts */
+				con.cancelQueuedTransfers();
 				if (con.getMessage() != null) {
 					transferAborted(con);
 					con.abortTransfer();
@@ -629,6 +1085,38 @@ public abstract class ActiveRouter extends MessageRouter {
 			NetworkInterface iface = getHost().getInterface(1);
 			energy.update(iface, getHost().getComBus());
 		}
+
+		/* stay awake while there is something that can change without
+		 * the router being woken up */
+		if (energy != null || sendingConnections.size() > 0 ||
+				getHost().hasConnections()) {
+			wakeUp();
+		}
+	}
+
+	/**
+	 * Returns true if the router has been woken up, has something to do on
+	 * every update (connections to try, ongoing transfers, or energy
+	 * modeling), or is due for a TTL check that can drop messages. A due
+	 * TTL check that can't drop anything (no timer of the TTL wheel has
+	 * fired) is marked done without waking up the router, so the checks
+	 * are done at the same times as without dormancy.
+	 * @return true if the router should be updated
+	 */
+	@Override
+	public boolean needsUpdate() {
+		if (super.needsUpdate()) {
+			return true;
+		}
+		double time = SimClock.getTime();
+		if (time - lastTtlCheck < TTL_CHECK_INTERVAL) {
+			return false;
+		}
+		if (ttlWheel.getNextExpiry() <= time) {
+			return true;
+		}
+		lastTtlCheck = time; /* nothing to drop */
+		return false;
 	}
 
 	/**
@@ -0,0 +1,142 @@
+/*
+ * Copyright 2010 Aalto University, ComNet
+ * Released under GPLv3. See LICENSE.txt for details.
+ */
+package routing;
+
+import routing.schedule.ContactGraph;
+import routing.schedule.ContactPlan;
+import routing.util.TransferCandidates;
+import core.Connection;
+import core.DTNHost;
+import core.Message;
+import core.Settings;
+import core.SimClock;
+
+/**
+ * Contact graph router. Uses a known contact plan (e.g., a
+ * {@link report.ConnectivityONEReport} of an earlier run of the same
+ * scenario) to forward a single copy of each message along the path that
+ * gets it to its destination the earliest (see {@link ContactGraph}).
+ * A message is forwarded to a connected host only if the host is the
+ * first hop of the fastest path.
+ */
+public class ContactGraphRouter extends ActiveRouter {
+	/** Contact graph router's settings name space ({@value})*/
+	public static final String CGR_NS = "ContactGraphRouter";
+	/**
+	 * Contact plan file -setting id ({@value}). Path of a file with the
+	 * connection events of the plan in the standard external events format.
+	 */
+	public static final String CONTACT_PLAN_S = "contactPlanFile";
+	/**
+	 * Length of the window for the path cache -setting id ({@value}).
+	 * Double (seconds). The paths from a host are reused at most this long
+	 * (and only while all their contacts are still usable). Default is
+	 * {@link #DEF_CACHE_WINDOW}.
+	 */
+	public static final String CACHE_WINDOW_S = "cacheWindow";
+	/**
+	 * Path search horizon -setting id ({@value}). Double (seconds). Only
+	 * the contacts that start at most this long after the departure are
+	 * used. Default is to use all the contacts.
+	 */
+	public static final String HORIZON_S = "horizon";
+
+	/** Default value for the cache window ({@value}) */
+	public static final double DEF_CACHE_WINDOW = 10;
+
+	/** the routing engine (shared by all the routers of the group) */
+	private ContactGraph graph;
+	/** candidates for the other messages (reused between the updates) */
+	private TransferCandidates candidates;
+
+	/**
+	 * Constructor. Creates a new message router based on the settings in
+	 * the given Settings object.
+	 * @param s The settings object
+	 */
+	public ContactGraphRouter(Settings s) {
+		super(s);
+		Settings cgrSettings = new Settings(CGR_NS);
+		ContactPlan plan = ContactPlan.load(
+				cgrSettings.getSetting(CONTACT_PLAN_S));
+		this.graph = new ContactGraph(plan,
+				cgrSettings.getDouble(CACHE_WINDOW_S, DEF_CACHE_WINDOW),
+				cgrSettings.getDouble(HORIZON_S, Double.POSITIVE_INFINITY));
+	}
+
+	/**
+	 * Copy constructor.
+	 * @param r The router prototype where setting values are copied from
+	 */
+	protected ContactGraphRouter(ContactGraphRouter r) {
+		super(r);
+		this.graph = r.graph;
+		this.candidates = new TransferCandidates();
+	}
+
+	@Override
+	public void update() {
+		super.update();
+		if (isTransferring() || !canStartTransfer()) {
+			return;
+		}
+
+		if (exchangeDeliverableMessages() != null) {
+			return;
+		}
+
+		tryOtherMessages();
+	}
+
+	/**
+	 * Tries to send the messages to the connected hosts that are the first
+	 * hops of the fastest paths to the messages' destinations
+	 * @return The connection that started a transfer or null if no transfer
+	 * was started
+	 */
+	private Connection tryOtherMessages() {
+		TransferCandidates messages = this.candidates;
+		DTNHost me = getHost();
+		double now = SimClock.getTime();
+
+		for (Connection con : getConnections()) {
+			DTNHost other = con.getOtherNode(me);
+			MessageRouter othRouter = other.getRouter();
+			if (othRouter instanceof ActiveRouter &&
+					((ActiveRouter)othRouter).isTransferring()) {
+				continue; // skip hosts that are transferring
+			}
+
+			for (Message m : getMessageCollection()) {
+				if (othRouter.hasMessage(m)) {
+					continue;
+				}
+				if (graph.getFirstHop(me.getAddress(),
+						m.getTo().getAddress(), now) == other.getAddress()) {
+					messages.add(m, con);
+				}
+			}
+		}
+		if (messages.size() == 0) {
+			return null;
+		}
+
+		sortByQueueMode(messages);
+		Connection con = tryMessagesForConnected(messages);
+		messages.clear();
+		return con;
+	}
+
+	@Override
+	protected void transferDone(Connection con) {
+		/* don't leave a copy for the sender */
+		this.deleteMessage(con.getMessage().getId(), false);
+	}
+
+	@Override
+	public ContactGraphRouter replicate() {
+		return new ContactGraphRouter(this);
+	}
+}
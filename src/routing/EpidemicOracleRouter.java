@@ -4,10 +4,10 @@
  */
 package routing;
 
-import java.util.ArrayList;
 import java.util.List;
 
 import core.*;
+import routing.util.MessageHolderIndex;
 
 import static core.Constants.DEBUG;
 
@@ -21,14 +21,6 @@ import static core.Constants.DEBUG;
  */
 public class EpidemicOracleRouter extends ActiveRouter {
 
-	/** List of all routers in this node group */
-	private static List<EpidemicOracleRouter> allRouters;
-
-	static {
-		DTNSim.registerForReset(EpidemicOracleRouter.class.getCanonicalName());
-		reset();
-	}
-
 	/**
 	 * Constructor. Creates a new message router based on the settings in
 	 * the given Settings object.
@@ -44,7 +36,6 @@ public class EpidemicOracleRouter extends ActiveRouter {
 	 */
 	protected EpidemicOracleRouter(EpidemicOracleRouter r) {
 		super(r);
-		allRouters.add(this);
 	}
 
 	@Override
@@ -53,13 +44,9 @@ public class EpidemicOracleRouter extends ActiveRouter {
 
 		if (con.isUp()) {
 			DTNHost peer = con.getOtherNode(getHost());
-			List<Message> newMessages = new ArrayList<Message>();
+			/* summary vector difference: the peer's messages we don't have */
+			List<Message> newMessages = peer.getRouter().getMessagesLackedBy(this);
 
-			for (Message m : peer.getMessageCollection()) {
-				if (!this.hasMessage(m.getId())) {
-					newMessages.add(m);
-				}
-			}
 			for (Message m : newMessages) {
 				/* try to start transfer from peer */
 				if (con.startTransfer(peer, m) == RCV_OK) {
@@ -94,7 +81,8 @@ public class EpidemicOracleRouter extends ActiveRouter {
 	/**
 	 * Removes the message with the given ID from this router, if the router
 	 * has that message; otherwise does nothing. If the router was transferring
-	 * the message, the transfer is aborted.
+	 * the message, the transfer is aborted (or a queued transfer of it
+	 * dropped).
 	 * @param id ID of the message to be removed
 	 */
 	public void removeDeliveredMessage(String id) {
@@ -104,6 +92,9 @@ public class EpidemicOracleRouter extends ActiveRouter {
 				if (c.getMessage().getId().equals(id)) {
 					c.abortTransfer();
 				}
+				else {
+					c.cancelQueuedTransfer(id); /* drop a queued copy */
+				}
 			}
 			this.deleteMessage(id, false);
 		}
@@ -114,9 +105,15 @@ public class EpidemicOracleRouter extends ActiveRouter {
 		Message m = super.messageTransferred(id, from);
 
 		if (m.getTo() == this.getHost()) {
-			for (EpidemicOracleRouter r : allRouters) {
-				if (r != this && r != from.getRouter()) {
-					r.removeDeliveredMessage(id);
+			/* only the hosts that have the message need to be visited */
+			int index = m.getIdIndex();
+			for (DTNHost h = MessageHolderIndex.nextHolder(index, 0);
+					h != null; h = MessageHolderIndex.nextHolder(index,
+							h.getAddress() + 1)) {
+				MessageRouter r = h.getRouter();
+				if (r instanceof EpidemicOracleRouter && r != this &&
+						r != from.getRouter()) {
+					((EpidemicOracleRouter)r).removeDeliveredMessage(id);
 				}
 			}
 		} else {
@@ -173,11 +170,4 @@ public class EpidemicOracleRouter extends ActiveRouter {
 		return new EpidemicOracleRouter(this);
 	}
 
-	/**
-	 * Resets the static router list
-	 */
-	public static void reset() {
-		allRouters = new ArrayList<EpidemicOracleRouter>();
-	}
-
 }
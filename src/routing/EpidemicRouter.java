@@ -4,6 +4,11 @@
  */
 package routing;
 
+import java.util.ArrayList;
+import java.util.List;
+
+import routing.util.TransferCandidates;
+import core.Message;
 import core.Settings;
 
 /**
@@ -34,7 +39,7 @@ public class EpidemicRouter extends ActiveRouter {
 	@Override
 	public void update() {
 		super.update();
-		if (isTransferring() || !canStartTransfer()) {
+		if (isPlannedRouting() || isTransferring() || !canStartTransfer()) {
 			return; // transferring, don't try other connections yet
 		}
 
@@ -47,6 +52,18 @@ public class EpidemicRouter extends ActiveRouter {
 		this.tryAllMessagesToAllConnections();
 	}
 
+	@Override
+	protected boolean supportsPlannedRouting() {
+		return true;
+	}
+
+	@Override
+	protected void planOtherTransfers(TransferCandidates plan) {
+		List<Message> messages =
+			new ArrayList<Message>(this.getMessageCollection());
+		this.sortByQueueMode(messages);
+		planMessagesToConnections(plan, messages, getConnections());
+	}
 
 	@Override
 	public EpidemicRouter replicate() {
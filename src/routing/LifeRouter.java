@@ -6,10 +6,11 @@ package routing;
 
 import java.util.Vector;
 
+import routing.util.NeighborMessageCounter;
+import core.Connection;
 import core.DTNHost;
 import core.Message;
 import core.Settings;
-import core.Connection;
 
 /**
  * Router module mimicking the game-of-life behavior
@@ -24,6 +25,8 @@ public class LifeRouter extends ActiveRouter {
 	 */
 	public static final String NM_COUNT_S = "nmcount";
 	private int countRange[];
+	/** how many of the connected peers have each message */
+	private NeighborMessageCounter peerCounts;
 
 	/**
 	 * Constructor. Creates a new message router based on the settings in
@@ -33,6 +36,7 @@ public class LifeRouter extends ActiveRouter {
 	public LifeRouter(Settings s) {
 		super(s);
 		countRange = s.getCsvInts(NM_COUNT_S, 2);
+		peerCounts = new NeighborMessageCounter();
 	}
 
 	/**
@@ -42,25 +46,27 @@ public class LifeRouter extends ActiveRouter {
 	protected LifeRouter(LifeRouter r) {
 		super(r);
 		this.countRange = r.countRange;
+		this.peerCounts = new NeighborMessageCounter();
+	}
+
+	@Override
+	public void changedConnection(Connection con) {
+		super.changedConnection(con);
+		MessageRouter peer = con.getOtherNode(getHost()).getRouter();
+		if (con.isUp()) {
+			peerCounts.neighborConnected(peer);
+		} else {
+			peerCounts.neighborDisconnected(peer);
+		}
 	}
 
 	/**
-	 * Counts how many of the connected peers have the given message
+	 * Returns how many of the connected peers have the given message
 	 * @param m The message to check
 	 * @return Amount of connected peers with the message
 	 */
 	private int getPeerMessageCount(Message m) {
-		DTNHost me = getHost();
-		String id = m.getId();
-		int peerMsgCount = 0;
-
-		for (Connection c : getConnections()) {
-			if (c.getOtherNode(me).getRouter().hasMessage(id)) {
-				peerMsgCount++;
-			}
-		}
-
-		return peerMsgCount;
+		return peerCounts.getCount(m);
 	}
 
 	@Override
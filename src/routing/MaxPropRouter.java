@@ -5,22 +5,21 @@
 package routing;
 
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collection;
-import java.util.Collections;
 import java.util.Comparator;
 import java.util.HashMap;
-import java.util.HashSet;
 import java.util.List;
 import java.util.Map;
-import java.util.Set;
 
-import routing.maxprop.MaxPropDijkstra;
-import routing.maxprop.MeetingProbabilitySet;
+import routing.maxprop.MaxPropEngine;
+import routing.util.MessageHistory;
 import routing.util.RoutingInfo;
-import util.Tuple;
+import routing.util.TransferCandidates;
 import core.Connection;
 import core.DTNHost;
 import core.Message;
+import core.MessageListener;
 import core.Settings;
 
 /**
@@ -46,24 +45,22 @@ public class MaxPropRouter extends ActiveRouter {
     public static final int DEFAULT_PROB_SET_MAX_SIZE = 50;
     private static int probSetMaxSize;
 
-	/** probabilities of meeting hosts */
-	private MeetingProbabilitySet probs;
-	/** meeting probabilities of all hosts from this host's point of view
-	 * mapped using host's network address */
-	private Map<Integer, MeetingProbabilitySet> allProbs;
-	/** the cost-to-node calculator */
-	private MaxPropDijkstra dijkstra;
+	/** meeting probabilities and the path costs (created in init) */
+	private MaxPropEngine engine;
 	/** IDs of the messages that are known to have reached the final dst */
-	private Set<String> ackedMessageIds;
-	/** mapping of the current costs for all messages. This should be set to
-	 * null always when the costs should be updated (a host is met or a new
-	 * message is received) */
-	private Map<Integer, Double> costsForMessages;
-	/** From host of the last cost calculation */
-	private DTNHost lastCostFrom;
+	private MessageHistory ackedMessageIds;
+	/** candidates for the other messages (reused between the updates) */
+	private TransferCandidates candidates;
+	/** candidates for the message to drop (reused between the drops) */
+	private TransferCandidates removalCandidates;
+	/** comparator for ordering the candidates */
+	private MaxPropComparator comparator;
+	/** total size of the buffered messages by hop count (reused between the
+	 * threshold calculations) */
+	private long[] sizesByHopCount;
 
 	/** Map of which messages have been sent to which hosts from this host */
-	private Map<DTNHost, Set<String>> sentMessages;
+	private Map<DTNHost, MessageHistory> sentMessages;
 
 	/** Over how many samples the "average number of bytes transferred per
 	 * transfer opportunity" is taken */
@@ -112,12 +109,20 @@ public class MaxPropRouter extends ActiveRouter {
 	protected MaxPropRouter(MaxPropRouter r) {
 		super(r);
 		this.alpha = r.alpha;
-		this.probs = new MeetingProbabilitySet(probSetMaxSize, this.alpha);
-		this.allProbs = new HashMap<Integer, MeetingProbabilitySet>();
-		this.dijkstra = new MaxPropDijkstra(this.allProbs);
-		this.ackedMessageIds = new HashSet<String>();
+		this.ackedMessageIds = newMessageHistory();
 		this.avgSamples = new int[BYTES_TRANSFERRED_AVG_SAMPLES];
-		this.sentMessages = new HashMap<DTNHost, Set<String>>();
+		this.candidates = new TransferCandidates();
+		this.removalCandidates = new TransferCandidates();
+		this.comparator = new MaxPropComparator();
+		this.sizesByHopCount = new long[8];
+		this.sentMessages = new HashMap<DTNHost, MessageHistory>();
+	}
+
+	@Override
+	public void init(DTNHost host, List<MessageListener> mListeners) {
+		super.init(host, mListeners);
+		this.engine = new MaxPropEngine(host.getAddress(), probSetMaxSize,
+				this.alpha);
 	}
 
 	@Override
@@ -125,8 +130,6 @@ public class MaxPropRouter extends ActiveRouter {
 		super.changedConnection(con);
 
 		if (con.isUp()) { // new connection
-			this.costsForMessages = null; // invalidate old cost estimates
-
 			if (con.isInitiator(getHost())) {
 				/* initiator performs all the actions on behalf of the
 				 * other node too (so that the meeting probs are updated
@@ -145,16 +148,11 @@ public class MaxPropRouter extends ActiveRouter {
 				otherRouter.deleteAckedMessages();
 
 				/* update both meeting probabilities */
-				probs.updateMeetingProbFor(otherHost.getAddress());
-				otherRouter.probs.updateMeetingProbFor(getHost().getAddress());
+				engine.updateMeetingProbFor(otherHost.getAddress());
+				otherRouter.engine.updateMeetingProbFor(getHost().getAddress());
 
 				/* exchange the transitive probabilities */
-				this.updateTransitiveProbs(otherRouter.allProbs);
-				otherRouter.updateTransitiveProbs(this.allProbs);
-				this.allProbs.put(otherHost.getAddress(),
-						otherRouter.probs.replicate());
-				otherRouter.allProbs.put(getHost().getAddress(),
-						this.probs.replicate());
+				engine.exchangeWith(otherRouter.engine);
 			}
 		}
 		else {
@@ -163,40 +161,33 @@ public class MaxPropRouter extends ActiveRouter {
 		}
 	}
 
-	/**
-	 * Updates transitive probability values by replacing the current
-	 * MeetingProbabilitySets with the values from the given mapping
-	 * if the given sets have more recent updates.
-	 * @param p Mapping of the values of the other host
-	 */
-	private void updateTransitiveProbs(Map<Integer, MeetingProbabilitySet> p) {
-		for (Map.Entry<Integer, MeetingProbabilitySet> e : p.entrySet()) {
-			MeetingProbabilitySet myMps = this.allProbs.get(e.getKey());
-			if (myMps == null ||
-				e.getValue().getLastUpdateTime() > myMps.getLastUpdateTime() ) {
-				this.allProbs.put(e.getKey(), e.getValue().replicate());
-			}
-		}
-	}
-
 	/**
 	 * Deletes the messages from the message buffer that are known to be ACKed
 	 */
 	private void deleteAckedMessages() {
-		for (String id : this.ackedMessageIds) {
-			if (this.hasMessage(id) && !isSending(id)) {
-				this.deleteMessage(id, false);
+		List<Message> acked = null;
+		for (Message m : getMessageCollection()) {
+			if (this.ackedMessageIds.contains(m) && !isSending(m.getId())) {
+				if (acked == null) {
+					acked = new ArrayList<Message>();
+				}
+				acked.add(m);
+			}
+		}
+		if (acked != null) { /* deleted here so the buffer isn't modified
+			                      * while it's iterated */
+			for (Message m : acked) {
+				this.deleteMessage(m.getId(), false);
 			}
 		}
 	}
 
 	@Override
 	public Message messageTransferred(String id, DTNHost from) {
-		this.costsForMessages = null; // new message -> invalidate costs
 		Message m = super.messageTransferred(id, from);
 		/* was this node the final recipient of the message? */
 		if (isDeliveredMessage(m)) {
-			this.ackedMessageIds.add(id);
+			this.ackedMessageIds.add(m);
 		}
 		return m;
 	}
@@ -210,22 +201,21 @@ public class MaxPropRouter extends ActiveRouter {
 	@Override
 	protected void transferDone(Connection con) {
 		Message m = con.getMessage();
-		String id = m.getId();
 		DTNHost recipient = con.getOtherNode(getHost());
-		Set<String> sentMsgIds = this.sentMessages.get(recipient);
+		MessageHistory sentMsgIds = this.sentMessages.get(recipient);
 
 		/* was the message delivered to the final recipient? */
 		if (m.getTo() == recipient) {
-			this.ackedMessageIds.add(m.getId()); // yes, add to ACKed messages
+			this.ackedMessageIds.add(m); // yes, add to ACKed messages
 			this.deleteMessage(m.getId(), false); // delete from buffer
 		}
 
 		/* update the map of where each message is already sent */
 		if (sentMsgIds == null) {
-			sentMsgIds = new HashSet<String>();
+			sentMsgIds = newMessageHistory();
 			this.sentMessages.put(recipient, sentMsgIds);
 		}
-		sentMsgIds.add(id);
+		sentMsgIds.add(m);
 	}
 
 	/**
@@ -269,26 +259,41 @@ public class MaxPropRouter extends ActiveRouter {
 	 */
     @Override
 	protected Message getNextMessageToRemove(boolean excludeMsgBeingSent) {
-		Collection<Message> messages = this.getMessageCollection();
-		List<Message> validMessages = new ArrayList<Message>();
+		TransferCandidates messages = this.removalCandidates;
+		messages.clear();
 
-		for (Message m : messages) {
+		for (Message m : this.getMessageCollection()) {
 			if (excludeMsgBeingSent && isSending(m.getId())) {
 				continue; // skip the message(s) that router is sending
 			}
-			validMessages.add(m);
+			messages.add(m, null);
 		}
 
-		Collections.sort(validMessages,
-				new MaxPropComparator(this.calcThreshold()));
+		if (messages.size() == 0) {
+			return null;
+		}
+
+		/* the last message in MaxProp's order; i.e., the last one of the
+		 * equally ordered messages that would be at the end of the list if
+		 * the messages were (stably) sorted */
+		setSortKeys(messages, calcThreshold());
+		TransferCandidates.Candidate last = messages.get(0);
+		for (int i=1, n=messages.size(); i<n; i++) {
+			TransferCandidates.Candidate c = messages.get(i);
+			if (this.comparator.compare(c, last) >= 0) {
+				last = c;
+			}
+		}
 
-		return validMessages.get(validMessages.size()-1); // return last message
+		Message m = last.getMessage();
+		messages.clear();
+		return m;
 	}
 
 	@Override
 	public void update() {
 		super.update();
-		if (!canStartTransfer() ||isTransferring()) {
+		if (isPlannedRouting() || !canStartTransfer() || isTransferring()) {
 			return; // nothing to transfer or is currently transferring
 		}
 
@@ -303,48 +308,56 @@ public class MaxPropRouter extends ActiveRouter {
 	/**
 	 * Returns the message delivery cost between two hosts from this host's
 	 * point of view. If there is no path between "from" and "to" host,
-	 * Double.MAX_VALUE is returned. Paths are calculated only to hosts
-	 * that this host has messages to.
+	 * Double.MAX_VALUE is returned. Paths are calculated lazily, only as far
+	 * as needed for the requested destinations, and cached until the
+	 * meeting probabilities change.
 	 * @param from The host where a message is coming from
 	 * @param to The host where a message would be destined to
 	 * @return The cost of the cheapest path to the destination or
 	 * Double.MAX_VALUE if such a path doesn't exist
 	 */
 	public double getCost(DTNHost from, DTNHost to) {
-		/* check if the cached values are OK */
-		if (this.costsForMessages == null || lastCostFrom != from) {
-			/* cached costs are invalid -> calculate new costs */
-			this.allProbs.put(getHost().getAddress(), this.probs);
-			int fromIndex = from.getAddress();
-
-			/* calculate paths only to nodes we have messages to
-			 * (optimization) */
-			Set<Integer> toSet = new HashSet<Integer>();
-			for (Message m : getMessageCollection()) {
-				toSet.add(m.getTo().getAddress());
-			}
+		return engine.getCost(from.getAddress(), to.getAddress());
+	}
 
-			this.costsForMessages = dijkstra.getCosts(fromIndex, toSet);
-			this.lastCostFrom = from; // store source host for caching checks
+	/**
+	 * Tries to send all other messages to all connected hosts ordered by
+	 * hop counts and their delivery probability
+	 * @return The connection that started a transfer or null if no transfer
+	 * was started
+	 */
+	private Connection tryOtherMessages() {
+		TransferCandidates messages = this.candidates;
+		collectOtherMessages(messages);
+		if (messages.size() == 0) {
+			return null;
 		}
 
-		if (costsForMessages.containsKey(to.getAddress())) {
-			return costsForMessages.get(to.getAddress());
-		}
-		else {
-			/* there's no known path to the given host */
-			return Double.MAX_VALUE;
-		}
+		Connection con = tryMessagesForConnected(messages);
+		messages.clear();
+		return con;
+	}
+
+	@Override
+	protected boolean supportsPlannedRouting() {
+		return true;
+	}
+
+	@Override
+	protected void planOtherTransfers(TransferCandidates plan) {
+		collectOtherMessages(this.candidates);
+		plan.addAll(this.candidates);
+		this.candidates.clear();
 	}
 
 	/**
-	 * Tries to send all other messages to all connected hosts ordered by
-	 * hop counts and their delivery probability
-	 * @return The return value of {@link #tryMessagesForConnected(List)}
+	 * Collects the message-connection candidates for all the messages that
+	 * could be sent to the connected hosts, ordered by the criteria defined
+	 * in MaxPropComparator
+	 * @param messages The list where the candidates are put
 	 */
-	private Tuple<Message, Connection> tryOtherMessages() {
-		List<Tuple<Message, Connection>> messages =
-			new ArrayList<Tuple<Message, Connection>>();
+	private void collectOtherMessages(TransferCandidates messages) {
+		messages.clear();
 
 		Collection<Message> msgCollection = getMessageCollection();
 
@@ -353,7 +366,7 @@ public class MaxPropRouter extends ActiveRouter {
 		for (Connection con : getConnections()) {
 			DTNHost other = con.getOtherNode(getHost());
 			MaxPropRouter othRouter = (MaxPropRouter)other.getRouter();
-			Set<String> sentMsgIds = this.sentMessages.get(other);
+			MessageHistory sentMsgIds = this.sentMessages.get(other);
 
 			if (othRouter.isTransferring()) {
 				continue; // skip hosts that are transferring
@@ -362,28 +375,51 @@ public class MaxPropRouter extends ActiveRouter {
 			for (Message m : msgCollection) {
 				/* skip messages that the other host has or that have
 				 * passed the other host */
-				if (othRouter.hasMessage(m.getId()) ||
+				if (othRouter.hasMessage(m) ||
 						m.getHops().contains(other)) {
 					continue;
 				}
 				/* skip message if this host has already sent it to the other
 				   host (regardless of if the other host still has it) */
-				if (sentMsgIds != null && sentMsgIds.contains(m.getId())) {
+				if (sentMsgIds != null && sentMsgIds.contains(m)) {
 					continue;
 				}
 				/* message was a good candidate for sending */
-				messages.add(new Tuple<Message, Connection>(m,con));
+				messages.add(m, con);
 			}
 		}
 
 		if (messages.size() == 0) {
-			return null;
+			return;
 		}
 
-		/* sort the message-connection tuples according to the criteria
-		 * defined in MaxPropTupleComparator */
-		Collections.sort(messages, new MaxPropTupleComparator(calcThreshold()));
-		return tryMessagesForConnected(messages);
+		/* sort the message-connection candidates according to the criteria
+		 * defined in MaxPropComparator */
+		setSortKeys(messages, calcThreshold());
+		messages.sort(this.comparator);
+	}
+
+	/**
+	 * Sets the sort keys of the candidates for {@link MaxPropComparator}:
+	 * the hop count of the message and, for messages at or above the
+	 * threshold, the cost of the message's path starting from the host
+	 * on the other end of the candidate's connection (or from this host if
+	 * the candidate has no connection).
+	 * @param candidates The candidates
+	 * @param threshold The hop count threshold
+	 */
+	private void setSortKeys(TransferCandidates candidates, int threshold) {
+		this.comparator.threshold = threshold;
+		for (int i=0, n=candidates.size(); i<n; i++) {
+			TransferCandidates.Candidate c = candidates.get(i);
+			Message m = c.getMessage();
+			c.intKey = m.getHopCount();
+			if (c.intKey >= threshold) {
+				DTNHost from = (c.getConnection() == null ? getHost() :
+					c.getConnection().getOtherNode(getHost()));
+				c.key = getCost(from, m.getTo());
+			}
+		}
 	}
 
 	/**
@@ -415,86 +451,73 @@ public class MaxPropRouter extends ActiveRouter {
 			return 0; // no need for the threshold
 		}
 
-		/* creates a copy of the messages list, sorted by hop count */
-		ArrayList<Message> msgs = new ArrayList<Message>();
-		msgs.addAll(getMessageCollection());
-		if (msgs.size() == 0) {
+		if (this.getNrofMessages() == 0) {
 			return 0; // no messages -> no need for threshold
 		}
-		/* anonymous comparator class for hop count comparison */
-		Comparator<Message> hopCountComparator = new Comparator<Message>() {
-			public int compare(Message m1, Message m2) {
-				return m1.getHopCount() - m2.getHopCount();
-			}
-		};
-		Collections.sort(msgs, hopCountComparator);
-
-		/* finds the first message that is beyond the calculated portion */
-		int i=0;
-		for (int n=msgs.size(); i<n && p>0; i++) {
-			p -= msgs.get(i).getSize();
-		}
 
-		i--; // the last round moved i one index too far
-		if (i < 0) {
-			return 0;
+		/* total size of the messages per hop count (i.e., the messages
+		 * sorted by hop count, bucketed) */
+		long[] sizes = this.sizesByHopCount;
+		int maxHopCount = 0;
+		for (Message m : getMessageCollection()) {
+			int hopCount = m.getHopCount();
+			if (hopCount >= sizes.length) {
+				sizes = Arrays.copyOf(sizes, Math.max(hopCount + 1,
+						sizes.length * 2));
+				this.sizesByHopCount = sizes;
+			}
+			sizes[hopCount] += m.getSize();
+			maxHopCount = Math.max(maxHopCount, hopCount);
+		}
+
+		/* finds the hop count of the first message that is beyond the
+		 * calculated portion (or the biggest hop count if all messages fit
+		 * in the portion) */
+		int hopCount = 0;
+		for (; hopCount < maxHopCount; hopCount++) {
+			p -= sizes[hopCount];
+			if (p <= 0) {
+				break;
+			}
 		}
+		Arrays.fill(sizes, 0, maxHopCount + 1, 0);
 
-		/* now i points to the first packet that exceeds portion p;
-		 * the threshold is that packet's hop count + 1 (so that packet and
+		/* the threshold is that packet's hop count + 1 (so that packet and
 		 * perhaps some more are included in the priority part) */
-		return msgs.get(i).getHopCount() + 1;
+		return hopCount + 1;
 	}
 
 	/**
-	 * Message comparator for the MaxProp routing module.
+	 * Message-Connection candidate comparator for the MaxProp routing module.
 	 * Messages that have a hop count smaller than the given
 	 * threshold are given priority and they are ordered by their hop count.
-	 * Other messages are ordered by their delivery cost.
+	 * Other messages are ordered by their delivery cost. The hop counts
+	 * and the costs are read from the keys of the candidates (see
+	 * {@link MaxPropRouter#setSortKeys(TransferCandidates, int)}).
 	 */
-	private class MaxPropComparator implements Comparator<Message> {
+	private class MaxPropComparator implements
+		Comparator<TransferCandidates.Candidate> {
+		/** Messages with the hop count smaller than this value are
+		 * transferred first (and ordered by the hop count) */
 		private int threshold;
-		private DTNHost from1;
-		private DTNHost from2;
-
-		/**
-		 * Constructor. Assumes that the host where all the costs are calculated
-		 * from is this router's host.
-		 * @param treshold Messages with the hop count smaller than this
-		 * value are transferred first (and ordered by the hop count)
-		 */
-		public MaxPropComparator(int treshold) {
-			this.threshold = treshold;
-			this.from1 = this.from2 = getHost();
-		}
 
 		/**
-		 * Constructor.
-		 * @param treshold Messages with the hop count smaller than this
-		 * value are transferred first (and ordered by the hop count)
-		 * @param from1 The host where the cost of msg1 is calculated from
-		 * @param from2 The host where the cost of msg2 is calculated from
-		 */
-		public MaxPropComparator(int treshold, DTNHost from1, DTNHost from2) {
-			this.threshold = treshold;
-			this.from1 = from1;
-			this.from2 = from2;
-		}
-
-		/**
-		 * Compares two messages and returns -1 if the first given message
-		 * should be first in order, 1 if the second message should be first
-		 * or 0 if message order can't be decided. If both messages' hop count
-		 * is less than the threshold, messages are compared by their hop count
-		 * (smaller is first). If only other's hop count is below the threshold,
-		 * that comes first. If both messages are below the threshold, the one
-		 * with smaller cost (determined by
+		 * Compares two candidates and returns -1 if the first given
+		 * candidate should be first in order, 1 if the second candidate
+		 * should be first or 0 if the order can't be decided. If both
+		 * messages' hop count is less than the threshold, messages are
+		 * compared by their hop count (smaller is first). If only other's hop
+		 * count is below the threshold, that comes first. If both messages
+		 * are below the threshold, the one with smaller cost (determined by
 		 * {@link MaxPropRouter#getCost(DTNHost, DTNHost)}) is first.
 		 */
-		public int compare(Message msg1, Message msg2) {
+		public int compare(TransferCandidates.Candidate c1,
+				TransferCandidates.Candidate c2) {
+			Message msg1 = c1.getMessage();
+			Message msg2 = c2.getMessage();
+			int hopc1 = c1.intKey;
+			int hopc2 = c2.intKey;
 			double p1, p2;
-			int hopc1 = msg1.getHopCount();
-			int hopc2 = msg2.getHopCount();
 
 			if (msg1 == msg2) {
 				return 0;
@@ -517,8 +540,8 @@ public class MaxPropRouter extends ActiveRouter {
 
 			/* both messages have more than threshold hops -> cost of the
 			 * message path is used for ordering */
-			p1 = getCost(from1, msg1.getTo());
-			p2 = getCost(from2, msg2.getTo());
+			p1 = c1.key;
+			p2 = c2.key;
 
 			/* the one with lower cost should be sent first */
 			if (p1-p2 == 0) {
@@ -540,45 +563,15 @@ public class MaxPropRouter extends ActiveRouter {
 		}
 	}
 
-	/**
-	 * Message-Connection tuple comparator for the MaxProp routing
-	 * module. Uses {@link MaxPropComparator} on the messages of the tuples
-	 * setting the "from" host for that message to be the one in the connection
-	 * tuple (i.e., path is calculated starting from the host on the other end
-	 * of the connection).
-	 */
-	private class MaxPropTupleComparator
-			implements Comparator <Tuple<Message, Connection>>  {
-		private int threshold;
-
-		public MaxPropTupleComparator(int threshold) {
-			this.threshold = threshold;
-		}
-
-		/**
-		 * Compares two message-connection tuples using the
-		 * {@link MaxPropComparator#compare(Message, Message)}.
-		 */
-		public int compare(Tuple<Message, Connection> tuple1,
-				Tuple<Message, Connection> tuple2) {
-			MaxPropComparator comp;
-			DTNHost from1 = tuple1.getValue().getOtherNode(getHost());
-			DTNHost from2 = tuple2.getValue().getOtherNode(getHost());
-
-			comp = new MaxPropComparator(threshold, from1, from2);
-			return comp.compare(tuple1.getKey(), tuple2.getKey());
-		}
-	}
-
 
 	@Override
 	public RoutingInfo getRoutingInfo() {
 		RoutingInfo top = super.getRoutingInfo();
-		RoutingInfo ri = new RoutingInfo(probs.getAllProbs().size() +
+		RoutingInfo ri = new RoutingInfo(engine.getProbs().getAllProbs().size() +
 				" meeting probabilities");
 
 		/* show meeting probabilities for this host */
-		for (Map.Entry<Integer, Double> e : probs.getAllProbs().entrySet()) {
+		for (Map.Entry<Integer, Double> e : engine.getProbs().getAllProbs().entrySet()) {
 			Integer host = e.getKey();
 			Double value = e.getValue();
 			ri.addMoreInfo(new RoutingInfo(String.format("host %d : %.6f",
@@ -4,6 +4,8 @@
  */
 package routing;
 
+import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collection;
 import java.util.Collections;
 import java.util.Comparator;
@@ -20,7 +22,12 @@ import core.Settings;
 import core.SettingsError;
 import core.SimClock;
 import core.SimError;
+import routing.util.MessageHistory;
+import routing.util.MessageHolderIndex;
+import routing.util.NeighborMessageCounter;
 import routing.util.RoutingInfo;
+import routing.util.SummaryVector;
+import routing.util.TransferCandidates;
 import util.Tuple;
 
 /**
@@ -87,10 +94,16 @@ public abstract class MessageRouter {
 	private HashMap<String, Message> incomingMessages;
 	/** The messages this router is carrying */
 	private HashMap<String, Message> messages;
-	/** The messages this router has received as the final recipient */
-	private HashMap<String, Message> deliveredMessages;
+	/** Summary vector (ID indexes) of the messages this router is carrying */
+	private SummaryVector summaryVector;
+	/** The messages this router has received as the final recipient
+	 * (always an exact history, since it defines the first deliveries) */
+	private MessageHistory deliveredMessages;
 	/** The messages that Applications on this router have blacklisted */
-	private HashMap<String, Object> blacklistedMessages;
+	private MessageHistory blacklistedMessages;
+	/** Prototype of the duplicate suppression histories (defines their
+	 * configuration) */
+	private MessageHistory historyProto;
 	/** Host where this router belongs to */
 	private DTNHost host;
 	/** size of the buffer */
@@ -99,9 +112,26 @@ public abstract class MessageRouter {
 	protected int msgTtl;
 	/** Queue mode for sending messages */
 	private int sendQueueMode;
+	/** Random number generator for the random queue mode (created lazily) */
+	private Random queueRng;
+	/** Has something happened to the router since the last update
+	 * (see {@link #needsUpdate()}) */
+	private boolean awake;
+	/** counters of the connected hosts that count the messages of this
+	 * router (null if there are none) */
+	private List<NeighborMessageCounter> neighborCounters;
 
 	/** applications attached to the host */
 	private HashMap<String, Collection<Application>> applications = null;
+	/** applications that handle messages, by application ID; the arrays
+	 * include the applications that receive all messages */
+	private HashMap<String, Application[]> appDispatch;
+	/** applications that receive all messages (application ID null) */
+	private Application[] wildcardApps;
+	/** applications that need to be updated on every update round */
+	private Application[] updatingApps;
+
+	private static final Application[] NO_APPS = new Application[0];
 
 	/**
 	 * Constructor. Creates a new message router based on the settings in
@@ -113,6 +143,8 @@ public abstract class MessageRouter {
 		this.bufferSize = Integer.MAX_VALUE; // defaults to rather large buffer
 		this.msgTtl = Message.INFINITE_TTL;
 		this.applications = new HashMap<String, Collection<Application>>();
+		buildAppDispatch();
+		this.historyProto = new MessageHistory(s);
 
 		if (s.contains(B_SIZE_S)) {
 			this.bufferSize = s.getLong(B_SIZE_S);
@@ -153,10 +185,12 @@ public abstract class MessageRouter {
 	public void init(DTNHost host, List<MessageListener> mListeners) {
 		this.incomingMessages = new HashMap<String, Message>();
 		this.messages = new HashMap<String, Message>();
-		this.deliveredMessages = new HashMap<String, Message>();
-		this.blacklistedMessages = new HashMap<String, Object>();
+		this.summaryVector = new SummaryVector();
+		this.deliveredMessages = new MessageHistory();
+		this.blacklistedMessages = newMessageHistory();
 		this.mListeners = mListeners;
 		this.host = host;
+		this.awake = true;
 	}
 
 	/**
@@ -167,13 +201,15 @@ public abstract class MessageRouter {
 		this.bufferSize = r.bufferSize;
 		this.msgTtl = r.msgTtl;
 		this.sendQueueMode = r.sendQueueMode;
+		this.historyProto = r.historyProto;
 
 		this.applications = new HashMap<String, Collection<Application>>();
 		for (Collection<Application> apps : r.applications.values()) {
 			for (Application app : apps) {
-				addApplication(app.replicate());
+				putApplication(app.replicate());
 			}
 		}
+		buildAppDispatch();
 	}
 
 	/**
@@ -182,13 +218,51 @@ public abstract class MessageRouter {
 	 * interval to update the status of transfer(s).
 	 */
 	public void update(){
-		for (Collection<Application> apps : this.applications.values()) {
-			for (Application app : apps) {
-				app.update(this.host);
-			}
+		/* applications may act on their own at any time */
+		Application[] apps = this.updatingApps;
+		this.awake = apps.length > 0;
+		for (int i=0; i<apps.length; i++) {
+			apps[i].update(this.host);
 		}
 	}
 
+	/**
+	 * Wakes up the router so that it is updated on the next update round
+	 * even if the router dormancy mode of the world is on. Routers wake
+	 * themselves up when a connection changes, a message is created,
+	 * received, or aborted. Applications (or any other module) can call this
+	 * to request an update.
+	 */
+	public void wakeUp() {
+		this.awake = true;
+	}
+
+	/**
+	 * Returns a new, empty message history with the history configuration
+	 * of this router (see {@link MessageHistory}). The history may be
+	 * lossy, so it should be used only for duplicate suppression.
+	 * @return a new message history
+	 */
+	protected MessageHistory newMessageHistory() {
+		return this.historyProto.replicate();
+	}
+
+	/**
+	 * Returns true if the router should be updated on the current update
+	 * round. Only used when the router dormancy mode of the world is on;
+	 * otherwise routers are always updated. The default implementation
+	 * returns true if the router has been woken up (see {@link #wakeUp()})
+	 * after the previous update or if it has applications that need
+	 * updates (see {@link Application#needsUpdates()}). Subclasses that
+	 * need updates also in some other situations must override this
+	 * method or keep themselves awake by calling {@link #wakeUp()} in their
+	 * update method.
+	 * @return true if the router should be updated
+	 */
+	public boolean needsUpdate() {
+		return this.awake;
+	}
+
 	/**
 	 * Informs the router about change in connections state.
 	 * @param con The connection that changed
@@ -213,6 +287,56 @@ public abstract class MessageRouter {
 		return this.messages.containsKey(id);
 	}
 
+	/**
+	 * Checks if this router has a message with the same ID as the given
+	 * message buffered. Uses the summary vector instead of the ID lookup.
+	 * @param m The message whose ID is checked
+	 * @return True if the router has message with the same id, false if not
+	 */
+	public boolean hasMessage(Message m) {
+		return this.summaryVector.get(m.getIdIndex());
+	}
+
+	/**
+	 * Returns the summary vector of the messages this router is carrying.
+	 * The returned vector is updated when messages are added or removed and
+	 * must not be modified by the caller.
+	 * @return The summary vector of this router
+	 */
+	public SummaryVector getSummaryVector() {
+		return this.summaryVector;
+	}
+
+	/**
+	 * Returns the messages this router is carrying but the other router
+	 * is not. The size of the difference is first counted a word at a time
+	 * from the summary vectors so nothing is iterated if the other router
+	 * already has everything. The messages are in the same order as in
+	 * {@link #getMessageCollection()}.
+	 * @param other The other router
+	 * @return A new list of the messages the other router lacks
+	 */
+	public List<Message> getMessagesLackedBy(MessageRouter other) {
+		SummaryVector otherSv = other.summaryVector;
+		int nrofLacked = summaryVector.differenceCardinality(otherSv);
+		List<Message> lacked = new ArrayList<Message>(nrofLacked);
+
+		if (nrofLacked == 0) {
+			return lacked;
+		}
+
+		for (Message m : this.messages.values()) {
+			if (!otherSv.get(m.getIdIndex())) {
+				lacked.add(m);
+				if (lacked.size() == nrofLacked) {
+					break; /* found all of them */
+				}
+			}
+		}
+
+		return lacked;
+	}
+
 	/**
 	 * Returns true if a full message with same ID as the given message has been
 	 * received by this host as the <strong>final</strong> recipient
@@ -222,7 +346,7 @@ public abstract class MessageRouter {
 	 * this host as the final recipient.
 	 */
 	protected boolean isDeliveredMessage(Message m) {
-		return (this.deliveredMessages.containsKey(m.getId()));
+		return this.deliveredMessages.contains(m);
 	}
 
 	/**
@@ -231,11 +355,11 @@ public abstract class MessageRouter {
 	 * This ensures the peer doesn't try to constantly send the same message to
 	 * this node, just to get dropped by an application every time.
 	 *
-	 * @param id	id of the message
+	 * @param m	the message
 	 * @return <code>true</code> if blacklisted, <code>false</code> otherwise.
 	 */
-	protected boolean isBlacklistedMessage(String id) {
-		return this.blacklistedMessages.containsKey(id);
+	protected boolean isBlacklistedMessage(Message m) {
+		return this.blacklistedMessages.contains(m);
 	}
 
 	/**
@@ -302,12 +426,10 @@ public abstract class MessageRouter {
 	 */
 	public void sendMessage(String id, DTNHost to) {
 		Message m = getMessage(id);
-		Message m2;
 		if (m == null) throw new SimError("no message for id " +
 				id + " to send at " + this.host);
 
-		m2 = m.replicate();	// send a replicate of the message
-		to.receiveMessage(m2, this.host);
+		to.receiveMessage(m, this.host); // receiver replicates the message
 	}
 
 	/**
@@ -321,7 +443,11 @@ public abstract class MessageRouter {
 	}
 
 	/**
-	 * Try to start receiving a message from another host.
+	 * Try to start receiving a message from another host. The offered
+	 * message is the sender's copy and must not be modified; if the message
+	 * is accepted, a replicate of it is put to the incoming buffer. Since a
+	 * replicate is created only for an accepted message, subclasses should
+	 * do their acceptance checks before calling this method.
 	 * @param m Message to put in the receiving buffer
 	 * @param from Who the message is from
 	 * @return Value zero if the node accepted the message (RCV_OK), value less
@@ -331,16 +457,71 @@ public abstract class MessageRouter {
 	public int receiveMessage(Message m, DTNHost from) {
 		Message newMessage = m.replicate();
 
+		this.wakeUp();
 		this.putToIncomingBuffer(newMessage, from);
 		newMessage.addNodeOnPath(this.host);
 
-		for (MessageListener ml : this.mListeners) {
-			ml.messageTransferStarted(newMessage, from, getHost());
+		if (!isQueuedOffer(from)) {
+			/* queued transfers are reported when they actually start */
+			for (MessageListener ml : this.mListeners) {
+				ml.messageTransferStarted(newMessage, from, getHost());
+			}
 		}
 
 		return RCV_OK; // superclass always accepts messages
 	}
 
+	/**
+	 * Returns true if the message the given host is offering is queued to be
+	 * transferred after its ongoing transfer(s) instead of starting right
+	 * away (see {@link Connection#isQueueingFrom(DTNHost)})
+	 * @param from The host offering a message
+	 * @return true if the offer is for a queued transfer
+	 */
+	protected boolean isQueuedOffer(DTNHost from) {
+		for (Connection con : this.host.getConnections()) {
+			if (con.isQueueingFrom(from)) {
+				return true;
+			}
+		}
+		return false;
+	}
+
+	/**
+	 * This method should be called (on the receiving host) when the transfer
+	 * of an accepted queued message actually starts, i.e., the message
+	 * becomes the one that is being transferred
+	 * @param id Id of the message
+	 * @param from Host the message is from (previous hop)
+	 */
+	public void queuedTransferStarted(String id, DTNHost from) {
+		Message incoming = getIncomingMessage(id, from);
+		if (incoming == null) {
+			throw new SimError("No queued message with ID " + id +
+					" in the incoming buffer of " + this.host);
+		}
+
+		for (MessageListener ml : this.mListeners) {
+			ml.messageTransferStarted(incoming, from, getHost());
+		}
+	}
+
+	/**
+	 * This method should be called (on the receiving host) when an accepted
+	 * queued message is dropped before its transfer started. The message is
+	 * removed from the incoming buffer without informing the listeners since
+	 * no transfer was started or aborted.
+	 * @param id Id of the message
+	 * @param from Host the message was from (previous hop)
+	 */
+	public void queuedTransferCancelled(String id, DTNHost from) {
+		if (removeFromIncomingBuffer(id, from) == null) {
+			throw new SimError("No queued message with ID " + id +
+					" to cancel in " + this.host);
+		}
+		this.wakeUp();
+	}
+
 	/**
 	 * This method should be called (on the receiving host) after a message
 	 * was successfully transferred. The transferred message is put to the
@@ -360,14 +541,16 @@ public abstract class MessageRouter {
 					"buffer of " + this.host);
 		}
 
+		this.wakeUp();
 		incoming.setReceiveTime(SimClock.getTime());
 
 		// Pass the message to the application (if any) and get outgoing message
 		Message outgoing = incoming;
-		for (Application app : getApplications(incoming.getAppID())) {
+		Application[] apps = getAppDispatch(incoming.getAppID());
+		for (int i=0; i<apps.length; i++) {
 			// Note that the order of applications is significant
 			// since the next one gets the output of the previous.
-			outgoing = app.handle(outgoing, this.host);
+			outgoing = apps[i].handle(outgoing, this.host);
 			if (outgoing == null) break; // Some app wanted to drop the message
 		}
 
@@ -383,11 +566,11 @@ public abstract class MessageRouter {
 			// -> put to buffer
 			addToMessages(aMessage, false);
 		} else if (isFirstDelivery) {
-			this.deliveredMessages.put(id, aMessage);
+			this.deliveredMessages.add(aMessage);
 		} else if (outgoing == null) {
 			// Blacklist messages that an app wants to drop.
 			// Otherwise the peer will just try to send it back again.
-			this.blacklistedMessages.put(id, null);
+			this.blacklistedMessages.add(aMessage);
 		}
 
 		for (MessageListener ml : this.mListeners) {
@@ -419,6 +602,17 @@ public abstract class MessageRouter {
 		return this.incomingMessages.remove(id + "_" + from.toString());
 	}
 
+	/**
+	 * Returns a message from the incoming messages buffer without removing
+	 * it
+	 * @param id ID of the message
+	 * @param from The host that sent this message (previous hop)
+	 * @return The message or null if such message wasn't found
+	 */
+	public Message getIncomingMessage(String id, DTNHost from) {
+		return this.incomingMessages.get(id + "_" + from.toString());
+	}
+
 	/**
 	 * Returns true if a message with the given ID is one of the
 	 * currently incoming messages, false if not
@@ -437,7 +631,14 @@ public abstract class MessageRouter {
 	 * message, if false, nothing is informed.
 	 */
 	protected void addToMessages(Message m, boolean newMessage) {
-		this.messages.put(m.getId(), m);
+		Message old = this.messages.put(m.getId(), m);
+		this.summaryVector.set(m.getIdIndex());
+		MessageHolderIndex.addHolder(m, this.host);
+		if (old == null && this.neighborCounters != null) {
+			for (int i=0, n=neighborCounters.size(); i<n; i++) {
+				neighborCounters.get(i).messageAdded(m);
+			}
+		}
 
 		if (newMessage) {
 			for (MessageListener ml : this.mListeners) {
@@ -453,9 +654,50 @@ public abstract class MessageRouter {
 	 */
 	protected Message removeFromMessages(String id) {
 		Message m = this.messages.remove(id);
+		if (m != null) {
+			this.summaryVector.clear(m.getIdIndex());
+			MessageHolderIndex.removeHolder(m, this.host);
+			if (this.neighborCounters != null) {
+				for (int i=0, n=neighborCounters.size(); i<n; i++) {
+					neighborCounters.get(i).messageRemoved(m);
+				}
+			}
+		}
 		return m;
 	}
 
+	/**
+	 * Registers a counter of a connected host that should be told about the
+	 * messages that are added to or removed from the buffer of this router.
+	 * A counter is registered once per connection.
+	 * @param counter The counter to register
+	 * @see NeighborMessageCounter#neighborConnected(MessageRouter)
+	 */
+	public void addNeighborCounter(NeighborMessageCounter counter) {
+		if (this.neighborCounters == null) {
+			this.neighborCounters = new ArrayList<NeighborMessageCounter>(4);
+		}
+		this.neighborCounters.add(counter);
+	}
+
+	/**
+	 * Unregisters (one registration of) a counter of a connected host
+	 * @param counter The counter to unregister
+	 * @return true if the counter was registered, false if not
+	 */
+	public boolean removeNeighborCounter(NeighborMessageCounter counter) {
+		if (this.neighborCounters == null) {
+			return false;
+		}
+		for (int i=0, n=neighborCounters.size(); i<n; i++) {
+			if (neighborCounters.get(i) == counter) {
+				neighborCounters.remove(i);
+				return true;
+			}
+		}
+		return false;
+	}
+
 	/**
 	 * This method should be called (on the receiving host) when a message
 	 * transfer was aborted.
@@ -470,6 +712,7 @@ public abstract class MessageRouter {
 			throw new SimError("No incoming message for id " + id +
 					" to abort in " + this.host);
 		}
+		this.wakeUp();
 
 		for (MessageListener ml : this.mListeners) {
 			ml.messageTransferAborted(incoming, from, this.host);
@@ -484,6 +727,7 @@ public abstract class MessageRouter {
 	 */
 	public boolean createNewMessage(Message m) {
 		m.setTtl(this.msgTtl);
+		this.wakeUp();
 		addToMessages(m, true);
 		return true;
 	}
@@ -517,36 +761,10 @@ public abstract class MessageRouter {
 	protected List sortByQueueMode(List list) {
 		switch (sendQueueMode) {
 		case Q_MODE_RANDOM:
-			Collections.shuffle(list, new Random(SimClock.getIntTime()));
+			Collections.shuffle(list, getQueueRng());
 			break;
 		case Q_MODE_FIFO:
-			Collections.sort(list,
-					new Comparator() {
-				/** Compares two tuples by their messages' receiving time */
-				public int compare(Object o1, Object o2) {
-					double diff;
-					Message m1, m2;
-
-					if (o1 instanceof Tuple) {
-						m1 = ((Tuple<Message, Connection>)o1).getKey();
-						m2 = ((Tuple<Message, Connection>)o2).getKey();
-					}
-					else if (o1 instanceof Message) {
-						m1 = (Message)o1;
-						m2 = (Message)o2;
-					}
-					else {
-						throw new SimError("Invalid type of objects in " +
-								"the list");
-					}
-
-					diff = m1.getReceiveTime() - m2.getReceiveTime();
-					if (diff == 0) {
-						return 0;
-					}
-					return (diff < 0 ? -1 : 1);
-				}
-			});
+			Collections.sort(list, FIFO_COMPARATOR);
 			break;
 		/* add more queue modes here */
 		default:
@@ -556,6 +774,89 @@ public abstract class MessageRouter {
 		return list;
 	}
 
+	/**
+	 * Sorts/shuffles the given transfer candidates according to the current
+	 * sending queue mode. The resulting order is the same as the order
+	 * {@link #sortByQueueMode(List)} gives for the same candidates as tuples.
+	 * @param candidates The candidates to sort or shuffle
+	 */
+	protected void sortByQueueMode(TransferCandidates candidates) {
+		switch (sendQueueMode) {
+		case Q_MODE_RANDOM:
+			candidates.shuffle(getQueueRng());
+			break;
+		case Q_MODE_FIFO:
+			candidates.sort(FIFO_CANDIDATE_COMPARATOR);
+			break;
+		/* add more queue modes here */
+		default:
+			throw new SimError("Unknown queue mode " + sendQueueMode);
+		}
+	}
+
+	/**
+	 * Returns the random number generator for the random queue mode. The
+	 * generator is seeded with the current simulation time (in seconds) so
+	 * the shuffles are repeatable.
+	 * @return The (re)seeded random number generator
+	 */
+	protected Random getQueueRng() {
+		if (this.queueRng == null) {
+			this.queueRng = new Random(SimClock.getIntTime());
+		}
+		else {
+			this.queueRng.setSeed(SimClock.getIntTime());
+		}
+		return this.queueRng;
+	}
+
+	/**
+	 * Compares two messages by their receiving time
+	 */
+	private static int compareByReceiveTime(Message m1, Message m2) {
+		double diff = m1.getReceiveTime() - m2.getReceiveTime();
+		if (diff == 0) {
+			return 0;
+		}
+		return (diff < 0 ? -1 : 1);
+	}
+
+	/** Comparator for the FIFO mode of {@link #sortByQueueMode(List)} */
+	@SuppressWarnings(value = "rawtypes")
+	private static final Comparator FIFO_COMPARATOR = new Comparator() {
+		/** Compares two tuples by their messages' receiving time */
+		@SuppressWarnings(value = "unchecked")
+		public int compare(Object o1, Object o2) {
+			Message m1, m2;
+
+			if (o1 instanceof Tuple) {
+				m1 = ((Tuple<Message, Connection>)o1).getKey();
+				m2 = ((Tuple<Message, Connection>)o2).getKey();
+			}
+			else if (o1 instanceof Message) {
+				m1 = (Message)o1;
+				m2 = (Message)o2;
+			}
+			else {
+				throw new SimError("Invalid type of objects in " +
+						"the list");
+			}
+
+			return compareByReceiveTime(m1, m2);
+		}
+	};
+
+	/** Comparator for the FIFO mode of
+	 * {@link #sortByQueueMode(TransferCandidates)} */
+	private static final Comparator<TransferCandidates.Candidate>
+		FIFO_CANDIDATE_COMPARATOR =
+			new Comparator<TransferCandidates.Candidate>() {
+		public int compare(TransferCandidates.Candidate c1,
+				TransferCandidates.Candidate c2) {
+			return compareByReceiveTime(c1.getMessage(), c2.getMessage());
+		}
+	};
+
 	/**
 	 * Gives the order of the two given messages as defined by the current
 	 * queue mode
@@ -607,10 +908,6 @@ public abstract class MessageRouter {
 			incoming.addMoreInfo(new RoutingInfo(m));
 		}
 
-		for (Message m : this.deliveredMessages.values()) {
-			delivered.addMoreInfo(new RoutingInfo(m + " path:" + m.getHops()));
-		}
-
 		for (Connection c : host.getConnections()) {
 			cons.addMoreInfo(new RoutingInfo(c));
 		}
@@ -624,6 +921,16 @@ public abstract class MessageRouter {
 	 * @param app	The application to attach to this router.
 	 */
 	public void addApplication(Application app) {
+		putApplication(app);
+		buildAppDispatch();
+	}
+
+	/**
+	 * Puts an application to the applications map without updating the
+	 * dispatch tables
+	 * @param app The application
+	 */
+	private void putApplication(Application app) {
 		if (!this.applications.containsKey(app.getAppID())) {
 			this.applications.put(app.getAppID(),
 					new LinkedList<Application>());
@@ -631,6 +938,55 @@ public abstract class MessageRouter {
 		this.applications.get(app.getAppID()).add(app);
 	}
 
+	/**
+	 * (Re)builds the application dispatch tables from the applications map.
+	 * The tables are built once when the router is created or replicated
+	 * (and again only if applications are added later) so that handing a
+	 * message to the applications, or updating them, doesn't have to
+	 * collect the applications again.
+	 */
+	private void buildAppDispatch() {
+		Collection<Application> wildcards = this.applications.get(null);
+		this.wildcardApps = wildcards == null ? NO_APPS :
+			wildcards.toArray(new Application[wildcards.size()]);
+		this.appDispatch = new HashMap<String, Application[]>();
+
+		List<Application> updating = new ArrayList<Application>();
+		for (String id : this.applications.keySet()) {
+			Collection<Application> apps = this.applications.get(id);
+			if (id != null) {
+				Application[] table =
+					new Application[apps.size() + wildcardApps.length];
+				apps.toArray(table);
+				System.arraycopy(wildcardApps, 0, table, apps.size(),
+						wildcardApps.length);
+				this.appDispatch.put(id, table);
+			}
+			for (Application app : apps) {
+				if (app.needsUpdates()) {
+					updating.add(app);
+				}
+			}
+		}
+		this.updatingApps = updating.isEmpty() ? NO_APPS :
+			updating.toArray(new Application[updating.size()]);
+	}
+
+	/**
+	 * Returns the applications that handle messages with the given
+	 * application ID, in the order they should handle the message. The
+	 * returned array is shared and must not be modified.
+	 * @param ID The application ID
+	 * @return The applications (an empty array if there are none)
+	 */
+	private Application[] getAppDispatch(String ID) {
+		if (ID == null) {
+			return this.wildcardApps;
+		}
+		Application[] apps = this.appDispatch.get(ID);
+		return apps != null ? apps : this.wildcardApps;
+	}
+
 	/**
 	 * Returns all the applications that want to receive messages for the given
 	 * application ID.
@@ -639,20 +995,7 @@ public abstract class MessageRouter {
 	 * @return		A list of all applications that want to receive the message.
 	 */
 	public Collection<Application> getApplications(String ID) {
-		LinkedList<Application>	apps = new LinkedList<Application>();
-		// Applications that match
-		Collection<Application> tmp = this.applications.get(ID);
-		if (tmp != null) {
-			apps.addAll(tmp);
-		}
-		// Applications that want to look at all messages
-		if (ID != null) {
-			tmp = this.applications.get(null);
-			if (tmp != null) {
-				apps.addAll(tmp);
-			}
-		}
-		return apps;
+		return new ArrayList<Application>(Arrays.asList(getAppDispatch(ID)));
 	}
 
 	/**
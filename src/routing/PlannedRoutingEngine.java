@@ -0,0 +1,300 @@
+/*
+ * Copyright 2010 Aalto University, ComNet
+ * Released under GPLv3. See LICENSE.txt for details.
+ */
+package routing;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import core.Connection;
+import core.DTNHost;
+import core.DTNSim;
+import core.SimError;
+
+/**
+ * Two-phase routing decision engine. Routers that support planned routing
+ * (see {@link ActiveRouter#setPlannedRouting(boolean)}) don't make their
+ * routing decisions in their update method; instead, after all the hosts
+ * have been updated, the engine
+ * <ol>
+ * <li>splits the hosts to connected components using the current
+ * connections and lets the routers plan their transfers
+ * ({@link ActiveRouter#planTransfers()}). The components are planned in
+ * parallel; the routers of one component are planned by the same thread in
+ * the order of their addresses. Since planning only reads the state of the
+ * router and the routers of the connected hosts, the plans don't depend on
+ * the number of threads.</li>
+ * <li>lets the routers start the planned transfers one at a time in the
+ * update order of the hosts: first the transfers of deliverable messages
+ * ({@link ActiveRouter#commitDeliverableTransfers()}) and then the rest
+ * ({@link ActiveRouter#commitTransfers()}).</li>
+ * </ol>
+ */
+public class PlannedRoutingEngine {
+	/** the shared thread pool (null if not created yet) */
+	private static ExecutorService pool;
+	/** number of threads in the pool */
+	private static int poolSize;
+
+	/** the hosts, indexed by their address */
+	private DTNHost[] hosts;
+	/** number of threads to plan with */
+	private int nrofThreads;
+	/** union-find parents of the host addresses */
+	private int[] parents;
+	/** number of planning hosts in each component (by root address) */
+	private int[] componentSizes;
+	/** addresses of the planning hosts, grouped by component */
+	private int[] planned;
+	/** start indexes of the components in planned (and end of last) */
+	private int[] componentStarts;
+	/** number of components with planning hosts */
+	private int nrofComponents;
+	/** index of the next component to plan */
+	private AtomicInteger nextComponent;
+	/** the planning tasks */
+	private List<Callable<Object>> tasks;
+
+	static {
+		DTNSim.registerForReset(PlannedRoutingEngine.class.getCanonicalName());
+		reset();
+	}
+
+	/**
+	 * Creates a new engine and sets the routers of the hosts that support
+	 * planned routing to the planned routing mode
+	 * @param hosts All the hosts of the simulation
+	 * @param nrofThreads Number of threads to use for planning
+	 */
+	public PlannedRoutingEngine(List<DTNHost> hosts, int nrofThreads) {
+		int maxAddress = 0;
+		for (DTNHost h : hosts) {
+			maxAddress = Math.max(maxAddress, h.getAddress());
+		}
+
+		this.hosts = new DTNHost[maxAddress + 1];
+		for (DTNHost h : hosts) {
+			this.hosts[h.getAddress()] = h;
+			if (h.getRouter() instanceof ActiveRouter) {
+				((ActiveRouter)h.getRouter()).setPlannedRouting(true);
+			}
+		}
+
+		this.nrofThreads = Math.max(1, nrofThreads);
+		this.parents = new int[this.hosts.length];
+		this.componentSizes = new int[this.hosts.length];
+		this.planned = new int[this.hosts.length];
+		this.componentStarts = new int[this.hosts.length + 1];
+		this.nextComponent = new AtomicInteger();
+
+		this.tasks = new ArrayList<Callable<Object>>(this.nrofThreads);
+		for (int i=0; i<this.nrofThreads; i++) {
+			this.tasks.add(new Callable<Object>() {
+				public Object call() {
+					planComponents();
+					return null;
+				}
+			});
+		}
+	}
+
+	/**
+	 * Plans and commits the routing decisions of the routers in the
+	 * planned routing mode. Should be called once per update round after
+	 * all the hosts have been updated.
+	 * @param updateOrder The hosts in the order they were updated; the
+	 * planned transfers are committed in this order
+	 */
+	public void update(List<DTNHost> updateOrder) {
+		findComponents();
+
+		/* planning phase */
+		this.nextComponent.set(0);
+		if (this.nrofThreads == 1 || this.nrofComponents <= 1) {
+			planComponents();
+		} else {
+			runParallel();
+		}
+
+		/* commit phase: first the deliverable messages and then the rest */
+		for (int i=0, n=updateOrder.size(); i<n; i++) {
+			ActiveRouter r = getPlannedRouter(updateOrder.get(i));
+			if (r != null) {
+				r.commitDeliverableTransfers();
+			}
+		}
+		for (int i=0, n=updateOrder.size(); i<n; i++) {
+			ActiveRouter r = getPlannedRouter(updateOrder.get(i));
+			if (r != null) {
+				r.commitTransfers();
+			}
+		}
+	}
+
+	/**
+	 * Groups the hosts whose routers can plan transfers to components
+	 * connected by the current connections
+	 */
+	private void findComponents() {
+		int[] parent = this.parents;
+		for (int i=0; i<parent.length; i++) {
+			parent[i] = i;
+		}
+		for (DTNHost h : this.hosts) {
+			if (h == null) {
+				continue;
+			}
+			List<Connection> cons = h.getConnections();
+			for (int i=0, n=cons.size(); i<n; i++) {
+				union(h.getAddress(), cons.get(i).getOtherNode(h).getAddress());
+			}
+		}
+
+		/* count the planning hosts of each component... */
+		int[] sizes = this.componentSizes;
+		Arrays.fill(sizes, 0);
+		for (int a=0; a<hosts.length; a++) {
+			if (isPlanning(hosts[a])) {
+				sizes[find(a)]++;
+			}
+		}
+
+		/* ...assign ranges for them (in the order of the root address)... */
+		int[] starts = this.componentStarts;
+		int nrof = 0;
+		int pos = 0;
+		for (int a=0; a<hosts.length; a++) {
+			if (sizes[a] > 0) {
+				starts[nrof++] = pos;
+				int size = sizes[a];
+				sizes[a] = pos; // reuse as the next free position
+				pos += size;
+			}
+		}
+		starts[nrof] = pos;
+		this.nrofComponents = nrof;
+
+		/* ...and put the hosts to the ranges in the address order */
+		for (int a=0; a<hosts.length; a++) {
+			if (isPlanning(hosts[a])) {
+				planned[sizes[find(a)]++] = a;
+			}
+		}
+	}
+
+	/**
+	 * Plans the transfers of the components until all the components have
+	 * been planned. Called by all the planning threads.
+	 */
+	private void planComponents() {
+		int c;
+		while ((c = nextComponent.getAndIncrement()) < nrofComponents) {
+			for (int i=componentStarts[c], n=componentStarts[c+1]; i<n; i++) {
+				getPlannedRouter(hosts[planned[i]]).planTransfers();
+			}
+		}
+	}
+
+	/**
+	 * Runs the planning tasks in the thread pool and waits until all
+	 * of them are done
+	 */
+	private void runParallel() {
+		try {
+			for (Future<Object> f :
+					getPool(this.nrofThreads).invokeAll(this.tasks)) {
+				f.get();
+			}
+		} catch (InterruptedException e) {
+			throw new SimError("Interrupted while planning transfers", e);
+		} catch (ExecutionException e) {
+			Throwable cause = e.getCause();
+			if (cause instanceof RuntimeException) {
+				throw (RuntimeException)cause;
+			}
+			throw new SimError("Planning transfers failed", e);
+		}
+	}
+
+	/**
+	 * Returns true if the host's router is in the planned routing mode and
+	 * the host has connections
+	 */
+	private boolean isPlanning(DTNHost host) {
+		return host != null && host.hasConnections() &&
+			getPlannedRouter(host) != null;
+	}
+
+	/**
+	 * Returns the router of the host if it is in the planned routing mode
+	 * or null if it isn't
+	 */
+	private static ActiveRouter getPlannedRouter(DTNHost host) {
+		MessageRouter r = host.getRouter();
+		if (r instanceof ActiveRouter && ((ActiveRouter)r).isPlannedRouting()) {
+			return (ActiveRouter)r;
+		}
+		return null;
+	}
+
+	private int find(int a) {
+		int[] parent = this.parents;
+		while (parent[a] != a) {
+			parent[a] = parent[parent[a]]; // path halving
+			a = parent[a];
+		}
+		return a;
+	}
+
+	private void union(int a, int b) {
+		int ra = find(a);
+		int rb = find(b);
+		if (ra < rb) {
+			parents[rb] = ra;
+		} else if (rb < ra) {
+			parents[ra] = rb;
+		}
+	}
+
+	/**
+	 * Returns the shared thread pool with at least the given number of
+	 * threads
+	 */
+	private static synchronized ExecutorService getPool(int nrofThreads) {
+		if (pool == null || poolSize < nrofThreads) {
+			if (pool != null) {
+				pool.shutdown();
+			}
+			pool = Executors.newFixedThreadPool(nrofThreads,
+					new ThreadFactory() {
+				public Thread newThread(Runnable r) {
+					Thread t = new Thread(r, "routing-planner");
+					t.setDaemon(true); // don't keep the simulator running
+					return t;
+				}
+			});
+			poolSize = nrofThreads;
+		}
+		return pool;
+	}
+
+	/**
+	 * Shuts down the shared thread pool
+	 */
+	public static synchronized void reset() {
+		if (pool != null) {
+			pool.shutdown();
+		}
+		pool = null;
+		poolSize = 0;
+	}
+}
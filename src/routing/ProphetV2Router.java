@@ -6,25 +6,22 @@
  */
 package routing;
 
-import java.util.ArrayList;
 import java.util.Collection;
-import java.util.Collections;
 import java.util.Comparator;
 import java.util.HashMap;
-import java.util.List;
 import java.util.Map;
 
 import java.util.Random;
 
+import routing.util.PredictabilityTable;
 import routing.util.RoutingInfo;
-
+import routing.util.TransferCandidates;
 
 import core.Connection;
 import core.DTNHost;
 import core.Message;
 import core.Settings;
 import core.SimClock;
-import util.Tuple;
 
 /**
  * Implementation of PRoPHETv2" router as described in
@@ -69,7 +66,11 @@ public class ProphetV2Router extends ActiveRouter {
 	private double gamma;
 
 	/** delivery predictabilities */
-	private Map<DTNHost, Double> preds;
+	private PredictabilityTable preds;
+	/** candidates for the other messages (reused between the updates) */
+	private TransferCandidates candidates;
+	/** comparator for ordering the candidates */
+	private CandidateComparator candidateComparator;
 
 	/** last encouter timestamp (sim)time */
 	private Map<DTNHost, Double> lastEncouterTime;
@@ -114,6 +115,8 @@ public class ProphetV2Router extends ActiveRouter {
 		this.beta = r.beta;
 		this.gamma = r.gamma;
 		initPreds();
+		this.candidates = new TransferCandidates();
+		this.candidateComparator = new CandidateComparator();
 		initEncTimes();
 	}
 
@@ -128,7 +131,7 @@ public class ProphetV2Router extends ActiveRouter {
 	 * Initializes predictability hash
 	 */
 	private void initPreds() {
-		this.preds = new HashMap<DTNHost, Double>();
+		this.preds = new PredictabilityTable();
 	}
 
 	@Override
@@ -191,12 +194,7 @@ public class ProphetV2Router extends ActiveRouter {
 	 */
 	public double getPredFor(DTNHost host) {
 		ageDeliveryPreds(); // make sure preds are updated before getting
-		if (preds.containsKey(host)) {
-			return preds.get(host);
-		}
-		else {
-			return 0;
-		}
+		return preds.get(host);
 	}
 
 	/**
@@ -211,19 +209,20 @@ public class ProphetV2Router extends ActiveRouter {
 			"PRoPHETv2 only works with other routers of same type";
 
 		double pForHost = getPredFor(host); // P(a,b)
-		Map<DTNHost, Double> othersPreds =
+		PredictabilityTable othersPreds =
 			((ProphetV2Router)otherRouter).getDeliveryPreds();
 
-		for (Map.Entry<DTNHost, Double> e : othersPreds.entrySet()) {
-			if (e.getKey() == getHost()) {
-				continue; // don't add yourself
+		for (int i=0, n=othersPreds.getAddressLimit(); i<n; i++) {
+			DTNHost c = othersPreds.getHost(i);
+			if (c == null || c == getHost()) {
+				continue; // no entry or yourself
 			}
 
 //ProphetV2 max(old,new)
-			double pOld = getPredFor(e.getKey()); // P(a,c)_old
-			double pNew = pForHost * e.getValue() * beta;
+			double pOld = getPredFor(c); // P(a,c)_old
+			double pNew = pForHost * othersPreds.get(i) * beta;
 			if(pNew>pOld)
-				preds.put(e.getKey(), pNew);
+				preds.put(c, pNew);
 
 		}
 	}
@@ -243,18 +242,16 @@ public class ProphetV2Router extends ActiveRouter {
 		}
 
 		double mult = Math.pow(gamma, timeDiff);
-		for (Map.Entry<DTNHost, Double> e : preds.entrySet()) {
-			e.setValue(e.getValue()*mult);
-		}
+		preds.age(mult);
 
 		this.lastAgeUpdate = SimClock.getTime();
 	}
 
 	/**
-	 * Returns a map of this router's delivery predictions
-	 * @return a map of this router's delivery predictions
+	 * Returns the table of this router's delivery predictions
+	 * @return the table of this router's delivery predictions
 	 */
-	private Map<DTNHost, Double> getDeliveryPreds() {
+	private PredictabilityTable getDeliveryPreds() {
 		ageDeliveryPreds(); // make sure the aging is done
 		return this.preds;
 	}
@@ -277,11 +274,12 @@ public class ProphetV2Router extends ActiveRouter {
 	/**
 	 * Tries to send all other messages to all connected hosts ordered by
 	 * their delivery probability
-	 * @return The return value of {@link #tryMessagesForConnected(List)}
+	 * @return The connection that started a transfer or null if no transfer
+	 * was started
 	 */
-	private Tuple<Message, Connection> tryOtherMessages() {
-		List<Tuple<Message, Connection>> messages =
-			new ArrayList<Tuple<Message, Connection>>();
+	private Connection tryOtherMessages() {
+		TransferCandidates messages = this.candidates;
+		messages.clear();
 
 		Collection<Message> msgCollection = getMessageCollection();
 
@@ -296,13 +294,14 @@ public class ProphetV2Router extends ActiveRouter {
 			}
 
 			for (Message m : msgCollection) {
-				if (othRouter.hasMessage(m.getId())) {
+				if (othRouter.hasMessage(m)) {
 					continue; // skip messages that the other one has
 				}
-				if((othRouter.getPredFor(m.getTo()) >= getPredFor(m.getTo())))
+				double othPred = othRouter.getPredFor(m.getTo());
+				if(othPred >= getPredFor(m.getTo()))
 				{
 
-					messages.add(new Tuple<Message, Connection>(m,con));
+					messages.add(m, con).key = othPred;
 				}
 			}
 		}
@@ -311,34 +310,33 @@ public class ProphetV2Router extends ActiveRouter {
 			return null;
 		}
 
-		// sort the message-connection tuples
-		Collections.sort(messages, new TupleComparator());
-		return tryMessagesForConnected(messages);	// try to send messages
+		// sort the message-connection candidates
+		messages.sort(this.candidateComparator);
+		Connection con = tryMessagesForConnected(messages); // try to send
+		messages.clear();
+		return con;
 	}
 
 	/**
-	 * Comparator for Message-Connection-Tuples that orders the tuples by
-	 * their delivery probability by the host on the other side of the
-	 * connection (GRTRMax)
+	 * Comparator for the message-connection candidates that orders the
+	 * candidates by the delivery probability of the host on the other side
+	 * of the connection (GRTRMax). The probability is the key of the
+	 * candidate.
 	 */
-	private class TupleComparator implements Comparator
-		<Tuple<Message, Connection>> {
-
-		public int compare(Tuple<Message, Connection> tuple1,
-				Tuple<Message, Connection> tuple2) {
-			// delivery probability of tuple1's message with tuple1's connection
-			double p1 = ((ProphetV2Router)tuple1.getValue().
-					getOtherNode(getHost()).getRouter()).getPredFor(
-					tuple1.getKey().getTo());
-			// -"- tuple2...
-			double p2 = ((ProphetV2Router)tuple2.getValue().
-					getOtherNode(getHost()).getRouter()).getPredFor(
-					tuple2.getKey().getTo());
+	private class CandidateComparator implements Comparator
+		<TransferCandidates.Candidate> {
+
+		public int compare(TransferCandidates.Candidate c1,
+				TransferCandidates.Candidate c2) {
+			// delivery probability of c1's message with c1's connection
+			double p1 = c1.key;
+			// -"- c2...
+			double p2 = c2.key;
 
 			// bigger probability should come first
 			if (p2-p1 == 0) {
 				/* equal probabilities -> let queue mode decide */
-				return compareByQueueMode(tuple1.getKey(), tuple2.getKey());
+				return compareByQueueMode(c1.getMessage(), c2.getMessage());
 			}
 			else if (p2-p1 < 0) {
 				return -1;
@@ -356,7 +354,7 @@ public class ProphetV2Router extends ActiveRouter {
 		RoutingInfo ri = new RoutingInfo(preds.size() +
 				" delivery prediction(s)");
 
-		for (Map.Entry<DTNHost, Double> e : preds.entrySet()) {
+		for (Map.Entry<DTNHost, Double> e : preds.toMap().entrySet()) {
 			DTNHost host = e.getKey();
 			Double value = e.getValue();
 
@@ -7,6 +7,7 @@ package routing;
 import java.util.ArrayList;
 import java.util.List;
 
+import routing.util.TransferCandidates;
 import core.Connection;
 import core.DTNHost;
 import core.Message;
@@ -81,6 +82,7 @@ public class SprayAndWaitRouter extends ActiveRouter {
 
 		msg.setTtl(this.msgTtl);
 		msg.addProperty(MSG_COUNT_PROPERTY, new Integer(initialNrofCopies));
+		this.wakeUp();
 		addToMessages(msg, true);
 		return true;
 	}
@@ -88,7 +90,7 @@ public class SprayAndWaitRouter extends ActiveRouter {
 	@Override
 	public void update() {
 		super.update();
-		if (!canStartTransfer() || isTransferring()) {
+		if (isPlannedRouting() || !canStartTransfer() || isTransferring()) {
 			return; // nothing to transfer or is currently transferring
 		}
 
@@ -107,6 +109,18 @@ public class SprayAndWaitRouter extends ActiveRouter {
 		}
 	}
 
+	@Override
+	protected boolean supportsPlannedRouting() {
+		return true;
+	}
+
+	@Override
+	protected void planOtherTransfers(TransferCandidates plan) {
+		@SuppressWarnings(value = "unchecked")
+		List<Message> copiesLeft = sortByQueueMode(getMessagesWithCopiesLeft());
+		planMessagesToConnections(plan, copiesLeft, getConnections());
+	}
+
 	/**
 	 * Creates and returns a list of messages this router is currently
 	 * carrying and still has copies left to distribute (nrof copies > 1).
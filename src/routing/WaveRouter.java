@@ -6,6 +6,8 @@ package routing;
 
 import java.util.Collection;
 import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
 import java.util.Map;
 
 import routing.util.RoutingInfo;
@@ -34,8 +36,9 @@ public class WaveRouter extends ActiveRouter {
 	public static final String CUSTODY_S = "custodyFraction";
 	private double immunityTime;
 	private double custodyFraction;
-	/** map of recently received messages and their receive times */
-	private Map<String, Double> recentMessages;
+	/** map of recently received messages and their receive times (in the
+	 * order the messages were received) */
+	private LinkedHashMap<String, Double> recentMessages;
 	/** IDs of the messages this host has custody for */
 	private Map<String, Double> custodyMessages;
 
@@ -56,7 +59,7 @@ public class WaveRouter extends ActiveRouter {
 	 */
 	protected WaveRouter(WaveRouter r) {
 		super(r);
-		recentMessages = new HashMap<String, Double>();
+		recentMessages = new LinkedHashMap<String, Double>();
 		this.immunityTime = r.immunityTime;
 		this.custodyFraction = r.custodyFraction;
 		this.custodyMessages = new HashMap<String, Double>();
@@ -133,11 +136,29 @@ public class WaveRouter extends ActiveRouter {
 	public Message messageTransferred(String id, DTNHost from) {
 		Message m = super.messageTransferred(id, from);
 		/* store received message IDs for immunity */
+		pruneRecentMessages();
 		this.recentMessages.put(m.getId(), new Double(SimClock.getTime()));
 		this.custodyMessages.put(id, SimClock.getTime());
 		return m;
 	}
 
+	/**
+	 * Removes the oldest recent messages whose immunity time has passed.
+	 * Such entries would be removed by {@link #checkReceiving(Message,
+	 * DTNHost)} anyway, so removing them early doesn't change the routing
+	 * but keeps the map from growing without bound.
+	 */
+	private void pruneRecentMessages() {
+		double now = SimClock.getTime();
+		Iterator<Double> i = this.recentMessages.values().iterator();
+		while (i.hasNext()) {
+			if (i.next() + this.immunityTime > now) {
+				break; /* the rest were (mostly) received later */
+			}
+			i.remove();
+		}
+	}
+
 	@Override
 	protected void transferDone(Connection con) {
 		/* remove from custody messages (if it was there) */
@@ -4,59 +4,52 @@
  */
 package routing.maxprop;
 
-import java.util.Collection;
-import java.util.Comparator;
 import java.util.HashMap;
-import java.util.HashSet;
 import java.util.Map;
-import java.util.PriorityQueue;
-import java.util.Queue;
 import java.util.Set;
 
 /**
  * Dijkstra's shortest path implementation for MaxProp Router module.
+ * The searches use primitive arrays indexed by the node addresses and a
+ * binary heap of node addresses. A search is continued only as far as
+ * needed for finding the requested nodes and the state of the searches
+ * from the most recently used source nodes is kept, so asking costs to new
+ * destinations only continues the earlier search. When the graph changes,
+ * a search is restarted only if the set of a node it has already visited
+ * changed; the sets of the other nodes haven't been used by the search yet.
  */
 public class MaxPropDijkstra {
 	/** Value for infinite distance  */
-	private static final Double INFINITY = Double.MAX_VALUE;
-	/** Initial size of the priority queue */
-	private static final int PQ_INIT_SIZE = 11;
-
-	/** Map of node distances from the source node */
-	private DistanceMap distancesFromStart;
-	/** Set of already visited nodes (where the shortest path is known) */
-	private Set<Integer> visited;
-	/** Priority queue of unvisited nodes discovered so far */
-	private Queue<Integer> unvisited;
-	/** Map of previous nodes on the shortest path(s) -- only used for
-	 * debugging purposes */
-	private Map<Integer, Integer> prevNodes;
-	/** Mapping of to other nodes' (whom this node has met) probability sets */
+	private static final double INFINITY = Double.MAX_VALUE;
+	/** How many searches (from different source nodes) are cached */
+	private static final int NROF_CACHED_SEARCHES = 4;
+
+	/** The graph the paths are searched from */
+	private MeetingProbabilityGraph graph;
+	/** Mapping of the probability sets if the graph is created from that */
 	private Map<Integer, MeetingProbabilitySet> probs;
+	/** Searches from the recently used source nodes */
+	private Search[] searches;
+	/** Index of the search that is replaced next */
+	private int nextReplaced;
 
 	/**
 	 * Constructor.
 	 * @param probs A reference to the mapping of the known hosts meeting
-	 * probability sets
+	 * probability sets. The mapping is read again for every query.
 	 */
 	public MaxPropDijkstra(Map<Integer, MeetingProbabilitySet> probs) {
 		this.probs = probs;
+		this.searches = new Search[NROF_CACHED_SEARCHES];
 	}
 
 	/**
-	 * Initializes a new search with the first hop router node
-	 * @param firstHop The first hop router node
+	 * Constructor.
+	 * @param graph The graph of the known hosts meeting probability sets
 	 */
-	private void initWith(Integer firstHop) {
-		this.unvisited = new PriorityQueue<Integer>(PQ_INIT_SIZE,
-				new DistanceComparator());
-		this.visited = new HashSet<Integer>();
-		this.prevNodes = new HashMap<Integer, Integer>();
-		this.distancesFromStart = new DistanceMap();
-
-		// set distance to source 0 and initialize unvisited queue
-		this.distancesFromStart.put(firstHop, 0);
-		this.unvisited.add(firstHop);
+	public MaxPropDijkstra(MeetingProbabilityGraph graph) {
+		this.graph = graph;
+		this.searches = new Search[NROF_CACHED_SEARCHES];
 	}
 
 	/**
@@ -69,156 +62,269 @@ public class MaxPropDijkstra {
 	 */
 	public Map<Integer, Double> getCosts(Integer from, Set<Integer> to) {
 		Map<Integer, Double> distMap = new HashMap<Integer, Double>();
-		int nrofNodesToFind = to.size();
-
-		initWith(from);
-		Integer node = null;
-
-		// always take the node with shortest distance
-		while ((node = unvisited.poll()) != null) {
-			if (to.contains(node)) {
-				// found one of the requested nodes
-				distMap.put(node, distancesFromStart.get(node));
-				nrofNodesToFind--;
-				if (nrofNodesToFind == 0) {
-					break; // all requested nodes found
-				}
-			}
+		Search search = getSearch(from);
 
-			visited.add(node); // mark the node as visited
-			relax(node);       // add/update neighbor nodes' distances
+		for (Integer node : to) {
+			double dist = search.distanceTo(node);
+			if (dist != INFINITY) {
+				distMap.put(node, dist);
+			}
 		}
 
 		return distMap;
 	}
 
 	/**
-	 * Relaxes the neighbors of a node (updates the shortest distances).
-	 * @param node The node whose neighbors are relaxed
+	 * Calculates the total cost from one node to another.
+	 * @param from The index (address) of the start node
+	 * @param to The index (address) of the destination node
+	 * @return The cost or Double.MAX_VALUE if there is no path between
+	 * the nodes
 	 */
-	private void relax(Integer node) {
-		double nodeDist = distancesFromStart.get(node);
-		Collection<Integer> neighbors;
+	public double getCost(int from, int to) {
+		return getSearch(from).distanceTo(to);
+	}
 
-		if (!this.probs.containsKey(node)) {
-			return; // node's neighbors are not known
+	/**
+	 * Returns an up-to-date search from the given source node
+	 */
+	private Search getSearch(int from) {
+		if (this.probs != null) {
+			/* graph from a mapping that could have been modified */
+			this.graph = new MeetingProbabilityGraph(this.probs);
 		}
 
-		neighbors =	this.probs.get(node).getAllProbs().keySet();
-
-		for (Integer n : neighbors) {
-			if (visited.contains(n)) {
-				continue; // skip visited nodes
+		int version = graph.getVersion();
+		Search search = null;
+		for (Search s : searches) {
+			if (s != null && s.source == from) {
+				search = s;
+				break;
 			}
+		}
 
-			// n node's distance from path's source node
-			double nDist = nodeDist + getDistance(node, n);
-
-			if (distancesFromStart.get(n) > nDist) {
-				// stored distance > found dist -> update
-				prevNodes.put(n, node); // for debugging
-				setDistance(n, nDist);
+		if (search == null) {
+			search = searches[nextReplaced];
+			if (search == null) {
+				search = new Search();
+				searches[nextReplaced] = search;
+			}
+			nextReplaced = (nextReplaced + 1) % NROF_CACHED_SEARCHES;
+			search.start(from, version);
+		}
+		else if (this.probs != null) {
+			search.start(from, version); /* a new graph */
+		}
+		else if (search.version != version) {
+			if (search.isAffected()) {
+				search.start(from, version);
+			}
+			else {
+				search.version = version;
 			}
 		}
-	}
-
-	/**
-	 * Sets the distance from source node to a node
-	 * @param n The node whose distance is set
-	 * @param distance The distance of the node from the source node
-	 */
-	private void setDistance(Integer n, double distance) {
-		unvisited.remove(n); // remove node from old place in the queue
-		distancesFromStart.put(n, distance); // update distance
-		unvisited.add(n); // insert node to the new place in the queue
-	}
 
-	/**
-	 * Returns the "distance" between two nodes, i.e., the complement of the
-	 * probability that the next node "from" meets is "to". Works only if there
-	 * exist a probability value for "from" meeting "to".
-	 * @param from The first node
-	 * @param to The second node
-	 * @return The distance between the two nodes
-	 */
-	private double getDistance(Integer from, Integer to) {
-		assert probs.containsKey(from) : "Node " + from + " has not met " + to +
-			" (it has met nodes " + probs.keySet() + ")";
-		return ( 1 - probs.get(from).getProbFor(to) );
+		return search;
 	}
 
 	/**
-	 * Comparator that compares two nodes by their distance from
-	 * the source node.
+	 * State of a search from one source node. Nodes whose distance is known
+	 * (visited nodes) and nodes discovered so far are marked with the
+	 * generation number of the search so the arrays don't need to be
+	 * cleared between searches.
 	 */
-	private class DistanceComparator implements
-		Comparator<Integer> {
+	private class Search {
+		/** source node of the search */
+		private int source;
+		/** graph version the search is valid for */
+		private int version;
+		/** generation number of the search */
+		private int generation;
+		/** distances from the source node */
+		private double[] distances = new double[0];
+		/** generation when the node was discovered */
+		private int[] discovered = new int[0];
+		/** generation when the node was visited */
+		private int[] visited = new int[0];
+		/** binary heap of discovered but unvisited nodes */
+		private int[] heap = new int[0];
+		/** positions of the nodes in the heap */
+		private int[] heapPos = new int[0];
+		private int heapSize;
 
 		/**
-		 * Compares two map nodes by their distance from the source node
-		 * @return -1, 0 or 1 if node1's distance is smaller, equal to, or
-		 * bigger than node2's distance
+		 * (Re)starts the search from the given node
 		 */
-		public int compare(Integer node1, Integer node2) {
-			double dist1 = distancesFromStart.get(node1);
-			double dist2 = distancesFromStart.get(node2);
+		private void start(int source, int version) {
+			this.source = source;
+			this.version = version;
+			this.generation++;
+			this.heapSize = 0;
+			ensureCapacity(source);
+			distances[source] = 0;
+			discovered[source] = generation;
+			push(source);
+		}
 
-			if (dist1 > dist2) {
-				return 1;
-			}
-			else if (dist1 < dist2) {
-				return -1;
-			}
-			else {
-				return node1.compareTo(node2);
+		/**
+		 * Returns true if the set of a node that this search has visited
+		 * has changed after the graph version of the search
+		 */
+		private boolean isAffected() {
+			int limit = Math.min(visited.length, graph.getAddressLimit());
+			for (int i=0; i<limit; i++) {
+				if (visited[i] == generation &&
+						graph.getVersion(i) > this.version) {
+					return true;
+				}
 			}
+			return false;
 		}
-	}
-
-	/**
-	 * Simple Map implementation for storing distances.
-	 */
-	private class DistanceMap {
-		private HashMap<Integer, Double> map;
 
 		/**
-		 * Constructor. Creates an empty distance map
+		 * Returns the distance to the given node, continuing the search as
+		 * long as needed for finding the node
 		 */
-		public DistanceMap() {
-			this.map = new HashMap<Integer, Double>();
+		private double distanceTo(int node) {
+			if (node < visited.length && visited[node] == generation) {
+				return distances[node];
+			}
+
+			// always take the node with shortest distance
+			while (heapSize > 0) {
+				int n = pop();
+				visited[n] = generation; // mark the node as visited
+				relax(n);                // add/update neighbor nodes' distances
+				if (n == node) {
+					return distances[n]; // found the requested node
+				}
+			}
+
+			return INFINITY;
 		}
 
 		/**
-		 * Returns the distance to a node. If no distance value
-		 * is found, returns {@link MaxPropDijkstra#INFINITY} as the value.
-		 * @param node The node whose distance is requested
-		 * @return The distance to that node
+		 * Relaxes the neighbors of a node (updates the shortest distances).
+		 * @param node The node whose neighbors are relaxed
 		 */
-		public double get(Integer node) {
-			Double value = map.get(node);
-			if (value != null) {
-				return value;
+		private void relax(int node) {
+			MeetingProbabilitySet set = graph.get(node);
+			if (set == null) {
+				return; // node's neighbors are not known
 			}
-			else {
-				return INFINITY;
+
+			double nodeDist = distances[node];
+			for (int i=0, size = set.size(); i < size; i++) {
+				int n = set.nodeAt(i);
+				ensureCapacity(n);
+				if (visited[n] == generation) {
+					continue; // skip visited nodes
+				}
+
+				// n node's distance from path's source node
+				double nDist = nodeDist + (1 - set.probAt(i));
+
+				if (discovered[n] != generation) {
+					discovered[n] = generation;
+					distances[n] = nDist;
+					push(n);
+				}
+				else if (distances[n] > nDist) {
+					// stored distance > found dist -> update
+					distances[n] = nDist;
+					siftUp(heapPos[n]);
+				}
 			}
 		}
 
 		/**
-		 * Puts a new distance value for a map node
-		 * @param node The node
-		 * @param distance Distance to that node
+		 * Returns true if node1 is closer to the source than node2 (or
+		 * they are equally close and node1 has a smaller index)
 		 */
-		public void  put(Integer node, double distance) {
-			map.put(node, distance);
+		private boolean closer(int node1, int node2) {
+			double dist1 = distances[node1];
+			double dist2 = distances[node2];
+			return dist1 < dist2 || (dist1 == dist2 && node1 < node2);
+		}
+
+		private void push(int node) {
+			heap[heapSize] = node;
+			heapPos[node] = heapSize;
+			heapSize++;
+			siftUp(heapSize - 1);
+		}
+
+		private int pop() {
+			int top = heap[0];
+			heapSize--;
+			if (heapSize > 0) {
+				heap[0] = heap[heapSize];
+				heapPos[heap[0]] = 0;
+				siftDown(0);
+			}
+			return top;
+		}
+
+		private void siftUp(int pos) {
+			int node = heap[pos];
+			while (pos > 0) {
+				int parent = (pos - 1) >>> 1;
+				if (!closer(node, heap[parent])) {
+					break;
+				}
+				heap[pos] = heap[parent];
+				heapPos[heap[pos]] = pos;
+				pos = parent;
+			}
+			heap[pos] = node;
+			heapPos[node] = pos;
+		}
+
+		private void siftDown(int pos) {
+			int node = heap[pos];
+			while (true) {
+				int child = 2 * pos + 1;
+				if (child >= heapSize) {
+					break;
+				}
+				if (child + 1 < heapSize && closer(heap[child + 1], heap[child])) {
+					child++;
+				}
+				if (!closer(heap[child], node)) {
+					break;
+				}
+				heap[pos] = heap[child];
+				heapPos[heap[pos]] = pos;
+				pos = child;
+			}
+			heap[pos] = node;
+			heapPos[node] = pos;
 		}
 
 		/**
-		 * Returns a string representation of the map's contents
-		 * @return a string representation of the map's contents
+		 * Makes sure the arrays can hold the given node index
 		 */
-		public String toString() {
-			return map.toString();
+		private void ensureCapacity(int node) {
+			if (node < distances.length) {
+				return;
+			}
+			int capacity = Math.max(node + 1, distances.length * 2);
+			double[] newDistances = new double[capacity];
+			int[] newDiscovered = new int[capacity];
+			int[] newVisited = new int[capacity];
+			int[] newHeap = new int[capacity];
+			int[] newHeapPos = new int[capacity];
+			System.arraycopy(distances, 0, newDistances, 0, distances.length);
+			System.arraycopy(discovered, 0, newDiscovered, 0,
+					discovered.length);
+			System.arraycopy(visited, 0, newVisited, 0, visited.length);
+			System.arraycopy(heap, 0, newHeap, 0, heapSize);
+			System.arraycopy(heapPos, 0, newHeapPos, 0, heapPos.length);
+			distances = newDistances;
+			discovered = newDiscovered;
+			visited = newVisited;
+			heap = newHeap;
+			heapPos = newHeapPos;
 		}
 	}
 }
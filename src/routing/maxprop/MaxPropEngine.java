@@ -0,0 +1,113 @@
+/*
+ * Copyright 2010 Aalto University, ComNet
+ * Released under GPLv3. See LICENSE.txt for details.
+ */
+package routing.maxprop;
+
+/**
+ * Meeting probability bookkeeping and path cost calculation of one MaxProp
+ * router. The probability sets of other nodes are immutable snapshots that
+ * are shared between the engines of different routers; only the node's own
+ * probability set is modified and it is copied (lazily, see
+ * {@link MeetingProbabilitySet#replicate()}) when it is given to others.
+ * Path costs are cached until the probability graph changes.
+ */
+public class MaxPropEngine {
+	/** address of the node this engine belongs to */
+	private final int address;
+	/** probabilities of meeting hosts */
+	private final MeetingProbabilitySet probs;
+	/** meeting probabilities of all hosts from this host's point of view */
+	private final MeetingProbabilityGraph graph;
+	/** the cost-to-node calculator */
+	private final MaxPropDijkstra dijkstra;
+
+	/**
+	 * Constructor.
+	 * @param address Address of the node the engine belongs to
+	 * @param maxSetSize Maximum size of the node's meeting probability set
+	 * @param alpha The alpha parameter of the meeting probability set
+	 */
+	public MaxPropEngine(int address, int maxSetSize, double alpha) {
+		this.address = address;
+		this.probs = new MeetingProbabilitySet(maxSetSize, alpha);
+		this.graph = new MeetingProbabilityGraph();
+		this.graph.put(address, this.probs);
+		this.dijkstra = new MaxPropDijkstra(this.graph);
+	}
+
+	/**
+	 * Returns the meeting probability set of the node
+	 * @return the meeting probability set of the node
+	 */
+	public MeetingProbabilitySet getProbs() {
+		return this.probs;
+	}
+
+	/**
+	 * Updates the meeting probability of the node for the given node
+	 * @param otherAddress Address of the node that was met
+	 * @see MeetingProbabilitySet#updateMeetingProbFor(int)
+	 */
+	public void updateMeetingProbFor(int otherAddress) {
+		this.probs.updateMeetingProbFor(otherAddress);
+		this.graph.put(this.address, this.probs); // graph changed
+	}
+
+	/**
+	 * Changes the alpha parameter of the node's meeting probability set
+	 * @param alpha The new alpha
+	 */
+	public void setAlpha(double alpha) {
+		this.probs.setAlpha(alpha);
+	}
+
+	/**
+	 * Exchanges the transitive probabilities between this and other
+	 * engine: both engines get the more recent of the probability sets of
+	 * every node and each other's own probability sets.
+	 * @param other The engine of the other node
+	 */
+	public void exchangeWith(MaxPropEngine other) {
+		this.updateTransitiveProbs(other);
+		other.updateTransitiveProbs(this);
+		this.graph.put(other.address, other.probs.replicate());
+		other.graph.put(this.address, this.probs.replicate());
+	}
+
+	/**
+	 * Updates transitive probability values by replacing the current
+	 * MeetingProbabilitySets with the sets of the other engine if those
+	 * have more recent updates.
+	 * @param other The other engine
+	 */
+	private void updateTransitiveProbs(MaxPropEngine other) {
+		for (int i=0, n = other.graph.getAddressLimit(); i < n; i++) {
+			MeetingProbabilitySet mps = other.graph.get(i);
+			if (mps == null || i == this.address) {
+				continue; // own set is always the most recent one
+			}
+
+			MeetingProbabilitySet myMps = this.graph.get(i);
+			if (myMps == null ||
+				mps.getLastUpdateTime() > myMps.getLastUpdateTime() ) {
+				if (i == other.address) {
+					mps = mps.replicate(); // the set still in use by other
+				}
+				this.graph.put(i, mps);
+			}
+		}
+	}
+
+	/**
+	 * Returns the message delivery cost between two hosts from this host's
+	 * point of view.
+	 * @param from Address of the host where a message is coming from
+	 * @param to Address of the host where a message would be destined to
+	 * @return The cost of the cheapest path to the destination or
+	 * Double.MAX_VALUE if such a path doesn't exist
+	 */
+	public double getCost(int from, int to) {
+		return this.dijkstra.getCost(from, to);
+	}
+}
@@ -0,0 +1,109 @@
+/*
+ * Copyright 2010 Aalto University, ComNet
+ * Released under GPLv3. See LICENSE.txt for details.
+ */
+package routing.maxprop;
+
+import java.util.Map;
+
+/**
+ * Meeting probability sets of the known nodes indexed by the node addresses.
+ * The graph has a version number that changes every time a set is put to
+ * the graph so the users can cache values computed from the graph. The
+ * version of the last change of each set is kept too, so cached values that
+ * depend only on some of the sets can be checked.
+ */
+public class MeetingProbabilityGraph {
+	private static final int INITIAL_CAPACITY = 16;
+
+	/** the sets by node address (null if the set is not known) */
+	private MeetingProbabilitySet[] sets;
+	/** graph version when the set of the node was last put */
+	private int[] setVersions;
+	/** number of modifications made to the graph */
+	private int version;
+
+	/**
+	 * Creates a new, empty graph
+	 */
+	public MeetingProbabilityGraph() {
+		this.sets = new MeetingProbabilitySet[INITIAL_CAPACITY];
+		this.setVersions = new int[INITIAL_CAPACITY];
+		this.version = 0;
+	}
+
+	/**
+	 * Creates a new graph with the sets of the given mapping
+	 * @param probs Mapping of node addresses to their probability sets
+	 */
+	public MeetingProbabilityGraph(Map<Integer, MeetingProbabilitySet> probs) {
+		this();
+		for (Map.Entry<Integer, MeetingProbabilitySet> e : probs.entrySet()) {
+			put(e.getKey(), e.getValue());
+		}
+	}
+
+	/**
+	 * Returns the probability set of a node
+	 * @param address Address of the node
+	 * @return The set or null if the set of the node is not known
+	 */
+	public MeetingProbabilitySet get(int address) {
+		if (address >= sets.length) {
+			return null;
+		}
+		return sets[address];
+	}
+
+	/**
+	 * Sets the probability set of a node. Must be called again also if
+	 * a set already in the graph is modified.
+	 * @param address Address of the node
+	 * @param set The new probability set of the node
+	 */
+	public void put(int address, MeetingProbabilitySet set) {
+		if (address >= sets.length) {
+			MeetingProbabilitySet[] newSets = new MeetingProbabilitySet[
+				Math.max(address + 1, sets.length * 2)];
+			System.arraycopy(sets, 0, newSets, 0, sets.length);
+			sets = newSets;
+			int[] newVersions = new int[newSets.length];
+			System.arraycopy(setVersions, 0, newVersions, 0,
+					setVersions.length);
+			setVersions = newVersions;
+		}
+		sets[address] = set;
+		version++;
+		setVersions[address] = version;
+	}
+
+	/**
+	 * Returns the upper limit (exclusive) of the addresses that can have a
+	 * set in the graph
+	 * @return the address limit
+	 */
+	public int getAddressLimit() {
+		return this.sets.length;
+	}
+
+	/**
+	 * Returns the current version of the graph. The version changes every
+	 * time the graph is modified.
+	 * @return the current version of the graph
+	 */
+	public int getVersion() {
+		return this.version;
+	}
+
+	/**
+	 * Returns the version of the graph when the set of a node was last put
+	 * @param address Address of the node
+	 * @return the version or 0 if no set has been put for the node
+	 */
+	public int getVersion(int address) {
+		if (address >= setVersions.length) {
+			return 0;
+		}
+		return this.setVersions[address];
+	}
+}
@@ -14,17 +14,29 @@ import static core.Constants.DEBUG;
 
 /**
  * Class for storing and manipulating the meeting probabilities for the MaxProp
- * router module.
+ * router module. The probabilities are stored in primitive arrays sorted by
+ * the node index. Replicas share the arrays with the original set
+ * (copy-on-write) so replicating is cheap and the actual copy is made only
+ * when either of the sets is modified.
  */
 public class MeetingProbabilitySet {
 	public static final int INFINITE_SET_SIZE = Integer.MAX_VALUE;
-	/** meeting probabilities (probability that the next node one meets is X) */
-	private Map<Integer, Double> probs;
+	private static final int INITIAL_CAPACITY = 8;
+
+	/** indexes of the nodes with a meeting probability (sorted) */
+	private int[] nodes;
+	/** meeting probabilities (probability that the next node one meets is X)
+	 * of the nodes in the same order */
+	private double[] probs;
+	/** number of nodes with a probability value */
+	private int size;
+	/** true if the arrays may be shared with another set */
+	private boolean shared;
 	/** the time when this MPS was last updated */
 	private double lastUpdateTime;
 	/** the alpha parameter */
 	private double alpha;
-    private int maxSetSize;
+	private int maxSetSize;
 
 	/**
 	 * Constructor. Creates a probability set with empty node-probability
@@ -34,14 +46,15 @@ public class MeetingProbabilitySet {
 	 */
 	public MeetingProbabilitySet(int maxSetSize, double alpha) {
 		this.alpha = alpha;
-		this.probs = new HashMap<Integer, Double>();
-        if (maxSetSize == INFINITE_SET_SIZE || maxSetSize < 1) {
-	this.probs = new HashMap<Integer, Double>();
-	this.maxSetSize = INFINITE_SET_SIZE;
-        } else {
-	this.probs = new HashMap<Integer, Double>(maxSetSize);
-            this.maxSetSize = maxSetSize;
-        }
+		if (maxSetSize == INFINITE_SET_SIZE || maxSetSize < 1) {
+			this.maxSetSize = INFINITE_SET_SIZE;
+		} else {
+			this.maxSetSize = maxSetSize;
+		}
+		this.nodes = new int[INITIAL_CAPACITY];
+		this.probs = new double[INITIAL_CAPACITY];
+		this.size = 0;
+		this.shared = false;
 		this.lastUpdateTime = 0;
 	}
 
@@ -62,7 +75,7 @@ public class MeetingProbabilitySet {
 		this(INFINITE_SET_SIZE, alpha);
 		double prob = 1.0/initiallyKnownNodes.size();
 		for (Integer i : initiallyKnownNodes) {
-			this.probs.put(i, prob);
+			put(i, prob);
 		}
 	}
 
@@ -74,39 +87,38 @@ public class MeetingProbabilitySet {
 	 * then all the probabilities are normalized so that their sum equals to 1.
 	 * @param index The node index to update the probability for
 	 */
-	public void updateMeetingProbFor(Integer index) {
-        Map.Entry<Integer, Double> smallestEntry = null;
-        double smallestValue = Double.MAX_VALUE;
+	public void updateMeetingProbFor(int index) {
+		int smallest = -1;
+		double smallestValue = Double.MAX_VALUE;
 
 		this.lastUpdateTime = SimClock.getTime();
 
-		if (probs.size() == 0) { // first entry
-			probs.put(index, 1.0);
+		if (size == 0) { // first entry
+			put(index, 1.0);
 			return;
 		}
 
 		double newValue = getProbFor(index) + alpha;
-		probs.put(index, newValue);
+		put(index, newValue);
 
 		/* now the sum of all entries is 1+alpha;
 		 * normalize to one by dividing all the entries by 1+alpha */
-		for (Map.Entry<Integer, Double> entry : probs.entrySet()) {
-			entry.setValue(entry.getValue() / (1+alpha));
-            if (entry.getValue() < smallestValue) {
-                smallestEntry = entry;
-                smallestValue = entry.getValue();
-            }
-
+		for (int i=0; i < size; i++) {
+			probs[i] = probs[i] / (1+alpha);
+			if (probs[i] < smallestValue) {
+				smallest = i;
+				smallestValue = probs[i];
+			}
 		}
 
-        if (probs.size() >= maxSetSize) {
-            if (DEBUG) core.Debug.p("Probsize: " + probs.size() + " dropping " +
-					probs.remove(smallestEntry.getKey()));
-        }
+		if (size >= maxSetSize) {
+			if (DEBUG) core.Debug.p("Probsize: " + size + " dropping " +
+					remove(smallest));
+		}
 	}
 
-	public void updateMeetingProbFor(Integer index, double iet)	{
-		probs.put(index, iet);
+	public void updateMeetingProbFor(int index, double iet)	{
+		put(index, iet);
 	}
 
 	/**
@@ -114,9 +126,10 @@ public class MeetingProbabilitySet {
 	 * @param index The index of the node to look the P for
 	 * @return the current delivery probability value
 	 */
-	public double getProbFor(Integer index) {
-		if (probs.containsKey(index)) {
-			return probs.get(index);
+	public double getProbFor(int index) {
+		int i = indexOf(index);
+		if (i >= 0) {
+			return probs[i];
 		}
 		else {
 			/* the node with the given index has not been met */
@@ -125,11 +138,37 @@ public class MeetingProbabilitySet {
 	}
 
 	/**
-	 * Returns a reference to the probability map of this probability set
-	 * @return a reference to the probability map of this probability set
+	 * Returns the probabilities of this probability set as a new map
+	 * @return the probabilities of this probability set as a new map
 	 */
 	public Map<Integer, Double> getAllProbs() {
-		return this.probs;
+		Map<Integer, Double> map = new HashMap<Integer, Double>();
+		for (int i=0; i < size; i++) {
+			map.put(nodes[i], probs[i]);
+		}
+		return map;
+	}
+
+	/**
+	 * Returns the number of nodes that have a probability value
+	 * @return the number of nodes that have a probability value
+	 */
+	public int size() {
+		return this.size;
+	}
+
+	/**
+	 * Returns the node index of the i:th value (in node index order)
+	 */
+	int nodeAt(int i) {
+		return this.nodes[i];
+	}
+
+	/**
+	 * Returns the i:th probability value (in node index order)
+	 */
+	double probAt(int i) {
+		return this.probs[i];
 	}
 
 	/**
@@ -148,28 +187,102 @@ public class MeetingProbabilitySet {
 	}
 
 	/**
-	 * Returns a deep copy of the probability set
-	 * @return a deep copy of the probability set
+	 * Returns a copy of the probability set. The copy shares the values with
+	 * this set until either of them is modified.
+	 * @return a copy of the probability set
 	 */
 	public MeetingProbabilitySet replicate() {
 		MeetingProbabilitySet replica = new MeetingProbabilitySet(
 				this.maxSetSize, alpha);
 
-		// do a deep copy
-		for (Map.Entry<Integer, Double> e : probs.entrySet()) {
-			replica.probs.put(e.getKey(), e.getValue().doubleValue());
-		}
+		replica.nodes = this.nodes;
+		replica.probs = this.probs;
+		replica.size = this.size;
+		replica.shared = true;
+		this.shared = true;
 
 		replica.lastUpdateTime = this.lastUpdateTime;
 		return replica;
 	}
 
+	/**
+	 * Returns the position of the given node index in the arrays or
+	 * (-(insertion point) - 1) if there is no value for the node
+	 */
+	private int indexOf(int index) {
+		int low = 0;
+		int high = size - 1;
+		while (low <= high) {
+			int mid = (low + high) >>> 1;
+			if (nodes[mid] < index) {
+				low = mid + 1;
+			} else if (nodes[mid] > index) {
+				high = mid - 1;
+			} else {
+				return mid;
+			}
+		}
+		return -(low + 1);
+	}
+
+	/**
+	 * Sets the probability value of a node
+	 */
+	private void put(int index, double value) {
+		unshare(size + 1);
+		int i = indexOf(index);
+		if (i >= 0) {
+			probs[i] = value;
+			return;
+		}
+
+		i = -(i + 1);
+		System.arraycopy(nodes, i, nodes, i + 1, size - i);
+		System.arraycopy(probs, i, probs, i + 1, size - i);
+		nodes[i] = index;
+		probs[i] = value;
+		size++;
+	}
+
+	/**
+	 * Removes the i:th value and returns it
+	 */
+	private double remove(int i) {
+		double value = probs[i];
+		unshare(size);
+		System.arraycopy(nodes, i + 1, nodes, i, size - i - 1);
+		System.arraycopy(probs, i + 1, probs, i, size - i - 1);
+		size--;
+		return value;
+	}
+
+	/**
+	 * Makes sure the arrays are not shared and can hold the given number of
+	 * values
+	 */
+	private void unshare(int capacity) {
+		if (!shared && capacity <= nodes.length) {
+			return;
+		}
+		int newCapacity = Math.max(capacity, nodes.length);
+		if (capacity > nodes.length) {
+			newCapacity = Math.max(capacity, nodes.length * 2);
+		}
+		int[] newNodes = new int[newCapacity];
+		double[] newProbs = new double[newCapacity];
+		System.arraycopy(nodes, 0, newNodes, 0, size);
+		System.arraycopy(probs, 0, newProbs, 0, size);
+		nodes = newNodes;
+		probs = newProbs;
+		shared = false;
+	}
+
 	/**
 	 * Returns a String presentation of the probabilities
 	 * @return a String presentation of the probabilities
 	 */
-    @Override
+	@Override
 	public String toString() {
-		return "probs: " +	this.probs.toString();
+		return "probs: " +	getAllProbs().toString();
 	}
 }
@@ -0,0 +1,277 @@
+/*
+ * Copyright 2010 Aalto University, ComNet
+ * Released under GPLv3. See LICENSE.txt for details.
+ */
+package routing.schedule;
+
+import java.util.Arrays;
+
+/**
+ * <P>Earliest-arrival routing over a {@link ContactPlan}. A message that is
+ * at a node at time t can be forwarded over any contact of the node that
+ * ends after t; it arrives at the other node at the start of the contact
+ * or at t, whichever is later. The earliest arrival times (and the first
+ * hops of the fastest paths) from a source to all the nodes are computed
+ * with Dijkstra's algorithm using a binary heap of node indexes.</P>
+ * <P>The paths are computed for the exact query time and the results are
+ * cached per source. A cached result is reused for later queries as long
+ * as all the contacts of its paths are still up or upcoming: the paths are
+ * then still usable and, since the earliest arrival times can't get
+ * earlier when the departure is later, still the fastest ones (the arrival
+ * times are just the later of the query time and the cached times). To
+ * pick up the contacts that came within the horizon, a result is reused at
+ * most for {@link #getCacheWindow()}; with a zero window the paths are
+ * recomputed whenever the time changes.</P>
+ */
+public class ContactGraph {
+	private static final double INFINITY = Double.POSITIVE_INFINITY;
+
+	private ContactPlan plan;
+	/** length of the departure windows */
+	private double cacheWindow;
+	/** how far from the departure time contacts are considered */
+	private double horizon;
+
+	/* the cached results, by source address (null if not computed) */
+	private double[][] arrivals;
+	private int[][] firstHops;
+	/** departure times of the cached results */
+	private double[] departures;
+	/** end of the first contact of the cached paths to end, by source */
+	private double[] validUntil;
+	/** version of the plan the cached results were computed for */
+	private int planVersion;
+
+	/* working memory of the search */
+	/** binary heap of nodes ordered by the current arrival time */
+	private int[] heap;
+	/** positions of the nodes in the heap (-1 if not in the heap) */
+	private int[] heapPos;
+	private int heapSize;
+	/** end time of the contact each node is reached over */
+	private double[] viaEnds;
+
+	/**
+	 * Creates a new contact graph router engine for a contact plan
+	 * @param plan The contact plan
+	 * @param cacheWindow How long a cached result can be reused at most
+	 * (0 for recomputing whenever the time changes)
+	 * @param horizon Only the contacts that start before departure time +
+	 * horizon are considered (infinity for all contacts)
+	 */
+	public ContactGraph(ContactPlan plan, double cacheWindow, double horizon) {
+		this.plan = plan;
+		this.cacheWindow = cacheWindow;
+		this.horizon = horizon;
+		this.planVersion = -1;
+	}
+
+	/**
+	 * Returns how long a cached result can be reused at most
+	 * @return the length of the cache window
+	 */
+	public double getCacheWindow() {
+		return this.cacheWindow;
+	}
+
+	/**
+	 * Returns the earliest time a message that is at a node at the given
+	 * time can arrive at another node
+	 * @param from Address of the source node
+	 * @param to Address of the destination node
+	 * @param time The departure time
+	 * @return The earliest arrival time or infinity if the destination
+	 * isn't reachable
+	 */
+	public double getArrivalTime(int from, int to, double time) {
+		if (from == to) {
+			return time;
+		}
+		int src = prepare(from, time);
+		if (src < 0 || to >= arrivals[src].length) {
+			return INFINITY;
+		}
+		return Math.max(time, arrivals[src][to]);
+	}
+
+	/**
+	 * Returns the first hop on the fastest path from a node to another
+	 * @param from Address of the source node
+	 * @param to Address of the destination node
+	 * @param time The departure time
+	 * @return Address of the first hop or -1 if the destination isn't
+	 * reachable (or is the source)
+	 */
+	public int getFirstHop(int from, int to, double time) {
+		if (from == to) {
+			return -1;
+		}
+		int src = prepare(from, time);
+		if (src < 0 || to >= firstHops[src].length) {
+			return -1;
+		}
+		return firstHops[src][to];
+	}
+
+	/**
+	 * Makes sure the cached results of the source are valid for the given
+	 * departure time
+	 * @return The source or -1 if the source is not in the plan
+	 */
+	private int prepare(int from, double time) {
+		int n = plan.getNrofNodes();
+		if (from >= n) {
+			return -1;
+		}
+		if (arrivals == null || arrivals.length != n ||
+				planVersion != plan.getVersion()) {
+			arrivals = new double[n][];
+			firstHops = new int[n][];
+			departures = new double[n];
+			validUntil = new double[n];
+			heap = new int[n];
+			heapPos = new int[n];
+			viaEnds = new double[n];
+			planVersion = plan.getVersion();
+		}
+
+		if (arrivals[from] == null) {
+			arrivals[from] = new double[n];
+			firstHops[from] = new int[n];
+		} else if (isCached(from, time)) {
+			return from;
+		}
+
+		validUntil[from] = search(from, time, arrivals[from], firstHops[from]);
+		departures[from] = time;
+		return from;
+	}
+
+	/**
+	 * Returns true if the cached result of a source can be used for the
+	 * given departure time
+	 */
+	private boolean isCached(int from, double time) {
+		double departure = departures[from];
+		if (time == departure) {
+			return true;
+		}
+		return time > departure && time < departure + cacheWindow &&
+			time < validUntil[from];
+	}
+
+	/**
+	 * Computes the earliest arrival times and the first hops of the
+	 * fastest paths from a source to all the nodes
+	 * @return The end time of the contact of the paths that ends first
+	 */
+	private double search(int from, double departure, double[] arrival,
+			int[] firstHop) {
+		Arrays.fill(arrival, INFINITY);
+		Arrays.fill(firstHop, -1);
+		Arrays.fill(heapPos, -1);
+		double limit = departure + horizon;
+		ContactPlan p = this.plan;
+
+		arrival[from] = departure;
+		heapSize = 0;
+		push(from, arrival);
+
+		while (heapSize > 0) {
+			int u = pop(arrival);
+			double tu = arrival[u];
+			for (int i=p.getFirstUsable(u, tu), end=p.getEndContact(u);
+					i<end; i++) {
+				double start = p.getStart(i);
+				if (start >= limit) {
+					break; /* the rest start even later */
+				}
+				if (p.getEnd(i) <= tu) {
+					continue; /* ended before we got here */
+				}
+				int v = p.getPeer(i);
+				double tv = start > tu ? start : tu;
+				if (tv < arrival[v]) {
+					arrival[v] = tv;
+					firstHop[v] = (u == from ? v : firstHop[u]);
+					viaEnds[v] = p.getEnd(i);
+					if (heapPos[v] < 0) {
+						push(v, arrival);
+					} else {
+						siftUp(heapPos[v], arrival);
+					}
+				}
+			}
+		}
+
+		double firstEnd = INFINITY;
+		for (int v=0; v<arrival.length; v++) {
+			if (v != from && arrival[v] < INFINITY && viaEnds[v] < firstEnd) {
+				firstEnd = viaEnds[v];
+			}
+		}
+		return firstEnd;
+	}
+
+	private void push(int node, double[] keys) {
+		heap[heapSize] = node;
+		heapPos[node] = heapSize;
+		siftUp(heapSize++, keys);
+	}
+
+	private int pop(double[] keys) {
+		int top = heap[0];
+		heapPos[top] = -1;
+		if (--heapSize > 0) {
+			heap[0] = heap[heapSize];
+			heapPos[heap[0]] = 0;
+			siftDown(0, keys);
+		}
+		return top;
+	}
+
+	/**
+	 * Returns true if node a should be before node b in the heap (ties are
+	 * broken by the address so that the results are deterministic)
+	 */
+	private static boolean before(int a, int b, double[] keys) {
+		return keys[a] < keys[b] || (keys[a] == keys[b] && a < b);
+	}
+
+	private void siftUp(int pos, double[] keys) {
+		int node = heap[pos];
+		while (pos > 0) {
+			int parent = (pos - 1) >>> 1;
+			if (!before(node, heap[parent], keys)) {
+				break;
+			}
+			heap[pos] = heap[parent];
+			heapPos[heap[pos]] = pos;
+			pos = parent;
+		}
+		heap[pos] = node;
+		heapPos[node] = pos;
+	}
+
+	private void siftDown(int pos, double[] keys) {
+		int node = heap[pos];
+		while (true) {
+			int child = 2 * pos + 1;
+			if (child >= heapSize) {
+				break;
+			}
+			if (child + 1 < heapSize && before(heap[child + 1], heap[child],
+					keys)) {
+				child++;
+			}
+			if (!before(heap[child], node, keys)) {
+				break;
+			}
+			heap[pos] = heap[child];
+			heapPos[heap[pos]] = pos;
+			pos = child;
+		}
+		heap[pos] = node;
+		heapPos[node] = pos;
+	}
+}
@@ -0,0 +1,384 @@
+/*
+ * Copyright 2010 Aalto University, ComNet
+ * Released under GPLv3. See LICENSE.txt for details.
+ */
+package routing.schedule;
+
+import java.io.File;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import input.ConnectionEvent;
+import input.ExternalEvent;
+import input.StandardEventsReader;
+import core.DTNSim;
+import core.SimError;
+
+/**
+ * <P>Contact plan: the times when the nodes are connected to each other.
+ * A contact is a bidirectional connection between two nodes (addresses)
+ * from its start time to its end time.</P>
+ * <P>The contacts are stored in primitive arrays in a compressed adjacency
+ * layout: the contacts of each node are in one contiguous range that is
+ * sorted by the start time of the contacts, so the contacts of a node that
+ * are usable at a given time can be found with a binary search instead of
+ * going through all the contacts.</P>
+ * <P>Contact plans can be read from files with connection events in the
+ * standard external events format (e.g., the output of
+ * {@link report.ConnectivityONEReport}), also gzip compressed:<BR>
+ * <TT>&lt;time&gt; CONN &lt;hostId&gt; &lt;host2Id&gt; up|down</TT><BR>
+ * The files are parsed with {@link StandardEventsReader} and other than
+ * connection events are ignored. Contacts that are not closed by a down
+ * event last until the end of time.</P>
+ */
+public class ContactPlan {
+	private static final int INITIAL_CAPACITY = 1024;
+	/** how many events are read from a contact plan file at a time */
+	private static final int READ_CHUNK_SIZE = 1000;
+	/** end time of the contacts that never go down */
+	public static final double END_OF_TIME = Double.POSITIVE_INFINITY;
+
+	/** plans read from files, by file name */
+	private static Map<String, ContactPlan> loadedPlans;
+
+	static {
+		DTNSim.registerForReset(ContactPlan.class.getCanonicalName());
+		reset();
+	}
+
+	/* contacts in the order they were added */
+	private int[] fromNodes;
+	private int[] toNodes;
+	private double[] startTimes;
+	private double[] endTimes;
+	private int nrofContacts;
+	/** number of nodes (largest address + 1) */
+	private int nrofNodes;
+
+	/* the adjacency index (null if not built since the last addition) */
+	/** start indexes of the contact ranges of the nodes (and end of last) */
+	private int[] offsets;
+	/** the other node of each contact in the index */
+	private int[] peers;
+	private double[] starts;
+	private double[] ends;
+	/** maximum end time of the contacts up to the index in the range */
+	private double[] maxEnds;
+	/** incremented whenever the plan changes */
+	private int version;
+
+	/**
+	 * Creates a new, empty contact plan
+	 */
+	public ContactPlan() {
+		this.fromNodes = new int[INITIAL_CAPACITY];
+		this.toNodes = new int[INITIAL_CAPACITY];
+		this.startTimes = new double[INITIAL_CAPACITY];
+		this.endTimes = new double[INITIAL_CAPACITY];
+	}
+
+	/**
+	 * Returns the contact plan read from the given file. A file is read only
+	 * once per simulation run; the routers that use the same file share the
+	 * plan.
+	 * @param fileName Path of the file
+	 * @return The contact plan
+	 * @throws SimError if the file can't be read
+	 */
+	public static synchronized ContactPlan load(String fileName) {
+		ContactPlan plan = loadedPlans.get(fileName);
+		if (plan == null) {
+			plan = new ContactPlan();
+			plan.read(new File(fileName));
+			loadedPlans.put(fileName, plan);
+		}
+		return plan;
+	}
+
+	/**
+	 * Adds the contacts of a connection events file to the plan
+	 * @param file The file to read
+	 * @throws SimError if the file can't be read or parsed
+	 */
+	public void read(File file) {
+		/* start times of the open contacts by the node pair */
+		Map<Long, Double> open = new HashMap<Long, Double>();
+		StandardEventsReader reader = new StandardEventsReader(file);
+		try {
+			List<ExternalEvent> events;
+			do {
+				events = reader.readEvents(READ_CHUNK_SIZE);
+				for (ExternalEvent ee : events) {
+					if (ee instanceof ConnectionEvent) {
+						addEvent((ConnectionEvent)ee, open);
+					}
+				}
+			} while (events.size() == READ_CHUNK_SIZE);
+		} finally {
+			reader.close();
+		}
+
+		/* contacts that were never closed */
+		Long[] pairs = open.keySet().toArray(new Long[0]);
+		Arrays.sort(pairs);
+		for (Long pair : pairs) {
+			addContact((int)(pair >>> 32), (int)(pair & 0xffffffffL),
+					open.get(pair), END_OF_TIME);
+		}
+	}
+
+	/**
+	 * Opens or closes a contact with a connection event
+	 */
+	private void addEvent(ConnectionEvent ce, Map<Long, Double> open) {
+		int a = ce.getFromAddr();
+		int b = ce.getToAddr();
+		Long pair = a < b ? ((long)a << 32) | b : ((long)b << 32) | a;
+		if (ce.isUp()) {
+			if (!open.containsKey(pair)) {
+				open.put(pair, ce.getTime());
+			}
+		} else {
+			Double start = open.remove(pair);
+			if (start != null) {
+				addContact(a, b, start, ce.getTime());
+			}
+		}
+	}
+
+	/**
+	 * Adds a contact to the plan
+	 * @param a Address of one node of the contact
+	 * @param b Address of the other node
+	 * @param start Start time of the contact
+	 * @param end End time of the contact
+	 */
+	public void addContact(int a, int b, double start, double end) {
+		if (a < 0 || b < 0 || end < start) {
+			throw new SimError("Invalid contact " + a + "-" + b + " @ " +
+					start + "-" + end);
+		}
+		if (nrofContacts == fromNodes.length) {
+			int capacity = nrofContacts * 2;
+			fromNodes = Arrays.copyOf(fromNodes, capacity);
+			toNodes = Arrays.copyOf(toNodes, capacity);
+			startTimes = Arrays.copyOf(startTimes, capacity);
+			endTimes = Arrays.copyOf(endTimes, capacity);
+		}
+		fromNodes[nrofContacts] = a;
+		toNodes[nrofContacts] = b;
+		startTimes[nrofContacts] = start;
+		endTimes[nrofContacts] = end;
+		nrofContacts++;
+		nrofNodes = Math.max(nrofNodes, Math.max(a, b) + 1);
+
+		this.offsets = null; /* index must be rebuilt */
+		this.version++;
+	}
+
+	/**
+	 * Returns the number of contacts in the plan
+	 * @return the number of contacts in the plan
+	 */
+	public int getNrofContacts() {
+		return this.nrofContacts;
+	}
+
+	/**
+	 * Returns the number of nodes in the plan, i.e., the largest address of
+	 * the contacts + 1
+	 * @return the number of nodes
+	 */
+	public int getNrofNodes() {
+		return this.nrofNodes;
+	}
+
+	/**
+	 * Returns the version of the plan. The version changes whenever the
+	 * plan is modified.
+	 * @return the version of the plan
+	 */
+	public int getVersion() {
+		return this.version;
+	}
+
+	/**
+	 * Returns the index of the first contact of a node in the adjacency
+	 * index. The contacts of the node are in the range
+	 * [{@link #getFirstContact(int)}, {@link #getEndContact(int)}), sorted
+	 * by their start time.
+	 * @param node Address of the node
+	 * @return The index of the first contact
+	 */
+	public int getFirstContact(int node) {
+		index();
+		return node < nrofNodes ? offsets[node] : 0;
+	}
+
+	/**
+	 * Returns the index after the last contact of a node in the adjacency
+	 * index
+	 * @param node Address of the node
+	 * @return The end index of the contacts of the node
+	 * @see #getFirstContact(int)
+	 */
+	public int getEndContact(int node) {
+		index();
+		return node < nrofNodes ? offsets[node + 1] : 0;
+	}
+
+	/**
+	 * Returns the index of the first contact of a node that ends after the
+	 * given time, or can be followed by such a contact. All the contacts of
+	 * the node before the index have ended by the given time.
+	 * @param node Address of the node
+	 * @param time The time
+	 * @return The index of the first possibly usable contact
+	 */
+	public int getFirstUsable(int node, double time) {
+		int lo = getFirstContact(node);
+		int hi = getEndContact(node);
+		while (lo < hi) { /* maxEnds is non-decreasing in the range */
+			int mid = (lo + hi) >>> 1;
+			if (maxEnds[mid] > time) {
+				hi = mid;
+			} else {
+				lo = mid + 1;
+			}
+		}
+		return lo;
+	}
+
+	/**
+	 * Returns the other node of a contact in the adjacency index
+	 * @param i Index of the contact
+	 * @return Address of the other node
+	 */
+	public int getPeer(int i) {
+		return this.peers[i];
+	}
+
+	/**
+	 * Returns the start time of a contact in the adjacency index
+	 * @param i Index of the contact
+	 * @return The start time
+	 */
+	public double getStart(int i) {
+		return this.starts[i];
+	}
+
+	/**
+	 * Returns the end time of a contact in the adjacency index
+	 * @param i Index of the contact
+	 * @return The end time
+	 */
+	public double getEnd(int i) {
+		return this.ends[i];
+	}
+
+	/**
+	 * Builds the adjacency index if it isn't up to date
+	 */
+	private void index() {
+		if (this.offsets != null) {
+			return;
+		}
+
+		int n = nrofNodes;
+		int[] off = new int[n + 1];
+		for (int i=0; i<nrofContacts; i++) { /* both directions */
+			off[fromNodes[i] + 1]++;
+			off[toNodes[i] + 1]++;
+		}
+		for (int i=0; i<n; i++) {
+			off[i + 1] += off[i];
+		}
+
+		/* distribute the contacts to the ranges (in the order added)... */
+		int size = nrofContacts * 2;
+		int[] order = new int[size];
+		int[] next = Arrays.copyOf(off, n);
+		for (int i=0; i<nrofContacts; i++) {
+			order[next[fromNodes[i]]++] = i;
+			order[next[toNodes[i]]++] = -i - 1; /* reverse direction */
+		}
+
+		/* ...sort each range by the start time... */
+		int[] tmp = new int[size];
+		for (int node=0; node<n; node++) {
+			mergeSort(order, tmp, off[node], off[node + 1]);
+		}
+
+		/* ...and lay out the contact data in the sorted order */
+		peers = new int[size];
+		starts = new double[size];
+		ends = new double[size];
+		maxEnds = new double[size];
+		for (int node=0; node<n; node++) {
+			double maxEnd = Double.NEGATIVE_INFINITY;
+			for (int i=off[node]; i<off[node + 1]; i++) {
+				int c = order[i] >= 0 ? order[i] : -order[i] - 1;
+				peers[i] = order[i] >= 0 ? toNodes[c] : fromNodes[c];
+				starts[i] = startTimes[c];
+				ends[i] = endTimes[c];
+				maxEnd = Math.max(maxEnd, ends[i]);
+				maxEnds[i] = maxEnd;
+			}
+		}
+		this.offsets = off;
+	}
+
+	/**
+	 * Stable merge sort of a range of (signed) contact indexes by the start
+	 * time of the contacts
+	 */
+	private void mergeSort(int[] a, int[] tmp, int from, int to) {
+		if (to - from < 2) {
+			return;
+		}
+		if (to - from <= 8) { /* insertion sort for short ranges */
+			for (int i=from + 1; i<to; i++) {
+				int v = a[i];
+				double key = startOf(v);
+				int j = i - 1;
+				while (j >= from && startOf(a[j]) > key) {
+					a[j + 1] = a[j];
+					j--;
+				}
+				a[j + 1] = v;
+			}
+			return;
+		}
+
+		int mid = (from + to) >>> 1;
+		mergeSort(a, tmp, from, mid);
+		mergeSort(a, tmp, mid, to);
+		if (startOf(a[mid - 1]) <= startOf(a[mid])) {
+			return; /* already in order */
+		}
+
+		System.arraycopy(a, from, tmp, from, to - from);
+		int i = from;
+		int j = mid;
+		for (int k=from; k<to; k++) {
+			if (j >= to || (i < mid && startOf(tmp[i]) <= startOf(tmp[j]))) {
+				a[k] = tmp[i++];
+			} else {
+				a[k] = tmp[j++];
+			}
+		}
+	}
+
+	private double startOf(int signedIndex) {
+		return startTimes[signedIndex >= 0 ? signedIndex : -signedIndex - 1];
+	}
+
+	/**
+	 * Forgets the plans read from files
+	 */
+	public static synchronized void reset() {
+		loadedPlans = new HashMap<String, ContactPlan>();
+	}
+}
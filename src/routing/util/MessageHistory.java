@@ -0,0 +1,257 @@
+/*
+ * Copyright 2010 Aalto University, ComNet
+ * Released under GPLv3. See LICENSE.txt for details.
+ */
+package routing.util;
+
+import util.BloomFilter;
+import core.Message;
+import core.Settings;
+import core.SettingsError;
+import core.SimClock;
+
+/**
+ * <P>Set of messages a router has seen (e.g., delivered, acknowledged, or
+ * already sent messages) that is used for duplicate suppression. Messages
+ * are stored by their dense ID index (see {@link Message#getIdIndex()}).
+ * </P><P>
+ * By default the history is an exact bitset over the message indexes.
+ * Optionally it can be a Bloom filter with a configurable false positive
+ * rate (see {@link #HISTORY_FP_RATE_S}); then the memory usage doesn't
+ * depend on the number of messages but some messages that weren't added
+ * are reported as seen.</P><P>
+ * If a history time-to-live is defined (see {@link #HISTORY_TTL_S}), the
+ * entries are pruned in generations of that length: an entry is kept for
+ * at least the TTL but at most twice the TTL. All histories change
+ * generations at the same simulation times, so histories with the same
+ * configuration can be merged.</P>
+ */
+public class MessageHistory {
+	/**
+	 * False positive rate of the history filters -setting id ({@value}).
+	 * Double in range (0, 1). If defined, the histories are Bloom filters
+	 * with this false positive rate instead of exact sets.
+	 */
+	public static final String HISTORY_FP_RATE_S = "historyFpRate";
+	/**
+	 * Expected number of messages in a history filter -setting id
+	 * ({@value}). Integer. Used only with {@link #HISTORY_FP_RATE_S}.
+	 * Default is {@link #DEF_EXPECTED_SIZE}.
+	 */
+	public static final String HISTORY_SIZE_S = "historyExpectedSize";
+	/**
+	 * Time-to-live of the history entries -setting id ({@value}). Double
+	 * (seconds). If defined, entries older than this may be forgotten.
+	 * Default is to remember all entries until the end of the simulation.
+	 */
+	public static final String HISTORY_TTL_S = "historyTtl";
+
+	/** Default value for the expected number of messages ({@value}) */
+	public static final int DEF_EXPECTED_SIZE = 10000;
+
+	/** false positive rate of the filters or 0 for exact histories */
+	private final double fpRate;
+	private final int expectedSize;
+	/** length of one generation or 0 if entries are never pruned */
+	private final double ttl;
+
+	/** exact entries of the current and the previous generation */
+	private SummaryVector current;
+	private SummaryVector previous;
+	/** filters of the current and the previous generation */
+	private BloomFilter currentFilter;
+	private BloomFilter previousFilter;
+	/** number of the current generation */
+	private long generation;
+	/** number of entries added to the filters (current, previous) */
+	private int nrofAdded;
+	private int nrofPreviousAdded;
+
+	/**
+	 * Creates a new, empty and exact history that never forgets entries
+	 */
+	public MessageHistory() {
+		this(0, DEF_EXPECTED_SIZE, 0);
+	}
+
+	/**
+	 * Creates a new, empty history whose configuration is read from the
+	 * given settings. The history can be used as a prototype for other
+	 * histories (see {@link #replicate()}).
+	 * @param s The settings object
+	 */
+	public MessageHistory(Settings s) {
+		this(s.getDouble(HISTORY_FP_RATE_S, 0),
+				s.getInt(HISTORY_SIZE_S, DEF_EXPECTED_SIZE),
+				s.getDouble(HISTORY_TTL_S, 0));
+		if (s.contains(HISTORY_FP_RATE_S) && (fpRate <= 0 || fpRate >= 1)) {
+			throw new SettingsError("Invalid value for " +
+					s.getFullPropertyName(HISTORY_FP_RATE_S));
+		}
+	}
+
+	/**
+	 * Creates a new, empty history.
+	 * @param fpRate False positive rate of the filters or 0 for an exact
+	 * history
+	 * @param expectedSize Expected number of entries in a filter
+	 * @param ttl Time-to-live of the entries or 0 if entries should not be
+	 * pruned
+	 */
+	public MessageHistory(double fpRate, int expectedSize, double ttl) {
+		this.fpRate = fpRate;
+		this.expectedSize = expectedSize;
+		this.ttl = ttl;
+		this.generation = currentGeneration();
+
+		if (isExact()) {
+			this.current = new SummaryVector();
+		} else {
+			this.currentFilter = new BloomFilter(expectedSize, fpRate);
+		}
+	}
+
+	/**
+	 * Returns a new, empty history with the same configuration as this one
+	 * @return a new, empty history
+	 */
+	public MessageHistory replicate() {
+		return new MessageHistory(fpRate, expectedSize, ttl);
+	}
+
+	/**
+	 * Returns true if this is an exact history (no false positives)
+	 * @return true if this is an exact history
+	 */
+	public boolean isExact() {
+		return this.fpRate == 0;
+	}
+
+	/**
+	 * Adds a message to the history
+	 * @param m The message
+	 */
+	public void add(Message m) {
+		add(m.getIdIndex());
+	}
+
+	/**
+	 * Adds a message to the history
+	 * @param index The ID index of the message
+	 */
+	public void add(int index) {
+		prune();
+		if (current != null) {
+			current.set(index);
+		} else {
+			currentFilter.add(index);
+			nrofAdded++;
+		}
+	}
+
+	/**
+	 * Returns true if the message is in the history (or, with a non-exact
+	 * history, may be in the history)
+	 * @param m The message
+	 * @return true if the message is in the history
+	 */
+	public boolean contains(Message m) {
+		return contains(m.getIdIndex());
+	}
+
+	/**
+	 * Returns true if the message is in the history (or, with a non-exact
+	 * history, may be in the history)
+	 * @param index The ID index of the message
+	 * @return true if the message is in the history
+	 */
+	public boolean contains(int index) {
+		prune();
+		if (current != null) {
+			return current.get(index) ||
+				(previous != null && previous.get(index));
+		}
+		return currentFilter.mightContain(index) ||
+			(previousFilter != null && previousFilter.mightContain(index));
+	}
+
+	/**
+	 * Adds all the entries of another history to this history. The
+	 * histories must have the same configuration.
+	 * @param other The other history
+	 */
+	public void addAll(MessageHistory other) {
+		prune();
+		other.prune();
+		if (current != null) {
+			current.addAll(other.current);
+			if (other.previous != null) {
+				if (previous == null) {
+					previous = new SummaryVector();
+				}
+				previous.addAll(other.previous);
+			}
+		} else {
+			currentFilter.addAll(other.currentFilter);
+			nrofAdded += other.nrofAdded;
+			if (other.previousFilter != null) {
+				if (previousFilter == null) {
+					previousFilter = new BloomFilter(currentFilter);
+				}
+				previousFilter.addAll(other.previousFilter);
+				nrofPreviousAdded += other.nrofPreviousAdded;
+			}
+		}
+	}
+
+	/**
+	 * Returns the number of messages in the history. For non-exact
+	 * histories, returns the number of additions, which is an upper bound.
+	 * @return the number of messages in the history
+	 */
+	public int size() {
+		prune();
+		if (current != null) {
+			return current.cardinality() + (previous == null ? 0 :
+				previous.differenceCardinality(current));
+		}
+		return nrofAdded + nrofPreviousAdded;
+	}
+
+	/**
+	 * Returns the number of the generation of the current time
+	 */
+	private long currentGeneration() {
+		if (ttl <= 0) {
+			return 0;
+		}
+		return (long)Math.floor(SimClock.getTime() / ttl);
+	}
+
+	/**
+	 * Moves to the generation of the current time, forgetting the entries
+	 * of older generations
+	 */
+	private void prune() {
+		if (ttl <= 0) {
+			return;
+		}
+		long gen = currentGeneration();
+		if (gen == generation) {
+			return;
+		}
+
+		boolean keepCurrent = (gen == generation + 1);
+		if (current != null) {
+			previous = (keepCurrent && !current.isEmpty() ? current : null);
+			current = new SummaryVector();
+		} else {
+			previousFilter = (keepCurrent && nrofAdded > 0 ?
+					currentFilter : null);
+			nrofPreviousAdded = (previousFilter != null ? nrofAdded : 0);
+			currentFilter = new BloomFilter(currentFilter);
+			nrofAdded = 0;
+		}
+		generation = gen;
+	}
+}
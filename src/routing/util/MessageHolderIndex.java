@@ -0,0 +1,250 @@
+/*
+ * Copyright 2010 Aalto University, ComNet
+ * Released under GPLv3. See LICENSE.txt for details.
+ */
+package routing.util;
+
+import java.util.Arrays;
+
+import core.DTNHost;
+import core.DTNSim;
+import core.Message;
+
+/**
+ * Global index of the hosts that have a message in their buffer. The index
+ * is updated by the routers whenever a message is added to or removed from
+ * a message buffer (see {@link routing.MessageRouter}), so the holders of
+ * any message can be looked up without going through all the buffers.
+ * Messages are indexed by their dense ID index (see
+ * {@link Message#getIdIndex()}) and the holders of a message are stored as
+ * a bitset over the host addresses. The bitset of a message is released
+ * when the last copy of the message leaves the buffers.
+ */
+public class MessageHolderIndex {
+	private static final int ADDRESS_BITS = 6;
+
+	/** holder bitsets indexed by message ID index (null: no holders) */
+	private static long[][] holders;
+	/** number of holders of each message */
+	private static int[] counts;
+	/** hosts that have held messages, indexed by address */
+	private static DTNHost[] hosts;
+	/** number of messages that have at least one holder */
+	private static int nrofMessages;
+	/** no message with a smaller ID index has holders */
+	private static int firstHeld;
+
+	static {
+		DTNSim.registerForReset(MessageHolderIndex.class.getCanonicalName());
+		reset();
+	}
+
+	/**
+	 * Adds a host to the holders of a message. Adding the same holder again
+	 * does nothing.
+	 * @param m The message
+	 * @param host The host that has the message in its buffer
+	 */
+	public static void addHolder(Message m, DTNHost host) {
+		int index = m.getIdIndex();
+		int address = host.getAddress();
+
+		if (index >= counts.length) {
+			int capacity = Math.max(index + 1, counts.length * 2);
+			holders = Arrays.copyOf(holders, capacity);
+			counts = Arrays.copyOf(counts, capacity);
+		}
+		if (address >= hosts.length) {
+			hosts = Arrays.copyOf(hosts, Math.max(address + 1,
+					hosts.length * 2));
+		}
+		hosts[address] = host;
+
+		long[] set = holders[index];
+		int w = address >> ADDRESS_BITS;
+		if (set == null) {
+			set = new long[Math.max(w + 1, (hosts.length + 63) >> ADDRESS_BITS)];
+			holders[index] = set;
+			nrofMessages++;
+			if (index < firstHeld) {
+				firstHeld = index;
+			}
+		} else if (w >= set.length) {
+			set = Arrays.copyOf(set, Math.max(w + 1, set.length * 2));
+			holders[index] = set;
+		}
+
+		long mask = 1L << address;
+		if ((set[w] & mask) == 0) {
+			set[w] |= mask;
+			counts[index]++;
+		}
+	}
+
+	/**
+	 * Removes a host from the holders of a message. Removing a host that
+	 * isn't a holder does nothing.
+	 * @param m The message
+	 * @param host The host that no longer has the message in its buffer
+	 */
+	public static void removeHolder(Message m, DTNHost host) {
+		int index = m.getIdIndex();
+		int address = host.getAddress();
+		if (index >= counts.length || holders[index] == null) {
+			return;
+		}
+
+		long[] set = holders[index];
+		int w = address >> ADDRESS_BITS;
+		long mask = 1L << address;
+		if (w >= set.length || (set[w] & mask) == 0) {
+			return;
+		}
+
+		set[w] &= ~mask;
+		if (--counts[index] == 0) {
+			holders[index] = null; /* last copy is gone */
+			nrofMessages--;
+		}
+	}
+
+	/**
+	 * Returns the number of hosts that have the message in their buffer
+	 * @param m The message
+	 * @return The number of holders
+	 */
+	public static int getNrofHolders(Message m) {
+		return getNrofHolders(m.getIdIndex());
+	}
+
+	/**
+	 * Returns the number of hosts that have the message with the given ID
+	 * index in their buffer
+	 * @param index The ID index of the message
+	 * @return The number of holders
+	 */
+	public static int getNrofHolders(int index) {
+		return index < counts.length ? counts[index] : 0;
+	}
+
+	/**
+	 * Returns true if the host has the message in its buffer
+	 * @param index The ID index of the message
+	 * @param host The host
+	 * @return true if the host has the message
+	 */
+	public static boolean isHolder(int index, DTNHost host) {
+		if (index >= counts.length || holders[index] == null) {
+			return false;
+		}
+		long[] set = holders[index];
+		int address = host.getAddress();
+		int w = address >> ADDRESS_BITS;
+		return w < set.length && (set[w] & (1L << address)) != 0;
+	}
+
+	/**
+	 * Returns the next holder of a message starting from the given address.
+	 * All the holders can be iterated with
+	 * <code>for (DTNHost h = nextHolder(index, 0); h != null;
+	 * h = nextHolder(index, h.getAddress() + 1))</code>
+	 * @param index The ID index of the message
+	 * @param fromAddress The address to start the search from
+	 * @return The holder with the smallest address at or after the given
+	 * address or null if there is no such holder
+	 */
+	public static DTNHost nextHolder(int index, int fromAddress) {
+		if (index >= counts.length || holders[index] == null) {
+			return null;
+		}
+		long[] set = holders[index];
+		int w = fromAddress >> ADDRESS_BITS;
+		if (w >= set.length) {
+			return null;
+		}
+
+		long word = set[w] & (-1L << fromAddress);
+		while (true) {
+			if (word != 0) {
+				return hosts[(w << ADDRESS_BITS) +
+				             Long.numberOfTrailingZeros(word)];
+			}
+			if (++w >= set.length) {
+				return null;
+			}
+			word = set[w];
+		}
+	}
+
+	/**
+	 * Adds the addresses of the holders of a message to a bitset, i.e.,
+	 * bitwise ORs the holder set of the message into the given words.
+	 * @param index The ID index of the message
+	 * @param addresses The bitset of host addresses (word i holds the
+	 * addresses 64*i ... 64*i+63); must be large enough for all addresses
+	 * @see #getAddressWords()
+	 */
+	public static void addHoldersTo(int index, long[] addresses) {
+		if (index >= counts.length || holders[index] == null) {
+			return;
+		}
+		long[] set = holders[index];
+		for (int i=0, n=Math.min(set.length, addresses.length); i<n; i++) {
+			addresses[i] |= set[i];
+		}
+	}
+
+	/**
+	 * Returns the number of words a bitset needs for all the host addresses
+	 * known by the index
+	 * @return The number of words
+	 * @see #addHoldersTo(int, long[])
+	 */
+	public static int getAddressWords() {
+		return (hosts.length + 63) >> ADDRESS_BITS;
+	}
+
+	/**
+	 * Returns the next message ID index, starting from the given one, whose
+	 * message is in some host's buffer. All such messages can be iterated
+	 * with <code>for (int i = nextHeldMessage(0); i >= 0;
+	 * i = nextHeldMessage(i + 1))</code>
+	 * @param fromIndex The ID index to start the search from
+	 * @return The ID index or -1 if there are no more held messages
+	 */
+	public static int nextHeldMessage(int fromIndex) {
+		boolean fromFirst = fromIndex <= firstHeld;
+		for (int i = Math.max(fromIndex, firstHeld), n = counts.length;
+				i < n; i++) {
+			if (counts[i] > 0) {
+				if (fromFirst) {
+					firstHeld = i; /* skip the old messages next time */
+				}
+				return i;
+			}
+		}
+		if (fromFirst) {
+			firstHeld = counts.length;
+		}
+		return -1;
+	}
+
+	/**
+	 * Returns the number of messages that are in at least one buffer
+	 * @return the number of messages that are in at least one buffer
+	 */
+	public static int getNrofHeldMessages() {
+		return nrofMessages;
+	}
+
+	/**
+	 * Resets the index
+	 */
+	public static void reset() {
+		holders = new long[64][];
+		counts = new int[64];
+		hosts = new DTNHost[64];
+		nrofMessages = 0;
+		firstHeld = 0;
+	}
+}
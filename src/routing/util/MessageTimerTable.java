@@ -0,0 +1,141 @@
+/*
+ * Copyright 2010 Aalto University, ComNet
+ * Released under GPLv3. See LICENSE.txt for details.
+ */
+package routing.util;
+
+import core.Message;
+import util.TimingWheel;
+
+/**
+ * Timing wheel timers of the messages in a buffer. The timers are stored in
+ * an open addressing hash table keyed by the dense message ID index (see
+ * {@link Message#getIdIndex()}), so looking up the timer of a message
+ * doesn't need to hash the message ID string.
+ */
+public class MessageTimerTable {
+	private static final int INITIAL_CAPACITY = 16;
+
+	/** message ID indexes + 1 (0: free slot) */
+	private int[] keys;
+	/** timers of the messages */
+	private TimingWheel.Timer<Message>[] timers;
+	/** number of messages with a timer */
+	private int size;
+
+	/**
+	 * Creates a new, empty table
+	 */
+	public MessageTimerTable() {
+		this.keys = new int[INITIAL_CAPACITY];
+		this.timers = newTimers(INITIAL_CAPACITY);
+		this.size = 0;
+	}
+
+	@SuppressWarnings(value = "unchecked") /* generic array creation */
+	private static TimingWheel.Timer<Message>[] newTimers(int capacity) {
+		return new TimingWheel.Timer[capacity];
+	}
+
+	/**
+	 * Sets the timer of a message, replacing the old timer (if any)
+	 * @param m The message
+	 * @param timer The timer of the message
+	 * @return The old timer of the message or null if it had no timer
+	 */
+	public TimingWheel.Timer<Message> put(Message m,
+			TimingWheel.Timer<Message> timer) {
+		int key = m.getIdIndex() + 1;
+		int slot = find(key);
+		TimingWheel.Timer<Message> old = timers[slot];
+		timers[slot] = timer;
+		if (keys[slot] == 0) {
+			keys[slot] = key;
+			if (++size * 2 > keys.length) {
+				rehash(keys.length * 2);
+			}
+		}
+		return old;
+	}
+
+	/**
+	 * Removes the timer of a message from the table
+	 * @param m The message
+	 * @return The removed timer or null if the message had no timer
+	 */
+	public TimingWheel.Timer<Message> remove(Message m) {
+		int slot = find(m.getIdIndex() + 1);
+		if (keys[slot] == 0) {
+			return null;
+		}
+		TimingWheel.Timer<Message> timer = timers[slot];
+		delete(slot);
+		return timer;
+	}
+
+	/**
+	 * Returns the number of messages with a timer
+	 * @return The number of messages
+	 */
+	public int size() {
+		return this.size;
+	}
+
+	/**
+	 * Returns the slot of the key or the free slot where it should go
+	 */
+	private int find(int key) {
+		int mask = keys.length - 1;
+		int slot = hash(key) & mask;
+		while (keys[slot] != 0 && keys[slot] != key) {
+			slot = (slot + 1) & mask;
+		}
+		return slot;
+	}
+
+	/**
+	 * Frees a slot and moves the following entries of the probe sequence
+	 * backwards so that no tombstones are needed
+	 */
+	private void delete(int slot) {
+		int mask = keys.length - 1;
+		int free = slot;
+		int i = slot;
+		while (true) {
+			i = (i + 1) & mask;
+			if (keys[i] == 0) {
+				break;
+			}
+			int home = hash(keys[i]) & mask;
+			/* can the entry at i be moved to the free slot? */
+			if ((i > free && (home <= free || home > i)) ||
+					(i < free && (home <= free && home > i))) {
+				keys[free] = keys[i];
+				timers[free] = timers[i];
+				free = i;
+			}
+		}
+		keys[free] = 0;
+		timers[free] = null;
+		size--;
+	}
+
+	private void rehash(int capacity) {
+		int[] oldKeys = keys;
+		TimingWheel.Timer<Message>[] oldTimers = timers;
+		keys = new int[capacity];
+		timers = newTimers(capacity);
+		for (int i=0; i<oldKeys.length; i++) {
+			if (oldKeys[i] != 0) {
+				int slot = find(oldKeys[i]);
+				keys[slot] = oldKeys[i];
+				timers[slot] = oldTimers[i];
+			}
+		}
+	}
+
+	private static int hash(int key) {
+		int h = key * 0x9E3779B9;
+		return h ^ (h >>> 16);
+	}
+}
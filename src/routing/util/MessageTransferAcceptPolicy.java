@@ -4,10 +4,7 @@
  */
 package routing.util;
 
-import java.util.ArrayList;
-
 import util.Range;
-import util.Tuple;
 
 import core.ArithmeticCondition;
 import core.Connection;
@@ -15,6 +12,7 @@ import core.DTNHost;
 import core.Message;
 import core.ModuleCommunicationBus;
 import core.Settings;
+import core.SimError;
 
 /**
  * <P> Message transfer accepting policy module. Can be used to decide whether
@@ -109,15 +107,24 @@ public class MessageTransferAcceptPolicy {
 	 * to other nodes, unless it would be delivered to the final destination. */
 	public static final String HOPCOUNT_SPOLICY_S = "hopCountSendPolicy";
 
-	private ArrayList<Tuple<String,ArithmeticCondition>> recvConditions = null;
-	private ArrayList<Tuple<String,ArithmeticCondition>> sendConditions = null;
+	/** Largest address that is stored in the address policy bitsets;
+	 * addresses beyond it are checked against the ranges */
+	private static final int MAX_BITSET_ADDRESS = 1 << 16;
+
+	private McbConditions recvConditions = null;
+	private McbConditions sendConditions = null;
+
+	private AddressPolicy toSendPolicy = null;
+	private AddressPolicy fromSendPolicy = null;
+	private AddressPolicy toReceivePolicy = null;
+	private AddressPolicy fromReceivePolicy = null;
+	private HopCountPolicy hopCountSendPolicy = null;
+	private HopCountPolicy hopCountReceivePolicy = null;
 
-	private Range[] toSendPolicy = null;
-	private Range[] fromSendPolicy = null;
-	private Range[] toReceivePolicy = null;
-	private Range[] fromReceivePolicy = null;
-	private ArithmeticCondition hopCountSendPolicy = null;
-	private ArithmeticCondition hopCountReceivePolicy = null;
+	/** is there any policy for sending */
+	private boolean hasSendPolicy = false;
+	/** is there any policy for receiving */
+	private boolean hasReceivePolicy = false;
 
 	public MessageTransferAcceptPolicy(Settings nsSettings) {
 		Settings s;
@@ -130,23 +137,34 @@ public class MessageTransferAcceptPolicy {
 		addMCBCs(s);
 
 		if (s.contains(TO_SPOLICY_S)) {
-			this.toSendPolicy = s.getCsvRanges(TO_SPOLICY_S);
+			this.toSendPolicy = new AddressPolicy(s.getCsvRanges(TO_SPOLICY_S));
 		}
 		if (s.contains(FROM_SPOLICY_S)) {
-			this.fromSendPolicy = s.getCsvRanges(FROM_SPOLICY_S);
+			this.fromSendPolicy =
+				new AddressPolicy(s.getCsvRanges(FROM_SPOLICY_S));
 		}
 		if (s.contains(TO_RPOLICY_S)) {
-			this.toReceivePolicy = s.getCsvRanges(TO_RPOLICY_S);
+			this.toReceivePolicy =
+				new AddressPolicy(s.getCsvRanges(TO_RPOLICY_S));
 		}
 		if (s.contains(FROM_RPOLICY_S)) {
-			this.fromReceivePolicy = s.getCsvRanges(FROM_RPOLICY_S);
+			this.fromReceivePolicy =
+				new AddressPolicy(s.getCsvRanges(FROM_RPOLICY_S));
 		}
 		if (s.contains(HOPCOUNT_SPOLICY_S)) {
-			hopCountSendPolicy = s.getCondition(HOPCOUNT_SPOLICY_S);
+			hopCountSendPolicy =
+				new HopCountPolicy(s.getCondition(HOPCOUNT_SPOLICY_S));
 		}
 		if (s.contains(HOPCOUNT_RPOLICY_S)) {
-			hopCountReceivePolicy = s.getCondition(HOPCOUNT_RPOLICY_S);
+			hopCountReceivePolicy =
+				new HopCountPolicy(s.getCondition(HOPCOUNT_RPOLICY_S));
 		}
+
+		this.hasSendPolicy = sendConditions != null || toSendPolicy != null ||
+			fromSendPolicy != null || hopCountSendPolicy != null;
+		this.hasReceivePolicy = recvConditions != null ||
+			toReceivePolicy != null || fromReceivePolicy != null ||
+			hopCountReceivePolicy != null;
 	}
 
 	/**
@@ -159,110 +177,13 @@ public class MessageTransferAcceptPolicy {
 		}
 
 		int[] nrof = s.getCsvInts(NROF_MCBCS_S);
-		if (nrof[0] > 0) { /* create lists only if needed */
-			this.recvConditions =
-				new ArrayList<Tuple<String,ArithmeticCondition>>();
+		if (nrof[0] > 0) { /* create conditions only if needed */
+			this.recvConditions = new McbConditions(s, MCBACR_S, MCBCVR_S,
+					nrof[0]);
 		}
 		if (nrof[1] > 0) {
-			this.sendConditions =
-				new ArrayList<Tuple<String,ArithmeticCondition>>();
-		}
-
-		addConditions(s, MCBACR_S, MCBCVR_S, this.recvConditions,  nrof[0]);
-		addConditions(s, MCBACS_S, MCBCVS_S, this.sendConditions,  nrof[1]);
-	}
-
-	/**
-	 * Read conditions from the settings and add them to the given list
-	 * @param s The settings object
-	 * @param cPrefix Condition setting prefix
-	 * @param vPrefix Value setting prefix
-	 * @param list The list to add conditions
-	 * @param nrof The number of settings to read
-	 */
-	private void addConditions(Settings s, String cPrefix, String vPrefix,
-			ArrayList<Tuple<String,ArithmeticCondition>> list,
-			int nrof) {
-		for (int i=1; i<=nrof; i++) {
-			ArithmeticCondition ac = s.getCondition(cPrefix + i);
-			String mcbValue = s.getSetting(vPrefix + i);
-			list.add(new Tuple<String, ArithmeticCondition>(mcbValue, ac));
-		}
-	}
-
-	/**
-	 * Checks all the Module Communication Bus conditions and returns false
-	 * if at least one of them failed.
-	 * @param mcb The module communication bus to use
-	 * @param receiving Should check using the receiving conditions list;
-	 * if false, the sending conditions list is used
-	 * @return true if all conditions evaluated to true
-	 */
-	private boolean checkMcbConditions(ModuleCommunicationBus mcb,
-			boolean receiving) {
-		ArrayList<Tuple<String,ArithmeticCondition>> list =
-			(receiving ? this.recvConditions : this.sendConditions);
-
-		if (list == null) {
-			return true;
-		}
-
-		for (Tuple<String,ArithmeticCondition> t : list) {
-			if (!mcb.containsProperty(t.getKey())) {
-				continue; /* no value in the bus; can't fail condition */
-			}
-			if (t.getValue().isTrueFor(mcb.getDouble(t.getKey(), 0))){
-				return false;
-			}
-		}
-
-		return true;
-	}
-
-	/**
-	 * Checks if the host's address is contained in the policy list
-	 * (or {@value #TO_ME_VALUE} is contained and the address matches to
-	 * thisHost parameter)
-	 * @param host The hosts whose address to check
-	 * @param policy The list of accepted addresses
-	 * @param thisHost The address of this host
-	 * @return True if the address was in the policy list, or the policy list
-	 * was null
-	 */
-	private boolean checkSimplePolicy(DTNHost host, Range [] policy,
-			int thisHost) {
-		int address;
-
-		if (policy == null) {
-			return true;
-		}
-
-		address = host.getAddress();
-
-		for (Range r : policy) {
-			if (r.isInRange(TO_ME_VALUE) && address == thisHost) {
-				return true;
-			}
-			 else if (r.isInRange(address)) {
-				return true;
-			}
-		}
-		return false;
-	}
-
-	/**
-	 * Checks the given messages hop count against the given policy arithmetic
-	 * condition
-	 * @param m The message whose hop count is checked
-	 * @param ac The policy arithmetic condition
-	 * @return True if the condition is null or the hop count matches to the
-	 * condition, false otherwise
-	 */
-	private boolean checkHopCountPolicy(Message m, ArithmeticCondition ac) {
-		if (ac == null) {
-			return true;
-		} else {
-			return ac.isTrueFor(m.getHopCount());
+			this.sendConditions = new McbConditions(s, MCBACS_S, MCBCVS_S,
+					nrof[1]);
 		}
 	}
 
@@ -277,18 +198,26 @@ public class MessageTransferAcceptPolicy {
 	 */
 	public boolean acceptSending(DTNHost from, DTNHost to, Connection con,
 			Message m) {
-		if (!checkMcbConditions(from.getComBus(), false)) {
+		if (!this.hasSendPolicy) {
+			return true;
+		}
+
+		if (sendConditions != null && !sendConditions.check(from.getComBus())) {
 			return false;
 		}
 
 		int myAddr = from.getAddress();
-		if (! (checkSimplePolicy(m.getTo(), this.toSendPolicy, myAddr) &&
-			checkSimplePolicy(m.getFrom(), this.fromSendPolicy,	myAddr)) ) {
+		if (toSendPolicy != null &&
+				!toSendPolicy.accepts(m.getTo().getAddress(), myAddr)) {
+			return false;
+		}
+		if (fromSendPolicy != null &&
+				!fromSendPolicy.accepts(m.getFrom().getAddress(), myAddr)) {
 			return false;
 		}
 
-		if (m.getTo() != to &&
-				!checkHopCountPolicy(m, this.hopCountSendPolicy)){
+		if (hopCountSendPolicy != null && m.getTo() != to &&
+				!hopCountSendPolicy.accepts(m.getHopCount())){
 			return false;
 		}
 
@@ -304,22 +233,207 @@ public class MessageTransferAcceptPolicy {
 	 * @return True if the message is OK to transfer, false is not
 	 */
 	public boolean acceptReceiving(DTNHost from, DTNHost to, Message m) {
-		if (! checkMcbConditions(to.getComBus(), true)) {
+		if (!this.hasReceivePolicy) {
+			return true;
+		}
+
+		if (recvConditions != null && !recvConditions.check(to.getComBus())) {
 			return false;
 		}
 
 		int myAddr = to.getAddress();
-		if (! (checkSimplePolicy(m.getTo(), this.toReceivePolicy,myAddr) &&
-			checkSimplePolicy(m.getFrom(), this.fromReceivePolicy, myAddr)) ) {
+		if (toReceivePolicy != null &&
+				!toReceivePolicy.accepts(m.getTo().getAddress(), myAddr)) {
+			return false;
+		}
+		if (fromReceivePolicy != null &&
+				!fromReceivePolicy.accepts(m.getFrom().getAddress(), myAddr)) {
 			return false;
 		}
 
-		if (m.getTo() != to &&
-				!checkHopCountPolicy(m, this.hopCountReceivePolicy)) {
+		if (hopCountReceivePolicy != null && m.getTo() != to &&
+				!hopCountReceivePolicy.accepts(m.getHopCount())) {
 			return false;
 		}
 
 		return true;
 	}
 
+	/**
+	 * Module Communication Bus conditions. The conditions fail (deny the
+	 * transfer) if at least one of them is true for the value in the bus.
+	 */
+	private static class McbConditions {
+		private final String[] keys;
+		private final ArithmeticCondition[] conditions;
+
+		/**
+		 * Reads the conditions from the settings
+		 * @param s The settings object
+		 * @param cPrefix Condition setting prefix
+		 * @param vPrefix Value setting prefix
+		 * @param nrof The number of settings to read
+		 */
+		public McbConditions(Settings s, String cPrefix, String vPrefix,
+				int nrof) {
+			this.keys = new String[nrof];
+			this.conditions = new ArithmeticCondition[nrof];
+			for (int i=0; i<nrof; i++) {
+				this.conditions[i] = s.getCondition(cPrefix + (i + 1));
+				this.keys[i] = s.getSetting(vPrefix + (i + 1));
+			}
+		}
+
+		/**
+		 * Checks all the conditions and returns false if at least one of
+		 * them failed.
+		 * @param mcb The module communication bus to use
+		 * @return true if all conditions evaluated to true
+		 */
+		public boolean check(ModuleCommunicationBus mcb) {
+			for (int i=0; i<keys.length; i++) {
+				Object value = mcb.getProperty(keys[i]);
+				if (value == null) {
+					if (!mcb.containsProperty(keys[i])) {
+						continue; /* no value in the bus; can't fail */
+					}
+					value = 0.0; /* null value; getDouble's default */
+				}
+				if (!(value instanceof Double)) {
+					throw new SimError("No Double value for key " + keys[i]);
+				}
+				if (conditions[i].isTrueFor((Double)value)) {
+					return false;
+				}
+			}
+			return true;
+		}
+	}
+
+	/**
+	 * Set of accepted host addresses compiled from a list of ranges. The
+	 * addresses up to {@link MessageTransferAcceptPolicy#MAX_BITSET_ADDRESS}
+	 * are stored in a bitset and the larger ones are checked against the
+	 * ranges.
+	 */
+	private static class AddressPolicy {
+		private final long[] bits;
+		/** ranges that extend beyond the bitset (or null if none) */
+		private final Range[] largeRanges;
+		/** does the policy accept {@link #TO_ME_VALUE} */
+		private final boolean acceptsMe;
+
+		/**
+		 * Compiles the policy
+		 * @param ranges The ranges of accepted addresses
+		 */
+		public AddressPolicy(Range[] ranges) {
+			int maxAddress = -1;
+			boolean me = false;
+			int nrofLarge = 0;
+
+			for (Range r : ranges) {
+				if (r.isInRange(TO_ME_VALUE)) {
+					me = true;
+				}
+				double max = Math.min(Math.floor(r.getMax()),
+						MAX_BITSET_ADDRESS);
+				maxAddress = Math.max(maxAddress, (int)max);
+				if (r.getMax() > MAX_BITSET_ADDRESS) {
+					nrofLarge++;
+				}
+			}
+
+			this.acceptsMe = me;
+			this.bits = new long[(maxAddress >> 6) + 1];
+			this.largeRanges = (nrofLarge > 0 ? new Range[nrofLarge] : null);
+
+			for (Range r : ranges) {
+				int first = (int)Math.max(0, Math.ceil(r.getMin()));
+				int last = (int)Math.min(Math.floor(r.getMax()),
+						MAX_BITSET_ADDRESS);
+				for (int a = first; a <= last; a++) {
+					bits[a >> 6] |= 1L << a;
+				}
+				if (r.getMax() > MAX_BITSET_ADDRESS) {
+					largeRanges[--nrofLarge] = r;
+				}
+			}
+		}
+
+		/**
+		 * Checks if the address is accepted by the policy (or
+		 * {@value #TO_ME_VALUE} is accepted and the address matches to
+		 * thisHost parameter)
+		 * @param address The address to check
+		 * @param thisHost The address of this host
+		 * @return True if the address is accepted
+		 */
+		public boolean accepts(int address, int thisHost) {
+			if (acceptsMe && address == thisHost) {
+				return true;
+			}
+			int w = address >> 6;
+			if (w < bits.length && (bits[w] & (1L << address)) != 0) {
+				return true;
+			}
+			if (largeRanges != null && address > MAX_BITSET_ADDRESS) {
+				for (Range r : largeRanges) {
+					if (r.isInRange(address)) {
+						return true;
+					}
+				}
+			}
+			return false;
+		}
+	}
+
+	/**
+	 * Hop count condition compiled into an integer range of accepted hop
+	 * counts
+	 */
+	private static class HopCountPolicy {
+		private final int min;
+		private final int max;
+
+		/**
+		 * Compiles the condition
+		 * @param ac The hop count condition
+		 */
+		public HopCountPolicy(ArithmeticCondition ac) {
+			double n = ac.getNumber();
+			switch (ac.getOperator()) {
+			case '<': /* hop < n */
+				min = Integer.MIN_VALUE;
+				max = toInt(Math.ceil(n) - 1);
+				break;
+			case '>': /* hop > n */
+				min = toInt(Math.floor(n) + 1);
+				max = Integer.MAX_VALUE;
+				break;
+			default: /* '=': only an integer can equal a hop count */
+				if (n == Math.floor(n)) {
+					min = max = toInt(n);
+				} else {
+					min = 1;
+					max = 0; /* accepts nothing */
+				}
+			}
+		}
+
+		private static int toInt(double value) {
+			return (int)Math.max(Integer.MIN_VALUE,
+					Math.min(Integer.MAX_VALUE, value));
+		}
+
+		/**
+		 * Returns true if the hop count matches to the condition
+		 * @param hopCount The hop count of a message
+		 * @return True if the hop count matches to the condition
+		 */
+		public boolean accepts(int hopCount) {
+			return hopCount >= min && hopCount <= max;
+		}
+	}
+
 }
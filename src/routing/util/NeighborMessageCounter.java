@@ -0,0 +1,178 @@
+/*
+ * Copyright 2010 Aalto University, ComNet
+ * Released under GPLv3. See LICENSE.txt for details.
+ */
+package routing.util;
+
+import core.Message;
+import routing.MessageRouter;
+
+/**
+ * Counts, for each message, how many of the connected neighbors of a host
+ * have the message in their buffer. The counts are kept up to date
+ * incrementally: the owner registers the counter to the router of a
+ * neighbor when a connection comes up ({@link #neighborConnected(
+ * MessageRouter)}) and unregisters it when the connection goes down
+ * ({@link #neighborDisconnected(MessageRouter)}), and the neighbor's router
+ * tells the registered counters about the messages that are added to or
+ * removed from its buffer. A neighbor that is connected with more than one
+ * connection is counted once per connection.
+ * The counts are stored in an open addressing hash table keyed by the
+ * dense message ID index (see {@link Message#getIdIndex()}) that only holds
+ * the messages with a non-zero count.
+ */
+public class NeighborMessageCounter {
+	private static final int INITIAL_CAPACITY = 16;
+
+	/** message ID indexes + 1 (0: free slot) */
+	private int[] keys;
+	/** counts of the messages */
+	private int[] counts;
+	/** number of messages with a non-zero count */
+	private int size;
+
+	/**
+	 * Creates a new counter with no neighbors
+	 */
+	public NeighborMessageCounter() {
+		this.keys = new int[INITIAL_CAPACITY];
+		this.counts = new int[INITIAL_CAPACITY];
+		this.size = 0;
+	}
+
+	/**
+	 * Starts counting the messages of a new neighbor. Should be called once
+	 * for every connection that comes up.
+	 * @param neighbor The router of the connected host
+	 */
+	public void neighborConnected(MessageRouter neighbor) {
+		for (Message m : neighbor.getMessageCollection()) {
+			messageAdded(m);
+		}
+		neighbor.addNeighborCounter(this);
+	}
+
+	/**
+	 * Stops counting the messages of a neighbor. Should be called once for
+	 * every connection that goes down.
+	 * @param neighbor The router of the disconnected host
+	 */
+	public void neighborDisconnected(MessageRouter neighbor) {
+		if (!neighbor.removeNeighborCounter(this)) {
+			return; /* wasn't counting this neighbor */
+		}
+		for (Message m : neighbor.getMessageCollection()) {
+			messageRemoved(m);
+		}
+	}
+
+	/**
+	 * Called by the router of a neighbor when a message is added to its
+	 * buffer
+	 * @param m The message
+	 */
+	public void messageAdded(Message m) {
+		int slot = find(m.getIdIndex() + 1);
+		if (keys[slot] != 0) {
+			counts[slot]++;
+			return;
+		}
+
+		keys[slot] = m.getIdIndex() + 1;
+		counts[slot] = 1;
+		if (++size * 2 > keys.length) {
+			rehash(keys.length * 2);
+		}
+	}
+
+	/**
+	 * Called by the router of a neighbor when a message is removed from its
+	 * buffer
+	 * @param m The message
+	 */
+	public void messageRemoved(Message m) {
+		int slot = find(m.getIdIndex() + 1);
+		if (keys[slot] == 0) {
+			return;
+		}
+		if (--counts[slot] == 0) {
+			delete(slot);
+		}
+	}
+
+	/**
+	 * Returns the number of connected neighbors that have the message
+	 * @param m The message
+	 * @return The number of neighbors with the message
+	 */
+	public int getCount(Message m) {
+		int slot = find(m.getIdIndex() + 1);
+		return keys[slot] != 0 ? counts[slot] : 0;
+	}
+
+	/**
+	 * Returns the number of messages that at least one neighbor has
+	 * @return The number of messages
+	 */
+	public int size() {
+		return this.size;
+	}
+
+	/**
+	 * Returns the slot of the key or the free slot where it should go
+	 */
+	private int find(int key) {
+		int mask = keys.length - 1;
+		int slot = hash(key) & mask;
+		while (keys[slot] != 0 && keys[slot] != key) {
+			slot = (slot + 1) & mask;
+		}
+		return slot;
+	}
+
+	/**
+	 * Frees a slot and moves the following entries of the probe sequence
+	 * backwards so that no tombstones are needed
+	 */
+	private void delete(int slot) {
+		int mask = keys.length - 1;
+		int free = slot;
+		int i = slot;
+		while (true) {
+			i = (i + 1) & mask;
+			if (keys[i] == 0) {
+				break;
+			}
+			int home = hash(keys[i]) & mask;
+			/* can the entry at i be moved to the free slot? */
+			if ((i > free && (home <= free || home > i)) ||
+					(i < free && (home <= free && home > i))) {
+				keys[free] = keys[i];
+				counts[free] = counts[i];
+				free = i;
+			}
+		}
+		keys[free] = 0;
+		counts[free] = 0;
+		size--;
+	}
+
+	private void rehash(int capacity) {
+		int[] oldKeys = keys;
+		int[] oldCounts = counts;
+		keys = new int[capacity];
+		counts = new int[capacity];
+		for (int i=0; i<oldKeys.length; i++) {
+			if (oldKeys[i] != 0) {
+				int slot = find(oldKeys[i]);
+				keys[slot] = oldKeys[i];
+				counts[slot] = oldCounts[i];
+			}
+		}
+	}
+
+	private static int hash(int key) {
+		int h = key * 0x9E3779B9;
+		return h ^ (h >>> 16);
+	}
+}
@@ -0,0 +1,168 @@
+/*
+ * Copyright 2010 Aalto University, ComNet
+ * Released under GPLv3. See LICENSE.txt for details.
+ */
+package routing.util;
+
+import java.util.HashMap;
+import java.util.Map;
+
+import core.DTNHost;
+
+/**
+ * Table of delivery predictabilities (or any other aging per-host values)
+ * for the PRoPHET family of routers. Values are stored in a dense array
+ * indexed by the host addresses. Aging (multiplying all values by the same
+ * factor) is done in constant time by updating a common scale factor that
+ * the stored values are multiplied with when they are read. The stored
+ * values are normalized (the scale is folded into them) only when the scale
+ * gets so small that precision could be lost.
+ */
+public class PredictabilityTable {
+	/** Scale below which the stored values are normalized */
+	private static final double MIN_SCALE = 1e-100;
+	private static final int INITIAL_CAPACITY = 16;
+
+	/** stored values; real value = stored value * scale */
+	private double[] values;
+	/** hosts of the entries (null if there is no entry for an address) */
+	private DTNHost[] hosts;
+	/** number of entries */
+	private int size;
+	/** common multiplier of all the stored values */
+	private double scale;
+
+	/**
+	 * Creates a new, empty table
+	 */
+	public PredictabilityTable() {
+		this.values = new double[INITIAL_CAPACITY];
+		this.hosts = new DTNHost[INITIAL_CAPACITY];
+		this.size = 0;
+		this.scale = 1.0;
+	}
+
+	/**
+	 * Returns the value for a host or 0 if the table has no entry for it
+	 * @param host The host
+	 * @return The current value
+	 */
+	public double get(DTNHost host) {
+		return get(host.getAddress());
+	}
+
+	/**
+	 * Returns the value for a host address or 0 if the table has no entry
+	 * for it
+	 * @param address The address of the host
+	 * @return The current value
+	 */
+	public double get(int address) {
+		if (address >= values.length) {
+			return 0;
+		}
+		return values[address] * scale;
+	}
+
+	/**
+	 * Sets the value for a host
+	 * @param host The host
+	 * @param value The new value
+	 */
+	public void put(DTNHost host, double value) {
+		int address = host.getAddress();
+		if (address >= values.length) {
+			grow(address + 1);
+		}
+		if (hosts[address] == null) {
+			hosts[address] = host;
+			size++;
+		}
+		values[address] = value / scale;
+	}
+
+	/**
+	 * Returns true if the table has an entry for the host
+	 * @param host The host
+	 * @return true if the table has an entry for the host
+	 */
+	public boolean contains(DTNHost host) {
+		int address = host.getAddress();
+		return address < hosts.length && hosts[address] != null;
+	}
+
+	/**
+	 * Multiplies all the values in the table with the given factor
+	 * @param mult The aging multiplier (e.g., gamma^k)
+	 */
+	public void age(double mult) {
+		scale *= mult;
+		if (scale < MIN_SCALE) {
+			normalize();
+		}
+	}
+
+	/**
+	 * Returns the number of entries in the table
+	 * @return the number of entries in the table
+	 */
+	public int size() {
+		return this.size;
+	}
+
+	/**
+	 * Returns the upper limit (exclusive) of the addresses that can have an
+	 * entry in the table. Can be used for iterating the entries with
+	 * {@link #getHost(int)} and {@link #get(int)}.
+	 * @return The address limit
+	 */
+	public int getAddressLimit() {
+		return this.hosts.length;
+	}
+
+	/**
+	 * Returns the host of an entry
+	 * @param address The address of the host
+	 * @return The host or null if the table has no entry for the address
+	 */
+	public DTNHost getHost(int address) {
+		return this.hosts[address];
+	}
+
+	/**
+	 * Returns the entries of the table as a new map
+	 * @return the entries of the table as a new map
+	 */
+	public Map<DTNHost, Double> toMap() {
+		Map<DTNHost, Double> map = new HashMap<DTNHost, Double>();
+		for (int i=0; i<hosts.length; i++) {
+			if (hosts[i] != null) {
+				map.put(hosts[i], get(i));
+			}
+		}
+		return map;
+	}
+
+	/**
+	 * Folds the scale into the stored values
+	 */
+	private void normalize() {
+		for (int i=0; i<values.length; i++) {
+			values[i] *= scale;
+		}
+		scale = 1.0;
+	}
+
+	/**
+	 * Grows the arrays to fit at least the given number of addresses
+	 */
+	private void grow(int minCapacity) {
+		int capacity = Math.max(minCapacity, values.length * 2);
+		double[] newValues = new double[capacity];
+		DTNHost[] newHosts = new DTNHost[capacity];
+		System.arraycopy(values, 0, newValues, 0, values.length);
+		System.arraycopy(hosts, 0, newHosts, 0, hosts.length);
+		values = newValues;
+		hosts = newHosts;
+	}
+}
@@ -0,0 +1,255 @@
+/*
+ * Copyright 2010 Aalto University, ComNet
+ * Released under GPLv3. See LICENSE.txt for details.
+ */
+package routing.util;
+
+/**
+ * Summary vector of the messages a router is carrying. The vector is a
+ * bitset over the dense message ID indexes (see
+ * {@link core.Message#getIdIndex()}). Since the indexes are given in message
+ * creation order and old messages eventually leave the buffers, only the
+ * window of words between the lowest and the highest set bit is stored.
+ * Set differences between two vectors are computed a word (64 messages)
+ * at a time.
+ */
+public class SummaryVector {
+	private static final int ADDRESS_BITS = 6;
+	private static final long[] EMPTY = new long[0];
+
+	/** the stored words; words[0] is the word number firstWord */
+	private long[] words;
+	/** word number (index >> 6) of the first stored word */
+	private int firstWord;
+	/** number of bits set in the vector */
+	private int cardinality;
+
+	/**
+	 * Creates a new, empty summary vector.
+	 */
+	public SummaryVector() {
+		this.words = EMPTY;
+		this.firstWord = 0;
+		this.cardinality = 0;
+	}
+
+	/**
+	 * Sets the bit of the given index.
+	 * @param index The (message) index to set
+	 */
+	public void set(int index) {
+		int w = index >> ADDRESS_BITS;
+		long mask = 1L << index; /* shift is implicitly modulo 64 */
+
+		ensureWord(w);
+		int i = w - firstWord;
+		if ((words[i] & mask) == 0) {
+			words[i] |= mask;
+			cardinality++;
+		}
+	}
+
+	/**
+	 * Clears the bit of the given index.
+	 * @param index The (message) index to clear
+	 */
+	public void clear(int index) {
+		int i = (index >> ADDRESS_BITS) - firstWord;
+		long mask = 1L << index;
+
+		if (i < 0 || i >= words.length || (words[i] & mask) == 0) {
+			return; /* not set */
+		}
+
+		words[i] &= ~mask;
+		cardinality--;
+
+		if (cardinality == 0) {
+			words = EMPTY;
+			firstWord = 0;
+		} else if (words[i] == 0 && words[0] == 0) {
+			trimLeadingZeros();
+		}
+	}
+
+	/**
+	 * Returns true if the bit of the given index is set.
+	 * @param index The (message) index to check
+	 * @return True if the bit is set, false if not
+	 */
+	public boolean get(int index) {
+		int i = (index >> ADDRESS_BITS) - firstWord;
+		if (i < 0 || i >= words.length) {
+			return false;
+		}
+		return (words[i] & (1L << index)) != 0;
+	}
+
+	/**
+	 * Sets all the bits that are set in the other vector (i.e., makes this
+	 * vector the union of the two vectors).
+	 * @param other The other vector
+	 */
+	public void addAll(SummaryVector other) {
+		for (int i=0, n=other.words.length; i<n; i++) {
+			long word = other.words[i];
+			if (word == 0) {
+				continue;
+			}
+			int w = i + other.firstWord;
+			ensureWord(w);
+			int j = w - firstWord;
+			cardinality += Long.bitCount(word & ~words[j]);
+			words[j] |= word;
+		}
+	}
+
+	/**
+	 * Returns the number of set bits
+	 * @return the number of set bits
+	 */
+	public int cardinality() {
+		return this.cardinality;
+	}
+
+	/**
+	 * Returns true if no bits are set
+	 * @return true if no bits are set
+	 */
+	public boolean isEmpty() {
+		return this.cardinality == 0;
+	}
+
+	/**
+	 * Returns the index of the first set bit at or after the given index
+	 * @param from The index to start the search from
+	 * @return The index of the next set bit or -1 if there is no such bit
+	 */
+	public int nextSetBit(int from) {
+		return nextSetBitNotIn(null, from);
+	}
+
+	/**
+	 * Returns the index of the first bit at or after the given index that
+	 * is set in this vector but not in the other vector (i.e., the next
+	 * message this router has but the other one lacks).
+	 * @param other The other vector (or null for an empty vector)
+	 * @param from The index to start the search from
+	 * @return The index of the next such bit or -1 if there is no such bit
+	 */
+	public int nextSetBitNotIn(SummaryVector other, int from) {
+		if (from < 0) {
+			from = 0;
+		}
+		int i = (from >> ADDRESS_BITS) - firstWord;
+		if (i >= words.length) {
+			return -1;
+		}
+
+		long word;
+		if (i < 0) {
+			i = 0;
+			word = diffWord(other, 0);
+		} else {
+			word = diffWord(other, i) & (-1L << from);
+		}
+
+		while (true) {
+			if (word != 0) {
+				return ((i + firstWord) << ADDRESS_BITS) +
+					Long.numberOfTrailingZeros(word);
+			}
+			if (++i >= words.length) {
+				return -1;
+			}
+			word = diffWord(other, i);
+		}
+	}
+
+	/**
+	 * Returns the number of bits that are set in this vector but not in the
+	 * other vector.
+	 * @param other The other vector
+	 * @return Size of the set difference
+	 */
+	public int differenceCardinality(SummaryVector other) {
+		int count = 0;
+		for (int i=0, n=words.length; i<n; i++) {
+			count += Long.bitCount(diffWord(other, i));
+		}
+		return count;
+	}
+
+	/**
+	 * Returns the i:th stored word of this vector with the bits of the other
+	 * vector cleared
+	 */
+	private long diffWord(SummaryVector other, int i) {
+		if (other == null) {
+			return words[i];
+		}
+		int j = i + firstWord - other.firstWord;
+		if (j < 0 || j >= other.words.length) {
+			return words[i];
+		}
+		return words[i] & ~other.words[j];
+	}
+
+	/**
+	 * Makes sure the given word number is inside the stored window
+	 * @param w The word number
+	 */
+	private void ensureWord(int w) {
+		if (words.length == 0) {
+			words = new long[4];
+			firstWord = w;
+			return;
+		}
+
+		int last = firstWord + words.length - 1;
+		if (w >= firstWord && w <= last) {
+			return;
+		}
+
+		int newFirst = Math.min(firstWord, w);
+		int needed = Math.max(last, w) - newFirst + 1;
+		/* any extra room is left after the stored words since new
+		 * indexes usually grow */
+		long[] newWords = new long[Math.max(needed, words.length * 2)];
+		System.arraycopy(words, 0, newWords, firstWord - newFirst,
+				words.length);
+		words = newWords;
+		firstWord = newFirst;
+	}
+
+	/**
+	 * Drops the zero words from the start of the window
+	 */
+	private void trimLeadingZeros() {
+		int zeros = 0;
+		while (words[zeros] == 0) {
+			zeros++; /* cardinality > 0 so the loop stays in bounds */
+		}
+		if (zeros < words.length / 2) {
+			return; /* not worth the copying yet */
+		}
+		long[] newWords = new long[words.length - zeros];
+		System.arraycopy(words, zeros, newWords, 0, newWords.length);
+		words = newWords;
+		firstWord += zeros;
+	}
+
+	/**
+	 * Returns a string presentation of the set indexes
+	 */
+	public String toString() {
+		StringBuilder sb = new StringBuilder("[");
+		for (int i = nextSetBit(0); i >= 0; i = nextSetBit(i + 1)) {
+			if (sb.length() > 1) {
+				sb.append(", ");
+			}
+			sb.append(i);
+		}
+		return sb.append("]").toString();
+	}
+}
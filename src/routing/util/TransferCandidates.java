@@ -0,0 +1,163 @@
+/*
+ * Copyright 2010 Aalto University, ComNet
+ * Released under GPLv3. See LICENSE.txt for details.
+ */
+package routing.util;
+
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.Random;
+
+import core.Connection;
+import core.Message;
+
+/**
+ * Reusable list of message-connection transfer candidates for ordering the
+ * messages a router tries to send. The sort keys of a candidate (e.g.,
+ * the delivery utility of the message through the connection) are computed
+ * once when the candidate is added and stored in the candidate's primitive
+ * fields, so comparators don't need to look them up again. The candidate
+ * objects are pooled: clearing the list keeps them for the next round so a
+ * router that reuses the same list doesn't allocate new objects once the
+ * pool has grown to the maximum number of candidates.
+ */
+public class TransferCandidates {
+	private static final int INITIAL_CAPACITY = 16;
+
+	/** the candidates; the ones beyond size are kept for reuse */
+	private Candidate[] candidates;
+	/** number of candidates in the list */
+	private int size;
+
+	/**
+	 * A message-connection pair with the sort keys of the pair
+	 */
+	public static class Candidate {
+		private Message message;
+		private Connection connection;
+		/** Primary sort key (e.g., the utility of the transfer) */
+		public double key;
+		/** Secondary sort key */
+		public double key2;
+		/** Integer sort key (e.g., the hop count of the message) */
+		public int intKey;
+
+		/**
+		 * Returns the message of the candidate
+		 * @return the message of the candidate
+		 */
+		public Message getMessage() {
+			return this.message;
+		}
+
+		/**
+		 * Returns the connection of the candidate
+		 * @return the connection of the candidate
+		 */
+		public Connection getConnection() {
+			return this.connection;
+		}
+	}
+
+	/**
+	 * Creates a new, empty list
+	 */
+	public TransferCandidates() {
+		this.candidates = new Candidate[INITIAL_CAPACITY];
+		this.size = 0;
+	}
+
+	/**
+	 * Adds a new candidate to the end of the list. The sort keys of the
+	 * returned candidate are reset to zero.
+	 * @param m The message
+	 * @param con The connection
+	 * @return The candidate whose sort keys can be set
+	 */
+	public Candidate add(Message m, Connection con) {
+		if (size == candidates.length) {
+			candidates = Arrays.copyOf(candidates, size * 2);
+		}
+
+		Candidate c = candidates[size];
+		if (c == null) {
+			c = new Candidate();
+			candidates[size] = c;
+		}
+		size++;
+
+		c.message = m;
+		c.connection = con;
+		c.key = 0;
+		c.key2 = 0;
+		c.intKey = 0;
+		return c;
+	}
+
+	/**
+	 * Adds copies of all the candidates of another list (including their
+	 * sort keys) to the end of this list
+	 * @param other The list whose candidates are added
+	 */
+	public void addAll(TransferCandidates other) {
+		for (int i=0, n=other.size(); i<n; i++) {
+			Candidate o = other.get(i);
+			Candidate c = add(o.message, o.connection);
+			c.key = o.key;
+			c.key2 = o.key2;
+			c.intKey = o.intKey;
+		}
+	}
+
+	/**
+	 * Returns the candidate at the given position
+	 * @param index The position
+	 * @return The candidate
+	 */
+	public Candidate get(int index) {
+		return this.candidates[index];
+	}
+
+	/**
+	 * Returns the number of candidates in the list
+	 * @return the number of candidates in the list
+	 */
+	public int size() {
+		return this.size;
+	}
+
+	/**
+	 * Removes all the candidates from the list
+	 */
+	public void clear() {
+		for (int i=0; i < size; i++) {
+			candidates[i].message = null; // don't hold on to old objects
+			candidates[i].connection = null;
+		}
+		this.size = 0;
+	}
+
+	/**
+	 * Sorts the candidates using the given comparator. The sort is stable,
+	 * i.e., equal candidates stay in the order they were added in.
+	 * @param comparator The comparator
+	 */
+	public void sort(Comparator<Candidate> comparator) {
+		Arrays.sort(candidates, 0, size, comparator);
+	}
+
+	/**
+	 * Shuffles the candidates to a random order. Gives the same order as
+	 * {@link java.util.Collections#shuffle(java.util.List, Random)} for a
+	 * list of the candidates.
+	 * @param rng The random number generator to use
+	 */
+	public void shuffle(Random rng) {
+		for (int i = size; i > 1; i--) {
+			int j = rng.nextInt(i);
+			Candidate tmp = candidates[i - 1];
+			candidates[i - 1] = candidates[j];
+			candidates[j] = tmp;
+		}
+	}
+}
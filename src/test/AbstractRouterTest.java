@@ -5,12 +5,18 @@
 package test;
 
 import java.util.ArrayList;
+import java.util.Collections;
 import java.util.List;
+import java.util.Random;
 
 import junit.framework.TestCase;
+import routing.ActiveRouter;
 import routing.MessageRouter;
+import routing.PlannedRoutingEngine;
+import core.Connection;
 import core.Coord;
 import core.DTNHost;
+import core.Message;
 import core.MessageListener;
 import core.NetworkInterface;
 import core.SimClock;
@@ -94,6 +100,16 @@ public abstract class AbstractRouterTest extends TestCase {
 		}
 	}
 
+	/**
+	 * Updates all the nodes in the router dormancy mode, i.e., only the
+	 * routers that need an update are updated
+	 */
+	protected void updateAllNodesDormant() {
+		for (DTNHost node : utils.getAllHosts()) {
+			node.update(false, true);
+		}
+	}
+
 	protected void checkTransferStart(DTNHost from, DTNHost to, String msgId) {
 		assertTrue(mc.next());
 		assertEquals(mc.TYPE_START, mc.getLastType());
@@ -147,6 +163,100 @@ public abstract class AbstractRouterTest extends TestCase {
 		node.setLocation(loc);
 	}
 
+	/**
+	 * Checks that the planned routing engine makes the same routing
+	 * decisions as the routers' update methods, and that the decisions
+	 * don't depend on the number of planning threads. Since the engine
+	 * makes the decisions after all the hosts have been updated, the
+	 * finished transfers are finalized before the serial decisions too,
+	 * and the events of each time step are compared regardless of their
+	 * order. The hosts are connected only in pairs, so the update order of
+	 * the hosts can't make a difference either.
+	 */
+	protected void checkPlannedEquivalence() throws Exception {
+		String serial = runPairScenario(0);
+		assertTrue(serial.contains(mc.TYPE_RELAY));
+		assertEquals(serial, runPairScenario(1));
+		assertEquals(serial, runPairScenario(3));
+	}
+
+	/**
+	 * Runs a (seeded) random scenario where messages are created and the
+	 * hosts are connected and disconnected in pairs
+	 * @param nrofThreads Number of planned routing threads or 0 for
+	 * making the routing decisions in the update methods
+	 * @return The message events of the scenario
+	 */
+	private String runPairScenario(int nrofThreads) throws Exception {
+		/* the random queue mode orders by identity hash codes */
+		ts.setNameSpace(null);
+		ts.putSetting(MessageRouter.SEND_QUEUE_MODE_S,
+				""+MessageRouter.Q_MODE_FIFO);
+		this.setUp();
+		List<DTNHost> hosts = utils.getAllHosts();
+		PlannedRoutingEngine engine = null;
+		if (nrofThreads > 0) {
+			engine = new PlannedRoutingEngine(hosts, nrofThreads);
+		}
+		Random rng = new Random(17);
+		StringBuilder events = new StringBuilder();
+
+		for (int step=0; step<300; step++) {
+			DTNHost from = hosts.get(rng.nextInt(hosts.size()));
+			DTNHost to = hosts.get(rng.nextInt(hosts.size()));
+			if (rng.nextInt(3) == 0 && from != to) {
+				/* at least one second per transfer so that no transfer
+				 * is done already in the step it was started */
+				from.createNewMessage(new Message(from, to, "M" + step,
+						TRANSMIT_SPEED * (1 + rng.nextInt(3))));
+			}
+
+			DTNHost a = hosts.get(rng.nextInt(hosts.size()));
+			List<Connection> cons = a.getConnections();
+			if (cons.size() > 0) {
+				if (rng.nextInt(4) == 0) {
+					a.forceConnection(cons.get(0).getOtherNode(a), null,
+							false);
+				}
+			} else {
+				DTNHost b = hosts.get(rng.nextInt(hosts.size()));
+				if (b != a && b.getConnections().size() == 0) {
+					a.connect(b);
+				}
+			}
+
+			if (engine != null) {
+				updateAllNodes();
+				engine.update(hosts);
+			} else {
+				/* finalize the transfers first, then decide */
+				setPlannedRouting(hosts, true);
+				updateAllNodes();
+				setPlannedRouting(hosts, false);
+				updateAllNodes();
+			}
+
+			List<String> stepEvents = new ArrayList<String>();
+			while (mc.next()) {
+				stepEvents.add(mc.getLastType() + " " +
+						mc.getLastMsg().getId() + " " + mc.getLastFrom() +
+						" " + mc.getLastTo());
+			}
+			Collections.sort(stepEvents);
+			events.append(step + ": " + stepEvents + "\n");
+			clock.advance(1);
+		}
+
+		return events.toString();
+	}
+
+	private static void setPlannedRouting(List<DTNHost> hosts,
+			boolean planned) {
+		for (DTNHost h : hosts) {
+			((ActiveRouter)h.getRouter()).setPlannedRouting(planned);
+		}
+	}
+
 	public String toString() {
 		return "MC: " + mc.toString();
 	}
@@ -27,7 +27,12 @@ public class AllTests {
 		suite.addTestSuite(ConnectionTest.class);
 		suite.addTestSuite(ExternalMovementReaderTest.class);
 		suite.addTestSuite(ExternalMovementTest.class);
+		suite.addTestSuite(ExternalPathMovementReaderTest.class);
 		suite.addTestSuite(WKTReaderTest.class);
+		suite.addTestSuite(SimMapCacheTest.class);
+		suite.addTestSuite(CompressedStreamsTest.class);
+		suite.addTestSuite(ContactTraceTest.class);
+		suite.addTestSuite(MovementTraceTest.class);
 		suite.addTestSuite(WKTPointReaderTest.class);
 		suite.addTestSuite(MapNodeTest.class);
 		suite.addTestSuite(MapBasedMovementTest.class);
@@ -50,6 +55,17 @@ public class AllTests {
 		suite.addTestSuite(MessageTest.class);
 		suite.addTestSuite(ModuleCommunicationBusTest.class);
 		suite.addTestSuite(DTNHostTest.class);
+		suite.addTestSuite(SummaryVectorTest.class);
+		suite.addTestSuite(TimingWheelTest.class);
+		suite.addTestSuite(MessageHolderIndexTest.class);
+		suite.addTestSuite(MessageTransferAcceptPolicyTest.class);
+		suite.addTestSuite(MessageHistoryTest.class);
+		suite.addTestSuite(PredictabilityTableTest.class);
+		suite.addTestSuite(NeighborMessageCounterTest.class);
+		suite.addTestSuite(MessageTimerTableTest.class);
+		suite.addTestSuite(SprayAndWaitRouterTest.class);
+		suite.addTestSuite(ContactGraphTest.class);
+		suite.addTestSuite(StandardEventsReaderTest.class);
 		//$JUnit-END$
 		return suite;
 	}
@@ -0,0 +1,136 @@
+/*
+ * Copyright 2010 Aalto University, ComNet
+ * Released under GPLv3. See LICENSE.txt for details.
+ */
+package test;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.RandomAccessFile;
+import java.util.Arrays;
+import java.util.Random;
+import java.util.zip.GZIPInputStream;
+
+import junit.framework.TestCase;
+import util.CompressedStreams;
+
+/**
+ * Tests for {@link CompressedStreams}
+ */
+public class CompressedStreamsTest extends TestCase {
+	/** more than a few chunks of the helper threads */
+	private static final int DATA_SIZE = 3 * (1 << 20) + 12345;
+
+	private File gzFile;
+	private byte[] data;
+
+	protected void setUp() throws Exception {
+		super.setUp();
+		gzFile = File.createTempFile("csTest", CompressedStreams.GZIP_EXT);
+		gzFile.deleteOnExit();
+		data = new byte[DATA_SIZE];
+		Random rng = new Random(1);
+		for (int i=0; i<DATA_SIZE; i++) {
+			data[i] = (byte)('a' + rng.nextInt(8)); /* compressible */
+		}
+	}
+
+	private void writeData(File f) throws IOException {
+		OutputStream out = CompressedStreams.openOutput(f);
+		/* mixed single byte and block writes */
+		out.write(data, 0, 10);
+		out.write(data[10]);
+		out.write(data, 11, DATA_SIZE - 11);
+		out.close();
+	}
+
+	private byte[] readAll(InputStream in) throws IOException {
+		byte[] result = new byte[DATA_SIZE + 1];
+		int n = 0;
+		int r;
+		while (n < result.length &&
+				(r = in.read(result, n, Math.min(10000, result.length - n)))
+				>= 0) {
+			n += r;
+		}
+		in.close();
+		return Arrays.copyOf(result, n);
+	}
+
+	public void testRoundTrip() throws IOException {
+		writeData(gzFile);
+		assertTrue(CompressedStreams.isGzipFile(gzFile));
+		assertTrue(gzFile.length() < DATA_SIZE / 2);
+
+		/* the file is a standard gzip file */
+		assertTrue(Arrays.equals(data,
+				readAll(new GZIPInputStream(new FileInputStream(gzFile)))));
+		assertTrue(Arrays.equals(data,
+				readAll(CompressedStreams.openInput(gzFile))));
+	}
+
+	public void testPlainFiles() throws IOException {
+		File plain = File.createTempFile("csTest", ".txt");
+		plain.deleteOnExit();
+		writeData(plain);
+		assertFalse(CompressedStreams.isGzipFile(plain));
+		assertEquals(DATA_SIZE, plain.length());
+		assertTrue(Arrays.equals(data,
+				readAll(CompressedStreams.openInput(plain))));
+	}
+
+	public void testDetectionByMagic() throws IOException {
+		writeData(gzFile);
+		File noExt = File.createTempFile("csTest", ".tmp");
+		noExt.deleteOnExit();
+		assertTrue(gzFile.renameTo(noExt));
+		assertTrue(CompressedStreams.isGzipFile(noExt));
+		assertTrue(Arrays.equals(data,
+				readAll(CompressedStreams.openInput(noExt))));
+	}
+
+	public void testEarlyClose() throws IOException {
+		writeData(gzFile);
+		InputStream in = CompressedStreams.openInput(gzFile);
+		assertEquals(data[0], (byte)in.read());
+		in.close();
+		try {
+			in.read();
+			fail("Read from a closed stream");
+		} catch (IOException e) {
+			/* expected */
+		}
+	}
+
+	public void testTruncatedFile() throws IOException {
+		writeData(gzFile);
+		RandomAccessFile raf = new RandomAccessFile(gzFile, "rw");
+		raf.setLength(gzFile.length() / 2);
+		raf.close();
+
+		InputStream in = CompressedStreams.openInput(gzFile);
+		try {
+			readAll(in);
+			fail("Truncated file was read without errors");
+		} catch (IOException e) {
+			assertTrue(e.getMessage(), e.getMessage().contains(
+					gzFile.getPath()));
+		}
+	}
+
+	public void testNotGzip() throws IOException {
+		OutputStream out = new FileOutputStream(gzFile);
+		out.write("not gzip".getBytes());
+		out.close();
+		try {
+			CompressedStreams.openInput(gzFile);
+			fail("A .gz file that is not in gzip format was accepted");
+		} catch (IOException e) {
+			/* expected */
+		}
+	}
+}
@@ -95,6 +95,42 @@ public class ConnectionTest extends TestCase {
 		assertTrue(c[0].isMessageTransferred());
 	}
 
+	public void testQueuedTransfers() {
+		c[0].queueTransfer(h[0], m[3]);
+		c[0].queueTransfer(h[0], m[4]);
+		assertNull(h[1].startedId);
+		assertEquals(size[0] + size[3] + size[4], c[0].getQueuedByteCount());
+
+		/* the next queued transfer starts when the previous one is done */
+		clock.setTime(START_TIME + 1.5);
+		c[0].finalizeTransfer();
+		assertEquals(m[3].getId(), h[1].startedId);
+		assertEquals(START_TIME + 1.0 + (1.0 * size[3]) / speed[0],
+				c[0].getTransferDoneTime());
+
+		/* ...or when the previous one was aborted */
+		clock.setTime(START_TIME + 2.0);
+		c[0].abortTransfer();
+		assertEquals(m[3].getId(), h[1].abortedId);
+		assertEquals(m[4].getId(), h[1].startedId);
+		assertEquals(START_TIME + 2.0 + (1.0 * size[4]) / speed[0],
+				c[0].getTransferDoneTime());
+	}
+
+	public void testCancelQueuedTransfers() {
+		c[0].queueTransfer(h[0], m[3]);
+		assertFalse(c[0].cancelQueuedTransfer(m[4].getId()));
+		assertTrue(c[0].cancelQueuedTransfer(m[3].getId()));
+		assertEquals(m[3].getId(), h[1].cancelledId);
+
+		c[0].queueTransfer(h[0], m[4]);
+		c[0].cancelQueuedTransfers();
+		assertEquals(m[4].getId(), h[1].cancelledId);
+		assertEquals(size[0], c[0].getQueuedByteCount());
+		assertNull(h[1].startedId);
+		assertNull(h[1].abortedId);
+	}
+
 	public void testGetTransferDoneTime() {
 		double doneTime;
 
@@ -0,0 +1,171 @@
+/*
+ * Copyright 2010 Aalto University, ComNet
+ * Released under GPLv3. See LICENSE.txt for details.
+ */
+package test;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.FileWriter;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.util.Random;
+import java.util.zip.GZIPOutputStream;
+
+import junit.framework.TestCase;
+import routing.schedule.ContactGraph;
+import routing.schedule.ContactPlan;
+
+/**
+ * Tests for the {@link ContactPlan} and {@link ContactGraph} classes
+ */
+public class ContactGraphTest extends TestCase {
+	private static final double DELTA = 1e-9;
+	private ContactPlan plan;
+	private ContactGraph graph;
+
+	protected void setUp() throws Exception {
+		super.setUp();
+		plan = new ContactPlan();
+		graph = new ContactGraph(plan, 0, Double.POSITIVE_INFINITY);
+	}
+
+	public void testAdjacency() {
+		plan.addContact(0, 1, 50, 60);
+		plan.addContact(2, 0, 10, 20);
+		plan.addContact(0, 3, 30, 100);
+
+		assertEquals(4, plan.getNrofNodes());
+		assertEquals(3, plan.getEndContact(0) - plan.getFirstContact(0));
+		int first = plan.getFirstContact(0);
+		assertEquals(2, plan.getPeer(first)); /* sorted by start time */
+		assertEquals(3, plan.getPeer(first + 1));
+		assertEquals(1, plan.getPeer(first + 2));
+		assertEquals(0, plan.getPeer(plan.getFirstContact(2)));
+
+		assertEquals(first, plan.getFirstUsable(0, 15));
+		/* the first contact has ended, the long one hasn't */
+		assertEquals(first + 1, plan.getFirstUsable(0, 20));
+		assertEquals(plan.getEndContact(0), plan.getFirstUsable(0, 100));
+	}
+
+	public void testEarliestArrival() {
+		plan.addContact(1, 2, 10, 20);
+		plan.addContact(2, 3, 15, 30);
+		plan.addContact(1, 3, 50, 60); /* direct but later */
+		plan.addContact(3, 4, 5, 12); /* ends before we get to 3 */
+		plan.addContact(3, 4, 40, 45);
+
+		assertEquals(15, graph.getArrivalTime(1, 3, 0), DELTA);
+		assertEquals(2, graph.getFirstHop(1, 3, 0));
+		assertEquals(40, graph.getArrivalTime(1, 4, 0), DELTA);
+		assertEquals(2, graph.getFirstHop(1, 4, 0));
+		assertEquals(17, graph.getArrivalTime(1, 3, 17), DELTA);
+
+		/* contact 1-2 is over -> direct contact is the only option */
+		assertEquals(50, graph.getArrivalTime(1, 3, 25), DELTA);
+		assertEquals(3, graph.getFirstHop(1, 3, 25));
+		assertEquals(-1, graph.getFirstHop(1, 4, 50));
+		assertEquals(Double.POSITIVE_INFINITY,
+				graph.getArrivalTime(1, 4, 50));
+		assertEquals(-1, graph.getFirstHop(1, 99, 0)); /* not in plan */
+	}
+
+	public void testCacheWindowAndHorizon() {
+		plan.addContact(1, 2, 0, 25);
+		plan.addContact(2, 3, 30, 40);
+		plan.addContact(1, 3, 1000, 1010);
+
+		ContactGraph windowed = new ContactGraph(plan, 20, 500);
+		assertEquals(30, windowed.getArrivalTime(1, 3, 5), DELTA);
+		assertEquals(5, windowed.getArrivalTime(1, 2, 5), DELTA);
+		/* the cached paths are still valid */
+		assertEquals(21, windowed.getArrivalTime(1, 2, 21), DELTA);
+		/* 1-2 has ended -> only the direct contact, beyond the horizon */
+		assertEquals(Double.POSITIVE_INFINITY,
+				windowed.getArrivalTime(1, 3, 25));
+
+		/* adding a contact invalidates the cached results */
+		plan.addContact(1, 3, 100, 200);
+		assertEquals(100, windowed.getArrivalTime(1, 3, 26), DELTA);
+	}
+
+	/**
+	 * Tests that a contact that is up is used until it ends even if it
+	 * ends during the cache window
+	 */
+	public void testLiveContactEndingInWindow() {
+		plan.addContact(1, 2, 0, 15);
+		plan.addContact(2, 3, 20, 30);
+		plan.addContact(1, 3, 50, 60);
+
+		ContactGraph windowed = new ContactGraph(plan, 10, 1000);
+		assertEquals(2, windowed.getFirstHop(1, 3, 2));
+		assertEquals(2, windowed.getFirstHop(1, 3, 14.9));
+		assertEquals(20, windowed.getArrivalTime(1, 3, 14.9), DELTA);
+		/* the contact ended -> the result isn't reused */
+		assertEquals(3, windowed.getFirstHop(1, 3, 15));
+		assertEquals(50, windowed.getArrivalTime(1, 3, 15), DELTA);
+	}
+
+	/**
+	 * Tests that the cached results are the same as the ones computed for
+	 * the exact query times
+	 */
+	public void testCachedSameAsExact() {
+		Random rng = new Random(1);
+		for (int i=0; i<200; i++) {
+			double start = rng.nextInt(1000);
+			plan.addContact(rng.nextInt(20), rng.nextInt(20), start,
+					start + 1 + rng.nextInt(50));
+		}
+		ContactGraph windowed = new ContactGraph(plan, 30,
+				Double.POSITIVE_INFINITY);
+		for (double time=0; time<1100; time+=0.5) {
+			for (int to=0; to<20; to++) {
+				assertEquals(graph.getArrivalTime(0, to, time),
+						windowed.getArrivalTime(0, to, time), DELTA);
+				if (graph.getFirstHop(0, to, time) < 0) {
+					assertEquals(-1, windowed.getFirstHop(0, to, time));
+				}
+			}
+		}
+	}
+
+	public void testRead() throws Exception {
+		File f = File.createTempFile("contactPlan", ".txt");
+		f.deleteOnExit();
+		FileWriter w = new FileWriter(f);
+		w.write("# connectivity\n");
+		w.write("10.00 CONN 1 2 up\n");
+		w.write("12.00 CONN p2 p3 up\n");
+		w.write("13.00 C M1 1 3 100\n");
+		w.write("20.00 CONN 2 1 down\n");
+		w.write("\n");
+		w.close();
+
+		plan.read(f);
+		assertEquals(2, plan.getNrofContacts());
+		assertEquals(12, graph.getArrivalTime(1, 3, 0), DELTA);
+		assertEquals(Double.POSITIVE_INFINITY,
+				graph.getArrivalTime(1, 3, 20));
+		assertEquals(1e6, graph.getArrivalTime(2, 3, 1e6), DELTA);
+	}
+
+	public void testReadGzip() throws Exception {
+		File f = File.createTempFile("contactPlan", ".txt.gz");
+		f.deleteOnExit();
+		Writer w = new OutputStreamWriter(new GZIPOutputStream(
+				new FileOutputStream(f)));
+		w.write("5.0 CONN 0 1 up\n");
+		w.write("9.0 CONN 1 0 down\n");
+		w.write("15.0 CONN 1 2 up\n");
+		w.close();
+
+		plan.read(f);
+		assertEquals(2, plan.getNrofContacts());
+		assertEquals(15, graph.getArrivalTime(0, 2, 0), DELTA);
+		assertEquals(Double.POSITIVE_INFINITY,
+				graph.getArrivalTime(0, 2, 10));
+	}
+}
@@ -0,0 +1,176 @@
+/*
+ * Copyright 2010 Aalto University, ComNet
+ * Released under GPLv3. See LICENSE.txt for details.
+ */
+package test;
+
+import input.ContactTrace;
+import input.ContactTraceQueue;
+import input.ContactTraceRecorder;
+import input.EventQueue;
+import input.ExternalEvent;
+import input.MessageCreateEvent;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.List;
+
+import junit.framework.TestCase;
+import core.ConnectionListener;
+import core.Coord;
+import core.DTNHost;
+import core.MessageListener;
+import core.SimClock;
+import core.UpdateListener;
+import core.World;
+
+/**
+ * Tests for recording and replaying contact traces
+ */
+public class ContactTraceTest extends TestCase {
+	private File traceFile;
+	private SimClock clock;
+	private List<String> recordedLog;
+
+	protected void setUp() throws Exception {
+		super.setUp();
+		SimClock.reset();
+		DTNHost.reset();
+		clock = SimClock.getInstance();
+		traceFile = File.createTempFile("ctTest", ".eeb");
+		traceFile.delete();
+		traceFile.deleteOnExit();
+	}
+
+	/**
+	 * Connection listener that logs the connection events
+	 */
+	private static class LoggingListener implements ConnectionListener {
+		private List<String> log = new ArrayList<String>();
+
+		public void hostsConnected(DTNHost host1, DTNHost host2) {
+			log.add(SimClock.getTime() + " " + host1 + " " + host2 + " up");
+		}
+
+		public void hostsDisconnected(DTNHost host1, DTNHost host2) {
+			log.add(SimClock.getTime() + " " + host1 + " " + host2 + " down");
+		}
+	}
+
+	/**
+	 * Event queue of one message creation event
+	 */
+	private static class OneMessageQueue implements EventQueue {
+		private ExternalEvent event = new MessageCreateEvent(0, 2, "M1", 100,
+				0, 1.0);
+
+		public ExternalEvent nextEvent() {
+			ExternalEvent ee = event;
+			event = new ExternalEvent(Double.MAX_VALUE);
+			return ee;
+		}
+
+		public double nextEventsTime() {
+			return event.getTime();
+		}
+	}
+
+	private List<DTNHost> createHosts(ConnectionListener... listeners) {
+		List<ConnectionListener> cl = new ArrayList<ConnectionListener>();
+		for (ConnectionListener l : listeners) {
+			cl.add(l);
+		}
+		TestUtils utils = new TestUtils(cl, new ArrayList<MessageListener>(),
+				new TestSettings());
+		utils.setTransmitRange(3);
+		for (int i=0; i<3; i++) {
+			utils.createHost(new Coord(i, 0));
+		}
+		return utils.getAllHosts();
+	}
+
+	private void record() {
+		LoggingListener logger = new LoggingListener();
+		ContactTraceRecorder recorder = new ContactTraceRecorder(traceFile);
+		List<DTNHost> hosts = createHosts(logger, recorder);
+		DTNHost h1 = hosts.get(0);
+		DTNHost h2 = hosts.get(1);
+		DTNHost h3 = hosts.get(2);
+
+		h1.forceConnection(h2, null, true);
+		h3.forceConnection(h2, null, true); /* same time -> one batch */
+
+		List<EventQueue> queues = new ArrayList<EventQueue>();
+		queues.add(new OneMessageQueue());
+		EventQueue q = recorder.wrap(queues).get(0);
+		clock.setTime(q.nextEventsTime());
+		q.nextEvent();
+
+		clock.advance(2.0);
+		h2.setLocation(new Coord(10, 10));
+		h3.update(true); /* disconnect h3-h2 (from h3) */
+		h1.update(true);
+
+		recorder.done(true);
+		recordedLog = logger.log;
+	}
+
+	public void testRecordAndReplay() {
+		record();
+		assertTrue(traceFile.isFile());
+		assertEquals(4, recordedLog.size());
+
+		SimClock.reset();
+		DTNHost.reset();
+		LoggingListener logger = new LoggingListener();
+		List<DTNHost> hosts = createHosts(logger);
+		ContactTraceQueue q = new ContactTraceQueue(traceFile);
+		World world = new World(hosts, 100, 100, 1,
+				new ArrayList<UpdateListener>(), false,
+				new ArrayList<EventQueue>());
+
+		List<ExternalEvent> events = new ArrayList<ExternalEvent>();
+		while (q.nextEventsTime() != Double.MAX_VALUE) {
+			clock.setTime(q.nextEventsTime());
+			ExternalEvent ee = q.nextEvent();
+			ee.processEvent(world);
+			events.add(ee);
+		}
+
+		assertEquals(recordedLog, logger.log);
+		/* both up events of time 0 and both down events of time 3 batched */
+		assertEquals(3, events.size());
+		assertTrue(events.get(1) instanceof MessageCreateEvent);
+		assertEquals("MSG @1.0 M1 [0->2] size:100 CREATE",
+				events.get(1).toString());
+		assertEquals(Double.MAX_VALUE, q.nextEvent().getTime());
+	}
+
+	public void testIncompleteRecording() {
+		ContactTraceRecorder recorder = new ContactTraceRecorder(traceFile);
+		List<DTNHost> hosts = createHosts(recorder);
+		hosts.get(0).forceConnection(hosts.get(1), null, true);
+		recorder.done(false);
+		assertFalse(traceFile.exists());
+	}
+
+	public void testKey() {
+		TestSettings ts = new TestSettings();
+		String key = ContactTrace.getKey();
+
+		/* routing and report settings don't change the key */
+		ts.putSetting("Group.router", "ProphetRouter");
+		ts.putSetting("Group.bufferSize", "5M");
+		ts.putSetting("ProphetRouter.secondsInTimeUnit", "30");
+		ts.putSetting("MessageStatsReport.output", "foo.txt");
+		ts.putSetting("Report.nrofReports", "1");
+		assertEquals(key, ContactTrace.getKey());
+
+		/* movement and interface settings do */
+		ts.putSetting("Group.speed", "0.5,1.5");
+		String key2 = ContactTrace.getKey();
+		assertFalse(key.equals(key2));
+		ts.putSetting("btInterface.transmitRange", "10");
+		assertFalse(key2.equals(ContactTrace.getKey()));
+	}
+}
@@ -4,8 +4,11 @@
  */
 package test;
 
+import routing.ActiveRouter;
 import routing.EpidemicRouter;
 import routing.MessageRouter;
+import routing.PlannedRoutingEngine;
+import core.Connection;
 import core.DTNHost;
 import core.Message;
 
@@ -222,6 +225,35 @@ public class EpidemicRouterTest extends AbstractRouterTest {
 		assertFalse(mc.next());
 	}
 
+	/**
+	 * Tests that a transfer shares one copy of the message between the
+	 * connection and the receiver and that the sender's copy is not touched
+	 */
+	public void testSingleCopyTransfer() {
+		Message m1 = new Message(h1, h2, msgId1, BUFFER_SIZE);
+		h1.createNewMessage(m1);
+		checkCreates(1);
+
+		h1.connect(h2);
+		updateAllNodes();
+		checkTransferStart(h1, h2, msgId1);
+
+		Connection con = h1.getConnections().get(0);
+		Message onFly = con.getMessage();
+		assertNotSame(m1, onFly);
+		assertSame(onFly, h2.getIncomingMessage(msgId1, h1));
+		assertEquals(2, onFly.getHops().size());
+		assertEquals(h2, onFly.getHops().get(1));
+		assertEquals(1, m1.getHops().size());
+
+		/* a rejected offer doesn't create a copy */
+		Message m2 = new Message(h3, h4, msgId2, 1);
+		h3.createNewMessage(m2);
+		checkCreates(1);
+		assertEquals(MessageRouter.DENIED_OLD, h3.receiveMessage(m2, h4));
+		assertNull(h3.getIncomingMessage(msgId2, h4));
+	}
+
 	/**
 	 * try disconnecting on the same update interval when a transfer should
 	 * be finished -> should not cause abort (anymore)
@@ -598,6 +630,172 @@ public class EpidemicRouterTest extends AbstractRouterTest {
 		return msgIds;
 	}
 
+	/**
+	 * Tests that in the router dormancy mode routers are updated only when
+	 * something has happened to them
+	 */
+	public void testDormancy() {
+		MessageRouter r1 = h1.getRouter();
+		MessageRouter r2 = h2.getRouter();
+		MessageRouter r3 = h3.getRouter();
+
+		updateAllNodesDormant();
+		assertFalse(r1.needsUpdate());
+		assertFalse(r2.needsUpdate());
+
+		Message m1 = new Message(h1, h2, msgId1, 1);
+		h1.createNewMessage(m1);
+		checkCreates(1);
+		assertTrue(r1.needsUpdate());
+		updateAllNodesDormant();
+		assertFalse(r1.needsUpdate());
+
+		h1.connect(h2);
+		assertTrue(r1.needsUpdate());
+		assertTrue(r2.needsUpdate());
+		assertFalse(r3.needsUpdate());
+
+		updateAllNodesDormant();
+		checkTransferStart(h1, h2, msgId1);
+		assertTrue(r1.needsUpdate()); /* connected hosts stay awake */
+		clock.advance(1);
+		updateAllNodesDormant();
+		checkDelivered(h1, h2, msgId1, false);
+		assertTrue(mc.getLastFirstDelivery());
+
+		disconnect(h1);
+		assertTrue(r2.needsUpdate());
+		updateAllNodesDormant();
+		assertFalse(r1.needsUpdate());
+		assertFalse(r2.needsUpdate());
+		assertFalse(r3.needsUpdate());
+
+		/* TTL checks that can't drop anything don't wake up the routers */
+		clock.setTime(ActiveRouter.TTL_CHECK_INTERVAL);
+		assertFalse(r1.needsUpdate());
+		assertFalse(r3.needsUpdate());
+
+		/* the ones that can are done at the same times as without dormancy */
+		clock.setTime(TTL * 60 - 120);
+		assertFalse(r1.needsUpdate());
+		clock.setTime(TTL * 60 - 60);
+		assertTrue(r1.needsUpdate());
+		updateAllNodesDormant();
+		assertTrue(r1.hasMessage(msgId1)); /* one minute of TTL left */
+		assertFalse(r1.needsUpdate());
+		clock.setTime(TTL * 60 - 1);
+		assertFalse(r1.needsUpdate());
+		clock.setTime(TTL * 60);
+		assertTrue(r1.needsUpdate());
+		assertFalse(r3.needsUpdate());
+		updateAllNodesDormant();
+		assertFalse(r1.hasMessage(msgId1));
+		assertFalse(r1.needsUpdate());
+	}
+
+	/**
+	 * Tests queuing messages after each other in one decision step
+	 */
+	public void testBatchedTransfers() throws Exception {
+		ts.putSetting(ActiveRouter.TRANSFER_BATCH_S, "1.5");
+		ts.putSetting(MessageRouter.SEND_QUEUE_MODE_S,
+				""+MessageRouter.Q_MODE_FIFO);
+		this.setUp();
+		ts.putSetting(ActiveRouter.TRANSFER_BATCH_S, "0");
+
+		h1.createNewMessage(new Message(h1, h3, msgId1, 10));
+		clock.advance(1);
+		h1.createNewMessage(new Message(h1, h3, msgId2, 10));
+		clock.advance(1);
+		h1.createNewMessage(new Message(h1, h3, msgId3, 10));
+		checkCreates(3);
+
+		h1.connect(h2);
+		updateAllNodes();
+		/* 1.5s of link time: the second message is queued after the first
+		 * but its transfer is reported only when it starts */
+		checkTransferStart(h1, h2, msgId1);
+		assertFalse(mc.next());
+		assertEquals(20, h1.getConnections().get(0).getQueuedByteCount());
+		assertTrue(((ActiveRouter)h1.getRouter()).isSending(msgId2));
+
+		clock.advance(1);
+		updateAllNodes();
+		checkDelivered(h1, h2, msgId1, false);
+		checkTransferStart(h1, h2, msgId2);
+		assertFalse(mc.next()); /* second one continues from the first */
+
+		clock.advance(1);
+		updateAllNodes();
+		checkDelivered(h1, h2, msgId2, false);
+		checkTransferStart(h1, h2, msgId3);
+	}
+
+	/**
+	 * Tests that the queued transfers are dropped (without aborts) when the
+	 * current one is aborted
+	 */
+	public void testBatchedTransferAbort() throws Exception {
+		ts.putSetting(ActiveRouter.TRANSFER_BATCH_S, "10");
+		this.setUp();
+		ts.putSetting(ActiveRouter.TRANSFER_BATCH_S, "0");
+
+		h1.createNewMessage(new Message(h1, h3, msgId1, 10));
+		h1.createNewMessage(new Message(h1, h3, msgId2, 10));
+		checkCreates(2);
+
+		h1.connect(h2);
+		updateAllNodes();
+		assertTrue(mc.next());
+		assertEquals(mc.TYPE_START, mc.getLastType());
+		assertFalse(mc.next());
+		assertEquals(20, h1.getConnections().get(0).getQueuedByteCount());
+
+		clock.advance(0.5);
+		h2.setLocation(farAway);
+		updateAllNodes();
+		assertTrue(mc.next());
+		assertEquals(mc.TYPE_ABORT, mc.getLastType());
+		assertFalse(mc.next());
+		assertFalse(((ActiveRouter)h1.getRouter()).isTransferring());
+		assertNull(h2.getIncomingMessage(msgId1, h1));
+		assertNull(h2.getIncomingMessage(msgId2, h1));
+	}
+
+	/**
+	 * Tests that the planned routing engine makes the routing decisions
+	 * instead of the update and that deliverable messages go first
+	 */
+	public void testPlannedRouting() {
+		PlannedRoutingEngine engine =
+			new PlannedRoutingEngine(utils.getAllHosts(), 2);
+		assertTrue(((ActiveRouter)h1.getRouter()).isPlannedRouting());
+
+		h1.createNewMessage(new Message(h1, h3, msgId1, 1));
+		h2.createNewMessage(new Message(h2, h1, msgId2, 1));
+		h4.createNewMessage(new Message(h4, h5, msgId3, 1));
+		checkCreates(3);
+
+		h1.connect(h2);
+		h4.connect(h5);
+		updateAllNodes();
+		assertFalse(mc.next()); /* no decisions in the update */
+
+		engine.update(utils.getAllHosts());
+		/* h1 is updated first but h2's message is deliverable */
+		checkTransferStart(h2, h1, msgId2);
+		checkTransferStart(h4, h5, msgId3);
+		assertFalse(mc.next());
+
+		clock.advance(1);
+		updateAllNodes();
+		engine.update(utils.getAllHosts());
+		checkDelivered(h2, h1, msgId2, false);
+		checkDelivered(h4, h5, msgId3, false);
+		checkTransferStart(h1, h2, msgId1);
+		assertFalse(mc.next());
+	}
+
 	public void testFifoSendingQ() throws Exception {
 		ts.putSetting(MessageRouter.SEND_QUEUE_MODE_S,
 				""+MessageRouter.Q_MODE_FIFO);
@@ -619,4 +817,12 @@ public class EpidemicRouterTest extends AbstractRouterTest {
 		assertNotSame(orderedIds, runMessageExchange(true));
 		assertNotSame(orderedIds, runMessageExchange(false));
 	}
+
+	/**
+	 * Tests that the planned routing engine makes the same decisions as
+	 * the serial routing in the update
+	 */
+	public void testPlannedEquivalence() throws Exception {
+		checkPlannedEquivalence();
+	}
 }
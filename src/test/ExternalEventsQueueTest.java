@@ -5,6 +5,8 @@
 package test;
 
 import input.BinaryEventsReader;
+import input.CompactEventsReader;
+import input.CompactEventsWriter;
 import input.ExternalEvent;
 import input.ExternalEventsQueue;
 import input.ExternalEventsReader;
@@ -16,6 +18,7 @@ import java.io.PrintWriter;
 import java.util.List;
 
 import junit.framework.TestCase;
+import core.SimError;
 
 public class ExternalEventsQueueTest extends TestCase {
 	private final String[] stdinput = {
@@ -65,6 +68,22 @@ public class ExternalEventsQueueTest extends TestCase {
 		checkEeq(eeq, preload);
 	}
 
+	public void testPrefetchingEEQ() {
+		int preload = 10;
+		eeq = new ExternalEventsQueue(tempFile.getAbsolutePath(), preload,
+				true, 0);
+		checkEeq(eeq, preload);
+		assertEquals(Double.MAX_VALUE, eeq.nextEventsTime());
+
+		/* batches adapted to cover about 1000 seconds of simulated time */
+		preload = 2;
+		eeq = new ExternalEventsQueue(tempFile.getAbsolutePath(), preload,
+				true, 1000);
+		checkEeq(eeq, preload);
+		assertEquals(Double.MAX_VALUE, eeq.nextEventsTime());
+		assertEquals(0, eeq.eventsLeftInBuffer());
+	}
+
 
 	public void testBinaryEEQ() throws Exception{
 		int preload = 7;
@@ -82,6 +101,54 @@ public class ExternalEventsQueueTest extends TestCase {
 	}
 
 
+	public void testCompactEEQ() throws Exception {
+		int preload = 3;
+		File compactFile = File.createTempFile("TempCompactTest",
+				CompactEventsReader.COMPACT_EXT);
+		compactFile.deleteOnExit();
+		assertEquals(msgTimes.length,
+				CompactEventsWriter.convert(tempFile, compactFile));
+		assertTrue(CompactEventsReader.isCompactEeFile(compactFile));
+		assertFalse(CompactEventsReader.isCompactEeFile(tempFile));
+
+		/* same events as from the text file */
+		List<ExternalEvent> text =
+			new StandardEventsReader(tempFile).readEvents(100);
+		ExternalEventsReader r = new CompactEventsReader(compactFile);
+		List<ExternalEvent> compact = r.readEvents(100);
+		r.close();
+		assertEquals(text.size(), compact.size());
+		for (int i=0; i<text.size(); i++) {
+			assertEquals(text.get(i).toString(), compact.get(i).toString());
+		}
+
+		eeq = new ExternalEventsQueue(compactFile.getAbsolutePath(), preload);
+		checkEeq(eeq, preload);
+	}
+
+	public void testCompactConvertFailure() throws Exception {
+		File badFile = File.createTempFile("eeqBadTest", ".tmp");
+		badFile.deleteOnExit();
+		PrintWriter out = new PrintWriter(badFile);
+		for (String s : stdinput) {
+			out.println(s);
+		}
+		out.println("106300.000	X	MSG_10644_D_5	c70");
+		out.close();
+
+		File compactFile = File.createTempFile("TempCompactTest",
+				CompactEventsReader.COMPACT_EXT);
+		compactFile.deleteOnExit();
+		try {
+			CompactEventsWriter.convert(badFile, compactFile);
+			fail("Conversion of an invalid events file didn't fail");
+		} catch (SimError e) {
+			/* expected */
+		}
+		/* no compact file with a valid header and a partial body */
+		assertFalse(compactFile.exists());
+	}
+
 	private void checkEeq(ExternalEventsQueue eeq, int preloadVal) {
 		ExternalEvent ee;
 		assertEquals(msgTimes[0],eeq.nextEventsTime());
@@ -4,6 +4,8 @@
  */
 package test;
 
+import input.CompactMovementReader;
+import input.CompactMovementWriter;
 import input.ExternalMovementReader;
 
 import java.io.File;
@@ -17,6 +19,7 @@ import core.Coord;
 
 public class ExternalMovementReaderTest extends TestCase {
 	private ExternalMovementReader r;
+	private File tmpFile;
 	private static final String INPUT =
 		"0 0 0 0 0 0\n"+
 		"10 1 10 10\n"+
@@ -40,7 +43,7 @@ public class ExternalMovementReaderTest extends TestCase {
 	protected void setUp() throws Exception {
 		super.setUp();
 
-		File tmpFile = File.createTempFile("EMRTest","tmp");
+		tmpFile = File.createTempFile("EMRTest","tmp");
 		tmpFile.deleteOnExit();
 
 		PrintWriter pw = new PrintWriter(tmpFile);
@@ -63,6 +66,45 @@ public class ExternalMovementReaderTest extends TestCase {
 		assertEquals(0, list.size());
 	}
 
+	public void testCompact() throws Exception {
+		File compactFile = File.createTempFile("EMRTest",
+				CompactMovementReader.COMPACT_EXT);
+		compactFile.deleteOnExit();
+		assertEquals(times.length,
+				CompactMovementWriter.convert(tmpFile, compactFile));
+		assertTrue(CompactMovementReader.isCompactMovementFile(compactFile));
+		assertFalse(CompactMovementReader.isCompactMovementFile(tmpFile));
+
+		CompactMovementReader cr = new CompactMovementReader(compactFile);
+		assertEquals(ids.length, cr.getNrofIds());
+		for (int i=0; i<times.length; i++) {
+			assertTrue(cr.readNextStep());
+			assertEquals(times[i], cr.getLastTimeStamp());
+			checkStep(cr, coords[i]);
+		}
+		assertFalse(cr.readNextStep());
+
+		/* seeking */
+		assertEquals(1, cr.seek(15));
+		assertTrue(cr.readNextStep());
+		assertEquals(times[1], cr.getLastTimeStamp());
+		checkStep(cr, coords[1]);
+		assertEquals(2, cr.seek(30));
+		assertTrue(cr.readNextStep());
+		assertEquals(times[2], cr.getLastTimeStamp());
+		assertEquals(3, cr.seek(31));
+		assertFalse(cr.readNextStep());
+		cr.close();
+	}
+
+	private void checkStep(CompactMovementReader cr, Coord[] coords) {
+		assertEquals(ids.length, cr.getNrofMoves());
+		for (int i=0; i<ids.length; i++) {
+			assertEquals(ids[i], cr.getId(cr.getMoveId(i)));
+			assertEquals(coords[i], new Coord(cr.getMoveX(i), cr.getMoveY(i)));
+		}
+	}
+
 	private void checkTuples(List<Tuple<String, Coord>> list, String[] ids,
 			Coord[] coords) {
 
@@ -4,6 +4,9 @@
  */
 package test;
 
+import input.CompactMovementReader;
+import input.CompactMovementWriter;
+
 import java.io.File;
 import java.io.PrintWriter;
 
@@ -49,6 +52,11 @@ public class ExternalMovementTest extends TestCase {
 	private SimClock clock;
 
 	protected void setUpUsing(String[] input) throws Exception {
+		setUpUsing(input, false);
+	}
+
+	protected void setUpUsing(String[] input, boolean compact)
+			throws Exception {
 		super.setUp();
 		ExternalMovement.reset();
 		TestSettings ts = new TestSettings();
@@ -64,6 +72,14 @@ public class ExternalMovementTest extends TestCase {
 
 		pw.close();
 
+		if (compact) {
+			File compactFile = File.createTempFile("eMovementTest",
+					CompactMovementReader.COMPACT_EXT);
+			compactFile.deleteOnExit();
+			CompactMovementWriter.convert(outFile, compactFile);
+			outFile = compactFile;
+		}
+
 		ts.putSetting(ExternalMovement.EXTERNAL_MOVEMENT_NS + "." +
 				ExternalMovement.MOVEMENT_FILE_S, outFile.getAbsolutePath());
 
@@ -80,7 +96,15 @@ public class ExternalMovementTest extends TestCase {
 
 	public void testMovement() throws Exception {
 		setUpUsing(INPUT);
+		checkMovement();
+	}
+
+	public void testCompactMovement() throws Exception {
+		setUpUsing(INPUT, true);
+		checkMovement();
+	}
 
+	private void checkMovement() {
 		// h3 should not get any fancy coordinates
 		assertEquals(c0, h3.getLocation());
 		assertFalse(h3.isMovementActive());
@@ -0,0 +1,139 @@
+/*
+ * Copyright 2010 Aalto University, ComNet
+ * Released under GPLv3. See LICENSE.txt for details.
+ */
+package test;
+
+import input.ExternalPathMovementReader;
+import input.ExternalPathMovementReader.PathPoints;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.PrintWriter;
+import java.util.List;
+import java.util.zip.GZIPOutputStream;
+
+import junit.framework.TestCase;
+
+public class ExternalPathMovementReaderTest extends TestCase {
+	private static final String TRACE =
+		"2 100 200 10 1000 20 2000\n" +
+		"0 100,10,20 110,20,20 120,20,40.5\n" +
+		"1 105,30,30\n" +
+		"\n" +
+		"0 150,20,40.5 160,25.25,41\n" +
+		"2 170,10,20 180,-20,20\n";
+	private static final String ACTIVITY =
+		"0 100 200\n" +
+		"1 105 150\n" +
+		"2 170 200\n";
+
+	private File traceFile;
+	private File activityFile;
+
+	protected void setUp() throws Exception {
+		super.setUp();
+		traceFile = createFile(".txt", TRACE);
+		activityFile = createFile(".txt", ACTIVITY);
+	}
+
+	@Override
+	protected void tearDown() throws Exception {
+		super.tearDown();
+		ExternalPathMovementReader.reset();
+	}
+
+	private File createFile(String ext, String contents) throws Exception {
+		File f = File.createTempFile("epmrTest", ext);
+		f.deleteOnExit();
+		PrintWriter pw = new PrintWriter(f);
+		pw.print(contents);
+		pw.close();
+		return f;
+	}
+
+	public void testStreaming() {
+		ExternalPathMovementReader full = ExternalPathMovementReader.
+			getInstance(traceFile.getPath(), activityFile.getPath());
+		ExternalPathMovementReader streaming = ExternalPathMovementReader.
+			getStreamingInstance(traceFile.getPath(), activityFile.getPath());
+		checkSame(full, streaming);
+		assertSame(streaming, ExternalPathMovementReader.getStreamingInstance(
+				traceFile.getPath(), activityFile.getPath()));
+
+		PathPoints p = streaming.readPath(0, 1, new PathPoints());
+		assertEquals(2, p.size);
+		assertEquals(60.0, p.time[1]);
+		assertEquals(15.25, p.x[1]);
+		assertEquals(21.0, p.y[1]);
+	}
+
+	public void testCompressedStreaming() throws Exception {
+		File gzFile = File.createTempFile("epmrTest", ".txt.gz");
+		gzFile.deleteOnExit();
+		GZIPOutputStream out = new GZIPOutputStream(
+				new FileOutputStream(gzFile));
+		out.write(TRACE.getBytes("US-ASCII"));
+		out.close();
+
+		ExternalPathMovementReader full = ExternalPathMovementReader.
+			getInstance(traceFile.getPath(), activityFile.getPath());
+		ExternalPathMovementReader streaming = ExternalPathMovementReader.
+			getStreamingInstance(gzFile.getPath(), activityFile.getPath());
+		checkSame(full, streaming);
+	}
+
+	public void testReset() throws Exception {
+		File gzFile = File.createTempFile("epmrTest", ".txt.gz");
+		gzFile.deleteOnExit();
+		GZIPOutputStream out = new GZIPOutputStream(
+				new FileOutputStream(gzFile));
+		out.write(TRACE.getBytes("US-ASCII"));
+		out.close();
+		int nrofTmpFiles = countUncompressedTraces();
+
+		ExternalPathMovementReader streaming = ExternalPathMovementReader.
+			getStreamingInstance(gzFile.getPath(), activityFile.getPath());
+		assertEquals(nrofTmpFiles + 1, countUncompressedTraces());
+
+		/* the uncompressed copy is deleted and the trace indexed again */
+		ExternalPathMovementReader.reset();
+		assertEquals(nrofTmpFiles, countUncompressedTraces());
+		assertNotSame(streaming, ExternalPathMovementReader.
+				getStreamingInstance(gzFile.getPath(), activityFile.getPath()));
+	}
+
+	private int countUncompressedTraces() {
+		File tmpDir = new File(System.getProperty("java.io.tmpdir"));
+		int count = 0;
+		for (String name : tmpDir.list()) {
+			if (name.startsWith("pathtrace")) {
+				count++;
+			}
+		}
+		return count;
+	}
+
+	private void checkSame(ExternalPathMovementReader full,
+			ExternalPathMovementReader streaming) {
+		PathPoints points = new PathPoints();
+		for (int id=0; id<=2; id++) {
+			List<List<ExternalPathMovementReader.Entry>> paths =
+				full.getPaths(id);
+			assertEquals(paths.size(), streaming.getNrofPaths(id));
+			assertEquals(full.getActive(id).size(),
+					streaming.getActive(id).size());
+			for (int i=0; i<paths.size(); i++) {
+				List<ExternalPathMovementReader.Entry> path = paths.get(i);
+				assertEquals(path.get(0).time, streaming.getPathStart(id, i));
+				streaming.readPath(id, i, points);
+				assertEquals(path.size(), points.size);
+				for (int j=0; j<path.size(); j++) {
+					assertEquals(path.get(j).time, points.time[j]);
+					assertEquals(path.get(j).x, points.x[j]);
+					assertEquals(path.get(j).y, points.y[j]);
+				}
+			}
+		}
+	}
+}
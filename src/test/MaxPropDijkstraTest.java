@@ -13,6 +13,7 @@ import java.util.Set;
 
 import junit.framework.TestCase;
 import routing.maxprop.MaxPropDijkstra;
+import routing.maxprop.MeetingProbabilityGraph;
 import routing.maxprop.MeetingProbabilitySet;
 import core.DTNHost;
 
@@ -154,4 +155,68 @@ public class MaxPropDijkstraTest extends TestCase {
 
 	}
 
+	public void testReplicasAreIndependent() {
+		MeetingProbabilitySet mps = mapping.get(0);
+		mps.updateMeetingProbFor(1);
+		MeetingProbabilitySet replica = mps.replicate();
+
+		mps.updateMeetingProbFor(2); // original changes after replicating
+		assertEquals(1.0, replica.getProbFor(1));
+		assertEquals(0.0, replica.getProbFor(2));
+		assertEquals(0.5, mps.getProbFor(2));
+
+		replica.updateMeetingProbFor(3); // and so does the replica
+		assertEquals(0.5, replica.getProbFor(3));
+		assertEquals(0.0, mps.getProbFor(3));
+		assertEquals(0.5, mps.getProbFor(1));
+	}
+
+	public void testGraphCostsFollowChanges() {
+		MeetingProbabilityGraph graph = new MeetingProbabilityGraph();
+		MaxPropDijkstra dijkstra = new MaxPropDijkstra(graph);
+		MeetingProbabilitySet mps0 = new MeetingProbabilitySet();
+		MeetingProbabilitySet mps1 = new MeetingProbabilitySet();
+
+		mps0.updateMeetingProbFor(1);
+		mps1.updateMeetingProbFor(2);
+		graph.put(0, mps0);
+
+		assertEquals(0.0, dijkstra.getCost(0, 1));
+		assertEquals(Double.MAX_VALUE, dijkstra.getCost(0, 2));
+
+		graph.put(1, mps1); // new set -> cached search is not valid
+		assertEquals(0.0, dijkstra.getCost(0, 2));
+		assertEquals(0.0, dijkstra.getCost(1, 2)); // another source
+
+		mps0.updateMeetingProbFor(3);
+		graph.put(0, mps0); // modified set
+		assertEquals(0.5, dijkstra.getCost(0, 2));
+		assertEquals(0.5, dijkstra.getCost(0, 3));
+		assertEquals(0.0, dijkstra.getCost(1, 2));
+		assertEquals(Double.MAX_VALUE, dijkstra.getCost(1, 0));
+	}
+
+	public void testOnlyVisitedChangesRestartSearch() {
+		MeetingProbabilityGraph graph = new MeetingProbabilityGraph();
+		MaxPropDijkstra dijkstra = new MaxPropDijkstra(graph);
+		MeetingProbabilitySet mps0 = new MeetingProbabilitySet();
+		mps0.updateMeetingProbFor(1);
+		mps0.updateMeetingProbFor(2);
+		graph.put(0, mps0);
+
+		assertEquals(0.5, dijkstra.getCost(0, 1)); // visits nodes 0 and 1
+
+		/* node 2 isn't visited yet -> the search continues with its set */
+		MeetingProbabilitySet mps2 = new MeetingProbabilitySet();
+		mps2.updateMeetingProbFor(3);
+		graph.put(2, mps2);
+		assertEquals(0.5, dijkstra.getCost(0, 3));
+
+		/* node 1 is visited -> the search is restarted */
+		MeetingProbabilitySet mps1 = new MeetingProbabilitySet();
+		mps1.updateMeetingProbFor(4);
+		graph.put(1, mps1);
+		assertEquals(0.5, dijkstra.getCost(0, 4));
+		assertEquals(0.5, dijkstra.getCost(0, 3));
+	}
 }
@@ -303,4 +303,12 @@ public class MaxPropRouterTest extends AbstractRouterTest {
 		/* msg path h2->h1->h4 */
 		assertEquals((1-0.75)+(1-0.25), r2.getCost(h2, h4));
 	}
+
+	/**
+	 * Tests that the planned routing engine makes the same decisions as
+	 * the serial routing in the update
+	 */
+	public void testPlannedEquivalence() throws Exception {
+		checkPlannedEquivalence();
+	}
 }
@@ -0,0 +1,93 @@
+/*
+ * Copyright 2010 Aalto University, ComNet
+ * Released under GPLv3. See LICENSE.txt for details.
+ */
+package test;
+
+import java.util.Random;
+
+import junit.framework.TestCase;
+import routing.util.MessageHistory;
+import util.BloomFilter;
+import core.SimClock;
+
+/**
+ * Tests for the {@link MessageHistory} and {@link BloomFilter} classes
+ */
+public class MessageHistoryTest extends TestCase {
+
+	protected void setUp() throws Exception {
+		super.setUp();
+		SimClock.getInstance().setTime(0);
+	}
+
+	public void testExactHistory() {
+		MessageHistory h = new MessageHistory();
+		assertTrue(h.isExact());
+		h.add(5);
+		h.add(1000);
+		h.add(5);
+		assertTrue(h.contains(5));
+		assertTrue(h.contains(1000));
+		assertFalse(h.contains(6));
+		assertEquals(2, h.size());
+
+		MessageHistory other = h.replicate();
+		assertEquals(0, other.size());
+		other.add(3);
+		other.add(5);
+		h.addAll(other);
+		assertTrue(h.contains(3));
+		assertEquals(3, h.size());
+	}
+
+	public void testPruning() {
+		MessageHistory h = new MessageHistory(0, 100, 100);
+		h.add(1);
+		SimClock.getInstance().setTime(150); /* next generation */
+		h.add(2);
+		assertTrue(h.contains(1));
+		assertTrue(h.contains(2));
+		assertEquals(2, h.size());
+
+		SimClock.getInstance().setTime(250); /* 1 is at least 200 s old */
+		assertFalse(h.contains(1));
+		assertTrue(h.contains(2));
+		assertEquals(1, h.size());
+
+		SimClock.getInstance().setTime(1000); /* everything is old */
+		assertFalse(h.contains(2));
+		assertEquals(0, h.size());
+	}
+
+	public void testFilterHistory() {
+		MessageHistory h = new MessageHistory(0.01, 1000, 0);
+		MessageHistory other = h.replicate();
+		assertFalse(h.isExact());
+		for (int i=0; i<1000; i+=2) {
+			h.add(i);
+			other.add(i + 1);
+		}
+		h.addAll(other);
+		for (int i=0; i<1000; i++) {
+			assertTrue(h.contains(i)); /* no false negatives */
+		}
+	}
+
+	public void testBloomFilterFalsePositives() {
+		BloomFilter f = new BloomFilter(10000, 0.01);
+		Random rng = new Random(1);
+		for (int i=0; i<10000; i++) {
+			f.add(rng.nextInt(1000000));
+		}
+
+		int falsePositives = 0;
+		for (int i=0; i<10000; i++) {
+			if (f.mightContain(1000000 + i)) {
+				falsePositives++;
+			}
+		}
+		assertTrue("too many false positives: " + falsePositives,
+				falsePositives < 200);
+	}
+}
@@ -0,0 +1,102 @@
+/*
+ * Copyright 2010 Aalto University, ComNet
+ * Released under GPLv3. See LICENSE.txt for details.
+ */
+package test;
+
+import java.util.ArrayList;
+
+import junit.framework.TestCase;
+import routing.util.MessageHolderIndex;
+import core.DTNHost;
+import core.Message;
+import core.MessageListener;
+
+/**
+ * Tests for the {@link MessageHolderIndex} class
+ */
+public class MessageHolderIndexTest extends TestCase {
+	private DTNHost h0;
+	private DTNHost h1;
+	private DTNHost h2;
+	private Message m1;
+	private Message m2;
+
+	protected void setUp() throws Exception {
+		super.setUp();
+		TestUtils utils = new TestUtils(null,
+				new ArrayList<MessageListener>(), new TestSettings());
+		core.DTNHost.reset();
+		Message.reset();
+		MessageHolderIndex.reset();
+		h0 = utils.createHost();
+		h1 = utils.createHost();
+		for (int i=0; i<100; i++) {
+			utils.createHost(); /* addresses beyond the first words */
+		}
+		h2 = utils.createHost();
+		m1 = new Message(h0, h1, "M1", 1);
+		m2 = new Message(h0, h2, "M2", 1);
+		assertTrue(m1.getIdIndex() < m2.getIdIndex());
+	}
+
+	public void testAddAndRemove() {
+		MessageHolderIndex.addHolder(m1, h0);
+		MessageHolderIndex.addHolder(m1, h2);
+		MessageHolderIndex.addHolder(m1, h2); /* no effect */
+		MessageHolderIndex.addHolder(m2, h1);
+
+		assertEquals(2, MessageHolderIndex.getNrofHolders(m1));
+		assertEquals(1, MessageHolderIndex.getNrofHolders(m2));
+		assertTrue(MessageHolderIndex.isHolder(m1.getIdIndex(), h2));
+		assertFalse(MessageHolderIndex.isHolder(m1.getIdIndex(), h1));
+		assertEquals(2, MessageHolderIndex.getNrofHeldMessages());
+
+		MessageHolderIndex.removeHolder(m1, h0);
+		MessageHolderIndex.removeHolder(m1, h1); /* not a holder */
+		assertEquals(1, MessageHolderIndex.getNrofHolders(m1));
+		MessageHolderIndex.removeHolder(m1, h2);
+		assertEquals(0, MessageHolderIndex.getNrofHolders(m1));
+		assertFalse(MessageHolderIndex.isHolder(m1.getIdIndex(), h2));
+		assertEquals(1, MessageHolderIndex.getNrofHeldMessages());
+	}
+
+	public void testIteration() {
+		MessageHolderIndex.addHolder(m2, h2);
+		MessageHolderIndex.addHolder(m2, h0);
+		MessageHolderIndex.addHolder(m2, h1);
+
+		int index = m2.getIdIndex();
+		assertEquals(h0, MessageHolderIndex.nextHolder(index, 0));
+		assertEquals(h1, MessageHolderIndex.nextHolder(index, 1));
+		assertEquals(h2, MessageHolderIndex.nextHolder(index, 2));
+		assertNull(MessageHolderIndex.nextHolder(index,
+				h2.getAddress() + 1));
+
+		assertEquals(index, MessageHolderIndex.nextHeldMessage(0));
+		assertEquals(-1, MessageHolderIndex.nextHeldMessage(index + 1));
+
+		/* a message with a smaller index gets held again */
+		MessageHolderIndex.addHolder(m1, h1);
+		assertEquals(m1.getIdIndex(), MessageHolderIndex.nextHeldMessage(0));
+
+		long[] addresses = new long[MessageHolderIndex.getAddressWords()];
+		MessageHolderIndex.addHoldersTo(index, addresses);
+		int bits = 0;
+		for (long w : addresses) {
+			bits += Long.bitCount(w);
+		}
+		assertEquals(3, bits);
+	}
+
+	public void testRouterBuffers() {
+		h0.createNewMessage(m1);
+		h0.createNewMessage(m2);
+		assertTrue(MessageHolderIndex.isHolder(m1.getIdIndex(), h0));
+		assertEquals(1, MessageHolderIndex.getNrofHolders(m2));
+
+		h0.deleteMessage(m1.getId(), true);
+		assertEquals(0, MessageHolderIndex.getNrofHolders(m1));
+		assertEquals(1, MessageHolderIndex.getNrofHolders(m2));
+	}
+}
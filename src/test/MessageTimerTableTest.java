@@ -0,0 +1,79 @@
+/*
+ * Copyright 2010 Aalto University, ComNet
+ * Released under GPLv3. See LICENSE.txt for details.
+ */
+package test;
+
+import java.util.ArrayList;
+
+import junit.framework.TestCase;
+import routing.util.MessageTimerTable;
+import util.TimingWheel;
+import core.DTNHost;
+import core.Message;
+import core.MessageListener;
+
+/**
+ * Tests for the {@link MessageTimerTable} class
+ */
+public class MessageTimerTableTest extends TestCase {
+	private MessageTimerTable table;
+	private TimingWheel<Message> wheel;
+	private DTNHost h0;
+	private DTNHost h1;
+
+	protected void setUp() throws Exception {
+		super.setUp();
+		TestUtils utils = new TestUtils(null,
+				new ArrayList<MessageListener>(), new TestSettings());
+		core.DTNHost.reset();
+		Message.reset();
+		h0 = utils.createHost();
+		h1 = utils.createHost();
+		table = new MessageTimerTable();
+		wheel = new TimingWheel<Message>(1.0);
+	}
+
+	public void testPutAndRemove() {
+		Message m1 = new Message(h1, h0, "M1", 1);
+		Message m2 = new Message(h1, h0, "M2", 1);
+		TimingWheel.Timer<Message> t1 = wheel.add(m1, 10);
+		TimingWheel.Timer<Message> t2 = wheel.add(m2, 20);
+
+		assertNull(table.put(m1, t1));
+		assertNull(table.put(m2, t2));
+		assertEquals(2, table.size());
+
+		/* replicates share the ID index */
+		TimingWheel.Timer<Message> t3 = wheel.add(m1, 30);
+		assertSame(t1, table.put(m1.replicate(), t3));
+		assertEquals(2, table.size());
+
+		assertSame(t3, table.remove(m1));
+		assertNull(table.remove(m1));
+		assertSame(t2, table.remove(m2.replicate()));
+		assertEquals(0, table.size());
+	}
+
+	public void testManyMessages() {
+		Message[] msgs = new Message[500];
+		for (int i=0; i<msgs.length; i++) {
+			msgs[i] = new Message(h1, h0, "M" + i, 1);
+			table.put(msgs[i], wheel.add(msgs[i], i));
+		}
+		assertEquals(msgs.length, table.size());
+
+		for (int i=0; i<msgs.length; i+=3) {
+			assertSame(msgs[i], table.remove(msgs[i]).getValue());
+		}
+		for (int i=0; i<msgs.length; i++) {
+			TimingWheel.Timer<Message> t = table.remove(msgs[i]);
+			if (i % 3 == 0) {
+				assertNull(t);
+			} else {
+				assertSame("timer of " + msgs[i], msgs[i], t.getValue());
+			}
+		}
+		assertEquals(0, table.size());
+	}
+}
@@ -0,0 +1,105 @@
+/*
+ * Copyright 2010 Aalto University, ComNet
+ * Released under GPLv3. See LICENSE.txt for details.
+ */
+package test;
+
+import java.util.ArrayList;
+
+import junit.framework.TestCase;
+import routing.util.MessageTransferAcceptPolicy;
+import core.DTNHost;
+import core.Message;
+import core.MessageListener;
+
+/**
+ * Tests for the {@link MessageTransferAcceptPolicy} class
+ */
+public class MessageTransferAcceptPolicyTest extends TestCase {
+	private static final String NS = "PolicyTestGroup";
+	private static final String POLICY_NS = "PolicyTest";
+	private TestSettings ts;
+	private DTNHost h0;
+	private DTNHost h1;
+	private DTNHost h2;
+	private DTNHost h3;
+
+	protected void setUp() throws Exception {
+		super.setUp();
+		ts = new TestSettings();
+		TestUtils utils = new TestUtils(null,
+				new ArrayList<MessageListener>(), ts);
+		core.DTNHost.reset();
+		h0 = utils.createHost();
+		h1 = utils.createHost();
+		h2 = utils.createHost();
+		h3 = utils.createHost();
+	}
+
+	private MessageTransferAcceptPolicy createPolicy(String... settings) {
+		ts.setNameSpace(null);
+		ts.putSetting(NS + "." + MessageTransferAcceptPolicy.MTA_POLICY_NS,
+				POLICY_NS);
+		for (int i=0; i<settings.length; i+=2) {
+			ts.putSetting(POLICY_NS + "." + settings[i], settings[i+1]);
+		}
+		return new MessageTransferAcceptPolicy(new TestSettings(NS));
+	}
+
+	public void testNoPolicy() {
+		MessageTransferAcceptPolicy p = new MessageTransferAcceptPolicy(
+				new TestSettings("NoPolicyGroup"));
+		Message m = new Message(h0, h1, "M", 1);
+		assertTrue(p.acceptSending(h0, h1, null, m));
+		assertTrue(p.acceptReceiving(h0, h1, m));
+	}
+
+	public void testAddressPolicy() {
+		MessageTransferAcceptPolicy p = createPolicy(
+				MessageTransferAcceptPolicy.TO_SPOLICY_S, "2-3, -1",
+				MessageTransferAcceptPolicy.FROM_RPOLICY_S, "1");
+
+		assertTrue(p.acceptSending(h0, h1, null, new Message(h0, h2, "M", 1)));
+		assertTrue(p.acceptSending(h0, h1, null, new Message(h1, h3, "M", 1)));
+		assertFalse(p.acceptSending(h2, h3, null, new Message(h0, h1, "M", 1)));
+		/* destination is "me" */
+		assertTrue(p.acceptSending(h1, h3, null, new Message(h0, h1, "M", 1)));
+
+		assertTrue(p.acceptReceiving(h0, h2, new Message(h1, h3, "M", 1)));
+		assertFalse(p.acceptReceiving(h0, h2, new Message(h0, h3, "M", 1)));
+	}
+
+	public void testHopCountPolicy() {
+		MessageTransferAcceptPolicy p = createPolicy(
+				MessageTransferAcceptPolicy.HOPCOUNT_SPOLICY_S, "<2",
+				MessageTransferAcceptPolicy.HOPCOUNT_RPOLICY_S, "=1.5");
+
+		Message m = new Message(h0, h3, "M", 1); /* hop count 0 */
+		assertTrue(p.acceptSending(h0, h1, null, m));
+		m.addNodeOnPath(h1);
+		assertTrue(p.acceptSending(h1, h2, null, m));
+		m.addNodeOnPath(h2);
+		assertFalse(p.acceptSending(h2, h1, null, m));
+		/* delivery to the final recipient is always accepted */
+		assertTrue(p.acceptSending(h2, h3, null, m));
+
+		/* no hop count is equal to 1.5 */
+		assertFalse(p.acceptReceiving(h2, h1, m));
+		assertTrue(p.acceptReceiving(h2, h3, m));
+	}
+
+	public void testMcbConditions() {
+		MessageTransferAcceptPolicy p = createPolicy(
+				MessageTransferAcceptPolicy.NROF_MCBCS_S, "0,1",
+				MessageTransferAcceptPolicy.MCBACS_S + "1", ">10",
+				MessageTransferAcceptPolicy.MCBCVS_S + "1", "test.value");
+		Message m = new Message(h0, h3, "M", 1);
+
+		assertTrue(p.acceptSending(h0, h1, null, m)); /* no value */
+		h0.getComBus().addProperty("test.value", 20.0);
+		assertFalse(p.acceptSending(h0, h1, null, m));
+		h0.getComBus().updateProperty("test.value", 5.0);
+		assertTrue(p.acceptSending(h0, h1, null, m));
+		assertTrue(p.acceptReceiving(h0, h1, m));
+	}
+}
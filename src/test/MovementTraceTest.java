@@ -0,0 +1,196 @@
+/*
+ * Copyright 2010 Aalto University, ComNet
+ * Released under GPLv3. See LICENSE.txt for details.
+ */
+package test;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import junit.framework.TestCase;
+import movement.MovementModel;
+import movement.MovementTrace;
+import movement.MovementTraceRecorder;
+import movement.Path;
+import movement.RecordedMovement;
+import core.ConnectionListener;
+import core.Coord;
+import core.DTNHost;
+import core.MessageListener;
+import core.SimClock;
+import core.SimError;
+
+/**
+ * Tests for recording and replaying movement traces
+ */
+public class MovementTraceTest extends TestCase {
+	private static final int NROF_HOSTS = 5;
+	private static final int NROF_STEPS = 500;
+
+	private File traceFile;
+	private SimClock clock;
+
+	protected void setUp() throws Exception {
+		super.setUp();
+		SimClock.reset();
+		DTNHost.reset();
+		clock = SimClock.getInstance();
+		traceFile = File.createTempFile("mtTest", ".bin");
+		traceFile.delete();
+		traceFile.deleteOnExit();
+	}
+
+	/**
+	 * Movement model with random waypoints on a small grid (so waypoints
+	 * are revisited), varying speeds, waits and activeness
+	 */
+	private static class GridMovement extends MovementModel {
+		private Random rng;
+
+		public GridMovement(long seed) {
+			this.rng = new Random(seed);
+		}
+
+		private Coord randomPoint() {
+			return new Coord(rng.nextInt(10) * 1.5, rng.nextInt(10) / 3.0);
+		}
+
+		@Override
+		public Coord getInitialLocation() {
+			return randomPoint();
+		}
+
+		@Override
+		public Path getPath() {
+			int type = rng.nextInt(4);
+			if (type == 0) {
+				return null;
+			}
+			Path p = type == 1 ? new Path(rng.nextDouble()) : new Path();
+			for (int i=0, n=rng.nextInt(4); i<n; i++) {
+				if (type == 1) {
+					p.addWaypoint(randomPoint());
+				} else {
+					p.addWaypoint(randomPoint(), 0.1 + rng.nextDouble());
+				}
+			}
+			return p;
+		}
+
+		@Override
+		public double nextPathAvailable() {
+			return SimClock.getTime() + rng.nextInt(3);
+		}
+
+		@Override
+		public boolean isActive() {
+			return SimClock.getTime() % 100 < 70;
+		}
+
+		@Override
+		public MovementModel replicate() {
+			return new GridMovement(rng.nextLong());
+		}
+	}
+
+	private List<DTNHost> createHosts(MovementModel mmProto) {
+		TestUtils utils = new TestUtils(new ArrayList<ConnectionListener>(),
+				new ArrayList<MessageListener>(), new TestSettings());
+		for (int i=0; i<NROF_HOSTS; i++) {
+			utils.createHost(mmProto, "h" + i);
+		}
+		return utils.getAllHosts();
+	}
+
+	/**
+	 * Moves the hosts and returns their locations after each step
+	 */
+	private List<String> run(List<DTNHost> hosts) {
+		List<String> locations = new ArrayList<String>();
+		for (int i=0; i<NROF_STEPS; i++) {
+			StringBuilder sb = new StringBuilder(SimClock.getTime() + ":");
+			for (DTNHost h : hosts) {
+				h.move(0.5);
+				Coord c = h.getLocation();
+				sb.append(" " + Double.doubleToRawLongBits(c.getX()) + "," +
+						Double.doubleToRawLongBits(c.getY()) + "," +
+						h.isMovementActive());
+			}
+			locations.add(sb.toString());
+			clock.advance(0.5);
+		}
+		return locations;
+	}
+
+	private List<String> record(boolean completed) {
+		MovementTraceRecorder recorder = new MovementTraceRecorder(traceFile);
+		List<String> locations = run(createHosts(
+				recorder.wrap(new GridMovement(42))));
+		recorder.done(completed);
+		return locations;
+	}
+
+	public void testRecordAndReplay() {
+		List<String> recorded = record(true);
+		assertTrue(traceFile.isFile());
+
+		SimClock.reset();
+		DTNHost.reset();
+		RecordedMovement.Trace trace = new RecordedMovement.Trace(traceFile);
+		List<String> replayed = run(createHosts(new RecordedMovement(
+				new GridMovement(0), trace)));
+		trace.close();
+
+		assertEquals(recorded, replayed);
+		/* the recorded run is the same as one without recording */
+		SimClock.reset();
+		DTNHost.reset();
+		assertEquals(recorded, run(createHosts(new GridMovement(42))));
+	}
+
+	public void testReplayTooLong() {
+		record(true);
+		SimClock.reset();
+		DTNHost.reset();
+		RecordedMovement.Trace trace = new RecordedMovement.Trace(traceFile);
+		List<DTNHost> hosts = createHosts(new RecordedMovement(
+				new GridMovement(0), trace));
+		run(hosts);
+		try {
+			for (int i=0; i<NROF_STEPS; i++) {
+				run(hosts);
+			}
+			fail("Replaying past the end of the trace should fail");
+		} catch (SimError e) {
+			/* ok */
+		} finally {
+			trace.close();
+		}
+	}
+
+	public void testIncompleteRecording() {
+		record(false);
+		assertFalse(traceFile.exists());
+	}
+
+	public void testKey() {
+		TestSettings ts = new TestSettings();
+		String key = MovementTrace.getKey();
+
+		/* routing, event and interface settings don't change the key */
+		ts.putSetting("Group.router", "ProphetRouter");
+		ts.putSetting("Group.nrofInterfaces", "1");
+		ts.putSetting("Group.interface1", "btInterface");
+		ts.putSetting("btInterface.type", "SimpleBroadcastInterface");
+		ts.putSetting("btInterface.transmitRange", "10");
+		ts.putSetting("Events1.interval", "25,35");
+		ts.putSetting("Scenario.simulateConnections", "false");
+		assertEquals(key, MovementTrace.getKey());
+
+		/* movement settings do */
+		ts.putSetting("Group.speed", "0.5,1.5");
+		assertFalse(key.equals(MovementTrace.getKey()));
+	}
+}
@@ -0,0 +1,92 @@
+/*
+ * Copyright 2010 Aalto University, ComNet
+ * Released under GPLv3. See LICENSE.txt for details.
+ */
+package test;
+
+import java.util.ArrayList;
+
+import junit.framework.TestCase;
+import routing.util.NeighborMessageCounter;
+import core.DTNHost;
+import core.Message;
+import core.MessageListener;
+
+/**
+ * Tests for the {@link NeighborMessageCounter} class
+ */
+public class NeighborMessageCounterTest extends TestCase {
+	private NeighborMessageCounter counter;
+	private DTNHost h0;
+	private DTNHost h1;
+	private DTNHost h2;
+
+	protected void setUp() throws Exception {
+		super.setUp();
+		TestUtils utils = new TestUtils(null,
+				new ArrayList<MessageListener>(), new TestSettings());
+		core.DTNHost.reset();
+		Message.reset();
+		h0 = utils.createHost();
+		h1 = utils.createHost();
+		h2 = utils.createHost();
+		counter = new NeighborMessageCounter();
+	}
+
+	public void testCounting() {
+		Message m1 = new Message(h1, h0, "M1", 1);
+		Message m2 = new Message(h1, h0, "M2", 1);
+		Message m3 = new Message(h2, h0, "M3", 1);
+		h1.createNewMessage(m1);
+		h1.createNewMessage(m2);
+		h2.createNewMessage(m1.replicate());
+
+		counter.neighborConnected(h1.getRouter());
+		assertEquals(1, counter.getCount(m1));
+		assertEquals(1, counter.getCount(m2));
+		counter.neighborConnected(h2.getRouter());
+		assertEquals(2, counter.getCount(m1));
+
+		/* buffer changes of the neighbors */
+		h2.createNewMessage(m3);
+		assertEquals(1, counter.getCount(m3));
+		h1.deleteMessage("M1", true);
+		assertEquals(1, counter.getCount(m1));
+
+		counter.neighborDisconnected(h2.getRouter());
+		assertEquals(0, counter.getCount(m1));
+		assertEquals(0, counter.getCount(m3));
+		assertEquals(1, counter.size());
+		counter.neighborDisconnected(h2.getRouter()); /* not a neighbor */
+		assertEquals(1, counter.size());
+
+		/* changes of former neighbors are not counted */
+		h2.deleteMessage("M3", true);
+		h2.createNewMessage(new Message(h2, h0, "M4", 1));
+		assertEquals(1, counter.size());
+	}
+
+	public void testManyMessages() {
+		Message[] msgs = new Message[500];
+		for (int i=0; i<msgs.length; i++) {
+			msgs[i] = new Message(h1, h0, "M" + i, 1);
+			h1.createNewMessage(msgs[i]);
+		}
+		counter.neighborConnected(h1.getRouter());
+		counter.neighborConnected(h1.getRouter()); /* two connections */
+		assertEquals(msgs.length, counter.size());
+
+		for (int i=0; i<msgs.length; i+=3) {
+			h1.deleteMessage(msgs[i].getId(), true);
+		}
+		for (int i=0; i<msgs.length; i++) {
+			assertEquals("count of " + msgs[i], i % 3 == 0 ? 0 : 2,
+					counter.getCount(msgs[i]));
+		}
+
+		counter.neighborDisconnected(h1.getRouter());
+		assertEquals(1, counter.getCount(msgs[1]));
+		counter.neighborDisconnected(h1.getRouter());
+		assertEquals(0, counter.size());
+	}
+}
@@ -0,0 +1,85 @@
+/*
+ * Copyright 2010 Aalto University, ComNet
+ * Released under GPLv3. See LICENSE.txt for details.
+ */
+package test;
+
+import java.util.ArrayList;
+
+import junit.framework.TestCase;
+import routing.util.PredictabilityTable;
+import core.DTNHost;
+import core.MessageListener;
+
+/**
+ * Tests for the {@link PredictabilityTable} class
+ */
+public class PredictabilityTableTest extends TestCase {
+	private static final double DELTA = 1e-12;
+	private PredictabilityTable table;
+	private DTNHost h0;
+	private DTNHost h1;
+	private DTNHost h2;
+
+	protected void setUp() throws Exception {
+		super.setUp();
+		TestUtils utils = new TestUtils(null,
+				new ArrayList<MessageListener>(), new TestSettings());
+		core.DTNHost.reset();
+		h0 = utils.createHost();
+		h1 = utils.createHost();
+		for (int i=0; i<50; i++) {
+			utils.createHost(); /* addresses beyond the initial capacity */
+		}
+		h2 = utils.createHost();
+		table = new PredictabilityTable();
+	}
+
+	public void testPutAndGet() {
+		assertEquals(0.0, table.get(h0));
+		assertFalse(table.contains(h0));
+
+		table.put(h0, 0.5);
+		table.put(h2, 0.25);
+		assertEquals(0.5, table.get(h0));
+		assertEquals(0.25, table.get(h2));
+		assertEquals(0.0, table.get(h1));
+		assertTrue(table.contains(h2));
+		assertFalse(table.contains(h1));
+		assertEquals(2, table.size());
+
+		table.put(h0, 0.75);
+		assertEquals(2, table.size());
+		assertEquals(0.75, table.toMap().get(h0));
+		assertEquals(2, table.toMap().size());
+	}
+
+	public void testAging() {
+		table.put(h0, 0.5);
+		table.put(h1, 1.0);
+		table.age(0.5);
+		assertEquals(0.25, table.get(h0), DELTA);
+		assertEquals(0.5, table.get(h1), DELTA);
+
+		/* values put after aging are not affected by the earlier aging */
+		table.put(h2, 0.8);
+		assertEquals(0.8, table.get(h2), DELTA);
+		table.age(0.5);
+		assertEquals(0.4, table.get(h2), DELTA);
+		assertEquals(0.125, table.get(h0), DELTA);
+	}
+
+	public void testLongAging() {
+		double value = 1.0;
+		table.put(h0, 1.0);
+		for (int i=0; i<1000; i++) {
+			table.age(0.7); /* scale goes below the normalization limit */
+			value *= 0.7;
+			if (i % 100 == 0) {
+				table.put(h1, 0.5); /* new values during the aging */
+			}
+		}
+		assertEquals(1.0, table.get(h0) / value, 1e-9);
+		assertEquals(1.0, table.get(h1) / (0.5 * Math.pow(0.7, 99)), 1e-9);
+	}
+}
@@ -216,4 +216,70 @@ public class SettingsTest extends TestCase {
 		assertEquals("[val1 ; val2;val3; val4 ]", s.getSetting(RS_S));
 	}
 
+	public void testCachedValuesAreCopies() {
+		double[] vals = s.getCsvDoubles("csvDoubles", 3);
+		vals[0] = 5;
+		assertEquals(1.1, s.getCsvDoubles("csvDoubles", 3)[0]);
+		String[] strs = s.getCsvSetting("csvDoubles");
+		strs[0] = "5";
+		assertEquals("1.1", s.getCsvSetting("csvDoubles")[0]);
+	}
+
+	public void testNamespaceChanges() {
+		Settings s = new Settings("Ns");
+		assertEquals("Ns.setting1", s.getFullPropertyName("setting1"));
+		s.setNameSpace("DefNs");
+		assertNull(s.getFullPropertyName("setting1"));
+		assertEquals("DefNs.runSetting", s.getFullPropertyName(RS_S));
+		s.restoreNameSpace();
+		assertEquals("Ns.setting1", s.getFullPropertyName("setting1"));
+
+		s.setNameSpace("Other");
+		assertFalse(s.contains(RS_S));
+		s.setSecondaryNamespace("DefNs");
+		assertEquals("DefNs.runSetting", s.getFullPropertyName(RS_S));
+		assertEquals(1, s.getInt(RS_S));
+		s.restoreSecondaryNamespace();
+		assertNull(s.getFullPropertyName(RS_S));
+	}
+
+	public void testAddSettings() throws Exception {
+		assertEquals(1.1, s.getDouble("double"));
+		File tempFile = File.createTempFile("settingsTest", ".tmp");
+		tempFile.deleteOnExit();
+		PrintWriter out = new PrintWriter(tempFile);
+		out.println("double = 2.2");
+		out.close();
+
+		Settings.addSettings(tempFile.getAbsolutePath());
+		assertEquals(2.2, s.getDouble("double"));
+	}
+
+	public void testUnusedSettings() {
+		assertTrue(Settings.getUnusedSettings().contains("int"));
+		assertTrue(Settings.getUnusedSettings().contains("tstSetting2"));
+		assertEquals(1, s.getInt("int"));
+		assertFalse(Settings.getUnusedSettings().contains("int"));
+		/* only the settings of the given file, not the default settings */
+		assertFalse(Settings.getUnusedSettings().contains("Scenario.name"));
+	}
+
+	public void testMisspelledSettings() {
+		/* a setting of the file is not used but a similar one is requested */
+		assertFalse(s.contains("DefNs.runsetting"));
+		String misspelled = "'DefNs.runSetting' is not used " +
+				"(did you mean 'DefNs.runsetting'?)";
+		assertTrue(Settings.getMisspelledSettings().contains(misspelled));
+
+		/* settings that differ only by numbers are not misspellings */
+		assertFalse(s.contains("Ns.setting3"));
+		for (String m : Settings.getMisspelledSettings()) {
+			assertFalse(m, m.startsWith("'Ns.setting"));
+		}
+
+		/* used settings are not misspellings */
+		s.getSetting("DefNs.runSetting");
+		assertFalse(Settings.getMisspelledSettings().contains(misspelled));
+	}
+
 }
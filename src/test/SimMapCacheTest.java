@@ -0,0 +1,111 @@
+/*
+ * Copyright 2010 Aalto University, ComNet
+ * Released under GPLv3. See LICENSE.txt for details.
+ */
+package test;
+
+import input.WKTMapReader;
+
+import java.io.File;
+import java.io.PrintWriter;
+import java.util.ArrayList;
+import java.util.List;
+
+import junit.framework.TestCase;
+import movement.map.MapNode;
+import movement.map.SimMap;
+import movement.map.SimMapCache;
+import core.Coord;
+
+public class SimMapCacheTest extends TestCase {
+	private static final String MAP1 =
+		"LINESTRING (1.0 1.0, 2.0 1.0, 3.0 1.0, 8.0 1.0)\n" +
+		"LINESTRING (1.0 1.0, 1.0 3.0)\n" +
+		"LINESTRING (2.0 1.0, 2.0 0.0, 3.0 0.0, 3.0 1.0)\n";
+	private static final String MAP2 =
+		"MULTILINESTRING ((3.0 1.0, 3.0 3.0), (8.0 1.0, 8.5 2.5))\n";
+
+	private List<File> mapFiles;
+	private File cacheDir;
+
+	protected void setUp() throws Exception {
+		super.setUp();
+		mapFiles = new ArrayList<File>();
+		mapFiles.add(createFile(MAP1));
+		mapFiles.add(createFile(MAP2));
+		cacheDir = File.createTempFile("simMapCache", "");
+		cacheDir.delete();
+		cacheDir.mkdir();
+		cacheDir.deleteOnExit();
+	}
+
+	private File createFile(String contents) throws Exception {
+		File f = File.createTempFile("simMapCacheTest", ".wkt");
+		f.deleteOnExit();
+		PrintWriter pw = new PrintWriter(f);
+		pw.print(contents);
+		pw.close();
+		return f;
+	}
+
+	private SimMap readMap() throws Exception {
+		WKTMapReader r = new WKTMapReader(true);
+		for (int i=0; i<mapFiles.size(); i++) {
+			r.addPaths(mapFiles.get(i), i + 1);
+		}
+		SimMap map = r.getMap();
+		map.mirror();
+		Coord offset = map.getMinBound().clone();
+		map.translate(-offset.getX(), -offset.getY());
+		return map;
+	}
+
+	public void testCache() throws Exception {
+		SimMap map = readMap();
+		String key = SimMapCache.getKey(mapFiles, "bidi");
+		File cacheFile = SimMapCache.getCacheFile(cacheDir, key);
+		cacheFile.deleteOnExit();
+		assertNull(SimMapCache.read(cacheFile, key));
+
+		SimMapCache.write(cacheFile, key, map);
+		SimMap cached = SimMapCache.read(cacheFile, key);
+		assertNotNull(cached);
+		assertNull(SimMapCache.read(cacheFile, key + "0"));
+
+		assertEquals(map.getOffset(), cached.getOffset());
+		assertEquals(map.getMinBound(), cached.getMinBound());
+		assertEquals(map.getMaxBound(), cached.getMaxBound());
+		assertTrue(cached.isMirrored());
+
+		List<MapNode> nodes = map.getNodes();
+		List<MapNode> cachedNodes = cached.getNodes();
+		assertEquals(nodes.size(), cachedNodes.size());
+		for (int i=0; i<nodes.size(); i++) {
+			MapNode n = nodes.get(i);
+			MapNode c = cachedNodes.get(i);
+			assertEquals(n.toString(), c.toString());
+			assertEquals(n.getNeighbors().size(), c.getNeighbors().size());
+			for (int j=0; j<n.getNeighbors().size(); j++) {
+				assertEquals(n.getNeighbors().get(j).getLocation(),
+						c.getNeighbors().get(j).getLocation());
+			}
+			assertSame(c, cached.getNodeByCoord(n.getLocation().clone()));
+		}
+	}
+
+	public void testKey() throws Exception {
+		String key = SimMapCache.getKey(mapFiles, "bidi");
+		assertEquals(key, SimMapCache.getKey(mapFiles, "bidi"));
+		assertFalse(key.equals(SimMapCache.getKey(mapFiles, "")));
+
+		List<File> reversed = new ArrayList<File>();
+		reversed.add(mapFiles.get(1));
+		reversed.add(mapFiles.get(0));
+		assertFalse(key.equals(SimMapCache.getKey(reversed, "bidi")));
+
+		PrintWriter pw = new PrintWriter(mapFiles.get(1));
+		pw.print(MAP2.replace("8.5", "8.6"));
+		pw.close();
+		assertFalse(key.equals(SimMapCache.getKey(mapFiles, "bidi")));
+	}
+}
@@ -0,0 +1,57 @@
+/*
+ * Copyright 2010 Aalto University, ComNet
+ * Released under GPLv3. See LICENSE.txt for details.
+ */
+package test;
+
+import routing.MessageRouter;
+import routing.SprayAndWaitRouter;
+import core.Message;
+
+/**
+ * Tests for Spray and Wait router
+ */
+public class SprayAndWaitRouterTest extends AbstractRouterTest {
+
+	private static int NROF_COPIES = 4;
+
+	@Override
+	public void setUp() throws Exception {
+		ts.setNameSpace(null);
+		ts.putSetting(MessageRouter.B_SIZE_S, ""+BUFFER_SIZE);
+		ts.putSetting(SprayAndWaitRouter.SPRAYANDWAIT_NS + "." +
+				SprayAndWaitRouter.NROF_COPIES, ""+NROF_COPIES);
+		ts.putSetting(SprayAndWaitRouter.SPRAYANDWAIT_NS + "." +
+				SprayAndWaitRouter.BINARY_MODE, "true");
+		setRouterProto(new SprayAndWaitRouter(ts));
+		super.setUp();
+	}
+
+	/**
+	 * Tests that creating a message wakes up a dormant router
+	 */
+	public void testDormancy() {
+		MessageRouter r1 = h1.getRouter();
+
+		updateAllNodesDormant();
+		assertFalse(r1.needsUpdate());
+
+		h1.createNewMessage(new Message(h1, h3, msgId1, 1));
+		checkCreates(1);
+		assertTrue(r1.needsUpdate());
+		updateAllNodesDormant();
+		assertFalse(r1.needsUpdate());
+
+		h1.connect(h2);
+		updateAllNodesDormant();
+		checkTransferStart(h1, h2, msgId1);
+	}
+
+	/**
+	 * Tests that the planned routing engine makes the same decisions as
+	 * the serial routing in the update
+	 */
+	public void testPlannedEquivalence() throws Exception {
+		checkPlannedEquivalence();
+	}
+}
@@ -0,0 +1,141 @@
+/*
+ * Copyright 2010 Aalto University, ComNet
+ * Released under GPLv3. See LICENSE.txt for details.
+ */
+package test;
+
+import input.ConnectionEvent;
+import input.ExternalEvent;
+import input.MessageCreateEvent;
+import input.MessageDeleteEvent;
+import input.MessageRelayEvent;
+import input.StandardEventsReader;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.PrintWriter;
+import java.util.List;
+import java.util.zip.GZIPOutputStream;
+
+import junit.framework.TestCase;
+import core.SimError;
+
+/**
+ * Tests for the {@link StandardEventsReader} class, mostly that the fast
+ * parser gives the same events as the general one
+ */
+public class StandardEventsReaderTest extends TestCase {
+	private static final String[] LINES = {
+		"0.1	C	M1	p1	p2	100",
+		"# comment",
+		"12.25 C M2 n3 n4 5k 2kiB",
+		"  ",
+		"13 S M1 p1 p2",
+		"14.125 DE M1 p1 p2",
+		"15.5 A M2 3 4",
+		"16.0 DR M1 p2",
+		"17.0 R * p1\r",
+		"18.0 CONN 1 2 up",
+		"19.0 CONN p1 p2 DOWN eth0",
+		"20.000000000000000001 C M3 1 2 1M", /* beyond the fast path */
+		"21.5 C M4 1 2 +5", /* unusual but accepted */
+		"22 C M5 1 2 3GiB 4G"
+	};
+
+	private File file;
+
+	protected void setUp() throws Exception {
+		java.util.Locale.setDefault(java.util.Locale.US);
+		super.setUp();
+		file = File.createTempFile("serTest", ".tmp");
+		file.deleteOnExit();
+	}
+
+	private void write(String... lines) throws Exception {
+		PrintWriter out = new PrintWriter(file);
+		for (String s : lines) {
+			out.print(s + "\n");
+		}
+		out.close();
+	}
+
+	private List<ExternalEvent> read(boolean fast, int nrof) {
+		StandardEventsReader r = new StandardEventsReader(file, fast);
+		List<ExternalEvent> events = r.readEvents(nrof);
+		r.close();
+		return events;
+	}
+
+	public void testSameEvents() throws Exception {
+		write(LINES);
+		List<ExternalEvent> fast = read(true, 100);
+		List<ExternalEvent> general = read(false, 100);
+
+		assertEquals(12, fast.size());
+		assertEquals(general.size(), fast.size());
+		for (int i=0; i<fast.size(); i++) {
+			assertEquals(general.get(i).toString(), fast.get(i).toString());
+			assertEquals(general.get(i).getTime(), fast.get(i).getTime());
+			assertEquals(general.get(i).getClass(), fast.get(i).getClass());
+		}
+
+		assertTrue(fast.get(0) instanceof MessageCreateEvent);
+		assertEquals("MSG @12.25 M2 [3->4] size:5000 CREATE",
+				fast.get(1).toString());
+		assertTrue(fast.get(3) instanceof MessageRelayEvent);
+		assertTrue(fast.get(5) instanceof MessageDeleteEvent);
+		assertEquals("CONN down @19.0 1<->2", fast.get(8).toString());
+		assertTrue(fast.get(7) instanceof ConnectionEvent);
+		assertEquals("MSG @21.5 M4 [1->2] size:5 CREATE",
+				fast.get(10).toString());
+	}
+
+	public void testReadInParts() throws Exception {
+		write(LINES);
+		StandardEventsReader r = new StandardEventsReader(file);
+		assertEquals(4, r.readEvents(4).size());
+		assertEquals(15.5, r.readEvents(1).get(0).getTime());
+		assertEquals(7, r.readEvents(100).size());
+		assertEquals(0, r.readEvents(100).size());
+		r.close();
+	}
+
+	public void testGzip() throws Exception {
+		write(LINES);
+		List<ExternalEvent> plain = read(true, 100);
+
+		File gz = File.createTempFile("serTest", ".tmp");
+		gz.deleteOnExit();
+		OutputStream out = new GZIPOutputStream(new FileOutputStream(gz));
+		InputStream in = new FileInputStream(file);
+		byte[] buf = new byte[1024];
+		int n;
+		while ((n = in.read(buf)) > 0) {
+			out.write(buf, 0, n);
+		}
+		in.close();
+		out.close();
+
+		/* detected by the magic number (no .gz extension) */
+		this.file = gz;
+		List<ExternalEvent> unzipped = read(true, 100);
+		assertEquals(plain.size(), unzipped.size());
+		for (int i=0; i<plain.size(); i++) {
+			assertEquals(plain.get(i).toString(), unzipped.get(i).toString());
+		}
+	}
+
+	public void testErrorPosition() throws Exception {
+		write("1.0 C M1 1 2 10", "", "2.0 S M1 1 x2y");
+		try {
+			read(true, 10);
+			fail("Invalid host ID was accepted");
+		} catch (SimError e) {
+			assertTrue(e.getMessage(), e.getMessage().contains(
+					file.getPath() + ":3, column 12: invalid host ID"));
+		}
+	}
+}
@@ -0,0 +1,108 @@
+/*
+ * Copyright 2010 Aalto University, ComNet
+ * Released under GPLv3. See LICENSE.txt for details.
+ */
+package test;
+
+import junit.framework.TestCase;
+import routing.util.SummaryVector;
+
+/**
+ * Tests for the {@link SummaryVector} class
+ */
+public class SummaryVectorTest extends TestCase {
+	private SummaryVector sv1;
+	private SummaryVector sv2;
+
+	protected void setUp() throws Exception {
+		super.setUp();
+		sv1 = new SummaryVector();
+		sv2 = new SummaryVector();
+	}
+
+	public void testSetAndClear() {
+		assertTrue(sv1.isEmpty());
+		assertFalse(sv1.get(5));
+
+		sv1.set(5);
+		sv1.set(1000);
+		sv1.set(5);
+		assertTrue(sv1.get(5));
+		assertTrue(sv1.get(1000));
+		assertFalse(sv1.get(6));
+		assertFalse(sv1.get(64 + 5));
+		assertEquals(2, sv1.cardinality());
+
+		sv1.clear(5);
+		assertFalse(sv1.get(5));
+		assertTrue(sv1.get(1000));
+		assertEquals(1, sv1.cardinality());
+
+		sv1.clear(5); // clearing twice has no effect
+		sv1.clear(123456);
+		assertEquals(1, sv1.cardinality());
+
+		sv1.clear(1000);
+		assertTrue(sv1.isEmpty());
+	}
+
+	public void testGrowingDownwards() {
+		sv1.set(10000);
+		sv1.set(3);
+		sv1.set(640);
+		assertTrue(sv1.get(10000));
+		assertTrue(sv1.get(3));
+		assertTrue(sv1.get(640));
+		assertEquals("[3, 640, 10000]", sv1.toString());
+	}
+
+	public void testWindowSliding() {
+		for (int i=0; i<1000; i++) {
+			sv1.set(i);
+			if (i >= 100) {
+				sv1.clear(i - 100);
+			}
+		}
+		assertEquals(100, sv1.cardinality());
+		assertFalse(sv1.get(899));
+		assertTrue(sv1.get(900));
+		assertTrue(sv1.get(999));
+		assertEquals(900, sv1.nextSetBit(0));
+	}
+
+	public void testNextSetBit() {
+		assertEquals(-1, sv1.nextSetBit(0));
+		sv1.set(63);
+		sv1.set(64);
+		sv1.set(200);
+		assertEquals(63, sv1.nextSetBit(0));
+		assertEquals(64, sv1.nextSetBit(64));
+		assertEquals(200, sv1.nextSetBit(65));
+		assertEquals(-1, sv1.nextSetBit(201));
+	}
+
+	public void testDifference() {
+		int[] mine = {1, 2, 70, 130, 500};
+		int[] theirs = {2, 70, 131, 499, 2000};
+
+		for (int i : mine) {
+			sv1.set(i);
+		}
+		for (int i : theirs) {
+			sv2.set(i);
+		}
+
+		assertEquals(3, sv1.differenceCardinality(sv2));
+		assertEquals(1, sv1.nextSetBitNotIn(sv2, 0));
+		assertEquals(130, sv1.nextSetBitNotIn(sv2, 2));
+		assertEquals(500, sv1.nextSetBitNotIn(sv2, 131));
+		assertEquals(-1, sv1.nextSetBitNotIn(sv2, 501));
+
+		assertEquals(3, sv2.differenceCardinality(sv1));
+		assertEquals(131, sv2.nextSetBitNotIn(sv1, 0));
+
+		/* difference with an empty vector is the vector itself */
+		assertEquals(5, sv1.differenceCardinality(new SummaryVector()));
+		assertEquals(0, new SummaryVector().differenceCardinality(sv1));
+	}
+}
@@ -31,6 +31,8 @@ public class TestDTNHost extends DTNHost {
 
 	public String transferredId;
 	public DTNHost transferredFrom;
+	public String startedId;
+	public String cancelledId;
 
 
 	public TestDTNHost(List<NetworkInterface> li,
@@ -48,7 +50,7 @@ public class TestDTNHost extends DTNHost {
 	}
 
 	@Override
-	public void update(boolean up) {
+	public void update(boolean up, boolean routerDormancy) {
 		this.nrofUpdate++;
 		this.lastUpdate = SimClock.getTime();
 	}
@@ -72,4 +74,19 @@ public class TestDTNHost extends DTNHost {
 		this.transferredId = id;
 		this.transferredFrom = from;
 	}
+
+	@Override
+	public Message getIncomingMessage(String id, DTNHost from) {
+		return null;
+	}
+
+	@Override
+	public void queuedTransferStarted(String id, DTNHost from) {
+		this.startedId = id;
+	}
+
+	@Override
+	public void queuedTransferCancelled(String id, DTNHost from) {
+		this.cancelledId = id;
+	}
 }
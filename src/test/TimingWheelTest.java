@@ -0,0 +1,164 @@
+/*
+ * Copyright 2010 Aalto University, ComNet
+ * Released under GPLv3. See LICENSE.txt for details.
+ */
+package test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import junit.framework.TestCase;
+import util.TimingWheel;
+
+/**
+ * Tests for the {@link TimingWheel} class
+ */
+public class TimingWheelTest extends TestCase {
+	private TimingWheel<Integer> wheel;
+	private List<Integer> expired;
+
+	protected void setUp() throws Exception {
+		super.setUp();
+		wheel = new TimingWheel<Integer>(1.0);
+		expired = new ArrayList<Integer>();
+	}
+
+	public void testSimpleExpiry() {
+		wheel.add(1, 10.5);
+		wheel.add(2, 20);
+		wheel.add(3, 5000);
+		assertEquals(3, wheel.size());
+
+		wheel.advance(9.9, expired);
+		assertEquals(0, expired.size());
+
+		wheel.advance(10.0, expired); // same tick as 10.5
+		assertEquals(1, expired.size());
+		assertEquals(1, (int)expired.get(0));
+		expired.clear();
+
+		wheel.advance(4999, expired);
+		assertEquals(1, expired.size());
+		assertEquals(2, (int)expired.get(0));
+		expired.clear();
+
+		wheel.advance(6000, expired);
+		assertEquals(1, expired.size());
+		assertEquals(3, (int)expired.get(0));
+		assertEquals(0, wheel.size());
+	}
+
+	public void testRemove() {
+		TimingWheel.Timer<Integer> t1 = wheel.add(1, 100);
+		TimingWheel.Timer<Integer> t2 = wheel.add(2, 100);
+		TimingWheel.Timer<Integer> t3 = wheel.add(3, 1e9); // overflow
+
+		wheel.remove(t1);
+		wheel.remove(t3);
+		wheel.remove(t3); // removing twice does nothing
+		assertFalse(t1.isActive());
+		assertTrue(t2.isActive());
+		assertEquals(1, wheel.size());
+
+		wheel.advance(2e9, expired);
+		assertEquals(1, expired.size());
+		assertEquals(2, (int)expired.get(0));
+		assertFalse(t2.isActive());
+	}
+
+	public void testAlreadyDue() {
+		wheel.advance(100, expired);
+		wheel.add(1, 50);
+		wheel.add(2, 100.5);
+		wheel.advance(100, expired);
+		assertEquals(2, expired.size());
+	}
+
+	public void testRandomTimes() {
+		Random rng = new Random(42);
+		List<Double> times = new ArrayList<Double>();
+		List<TimingWheel.Timer<Integer>> timers =
+			new ArrayList<TimingWheel.Timer<Integer>>();
+
+		for (int i=0; i<2000; i++) {
+			double time = rng.nextDouble() * 2e7;
+			times.add(time);
+			timers.add(wheel.add(i, time));
+		}
+		for (int i=0; i<2000; i+=3) {
+			wheel.remove(timers.get(i));
+		}
+
+		double now = 0;
+		while (wheel.size() > 0) {
+			now += rng.nextDouble() * 100000;
+			expired.clear();
+			wheel.advance(now, expired);
+			for (int i : expired) {
+				assertTrue(i % 3 != 0);
+				/* never expired before the tick of the expiry time */
+				assertTrue(Math.floor(times.get(i)) <= Math.floor(now));
+				times.set(i, -1.0);
+			}
+			/* and nothing due was left in the wheel */
+			for (int i=0; i<2000; i++) {
+				if (i % 3 != 0 && times.get(i) >= 0) {
+					assertTrue(Math.floor(times.get(i)) > Math.floor(now));
+				}
+			}
+		}
+
+		for (int i=0; i<2000; i++) {
+			if (i % 3 != 0) {
+				assertEquals(-1.0, times.get(i));
+			}
+		}
+	}
+
+	public void testNextExpiry() {
+		assertEquals(Double.POSITIVE_INFINITY, wheel.getNextExpiry());
+		TimingWheel.Timer<Integer> t1 = wheel.add(1, 5000.5); // upper level
+		wheel.add(2, 6000);
+		assertEquals(5000.0, wheel.getNextExpiry());
+		wheel.add(3, 30);
+		assertEquals(30.0, wheel.getNextExpiry());
+
+		wheel.advance(40, expired);
+		assertEquals(5000.0, wheel.getNextExpiry());
+		wheel.remove(t1);
+		assertEquals(6000.0, wheel.getNextExpiry());
+		wheel.add(4, 1e9); // overflow
+		wheel.advance(7000, expired);
+		assertEquals(1e9, wheel.getNextExpiry());
+
+		wheel.add(5, 10); // already due
+		assertEquals(7000.0, wheel.getNextExpiry());
+	}
+
+	public void testRandomNextExpiry() {
+		Random rng = new Random(42);
+		List<Double> times = new ArrayList<Double>();
+		for (int i=0; i<500; i++) {
+			double time = rng.nextDouble() * 2e7;
+			times.add(time);
+			wheel.add(i, time);
+		}
+
+		double now = 0;
+		while (wheel.size() > 0) {
+			double min = Double.POSITIVE_INFINITY;
+			for (double time : times) {
+				min = Math.min(min, time);
+			}
+			assertEquals(Math.floor(min), wheel.getNextExpiry());
+
+			now += rng.nextDouble() * 100000;
+			expired.clear();
+			wheel.advance(now, expired);
+			for (int i : expired) {
+				times.set(i, Double.POSITIVE_INFINITY);
+			}
+		}
+	}
+}
@@ -112,6 +112,10 @@ public abstract class DTNSimUI {
 
 			this.world = this.scen.getWorld();
 			world.warmupMovementModel(warmupTime);
+
+			for (String warning : Settings.getMisspelledSettings()) {
+				System.err.println("Warning: setting " + warning);
+			}
 		}
 		catch (SettingsError se) {
 			System.err.println("Can't start: error in configuration file(s)");
@@ -132,6 +136,14 @@ public abstract class DTNSimUI {
 		for (Report r : this.reports) {
 			r.done();
 		}
+		if (this.scen != null) {
+			this.scen.done(simDone && !simCancelled);
+		}
+		if (new Settings().getBoolean(Settings.REPORT_UNUSED_S, false)) {
+			for (String name : Settings.getUnusedSettings()) {
+				System.err.println("Unused setting " + name);
+			}
+		}
 	}
 
 	/**
@@ -0,0 +1,135 @@
+/*
+ * Copyright 2010 Aalto University, ComNet
+ * Released under GPLv3. See LICENSE.txt for details.
+ */
+package util;
+
+/**
+ * Bloom filter of integer keys. The size of the bit array and the number of
+ * hash functions are chosen for the expected number of keys and the wanted
+ * false positive probability. The filter never gives false negatives. Two
+ * filters created with the same parameters can be merged with
+ * {@link #addAll(BloomFilter)}.
+ */
+public class BloomFilter {
+	/** the bit array */
+	private final long[] bits;
+	/** number of bits in the bit array */
+	private final int nrofBits;
+	/** number of hash functions */
+	private final int nrofHashes;
+
+	/**
+	 * Creates a new, empty filter.
+	 * @param expectedSize The expected number of keys in the filter
+	 * @param fpRate The wanted false positive probability when the filter
+	 * contains the expected number of keys (0 &lt; fpRate &lt; 1)
+	 */
+	public BloomFilter(int expectedSize, double fpRate) {
+		if (expectedSize < 1) {
+			expectedSize = 1;
+		}
+		double ln2 = Math.log(2);
+		double m = -expectedSize * Math.log(fpRate) / (ln2 * ln2);
+		this.nrofBits = (int)Math.max(64, Math.min(Integer.MAX_VALUE - 63,
+				Math.ceil(m)));
+		this.nrofHashes = (int)Math.max(1,
+				Math.round(((double)nrofBits / expectedSize) * ln2));
+		this.bits = new long[(nrofBits + 63) >> 6];
+	}
+
+	/**
+	 * Creates a new, empty filter with the same parameters as the given one
+	 * @param proto The filter whose parameters are used
+	 */
+	public BloomFilter(BloomFilter proto) {
+		this.nrofBits = proto.nrofBits;
+		this.nrofHashes = proto.nrofHashes;
+		this.bits = new long[proto.bits.length];
+	}
+
+	/**
+	 * Adds a key to the filter
+	 * @param key The key to add
+	 */
+	public void add(int key) {
+		long h = mix(key);
+		int h1 = (int)h;
+		int h2 = (int)(h >>> 32);
+		for (int i=0; i<nrofHashes; i++) {
+			int b = bitIndex(h1 + i * h2);
+			bits[b >> 6] |= 1L << b;
+		}
+	}
+
+	/**
+	 * Returns true if the key may be in the filter, false if it certainly
+	 * isn't
+	 * @param key The key to check
+	 * @return True if the key may have been added to the filter
+	 */
+	public boolean mightContain(int key) {
+		long h = mix(key);
+		int h1 = (int)h;
+		int h2 = (int)(h >>> 32);
+		for (int i=0; i<nrofHashes; i++) {
+			int b = bitIndex(h1 + i * h2);
+			if ((bits[b >> 6] & (1L << b)) == 0) {
+				return false;
+			}
+		}
+		return true;
+	}
+
+	/**
+	 * Adds all the keys of another filter to this filter. The filters must
+	 * have been created with the same parameters.
+	 * @param other The other filter
+	 */
+	public void addAll(BloomFilter other) {
+		if (other.nrofBits != this.nrofBits ||
+				other.nrofHashes != this.nrofHashes) {
+			throw new IllegalArgumentException("Can't merge Bloom filters " +
+					"with different parameters");
+		}
+		for (int i=0; i<bits.length; i++) {
+			bits[i] |= other.bits[i];
+		}
+	}
+
+	/**
+	 * Returns the number of bits in the filter
+	 * @return the number of bits in the filter
+	 */
+	public int getNrofBits() {
+		return this.nrofBits;
+	}
+
+	/**
+	 * Returns the number of hash functions the filter uses
+	 * @return the number of hash functions
+	 */
+	public int getNrofHashes() {
+		return this.nrofHashes;
+	}
+
+	/**
+	 * Maps a (combined) hash value to a bit index
+	 */
+	private int bitIndex(int hash) {
+		return (hash & Integer.MAX_VALUE) % nrofBits;
+	}
+
+	/**
+	 * Spreads the bits of the key (the finalization step of MurmurHash3)
+	 */
+	private static long mix(int key) {
+		long h = key;
+		h ^= h >>> 33;
+		h *= 0xff51afd7ed558ccdL;
+		h ^= h >>> 33;
+		h *= 0xc4ceb9fe1a85ec53L;
+		h ^= h >>> 33;
+		return h;
+	}
+}
@@ -0,0 +1,409 @@
+/*
+ * Copyright 2010 Aalto University, ComNet
+ * Released under GPLv3. See LICENSE.txt for details.
+ */
+package util;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.io.OutputStream;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * <P>Opens input and output files so that gzip compressed files are
+ * handled transparently. Input files are detected as gzip files by the gzip
+ * magic number (or by the {@value #GZIP_EXT} extension) and output files by
+ * the {@value #GZIP_EXT} extension. Other files are opened as plain file
+ * streams.</P>
+ * <P>The (de)compression is done on a helper thread that passes large
+ * chunks of bytes to/from the caller through a small bounded queue, so
+ * reading or writing a big compressed file costs the simulation thread
+ * little more than copying the bytes.</P>
+ */
+public class CompressedStreams {
+	/** Extension of gzip files ({@value}) */
+	public static final String GZIP_EXT = ".gz";
+	/** size of the chunks passed between the threads */
+	private static final int CHUNK_SIZE = 1 << 18;
+	/** number of chunks in flight per stream */
+	private static final int NROF_CHUNKS = 4;
+	/** buffer size of the compressed side of the streams */
+	private static final int GZIP_BUFFER_SIZE = 1 << 16;
+
+	private CompressedStreams() {}
+
+	/**
+	 * Checks if the given file is a gzip file, i.e., starts with the gzip
+	 * magic number
+	 * @param file The file to check
+	 * @return True if the file is a gzip file, false if not
+	 */
+	public static boolean isGzipFile(File file) {
+		if (!file.isFile()) {
+			return false;
+		}
+		InputStream in = null;
+		try {
+			in = new FileInputStream(file);
+			return in.read() == (GZIPInputStream.GZIP_MAGIC & 0xff) &&
+				in.read() == (GZIPInputStream.GZIP_MAGIC >> 8);
+		} catch (IOException e) {
+			return false;
+		} finally {
+			if (in != null) {
+				try {
+					in.close();
+				} catch (IOException e) {}
+			}
+		}
+	}
+
+	/**
+	 * Opens a file for reading. Gzip files are decompressed on a helper
+	 * thread, other files are read as they are. The returned stream is not
+	 * buffered for plain files, so callers should read in large blocks.
+	 * @param file The file to open
+	 * @return Stream of the (uncompressed) contents of the file
+	 * @throws IOException if the file can't be opened
+	 */
+	public static InputStream openInput(File file) throws IOException {
+		if (isGzipFile(file) || file.getName().endsWith(GZIP_EXT)) {
+			return new GzipInput(file);
+		}
+		return new FileInputStream(file);
+	}
+
+	/**
+	 * Opens a file for writing. If the file's name ends with
+	 * {@value #GZIP_EXT}, the output is compressed on a helper thread.
+	 * @param file The file to create
+	 * @return Stream for writing the contents of the file
+	 * @throws IOException if the file can't be created
+	 */
+	public static OutputStream openOutput(File file) throws IOException {
+		if (file.getName().endsWith(GZIP_EXT)) {
+			return new GzipOutput(file);
+		}
+		return new FileOutputStream(file);
+	}
+
+	/**
+	 * A chunk of bytes passed between the threads
+	 */
+	private static class Chunk {
+		/** chunk that marks the end of the stream */
+		static final Chunk END = new Chunk(0);
+		final byte[] data;
+		int length;
+
+		Chunk(int size) {
+			this.data = new byte[size];
+		}
+	}
+
+	/**
+	 * Input stream whose bytes are decompressed by a helper thread
+	 */
+	private static class GzipInput extends InputStream implements Runnable {
+		private final GZIPInputStream gzip;
+		private final String fileName;
+		private final BlockingQueue<Chunk> free;
+		/** filled chunks; room for all the chunks and the end marker */
+		private final BlockingQueue<Chunk> full;
+		private final Thread thread;
+		private volatile boolean closed;
+		private volatile IOException error;
+
+		private Chunk current;
+		private int pos;
+		private boolean eof;
+
+		GzipInput(File file) throws IOException {
+			InputStream fin = new FileInputStream(file);
+			try {
+				this.gzip = new GZIPInputStream(fin, GZIP_BUFFER_SIZE);
+			} catch (IOException e) {
+				fin.close();
+				throw new IOException("Can't read gzip file " + file + ": " +
+						e.getMessage());
+			}
+			this.fileName = file.getPath();
+			this.free = new ArrayBlockingQueue<Chunk>(NROF_CHUNKS);
+			this.full = new ArrayBlockingQueue<Chunk>(NROF_CHUNKS + 1);
+			for (int i=0; i<NROF_CHUNKS; i++) {
+				free.add(new Chunk(CHUNK_SIZE));
+			}
+			this.thread = new Thread(this, "gunzip " + fileName);
+			this.thread.setDaemon(true);
+			this.thread.start();
+		}
+
+		/**
+		 * Decompresses the file chunk by chunk until the end of the file
+		 * or until the stream is closed
+		 */
+		public void run() {
+			try {
+				while (!closed) {
+					Chunk c = free.take();
+					int n = 0;
+					int r = 0;
+					while (n < c.data.length &&
+							(r = gzip.read(c.data, n, c.data.length - n)) >= 0) {
+						n += r;
+					}
+					c.length = n;
+					if (n > 0) {
+						full.add(c);
+					}
+					if (r < 0) {
+						break;
+					}
+				}
+			} catch (IOException e) {
+				this.error = e;
+			} catch (InterruptedException e) {
+				/* closed */
+			} finally {
+				try {
+					gzip.close();
+				} catch (IOException e) {}
+				full.add(Chunk.END);
+			}
+		}
+
+		/**
+		 * Makes sure there are unread bytes in the current chunk
+		 * @return False if the end of the stream was reached
+		 */
+		private boolean fill() throws IOException {
+			if (closed) {
+				throw new IOException("Stream closed");
+			}
+			if (current != null && pos < current.length) {
+				return true;
+			}
+			if (eof) {
+				return false;
+			}
+			if (current != null) {
+				free.add(current);
+				current = null;
+			}
+			Chunk c;
+			try {
+				c = full.take();
+			} catch (InterruptedException e) {
+				throw new InterruptedIOException("Interrupted while reading " +
+						fileName);
+			}
+			if (c == Chunk.END) {
+				eof = true;
+				if (error != null) {
+					throw new IOException("Can't read gzip file " + fileName +
+							": " + error.getMessage());
+				}
+				return false;
+			}
+			current = c;
+			pos = 0;
+			return true;
+		}
+
+		@Override
+		public int read() throws IOException {
+			if (!fill()) {
+				return -1;
+			}
+			return current.data[pos++] & 0xff;
+		}
+
+		@Override
+		public int read(byte[] b, int off, int len) throws IOException {
+			if (len == 0) {
+				return 0;
+			}
+			if (!fill()) {
+				return -1;
+			}
+			int n = Math.min(len, current.length - pos);
+			System.arraycopy(current.data, pos, b, off, n);
+			pos += n;
+			return n;
+		}
+
+		@Override
+		public int available() {
+			return current != null ? current.length - pos : 0;
+		}
+
+		@Override
+		public void close() {
+			if (closed) {
+				return;
+			}
+			closed = true;
+			thread.interrupt();
+		}
+	}
+
+	/**
+	 * Output stream whose bytes are compressed by a helper thread
+	 */
+	private static class GzipOutput extends OutputStream implements Runnable {
+		private final GZIPOutputStream gzip;
+		private final String fileName;
+		private final BlockingQueue<Chunk> free;
+		/** chunks to write; room for all the chunks and the end marker */
+		private final BlockingQueue<Chunk> full;
+		private final Thread thread;
+		private volatile IOException error;
+		private boolean closed;
+
+		private Chunk current;
+
+		GzipOutput(File file) throws IOException {
+			this.gzip = new GZIPOutputStream(new FileOutputStream(file),
+					GZIP_BUFFER_SIZE);
+			this.fileName = file.getPath();
+			this.free = new ArrayBlockingQueue<Chunk>(NROF_CHUNKS);
+			this.full = new ArrayBlockingQueue<Chunk>(NROF_CHUNKS + 1);
+			for (int i=1; i<NROF_CHUNKS; i++) {
+				free.add(new Chunk(CHUNK_SIZE));
+			}
+			this.current = new Chunk(CHUNK_SIZE);
+			this.thread = new Thread(this, "gzip " + fileName);
+			this.thread.setDaemon(true);
+			this.thread.start();
+		}
+
+		/**
+		 * Compresses the chunks until the end marker. After a write error
+		 * the rest of the chunks are just recycled.
+		 */
+		public void run() {
+			try {
+				Chunk c;
+				while ((c = full.take()) != Chunk.END) {
+					if (error == null) {
+						try {
+							gzip.write(c.data, 0, c.length);
+						} catch (IOException e) {
+							error = e;
+						}
+					}
+					free.add(c);
+				}
+				gzip.finish();
+			} catch (IOException e) {
+				if (error == null) {
+					error = e;
+				}
+			} catch (InterruptedException e) {
+				/* abandoned */
+			} finally {
+				try {
+					gzip.close();
+				} catch (IOException e) {
+					if (error == null) {
+						error = e;
+					}
+				}
+			}
+		}
+
+		private void checkError() throws IOException {
+			if (error != null) {
+				throw new IOException("Can't write gzip file " + fileName +
+						": " + error.getMessage());
+			}
+			if (closed) {
+				throw new IOException("Stream closed");
+			}
+		}
+
+		/**
+		 * Passes the current chunk to the helper thread and takes a free one
+		 */
+		private void handOver() throws IOException {
+			try {
+				full.put(current);
+				current = free.take();
+			} catch (InterruptedException e) {
+				throw new InterruptedIOException("Interrupted while writing " +
+						fileName);
+			}
+			current.length = 0;
+		}
+
+		@Override
+		public void write(int b) throws IOException {
+			if (current.length == current.data.length) {
+				checkError();
+				handOver();
+			}
+			current.data[current.length++] = (byte)b;
+		}
+
+		@Override
+		public void write(byte[] b, int off, int len) throws IOException {
+			checkError();
+			while (len > 0) {
+				if (current.length == current.data.length) {
+					handOver();
+				}
+				int n = Math.min(len, current.data.length - current.length);
+				System.arraycopy(b, off, current.data, current.length, n);
+				current.length += n;
+				off += n;
+				len -= n;
+			}
+		}
+
+		/**
+		 * Passes the buffered bytes to the helper thread. The bytes are
+		 * guaranteed to be in the file only after {@link #close()}.
+		 */
+		@Override
+		public void flush() throws IOException {
+			checkError();
+			if (current.length > 0) {
+				handOver();
+			}
+		}
+
+		/**
+		 * Writes the rest of the bytes and waits until the file is finished
+		 * @throws IOException if writing the file failed
+		 */
+		@Override
+		public void close() throws IOException {
+			if (closed) {
+				return;
+			}
+			try {
+				if (current.length > 0) {
+					full.put(current);
+				}
+				full.put(Chunk.END);
+				thread.join();
+			} catch (InterruptedException e) {
+				throw new InterruptedIOException("Interrupted while writing " +
+						fileName);
+			} finally {
+				closed = true;
+			}
+			if (error != null) {
+				throw new IOException("Can't write gzip file " + fileName +
+						": " + error.getMessage());
+			}
+		}
+	}
+}
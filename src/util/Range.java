@@ -68,6 +68,22 @@ public class Range {
 		return (value >= min && value <= max);
 	}
 
+	/**
+	 * Returns the minimum bound of the range
+	 * @return the minimum bound of the range
+	 */
+	public double getMin() {
+		return this.min;
+	}
+
+	/**
+	 * Returns the maximum bound of the range
+	 * @return the maximum bound of the range
+	 */
+	public double getMax() {
+		return this.max;
+	}
+
 	@Override
 	public String toString() {
 		return "Range [" + min + ", " + max + "]";
@@ -0,0 +1,347 @@
+/*
+ * Copyright 2010 Aalto University, ComNet
+ * Released under GPLv3. See LICENSE.txt for details.
+ */
+package util;
+
+import java.lang.reflect.Array;
+import java.util.List;
+
+/**
+ * Hierarchical timing wheel for objects that expire at some absolute
+ * (simulation) time. Times are quantized to ticks of the given length. Each
+ * level of the wheel has 64 slots and every level covers 64 times the span
+ * of the previous one; timers beyond the last level are kept in an overflow
+ * list. Adding and removing a timer take constant time and advancing the
+ * wheel only touches the timers that are due (and the ones that cascade
+ * from the upper levels).
+ * @param <T> Type of the objects whose expiry is tracked
+ */
+public class TimingWheel<T> {
+	/** Number of slot index bits per level */
+	private static final int SLOT_BITS = 6;
+	private static final int SLOTS = 1 << SLOT_BITS;
+	private static final int SLOT_MASK = SLOTS - 1;
+	/** Number of levels in the wheel */
+	private static final int LEVELS = 4;
+	/** Level value of timers in the overflow list */
+	private static final int OVERFLOW = LEVELS;
+
+	/** Length of one tick (e.g., seconds) */
+	private final double tickLength;
+	/** Timer list heads: [level][slot] */
+	private final Timer<T>[][] slots;
+	/** Bitmask of non-empty slots per level */
+	private final long[] occupied;
+	/** Timers too far in the future for the wheel levels */
+	private Timer<T> overflow;
+	/** Timers that were already due when they were added */
+	private Timer<T> due;
+	/** The tick the wheel has been advanced to */
+	private long currentTick;
+	/** Number of timers in the wheel */
+	private int size;
+
+	/**
+	 * A timer in the wheel. Returned by {@link TimingWheel#add(Object,
+	 * double)} and used as the handle for removing the timer.
+	 * @param <T> Type of the object of the timer
+	 */
+	public static class Timer<T> {
+		private final T value;
+		private final long tick;
+		private int level;
+		private int slot;
+		private Timer<T> prev;
+		private Timer<T> next;
+		private boolean active;
+
+		private Timer(T value, long tick) {
+			this.value = value;
+			this.tick = tick;
+		}
+
+		/**
+		 * Returns the object of this timer
+		 * @return the object of this timer
+		 */
+		public T getValue() {
+			return this.value;
+		}
+
+		/**
+		 * Returns true if the timer is still in the wheel (not removed
+		 * or expired)
+		 * @return true if the timer is still in the wheel
+		 */
+		public boolean isActive() {
+			return this.active;
+		}
+	}
+
+	/**
+	 * Creates a new timing wheel starting from time 0.
+	 * @param tickLength Length of one tick (in the same units as the times)
+	 */
+	public TimingWheel(double tickLength) {
+		this.tickLength = tickLength;
+		this.slots = newSlots();
+		this.occupied = new long[LEVELS];
+		this.currentTick = 0;
+		this.size = 0;
+	}
+
+	/**
+	 * Creates the (empty) timer list heads of all the levels
+	 */
+	@SuppressWarnings(value = "unchecked") /* generic array creation */
+	private static <T> Timer<T>[][] newSlots() {
+		return (Timer<T>[][])Array.newInstance(Timer.class, LEVELS, SLOTS);
+	}
+
+	/**
+	 * Adds a new timer to the wheel.
+	 * @param value The object that expires
+	 * @param time The absolute time when the object expires
+	 * @return The timer handle (for {@link #remove(Timer)})
+	 */
+	public Timer<T> add(T value, double time) {
+		Timer<T> t = new Timer<T>(value, toTick(time));
+		insert(t);
+		this.size++;
+		return t;
+	}
+
+	/**
+	 * Removes a timer from the wheel. Removing an already removed or expired
+	 * timer does nothing.
+	 * @param t The timer to remove
+	 */
+	public void remove(Timer<T> t) {
+		if (!t.active) {
+			return;
+		}
+		unlink(t);
+		this.size--;
+	}
+
+	/**
+	 * Advances the wheel to the given time and collects the objects of the
+	 * timers whose tick is at or before the tick of that time. The collected
+	 * timers are removed from the wheel. Note that, due to the tick
+	 * quantization, the objects may expire at most one tick after the given
+	 * time.
+	 * @param time The time to advance to
+	 * @param expired The list where the expired objects are added to
+	 */
+	public void advance(double time, List<T> expired) {
+		long target = toTick(time);
+
+		while (this.currentTick < target) {
+			if (this.size == 0) {
+				this.currentTick = target; /* nothing to cascade */
+				break;
+			}
+
+			long wrap = (this.currentTick | SLOT_MASK) + 1;
+			if (wrap <= target && !hasSlotsAfter(0,
+					(int)(this.currentTick & SLOT_MASK))) {
+				/* nothing left on this round of the first level */
+				this.currentTick = wrap - 1;
+			}
+
+			this.currentTick++;
+			cascade(1);
+
+			int slot = (int)(this.currentTick & SLOT_MASK);
+			if (this.slots[0][slot] != null) {
+				Timer<T> head = this.slots[0][slot];
+				this.slots[0][slot] = null;
+				this.occupied[0] &= ~(1L << slot);
+				drain(head, expired);
+			}
+		}
+
+		/* timers that were added as already due or cascaded to the
+		 * current tick */
+		drain(this.due, expired);
+		this.due = null;
+	}
+
+	/**
+	 * Returns the time of the tick of the earliest timer in the wheel, i.e.,
+	 * the earliest time for which {@link #advance(double, List)} collects
+	 * objects. Only the timers of the first non-empty slot are checked.
+	 * @return The earliest expiry time or Double.POSITIVE_INFINITY if the
+	 * wheel is empty
+	 */
+	public double getNextExpiry() {
+		if (this.size == 0) {
+			return Double.POSITIVE_INFINITY;
+		}
+		if (this.due != null) {
+			return this.currentTick * this.tickLength;
+		}
+
+		Timer<T> head = this.overflow;
+		for (int level = 0; level < LEVELS; level++) {
+			if (this.occupied[level] != 0) {
+				/* the slots before the current one are empty */
+				int slot = Long.numberOfTrailingZeros(this.occupied[level]);
+				head = this.slots[level][slot];
+				break;
+			}
+		}
+
+		long tick = Long.MAX_VALUE;
+		for (Timer<T> t = head; t != null; t = t.next) {
+			tick = Math.min(tick, t.tick);
+		}
+		return tick * this.tickLength;
+	}
+
+	/**
+	 * Returns the number of timers in the wheel
+	 * @return the number of timers in the wheel
+	 */
+	public int size() {
+		return this.size;
+	}
+
+	/**
+	 * Returns the tick of the given time
+	 */
+	private long toTick(double time) {
+		return (long)Math.floor(time / this.tickLength);
+	}
+
+	/**
+	 * Returns true if the given level has non-empty slots after the
+	 * given slot
+	 */
+	private boolean hasSlotsAfter(int level, int slot) {
+		if (slot == SLOT_MASK) {
+			return false;
+		}
+		return (this.occupied[level] & (-1L << (slot + 1))) != 0;
+	}
+
+	/**
+	 * Moves the timers of the current slot of the given level (and, if the
+	 * level wrapped around, of the upper levels) to the lower levels.
+	 * Must be called after the current tick has been increased.
+	 */
+	private void cascade(int level) {
+		int shift = SLOT_BITS * level;
+		if ((this.currentTick & ((1L << shift) - 1)) != 0) {
+			return; /* the lower level didn't wrap around */
+		}
+
+		if (level == LEVELS) {
+			Timer<T> head = this.overflow;
+			this.overflow = null;
+			reinsert(head);
+			return;
+		}
+
+		cascade(level + 1); /* upper levels first */
+
+		int slot = (int)((this.currentTick >> shift) & SLOT_MASK);
+		Timer<T> head = this.slots[level][slot];
+		if (head != null) {
+			this.slots[level][slot] = null;
+			this.occupied[level] &= ~(1L << slot);
+			reinsert(head);
+		}
+	}
+
+	/**
+	 * Inserts all the timers of a detached list again
+	 */
+	private void reinsert(Timer<T> head) {
+		while (head != null) {
+			Timer<T> next = head.next;
+			insert(head);
+			head = next;
+		}
+	}
+
+	/**
+	 * Collects the objects of a detached list of timers
+	 */
+	private void drain(Timer<T> head, List<T> expired) {
+		while (head != null) {
+			head.active = false;
+			expired.add(head.value);
+			this.size--;
+			head = head.next;
+		}
+	}
+
+	/**
+	 * Inserts a timer into the right level and slot (or to the due or
+	 * overflow lists)
+	 */
+	private void insert(Timer<T> t) {
+		t.prev = null;
+		t.active = true;
+
+		if (t.tick <= this.currentTick) {
+			t.level = -1;
+			t.next = this.due;
+			if (this.due != null) {
+				this.due.prev = t;
+			}
+			this.due = t;
+			return;
+		}
+
+		for (int level = 0; level < LEVELS; level++) {
+			int shift = SLOT_BITS * (level + 1);
+			if ((t.tick >> shift) == (this.currentTick >> shift)) {
+				int slot = (int)((t.tick >> (SLOT_BITS * level)) & SLOT_MASK);
+				t.level = level;
+				t.slot = slot;
+				t.next = this.slots[level][slot];
+				if (t.next != null) {
+					t.next.prev = t;
+				}
+				this.slots[level][slot] = t;
+				this.occupied[level] |= 1L << slot;
+				return;
+			}
+		}
+
+		t.level = OVERFLOW;
+		t.next = this.overflow;
+		if (this.overflow != null) {
+			this.overflow.prev = t;
+		}
+		this.overflow = t;
+	}
+
+	/**
+	 * Unlinks a timer from the list it is in
+	 */
+	private void unlink(Timer<T> t) {
+		if (t.prev != null) {
+			t.prev.next = t.next;
+		} else if (t.level == -1) {
+			this.due = t.next;
+		} else if (t.level == OVERFLOW) {
+			this.overflow = t.next;
+		} else {
+			this.slots[t.level][t.slot] = t.next;
+			if (t.next == null) {
+				this.occupied[t.level] &= ~(1L << t.slot);
+			}
+		}
+
+		if (t.next != null) {
+			t.next.prev = t.prev;
+		}
+
+		t.prev = t.next = null;
+		t.active = false;
+	}
+}